@@ -25,7 +25,12 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import net.bioclipse.core.business.BioclipseException;
+import net.bioclipse.jobs.IReturner;
+import net.bioclipse.managers.business.BatchInvoker;
+import net.bioclipse.managers.business.DispatchMetrics;
 import net.bioclipse.managers.business.IBioclipseManager;
+import net.bioclipse.recording.IHistory;
+import net.bioclipse.recording.RecordingPolicy;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.CoreException;
@@ -294,4 +299,86 @@ public class BioclipsePlatformManager implements IBioclipseManager {
             throw new BioclipseException(e.getMessage(), e);
         }
     }
+
+    public void invokeBatch( Object manager,
+                             String methodName,
+                             Object argumentTuples,
+                             IReturner<Object> returner,
+                             IProgressMonitor monitor )
+                throws BioclipseException {
+        new BatchInvoker().invoke( manager, 
+                                   methodName, 
+                                   argumentTuples, 
+                                   returner, 
+                                   monitor );
+    }
+
+    public String metrics() {
+        return DispatchMetrics.getInstance().toText();
+    }
+
+    public String metrics( String format ) throws BioclipseException {
+        DispatchMetrics metrics = DispatchMetrics.getInstance();
+        if ( "json".equalsIgnoreCase( format ) ) {
+            return metrics.toJSON();
+        }
+        if ( "csv".equalsIgnoreCase( format ) ) {
+            return metrics.toCSV();
+        }
+        if ( "text".equalsIgnoreCase( format ) ) {
+            return metrics.toText();
+        }
+        throw new BioclipseException( "Unknown metrics format: " + format 
+                                      + ", use text, json or csv" );
+    }
+
+    public void resetMetrics() {
+        DispatchMetrics.getInstance().reset();
+    }
+
+    public String recordingPolicy() {
+        String policy = RecordingPolicy.getInstance().toString();
+        net.bioclipse.recording.Activator recording
+            = net.bioclipse.recording.Activator.getDefault();
+        IHistory history = recording == null ? null : recording.getHistory();
+        if ( history == null ) {
+            return policy;
+        }
+        return policy + ", " + history.getSkippedCount() 
+               + " calls not recorded";
+    }
+
+    public void recordOnly( String rule ) {
+        RecordingPolicy.getInstance().include( rule );
+    }
+
+    public void doNotRecord( String rule ) {
+        RecordingPolicy.getInstance().exclude( rule );
+    }
+
+    public void sampleRecording( int oneIn ) throws BioclipseException {
+        try {
+            RecordingPolicy.getInstance().setSampleRate( oneIn );
+        }
+        catch ( IllegalArgumentException e ) {
+            throw new BioclipseException( e.getMessage(), e );
+        }
+    }
+
+    public void limitRecording( int perSecond ) throws BioclipseException {
+        try {
+            RecordingPolicy.getInstance().setMaxPerSecond( perSecond );
+        }
+        catch ( IllegalArgumentException e ) {
+            throw new BioclipseException( e.getMessage(), e );
+        }
+    }
+
+    public void compressRecording( boolean compress ) {
+        RecordingPolicy.getInstance().setCompressRepeats( compress );
+    }
+
+    public void resetRecordingPolicy() {
+        RecordingPolicy.getInstance().loadPreferences();
+    }
 }
@@ -10,9 +10,13 @@
  ******************************************************************************/
 package net.bioclipse.business;
 
+import java.util.List;
+
 import net.bioclipse.core.PublishedClass;
 import net.bioclipse.core.PublishedMethod;
 import net.bioclipse.core.business.BioclipseException;
+import net.bioclipse.jobs.BioclipseJob;
+import net.bioclipse.jobs.BioclipseJobUpdateHook;
 import net.bioclipse.managers.business.IBioclipseManager;
 
 @PublishedClass("The Bioclipse Platform manager is used for providing some " +
@@ -90,4 +94,92 @@ public interface IBioclipsePlatformManager extends IBioclipseManager {
     public void requireVersion( String lowerVersionBound,
                                    String upperVersionBound )
                    throws BioclipseException;
+
+    @PublishedMethod(
+        methodSummary="Calls the method with the given name on the given " +
+                      "manager once for each argument tuple (a list or " +
+                      "array of arguments), running the calls in " +
+                      "parallel. Returns the results in the order of the " +
+                      "argument tuples. The calls are not recorded in the " +
+                      "history.",
+        params="Object manager, String methodName, Object argumentTuples" )
+    public List<Object> invokeBatch( Object manager,
+                                     String methodName,
+                                     Object argumentTuples )
+                        throws BioclipseException;
+
+    @PublishedMethod(
+        methodSummary="Like invokeBatch( manager, methodName, " +
+                      "argumentTuples ) but runs as a job, handing each " +
+                      "result to the update hook as soon as it and those " +
+                      "before it are done. Pass a " +
+                      "net.bioclipse.jobs.StreamingReturner to read the " +
+                      "results while the batch is running.",
+        params="Object manager, String methodName, Object argumentTuples, " +
+               "BioclipseJobUpdateHook<Object> hook" )
+    public BioclipseJob<Object> invokeBatch( 
+                                    Object manager,
+                                    String methodName,
+                                    Object argumentTuples,
+                                    BioclipseJobUpdateHook<Object> hook )
+                                throws BioclipseException;
+
+    @PublishedMethod(
+        methodSummary="Returns a table of how many times each manager " +
+                      "method has been called, how long the calls took " +
+                      "(in milliseconds) and how much of that was spent " +
+                      "outside of the manager itself." )
+    public String metrics();
+
+    @PublishedMethod(
+        methodSummary="Returns the manager method metrics in the given " +
+                      "format: \"text\", \"json\" or \"csv\".",
+        params="String format" )
+    public String metrics( String format ) throws BioclipseException;
+
+    @PublishedMethod(
+        methodSummary="Clears the gathered manager method metrics." )
+    public void resetMetrics();
+
+    @PublishedMethod(
+        methodSummary="Returns which calls are recorded in the history and " +
+                      "how many calls were not." )
+    public String recordingPolicy();
+
+    @PublishedMethod(
+        methodSummary="Records only calls matching the given rule, or " +
+                      "another such rule, in the history. A rule is a " +
+                      "manager name, like \"ui\", or a call name like " +
+                      "\"ui.open\", where * matches anything.",
+        params="String rule" )
+    public void recordOnly( String rule );
+
+    @PublishedMethod(
+        methodSummary="Does not record calls matching the given rule in " +
+                      "the history, see recordOnly.",
+        params="String rule" )
+    public void doNotRecord( String rule );
+
+    @PublishedMethod(
+        methodSummary="Records only one in every given number of calls to " +
+                      "each method in the history, 1 records all.",
+        params="int oneIn" )
+    public void sampleRecording( int oneIn ) throws BioclipseException;
+
+    @PublishedMethod(
+        methodSummary="Records at most the given number of calls to each " +
+                      "method per second in the history, 0 for no limit.",
+        params="int perSecond" )
+    public void limitRecording( int perSecond ) throws BioclipseException;
+
+    @PublishedMethod(
+        methodSummary="Whether to record only the first and the last of " +
+                      "repeated calls to the same method in the history.",
+        params="boolean compress" )
+    public void compressRecording( boolean compress );
+
+    @PublishedMethod(
+        methodSummary="Goes back to recording the calls the preferences " +
+                      "say should be recorded." )
+    public void resetRecordingPolicy();
 }
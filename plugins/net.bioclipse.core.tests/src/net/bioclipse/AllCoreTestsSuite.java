@@ -9,8 +9,14 @@
 
 package net.bioclipse;
 
+import net.bioclipse.core.domain.DatasetWriterTest;
+import net.bioclipse.core.domain.FloatMatrixTest;
 import net.bioclipse.core.domain.RecordableListTest;
+import net.bioclipse.core.domain.RepresentationCacheTest;
 import net.bioclipse.core.domain.SparseDatasetTest;
+import net.bioclipse.core.domain.SparseMatrixTest;
+import net.bioclipse.core.domain.StringMatrixTest;
+import net.bioclipse.core.domain.UIDGeneratorTest;
 import net.bioclipse.recording.AllRecordingTests;
 
 import org.junit.runner.RunWith;
@@ -21,7 +27,13 @@ import org.junit.runners.Suite.SuiteClasses;
 @RunWith(value=Suite.class)
 @SuiteClasses( { RecordableListTest.class,
                  AllRecordingTests.class,
-                 SparseDatasetTest.class } )
+                 DatasetWriterTest.class,
+                 FloatMatrixTest.class,
+                 RepresentationCacheTest.class,
+                 SparseDatasetTest.class,
+                 SparseMatrixTest.class,
+                 StringMatrixTest.class,
+                 UIDGeneratorTest.class } )
 public class AllCoreTestsSuite {
 
 }
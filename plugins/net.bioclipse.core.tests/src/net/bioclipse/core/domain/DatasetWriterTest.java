@@ -0,0 +1,150 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Point;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import net.bioclipse.core.domain.DatasetWriter.Format;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.junit.Test;
+
+/**
+ * @author jonalv
+ *
+ */
+public class DatasetWriterTest {
+
+    private static DenseDataset dense() {
+        List<List<Float>> values = new ArrayList<List<Float>>();
+        values.add( Arrays.asList( 1f, 0f, 2.5f ) );
+        values.add( Arrays.asList( 0f, 0f, 0f ) );
+        return new DenseDataset( Arrays.asList( "a", "b", "c" ),
+                                 Arrays.asList( "m1", "m2" ),
+                                 values,
+                                 "y",
+                                 Arrays.asList( "1", "-1" ) );
+    }
+
+    private static SparseDataset sparse() {
+        LinkedHashMap<Point, Integer> values
+            = new LinkedHashMap<Point, Integer>();
+        values.put( new Point( 1, 1 ), 1 );
+        values.put( new Point( 1, 3 ), 3 );
+        values.put( new Point( 3, 2 ), 2 );
+        return new SparseDataset( Arrays.asList( "a", "b", "c" ),
+                                  Arrays.asList( "m1", "m2", "m3" ),
+                                  values );
+    }
+
+    private static String write( Format format, IDataset dataset )
+                          throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new DatasetWriter( format ).write( dataset, out, null );
+        return out.toString( "UTF-8" );
+    }
+
+    private static String readString( ByteBuffer in ) throws Exception {
+        int length = in.getInt();
+        if ( length == -1 ) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get( bytes );
+        return new String( bytes, "UTF-8" );
+    }
+
+    @Test
+    public void testCSV() throws Exception {
+        String csv = "Molceulce\ta\tb\tc\ty\n"
+                     + "m1\t1.0\t0.0\t2.5\t1\n"
+                     + "m2\t0.0\t0.0\t0.0\t-1\n";
+        assertEquals( csv, write( Format.CSV, dense() ) );
+        assertEquals( csv, dense().asCSV() );
+        assertEquals( "Molceulce\ta\tb\tc\t\n"
+                      + "m1\t1.0\t0.0\t3.0\t\n"
+                      + "m2\t0.0\t0.0\t0.0\t\n"
+                      + "m3\t0.0\t2.0\t0.0\t\n",
+                      write( Format.CSV, sparse() ) );
+    }
+
+    @Test
+    public void testMissingValues() throws Exception {
+        List<List<Float>> values = new ArrayList<List<Float>>();
+        values.add( Arrays.asList( 1f, null ) );
+        DenseDataset dataset = new DenseDataset( Arrays.asList( "a", "b" ),
+                                                 Arrays.asList( "m1" ),
+                                                 values );
+        assertEquals( "Molceulce\ta\tb\t\nm1\t1.0\tnull\t\n",
+                      dataset.asCSV() );
+        assertEquals( "1:1.0\n", write( Format.LIBSVM, dataset ) );
+    }
+
+    @Test
+    public void testLibSVM() throws Exception {
+        assertEquals( "1 1:1.0 3:2.5\n-1\n", write( Format.LIBSVM, dense() ) );
+        assertEquals( "1:1.0 3:3.0\n\n2:2.0\n",
+                      write( Format.LIBSVM, sparse() ) );
+    }
+
+    @Test
+    public void testBinary() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new DatasetWriter( Format.BINARY ).write( dense(), out, null );
+        ByteBuffer in = ByteBuffer.wrap( out.toByteArray() )
+                                  .order( ByteOrder.LITTLE_ENDIAN );
+        assertEquals( 'B', in.get( 0 ) );
+        assertEquals( 'S', in.get( 3 ) );
+        assertEquals( DatasetWriter.MAGIC, in.getInt() );
+        assertEquals( DatasetWriter.VERSION, in.getInt() );
+        assertEquals( 2, in.getInt() );
+        assertEquals( 3, in.getInt() );
+        assertEquals( 1, in.get() );
+        assertEquals( "y", readString( in ) );
+        assertEquals( "a", readString( in ) );
+        assertEquals( "b", readString( in ) );
+        assertEquals( "c", readString( in ) );
+        assertEquals( "m1", readString( in ) );
+        assertEquals( 1f, in.getFloat(), 0 );
+        assertEquals( 0f, in.getFloat(), 0 );
+        assertEquals( 2.5f, in.getFloat(), 0 );
+        assertEquals( "1", readString( in ) );
+        assertEquals( "m2", readString( in ) );
+        in.position( in.position() + 3 * 4 );
+        assertEquals( "-1", readString( in ) );
+        assertEquals( 0, in.remaining() );
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        NullProgressMonitor monitor = new NullProgressMonitor();
+        monitor.setCanceled( true );
+        try {
+            new DatasetWriter( Format.CSV )
+                .write( dense(), new ByteArrayOutputStream(), monitor );
+        }
+        catch ( OperationCanceledException e ) {
+            return;
+        }
+        assertTrue( "Expected OperationCanceledException", false );
+    }
+}
@@ -0,0 +1,183 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author jonalv
+ *
+ */
+public class FloatMatrixTest {
+
+    /** two rows fit in a block with this many columns */
+    private static final int WIDE = FloatMatrix.BLOCK_VALUES / 4 + 1;
+
+    private static float valueAt( int row, int column ) {
+        return row * 1000 + column;
+    }
+
+    private static float[] row( int row, int columns ) {
+        float[] values = new float[columns];
+        for ( int c = 0; c < columns; c++ ) {
+            values[c] = valueAt( row, c );
+        }
+        return values;
+    }
+
+    private static void assertValues( FloatMatrix matrix ) {
+        float[] row = null;
+        for ( int r = 0; r < matrix.getRowCount(); r++ ) {
+            row = matrix.getRow( r, row );
+            for ( int c = 0; c < matrix.getColumnCount(); c++ ) {
+                assertEquals( valueAt( r, c ), row[c], 0 );
+            }
+        }
+        int last = matrix.getColumnCount() - 1;
+        float[] column = matrix.getColumn( last, null );
+        for ( int r = 0; r < matrix.getRowCount(); r++ ) {
+            assertEquals( valueAt( r, last ), column[r], 0 );
+            assertEquals( valueAt( r, last ), matrix.get( r, last ), 0 );
+        }
+    }
+
+    private void testAddRows( boolean offHeap ) {
+        FloatMatrix matrix = new FloatMatrix( 3, offHeap );
+        for ( int r = 0; r < 100; r++ ) {
+            matrix.addRow( row( r, 3 ) );
+        }
+        assertEquals( 100, matrix.getRowCount() );
+        assertValues( matrix );
+
+        FloatMatrix wide = new FloatMatrix( WIDE, offHeap );
+        wide.addRow( row( 0, WIDE ) );
+        float[] more = new float[4 * WIDE];
+        for ( int r = 1; r < 5; r++ ) {
+            System.arraycopy( row( r, WIDE ), 0, 
+                              more, ( r - 1 ) * WIDE, 
+                              WIDE );
+        }
+        wide.addRows( more );
+        assertEquals( 5, wide.getRowCount() );
+        assertValues( wide );
+    }
+
+    @Test
+    public void testAddRowsOnHeap() {
+        testAddRows( false );
+    }
+
+    @Test
+    public void testAddRowsOffHeap() {
+        testAddRows( true );
+    }
+
+    @Test
+    public void testZeros() {
+        FloatMatrix matrix = new FloatMatrix( 5, WIDE, true );
+        assertEquals( 5, matrix.getRowCount() );
+        assertEquals( 0, matrix.get( 4, WIDE - 1 ), 0 );
+        matrix.set( 4, WIDE - 1, 2.5f );
+        assertEquals( 2.5f, matrix.get( 4, WIDE - 1 ), 0 );
+    }
+
+    @Test
+    public void testListView() {
+        List<List<Float>> values = new ArrayList<List<Float>>();
+        values.add( Arrays.asList( 1f, 2f ) );
+        values.add( Arrays.asList( 3f, null ) );
+        FloatMatrix matrix = FloatMatrix.valueOf( values, false );
+        List<List<Float>> view = matrix.asLists();
+        assertEquals( 2, view.size() );
+        assertEquals( Arrays.asList( 1f, 2f ), view.get( 0 ) );
+        assertTrue( Float.isNaN( view.get( 1 ).get( 1 ) ) );
+
+        view.add( Arrays.asList( 5f, 6f ) );
+        view.get( 0 ).set( 1, 7f );
+        assertEquals( 3, matrix.getRowCount() );
+        assertEquals( 7f, matrix.get( 0, 1 ), 0 );
+        assertEquals( 6f, matrix.get( 2, 1 ), 0 );
+        assertSame( matrix, FloatMatrix.valueOf( view, true ) );
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testRaggedRows() {
+        List<List<Float>> values = new ArrayList<List<Float>>();
+        values.add( Arrays.asList( 1f, 2f ) );
+        values.add( Arrays.asList( 3f ) );
+        FloatMatrix.valueOf( values, false );
+    }
+
+    @Test
+    public void testDenseDatasetCSV() {
+        List<List<Float>> values = new ArrayList<List<Float>>();
+        values.add( Arrays.asList( 1f, 2.5f ) );
+        values.add( Arrays.asList( 3f, 4f ) );
+        DenseDataset dataset
+            = new DenseDataset( Arrays.asList( "a", "b" ),
+                                Arrays.asList( "m1", "m2" ),
+                                values,
+                                "y",
+                                Arrays.asList( "0", "1" ) );
+        assertEquals( "Molceulce\ta\tb\ty\n"
+                      + "m1\t1.0\t2.5\t0\n"
+                      + "m2\t3.0\t4.0\t1\n",
+                      dataset.asCSV() );
+        assertEquals( 3f, dataset.getColumn( 0 )[1], 0 );
+        assertEquals( Arrays.asList( 3f, 4f ), dataset.getValues().get( 1 ) );
+    }
+
+    @Test
+    public void testDenseDatasetKeepsLists() {
+        List<List<Float>> values = new ArrayList<List<Float>>();
+        DenseDataset dataset = new DenseDataset( null, null, values );
+        dataset.getValues().add( new ArrayList<Float>( 
+                                     Arrays.asList( 1f, 2f ) ) );
+        values.add( new ArrayList<Float>( Arrays.asList( 3f ) ) );
+        assertSame( values, dataset.getValues() );
+        assertEquals( 2, dataset.getColumn( 0 ).length );
+        assertTrue( Float.isNaN( dataset.getColumn( 1 )[1] ) );
+
+        FloatMatrix matrix = dataset.getMatrix();
+        assertEquals( 2, matrix.getColumnCount() );
+        assertTrue( Float.isNaN( matrix.get( 1, 1 ) ) );
+
+        values.remove( 0 );
+        assertEquals( 1, dataset.getMatrix().getRowCount() );
+        assertEquals( 2, matrix.getRowCount() );
+    }
+
+    @Test
+    public void testDenseDatasetMovesMatrixToLists() {
+        FloatMatrix matrix = new FloatMatrix( 2, false );
+        matrix.addRow( new float[] { 1f, 2f } );
+        matrix.addRow( new float[] { 3f, 4f } );
+        DenseDataset dataset = new DenseDataset( null, null, matrix );
+        assertSame( matrix, dataset.getMatrix() );
+        assertEquals( 4f, dataset.getRow( 1 )[1], 0 );
+
+        List<List<Float>> values = dataset.getValues();
+        assertEquals( Arrays.asList( 3f, 4f ), values.get( 1 ) );
+        values.remove( 0 );
+        values.get( 0 ).add( 5f );
+        assertSame( values, dataset.getValues() );
+        assertEquals( 1, dataset.getMatrix().getRowCount() );
+        assertEquals( 5f, dataset.getRow( 0 )[2], 0 );
+    }
+}
@@ -183,6 +183,64 @@ public class RecordableListTest {
         assertFalse( RecordableList.existsListContaining(bioObject.getUID()) );
     }
 
+    @Test
+    public void testPositionAfterInsert() {
+        biolist.add(bioObject);
+        biolist.add(bioObject2);
+        biolist.add(0, new TestBioObject());
+        assertEquals( 2, 
+                      RecordableList.positionOfBioObjectInList(bioObject2.getUID()) );
+        biolist.remove(0);
+        assertEquals( 1, 
+                      RecordableList.positionOfBioObjectInList(bioObject2.getUID()) );
+    }
+
+    @Test
+    public void testLatestListContaining() {
+        biolist.add(bioObject);
+        RecordableList<IBioObject> other = new RecordableList<IBioObject>();
+        other.add(bioObject2);
+        other.add(bioObject);
+        assertEquals( other.getUID(), 
+                      RecordableList.idOfListContainingBioObject(bioObject.getUID()) );
+        assertEquals( 1, 
+                      RecordableList.positionOfBioObjectInList(bioObject.getUID()) );
+        biolist.add(bioObject2);
+        assertEquals( biolist.getUID(), 
+                      RecordableList.idOfListContainingBioObject(bioObject.getUID()) );
+        assertEquals( 0, 
+                      RecordableList.positionOfBioObjectInList(bioObject.getUID()) );
+    }
+
+    @Test
+    public void testCopyWithSameUID() {
+        IBioObject first  = new TestBioObject();
+        IBioObject second = new TestBioObject();
+        biolist.add(first);
+        biolist.add(second);
+        biolist.withMembers( biolist.list );
+        // the original replaces the copy in the index
+        IBioObject third = new TestBioObject();
+        biolist.add(third);
+        assertEquals( biolist.getUID(), 
+                      RecordableList.idOfListContainingBioObject(first.getUID()) );
+        assertEquals( 1, 
+                      RecordableList.positionOfBioObjectInList(second.getUID()) );
+        assertEquals( 2, 
+                      RecordableList.positionOfBioObjectInList(third.getUID()) );
+    }
+
+    @Test
+    public void testBuildLargeList() {
+        IBioObject last = null;
+        for ( int i = 0; i < 50000; i++ ) {
+            last = new TestBioObject();
+            biolist.add(last);
+        }
+        assertEquals( 49999, 
+                      RecordableList.positionOfBioObjectInList(last.getUID()) );
+    }
+
     @Test
     public void testSubList() {
         fail("this method not implemented in BioList. It is complicated...");
@@ -0,0 +1,189 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.bioclipse.core.domain.IMolecule.Property;
+
+import org.junit.Test;
+
+/**
+ * @author jonalv
+ *
+ */
+public class RepresentationCacheTest {
+
+    private static class CountingConverter
+                   implements RepresentationCache.Converter<String> {
+
+        final AtomicInteger calls = new AtomicInteger();
+        private final String value;
+
+        CountingConverter( String value ) {
+            this.value = value;
+        }
+
+        public String convert() {
+            calls.incrementAndGet();
+            return value;
+        }
+    }
+
+    @Test
+    public void testConvertsOnce() throws Exception {
+        RepresentationCache cache = new RepresentationCache();
+        CountingConverter converter = new CountingConverter( "CCO" );
+        assertNull( cache.get( RepresentationCache.SMILES,
+                               Property.USE_CACHED,
+                               converter ) );
+        for ( int i = 0; i < 3; i++ ) {
+            assertEquals( "CCO",
+                          cache.get( RepresentationCache.SMILES,
+                                     Property.USE_CACHED_OR_CALCULATED,
+                                     converter ) );
+        }
+        assertEquals( 1, converter.calls.get() );
+        cache.get( RepresentationCache.SMILES,
+                   Property.USE_CALCULATED,
+                   converter );
+        assertEquals( 2, converter.calls.get() );
+    }
+
+    @Test
+    public void testInvalidatedOnChange() throws Exception {
+        CMLMolecule molecule = new CMLMolecule( "<molecule id='a'/>" );
+        molecule.getRepresentations().put( RepresentationCache.SMILES, "C" );
+        assertEquals( "C", molecule.toSMILES() );
+        String hash = molecule.getContentHash();
+        assertEquals( hash,
+                      new CMLMolecule( "<molecule id='a'/>" )
+                          .getContentHash() );
+
+        molecule.setCML( "<molecule id='b'/>" );
+        assertNull( molecule.getRepresentations()
+                            .get( RepresentationCache.SMILES ) );
+        assertFalse( hash.equals( molecule.getContentHash() ) );
+        try {
+            molecule.toSMILES();
+            fail( "Expected UnsupportedOperationException" );
+        }
+        catch ( UnsupportedOperationException e ) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testTranslatorFillsCache() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        RepresentationCache.setTranslator( 
+            RepresentationCache.CML,
+            RepresentationCache.SMILES,
+            new RepresentationCache.Translator() {
+                public String translate( String source ) {
+                    calls.incrementAndGet();
+                    return source.length() + "C";
+                }
+            } );
+        try {
+            CMLMolecule molecule = new CMLMolecule( "<molecule/>" );
+            assertEquals( "11C", molecule.toSMILES() );
+            assertEquals( "11C", molecule.toSMILES() );
+            assertEquals( 1, calls.get() );
+            assertEquals( "11C", molecule.getRepresentations()
+                                         .get( RepresentationCache.SMILES ) );
+            molecule.setCML( "<molecule id='a'/>" );
+            assertEquals( "18C", molecule.toSMILES() );
+            assertEquals( 2, calls.get() );
+        }
+        finally {
+            RepresentationCache.setTranslator( RepresentationCache.CML,
+                                               RepresentationCache.SMILES,
+                                               null );
+        }
+    }
+
+    @Test
+    public void testDocumentSizedFromSource() throws Exception {
+        long budget = RepresentationCache.getBudget();
+        try {
+            RepresentationCache.setBudget( 0 );
+            RepresentationCache.setBudget( 1000 );
+            CMLMolecule molecule = new CMLMolecule( "<molecule/>" );
+            // ten times the 11 characters of CML
+            molecule.getRepresentations().put( RepresentationCache.DOCUMENT,
+                                               new Object() );
+            assertEquals( 10 * ( 40 + 2 * 11 ), 
+                          RepresentationCache.getUsed() );
+        }
+        finally {
+            RepresentationCache.setBudget( budget );
+        }
+    }
+
+    @Test
+    public void testBudget() throws Exception {
+        long budget = RepresentationCache.getBudget();
+        try {
+            SMILESMolecule first = new SMILESMolecule( "C" );
+            SMILESMolecule second = new SMILESMolecule( "O" );
+            RepresentationCache.setBudget( 0 );
+            assertEquals( 0, RepresentationCache.getUsed() );
+            RepresentationCache.setBudget( 1000 );
+            StringBuilder cml = new StringBuilder();
+            for ( int i = 0; i < 300; i++ ) {
+                cml.append( 'x' );
+            }
+            first.getRepresentations().put( RepresentationCache.CML,
+                                            cml.toString() );
+            assertEquals( cml.toString(), first.toCML() );
+            second.getRepresentations().put( RepresentationCache.CML,
+                                             cml.toString() );
+            assertNull( first.getRepresentations()
+                             .get( RepresentationCache.CML ) );
+            assertEquals( cml.toString(), second.toCML() );
+        }
+        finally {
+            RepresentationCache.setBudget( budget );
+        }
+    }
+
+    @Test
+    public void testCollectedCachesStopCounting() throws Exception {
+        long budget = RepresentationCache.getBudget();
+        try {
+            RepresentationCache.setBudget( 0 );
+            RepresentationCache.setBudget( 1000 );
+            RepresentationCache kept = new RepresentationCache();
+            kept.put( RepresentationCache.SMILES, "CCO" );
+            String cml = "<molecule/>";
+            new RepresentationCache().put( RepresentationCache.CML, cml );
+            assertEquals( 2 * 40 + 2 * 3 + 2 * 11, 
+                          RepresentationCache.getUsed() );
+            for ( int i = 0; i < 100 
+                             && RepresentationCache.getUsed() > 46; i++ ) {
+                System.gc();
+                Thread.sleep( 10 );
+            }
+            // the CML is still referred to but its cache is gone
+            assertEquals( 40 + 2 * 3, RepresentationCache.getUsed() );
+            assertEquals( "CCO", kept.get( RepresentationCache.SMILES ) );
+        }
+        finally {
+            RepresentationCache.setBudget( budget );
+        }
+    }
+}
@@ -12,6 +12,7 @@ package net.bioclipse.core.domain;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -43,4 +44,27 @@ public class SparseDatasetTest {
         assertEquals( "1:1,2:12\n2:2\n2:32,3:3\n", 
                       dataset.toSparseString(",") );
     }
+
+    @Test
+    public void testValuesAreKept() {
+        LinkedHashMap<Point, Integer> values 
+            = new LinkedHashMap<Point, Integer>();
+        values.put( new Point( 1, 2 ), 5 );
+        SparseDataset dataset = new SparseDataset( null, null, values );
+        assertSame( values, dataset.getValues() );
+        values.put( new Point( 2, 1 ), 7 );
+        assertEquals( "2:5\n1:7\n", dataset.toSparseString( " " ) );
+    }
+
+    @Test
+    public void testValuesOfMatrixCanBeChanged() {
+        BitMatrix matrix = new BitMatrix.Builder( 3 )
+            .addRow( new int[] { 2 }, 1 )
+            .build();
+        SparseDataset dataset = new SparseDataset( null, null, matrix );
+        dataset.getValues().put( new Point( 1, 1 ), 4 );
+        dataset.getValues().remove( new Point( 1, 3 ) );
+        assertEquals( 1, dataset.getValues().size() );
+        assertEquals( "1:4\n", dataset.toSparseString( " " ) );
+    }
 }
@@ -0,0 +1,138 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Point;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+
+import org.junit.Test;
+
+/**
+ * @author jonalv
+ *
+ */
+public class SparseMatrixTest {
+
+    /**
+     * <pre>
+     *   1 0 3 0
+     *   0 0 0 0
+     *   0 2 0 4
+     * </pre>
+     */
+    private static CSRMatrix matrix() {
+        return new CSRMatrix.Builder( 4, false )
+            .addRow( new int[] { 0, 2 }, new int[] { 1, 3 }, 2 )
+            .endRow()
+            .add( 1, 2 ).add( 3, 4 ).endRow()
+            .build();
+    }
+
+    private static String rows( SparseMatrix matrix ) {
+        StringBuilder s = new StringBuilder();
+        int[] columns = new int[matrix.getColumnCount()];
+        int[] values  = new int[matrix.getColumnCount()];
+        for ( int row = 0; row < matrix.getRowCount(); row++ ) {
+            int n = matrix.getRow( row, columns, values );
+            for ( int i = 0; i < n; i++ ) {
+                s.append( columns[i] ).append( ':' ).append( values[i] )
+                 .append( ' ' );
+            }
+            s.append( '|' );
+        }
+        return s.toString();
+    }
+
+    @Test
+    public void testBuilder() {
+        CSRMatrix matrix = matrix();
+        assertEquals( 3, matrix.getRowCount() );
+        assertEquals( 4, matrix.getColumnCount() );
+        assertEquals( 4, matrix.getEntryCount() );
+        assertEquals( 0, matrix.getRowEntryCount( 1 ) );
+        assertEquals( 3, matrix.get( 0, 2 ) );
+        assertEquals( 0, matrix.get( 2, 2 ) );
+        assertFalse( matrix.isBinary() );
+        assertEquals( "0:1 2:3 ||1:2 3:4 |", rows( matrix ) );
+        assertEquals( 2, matrix.rowStart( 2 ) );
+        assertEquals( 4, matrix.valueAt( matrix.rowEnd( 2 ) - 1 ) );
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testUnorderedColumns() {
+        new CSRMatrix.Builder( 4, false ).add( 2, 1 ).add( 1, 1 );
+    }
+
+    @Test
+    public void testValueOf() {
+        LinkedHashMap<Point, Integer> values
+            = new LinkedHashMap<Point, Integer>();
+        values.put( new Point( 3, 4 ), 4 );
+        values.put( new Point( 1, 3 ), 3 );
+        values.put( new Point( 3, 2 ), 2 );
+        values.put( new Point( 1, 1 ), 1 );
+        assertEquals( rows( matrix() ),
+                      rows( CSRMatrix.valueOf( values, 3, 4 ) ) );
+
+        values.clear();
+        values.put( new Point( 2, 2 ), 1 );
+        assertTrue( CSRMatrix.valueOf( values, 2, 2 ).isBinary() );
+    }
+
+    @Test
+    public void testColumnsAndTranspose() {
+        CSRMatrix matrix = matrix();
+        assertEquals( "1:3 ||0:2 |", rows( matrix.getColumns( 1, 3 ) ) );
+        assertEquals( "0:1 |2:2 |0:3 |2:4 |", rows( matrix.transpose() ) );
+        assertEquals( rows( matrix ), rows( matrix.transpose().transpose() ) );
+    }
+
+    @Test
+    public void testBitMatrix() {
+        BitSet bits = new BitSet();
+        bits.set( 3 );
+        bits.set( 64 );
+        bits.set( 129 );
+        BitMatrix matrix = new BitMatrix.Builder( 130 )
+            .addRow( bits )
+            .addRow( new int[] { 70, 0 }, 2 )
+            .build();
+        assertEquals( 2, matrix.getRowCount() );
+        assertEquals( 5, matrix.getEntryCount() );
+        assertEquals( 1, matrix.get( 0, 129 ) );
+        assertEquals( 0, matrix.get( 0, 128 ) );
+        assertEquals( 64, matrix.nextSetBit( 0, 4 ) );
+        assertEquals( -1, matrix.nextSetBit( 1, 71 ) );
+        assertEquals( "3:1 64:1 129:1 |0:1 70:1 |", rows( matrix ) );
+        assertEquals( bits, matrix.getBitSet( 0 ) );
+        assertEquals( "0:1 |6:1 |", rows( matrix.getColumns( 64, 128 ) ) );
+        assertEquals( rows( matrix ), rows( matrix.toCSR() ) );
+    }
+
+    @Test
+    public void testSparseDataset() {
+        SparseDataset dataset = new SparseDataset();
+        BitMatrix matrix = new BitMatrix.Builder( 3 )
+            .addRow( new int[] { 2 }, 1 )
+            .addRow( new int[] { 0, 1 }, 2 )
+            .build();
+        dataset.setMatrix( matrix );
+        assertEquals( "3:1\n1:1 2:1\n", dataset.getFileContents() );
+        assertEquals( Integer.valueOf( 1 ),
+                      dataset.getValues().get( new Point( 2, 2 ) ) );
+        assertEquals( 3, dataset.getValues().size() );
+    }
+}
@@ -0,0 +1,100 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * @author jonalv
+ *
+ */
+public class StringMatrixTest {
+
+    private static StringMatrix matrix() {
+        StringMatrix matrix = new StringMatrix();
+        matrix.setColumnName( 1, "name" );
+        matrix.setColumnName( 2, "mass" );
+        matrix.addRows( Arrays.asList( new String[] { "water", "18" },
+                                       new String[] { "ethanol", "46" } ) );
+        return matrix;
+    }
+
+    @Test
+    public void testSetAndGet() {
+        StringMatrix matrix = new StringMatrix();
+        matrix.set( 2, 3, "x" );
+        assertEquals( 2, matrix.getRowCount() );
+        assertEquals( 3, matrix.getColumnCount() );
+        assertEquals( "x", matrix.get( 2, 3 ) );
+        assertNull( matrix.get( 2, 1 ) );
+        assertEquals( "", matrix.get( 1, 1 ) );
+        assertEquals( Arrays.asList( "", "x" ), matrix.getColumn( 3 ) );
+        assertFalse( matrix.hasColHeader() );
+    }
+
+    @Test
+    public void testAddRows() {
+        StringMatrix matrix = matrix();
+        assertEquals( 3, matrix.addRow( "benzene", "78" ) );
+        assertEquals( 3, matrix.getRowCount() );
+        assertEquals( 2, matrix.getColumnCount() );
+        assertEquals( "ethanol", matrix.get( 2, "name" ) );
+        assertEquals( Arrays.asList( "18", "46", "78" ),
+                      matrix.getColumn( "mass" ) );
+        assertEquals( "[[\"name\",\"mass\"],\n"
+                      + "[\"water\",\"18\"],\n"
+                      + "[\"ethanol\",\"46\"],\n"
+                      + "[\"benzene\",\"78\"]\n]\n",
+                      matrix.toString() );
+    }
+
+    @Test
+    public void testColumnNames() {
+        StringMatrix matrix = matrix();
+        assertEquals( 2, matrix.getColumnNumber( "mass" ) );
+        matrix.setColumnName( 2, "weight" );
+        assertTrue( matrix.hasColumn( "weight" ) );
+        assertFalse( matrix.hasColumn( "mass" ) );
+        matrix.setColumnName( 3, "name" );
+        assertEquals( 1, matrix.getColumnNumber( "name" ) );
+        matrix.setColumnName( 1, "label" );
+        assertEquals( 3, matrix.getColumnNumber( "name" ) );
+    }
+
+    @Test(expected=IllegalAccessError.class)
+    public void testMissingColumn() {
+        matrix().getColumnNumber( "charge" );
+    }
+
+    @Test
+    public void testReadOnly() {
+        StringMatrix matrix = matrix();
+        IStringMatrix view = matrix.asReadOnly();
+        assertEquals( "46", view.get( 2, "mass" ) );
+        matrix.addRow( "benzene", "78" );
+        assertEquals( 3, view.getRowCount() );
+        try {
+            view.set( 1, 1, "ice" );
+        }
+        catch ( UnsupportedOperationException e ) {
+            assertEquals( "water", matrix.get( 1, 1 ) );
+            return;
+        }
+        assertTrue( "Expected UnsupportedOperationException", false );
+    }
+}
@@ -0,0 +1,77 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * @author jonalv
+ *
+ */
+public class UIDGeneratorTest {
+
+    @Test
+    public void testCounterUIDsAreUnique() throws Exception {
+        final CounterUIDGenerator generator = new CounterUIDGenerator();
+        final Set<String> uids 
+            = Collections.synchronizedSet( new HashSet<String>() );
+        Thread[] threads = new Thread[4];
+        for ( int i = 0; i < threads.length; i++ ) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for ( int j = 0; j < 10000; j++ ) {
+                        uids.add( generator.nextUID() );
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for ( Thread t : threads ) {
+            t.join();
+        }
+        assertEquals( 40000, uids.size() );
+        assertEquals( 40000, generator.getCount() );
+    }
+
+    @Test
+    public void testCounterGeneratorsDoNotOverlap() {
+        String a = new CounterUIDGenerator().nextUID();
+        String b = new CounterUIDGenerator().nextUID();
+        assertFalse( a.equals( b ) );
+    }
+
+    @Test
+    public void testUIDGeneratedOnFirstUse() {
+        IUIDGenerator original = BioObject.getUIDGenerator();
+        CounterUIDGenerator generator = new CounterUIDGenerator();
+        BioObject.setUIDGenerator( generator );
+        try {
+            BioObject o = new BioObject() {};
+            assertEquals( 0, generator.getCount() );
+            String uid = o.getUID();
+            assertEquals( 1, generator.getCount() );
+            assertSame( uid, o.getUID() );
+            assertTrue( uid.length() < 36 );
+        }
+        finally {
+            BioObject.setUIDGenerator( original );
+        }
+    }
+}
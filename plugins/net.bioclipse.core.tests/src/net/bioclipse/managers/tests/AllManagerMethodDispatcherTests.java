@@ -5,7 +5,15 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith( value = Suite.class )
-@SuiteClasses( value = { JavaManagerMethodTest.class,
+@SuiteClasses( value = { ArgumentAdapterTest.class,
+                         BatchInvokerTest.class,
+                         DispatchMetricsTest.class,
+                         DispatchPlanTest.class,
+                         ManagerMethodInvokerTest.class,
+                         MonitorContainerTest.class,
+                         ManagerJobSchedulerTest.class,
+                         StreamingReturnerTest.class,
+                         JavaManagerMethodTest.class,
                          JavaScriptManagerMethodTest.class } )
 public class AllManagerMethodDispatcherTests {
 
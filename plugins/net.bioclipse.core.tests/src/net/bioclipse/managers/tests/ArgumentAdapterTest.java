@@ -0,0 +1,156 @@
+package net.bioclipse.managers.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import net.bioclipse.core.IResourcePathTransformer;
+import net.bioclipse.jobs.BioclipseJobUpdateHook;
+import net.bioclipse.jobs.BioclipseUIJob;
+import net.bioclipse.jobs.IReturner;
+import net.bioclipse.managers.business.ArgumentAdapter;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.Test;
+
+/**
+ * @author jonalv
+ *
+ */
+public class ArgumentAdapterTest {
+
+    private static final IFile file 
+        = AbstractManagerMethodDispatcherTest.file;
+    
+    private IReturner<Object> returner = new IReturner<Object>() {
+        public void completeReturn( Object object ) {
+        }
+        public void partialReturn( Object object ) {
+        }
+    };
+    
+    private IProgressMonitor monitor = new NullProgressMonitor();
+
+    @Test
+    public void adapterIsCached() throws Exception {
+        assertSame( 
+            ArgumentAdapter.get( 
+                ITestManager.class.getMethod( "getPath", String.class ),
+                TestManager.class.getMethod( "getPath", IFile.class ) ),
+            ArgumentAdapter.get( 
+                ITestManager.class.getMethod( "getPath", String.class ),
+                TestManager.class.getMethod( "getPath", IFile.class ) ) );
+    }
+    
+    @Test
+    public void clearedCacheMakesNewAdapter() throws Exception {
+        ArgumentAdapter adapter = ArgumentAdapter.get( 
+            ITestManager.class.getMethod( "getPath", String.class ),
+            TestManager.class.getMethod( "getPath", IFile.class ) );
+        ArgumentAdapter.clearCache();
+        assertNotSame( 
+            adapter,
+            ArgumentAdapter.get( 
+                ITestManager.class.getMethod( "getPath", String.class ),
+                TestManager.class.getMethod( "getPath", IFile.class ) ) );
+    }
+
+    @Test
+    public void usesGivenTransformer() throws Exception {
+        ArgumentAdapter adapter = ArgumentAdapter.get( 
+            ITestManager.class.getMethod( "getPath", String.class ),
+            TestManager.class.getMethod( "getPath", IFile.class ) );
+        assertArrayEquals( new Object[] { file },
+                           adapter.adapt( new Object[] { "/a.mol" },
+                                          null,
+                                          null,
+                                          new IResourcePathTransformer() {
+                                              public IFile transform( 
+                                                  String path ) {
+                                                  return file;
+                                              }
+                                          } ) );
+    }
+
+    @Test
+    public void addsMonitor() throws Exception {
+        ArgumentAdapter adapter = ArgumentAdapter.get( 
+            ITestManager.class.getMethod( "runAsJob", IFile.class ),
+            TestManager.class.getMethod( "runAsJob", 
+                                         IFile.class, 
+                                         IProgressMonitor.class ) );
+        assertTrue( adapter.needsMonitor() );
+        assertFalse( adapter.usesReturner() );
+        assertArrayEquals( new Object[] { file, monitor }, 
+                           adapter.adapt( new Object[] { file }, 
+                                          null, 
+                                          monitor ) );
+    }
+    
+    @Test
+    public void removesUIJobAndAddsReturner() throws Exception {
+        ArgumentAdapter adapter = ArgumentAdapter.get( 
+            ITestManager.class.getMethod( "getBioObjects", 
+                                          IFile.class, 
+                                          BioclipseUIJob.class ),
+            TestManager.class.getMethod( "getBioObjects", 
+                                         IFile.class, 
+                                         IReturner.class,
+                                         IProgressMonitor.class ) );
+        assertEquals( 1, adapter.getUIJobIndex() );
+        assertEquals( -1, adapter.getReturnerIndex() );
+        BioclipseUIJob<Object> uiJob = new BioclipseUIJob<Object>() {
+            @Override
+            public void runInUI() {
+            }
+        };
+        assertArrayEquals( new Object[] { file, returner, monitor }, 
+                           adapter.adapt( new Object[] { file, uiJob }, 
+                                          returner, 
+                                          monitor ) );
+    }
+    
+    @Test
+    public void replacesHook() throws Exception {
+        ArgumentAdapter adapter = ArgumentAdapter.get( 
+            ITestManager.class.getMethod( "getBioObjects", 
+                                          IFile.class, 
+                                          BioclipseJobUpdateHook.class ),
+            TestManager.class.getMethod( "getBioObjects", 
+                                         IFile.class, 
+                                         IReturner.class,
+                                         IProgressMonitor.class ) );
+        assertEquals( 1, adapter.getReturnerIndex() );
+        BioclipseJobUpdateHook<Object> hook 
+            = new BioclipseJobUpdateHook<Object>( "hook" );
+        Object[] source = new Object[] { file, hook };
+        assertArrayEquals( new Object[] { file, returner, monitor }, 
+                           adapter.adapt( source, returner, monitor ) );
+        assertArrayEquals( new Object[] { file, hook, monitor }, 
+                           adapter.adapt( source, null, monitor ) );
+    }
+    
+    @Test
+    public void dropsHookNotTaken() throws Exception {
+        ArgumentAdapter adapter = ArgumentAdapter.get( 
+            ITestManager.class.getMethod( "createBioObject", 
+                                          IFile.class, 
+                                          BioclipseJobUpdateHook.class ),
+            TestManager.class.getMethod( "createBioObject", 
+                                         IFile.class, 
+                                         IProgressMonitor.class ) );
+        assertFalse( adapter.usesReturner() );
+        assertEquals( 1, adapter.getReturnerIndex() );
+        assertArrayEquals( 
+            new Object[] { file, monitor }, 
+            adapter.adapt( 
+                new Object[] { file, 
+                               new BioclipseJobUpdateHook<Object>("hook") }, 
+                null, 
+                monitor ) );
+    }
+}
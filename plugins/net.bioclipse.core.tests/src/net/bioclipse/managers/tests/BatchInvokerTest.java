@@ -0,0 +1,144 @@
+package net.bioclipse.managers.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.bioclipse.core.business.BioclipseException;
+import net.bioclipse.jobs.IReturner;
+import net.bioclipse.managers.business.BatchInvoker;
+import net.bioclipse.managers.business.IBioclipseManager;
+
+import org.junit.Test;
+import org.mozilla.javascript.NativeArray;
+
+/**
+ * @author jonalv
+ *
+ */
+public class BatchInvokerTest {
+
+    public static class Manager implements IBioclipseManager {
+
+        public String getManagerName() {
+            return "batch";
+        }
+
+        public int square( int i ) throws BioclipseException {
+            if ( i < 0 ) {
+                throw new BioclipseException( "negative" );
+            }
+            return i * i;
+        }
+
+        public int sumOfSquares( int n ) throws BioclipseException {
+            List<Object> tuples = new ArrayList<Object>();
+            for ( int i = 1; i <= n; i++ ) {
+                tuples.add( i );
+            }
+            Collector squares = new Collector();
+            new BatchInvoker( pool, 1 )
+                .invoke( this, "square", tuples, squares, null );
+            int sum = 0;
+            for ( Object square : squares.results ) {
+                sum += (Integer) square;
+            }
+            return sum;
+        }
+    }
+
+    /** a pool with one thread, full while a batch call is running in it */
+    private static final ExecutorService pool
+        = Executors.newSingleThreadExecutor();
+
+    private static class Collector implements IReturner<Object> {
+
+        List<Object> results 
+            = Collections.synchronizedList( new ArrayList<Object>() );
+
+        public void completeReturn( Object object ) {
+            fail( "Batches only do partial returns" );
+        }
+
+        public void partialReturn( Object object ) {
+            results.add( object );
+        }
+    }
+
+    @Test
+    public void resultsInTupleOrder() throws Exception {
+        List<Object[]> tuples = new ArrayList<Object[]>();
+        List<Object> expected = new ArrayList<Object>();
+        for ( int i = 0; i < 100; i++ ) {
+            tuples.add( new Object[] { i } );
+            expected.add( i * i );
+        }
+        Collector collector = new Collector();
+        new BatchInvoker( Executors.newFixedThreadPool( 4 ), 4 )
+            .invoke( new Manager(), "square", tuples, collector, null );
+        assertEquals( expected, collector.results );
+    }
+
+    @Test
+    public void listTuples() throws Exception {
+        Collector collector = new Collector();
+        new BatchInvoker().invoke( 
+            new Manager(), 
+            "square", 
+            Arrays.asList( Arrays.asList( 2 ), Arrays.asList( 3 ) ), 
+            collector, 
+            null );
+        assertEquals( Arrays.asList( 4, 9 ), collector.results );
+    }
+
+    @Test
+    public void scriptArrays() throws Exception {
+        Collector collector = new Collector();
+        new BatchInvoker().invoke( 
+            new Manager(), 
+            "square", 
+            new NativeArray( new Object[] { 
+                new NativeArray( new Object[] { 2.0 } ), 3.0 } ),
+            collector, 
+            null );
+        assertEquals( Arrays.asList( 4, 9 ), collector.results );
+    }
+
+    @Test(timeout = 10000)
+    public void nestedBatchesRunInline() throws Exception {
+        Collector collector = new Collector();
+        new BatchInvoker( pool, 1 ).invoke( 
+            new Manager(), 
+            "sumOfSquares", 
+            Arrays.asList( 2, 3 ), 
+            collector, 
+            null );
+        assertEquals( Arrays.asList( 5, 14 ), collector.results );
+    }
+
+    @Test(expected = BioclipseException.class)
+    public void bioclipseExceptionIsUnwrapped() throws Exception {
+        new BatchInvoker().invoke( 
+            new Manager(), 
+            "square", 
+            Arrays.asList( new Object[] { 1 }, new Object[] { -1 } ), 
+            new Collector(), 
+            null );
+    }
+
+    @Test(expected = BioclipseException.class)
+    public void unknownMethod() throws Exception {
+        new BatchInvoker().invoke( 
+            new Manager(), 
+            "cube", 
+            Arrays.asList( new Object[] { 1 } ), 
+            new Collector(), 
+            null );
+    }
+}
@@ -0,0 +1,114 @@
+package net.bioclipse.managers.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+
+import net.bioclipse.managers.business.DispatchMetrics;
+import net.bioclipse.managers.business.LatencyHistogram;
+import net.bioclipse.managers.business.MethodMetrics;
+import net.bioclipse.managers.business.MetricsAdvice;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.Test;
+
+/**
+ * @author jonalv
+ *
+ */
+public class DispatchMetricsTest {
+
+    private static class TimedInvocation implements MethodInvocation {
+
+        private final Method method;
+        private final Object returnValue;
+        private final RuntimeException failure;
+
+        TimedInvocation( Method method,
+                         Object returnValue,
+                         RuntimeException failure ) {
+            this.method      = method;
+            this.returnValue = returnValue;
+            this.failure     = failure;
+        }
+
+        public Method getMethod() {
+            return method;
+        }
+
+        public Object[] getArguments() {
+            return new Object[0];
+        }
+
+        public AccessibleObject getStaticPart() {
+            return method;
+        }
+
+        public Object getThis() {
+            return null;
+        }
+
+        public Object proceed() throws Throwable {
+            DispatchMetrics.targetTime( 1000 );
+            if ( failure != null ) {
+                throw failure;
+            }
+            return returnValue;
+        }
+    }
+
+    @Test
+    public void histogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for ( int i = 1; i <= 1000; i++ ) {
+            histogram.record( i * 1000L );
+        }
+        assertEquals( 1000, histogram.getCount() );
+        assertEquals( 1000000, histogram.getMax() );
+        assertEquals( 500500, histogram.getMean(), 1 );
+        long median = histogram.getValueAtPercentile( 50 );
+        assertTrue( "median was: " + median,
+                    median >= 500000 && median <= 500000 * 1.25 );
+        long p99 = histogram.getValueAtPercentile( 99 );
+        assertTrue( "p99 was: " + p99,
+                    p99 >= 990000 && p99 <= 1000000 );
+        histogram.reset();
+        assertEquals( 0, histogram.getCount() );
+    }
+
+    @Test
+    public void adviceRecordsCalls() throws Throwable {
+        DispatchMetrics metrics = DispatchMetrics.getInstance();
+        metrics.reset();
+        MetricsAdvice advice = new MetricsAdvice();
+        Method method = Object.class.getMethod( "toString" );
+        advice.invoke( new TimedInvocation( method, "0123456789", null ) );
+        try {
+            advice.invoke( new TimedInvocation( 
+                method, null, new IllegalStateException() ) );
+            fail( "should have thrown" );
+        }
+        catch ( IllegalStateException e ) {
+            // expected
+        }
+        MethodMetrics m = null;
+        for ( MethodMetrics candidate : metrics.getMetrics() ) {
+            if ( candidate.getName().startsWith( "Object.toString" ) ) {
+                m = candidate;
+            }
+        }
+        assertTrue( "no metrics recorded", m != null );
+        assertEquals( 2, m.getCalls() );
+        assertEquals( 1, m.getErrors() );
+        assertEquals( 2, m.getDirectCalls() );
+        assertTrue( m.getBytesReturned() > 0 );
+        assertEquals( 2000, m.getTargetNanos() );
+        assertTrue( metrics.toJSON().contains( "Object.toString" ) );
+        assertTrue( metrics.toCSV().contains( "Object.toString" ) );
+        metrics.reset();
+        assertEquals( 0, m.getCalls() );
+    }
+}
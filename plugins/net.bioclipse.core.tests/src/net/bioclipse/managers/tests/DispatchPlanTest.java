@@ -0,0 +1,83 @@
+package net.bioclipse.managers.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import net.bioclipse.jobs.BioclipseJobUpdateHook;
+import net.bioclipse.jobs.BioclipseUIJob;
+import net.bioclipse.jobs.ExtendedBioclipseJob;
+import net.bioclipse.managers.business.DispatchPlan;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.junit.Test;
+
+/**
+ * @author jonalv
+ *
+ */
+public class DispatchPlanTest {
+
+    @Test
+    public void planIsCached() throws Exception {
+        DispatchPlan plan = DispatchPlan.get(
+            TestManager.class,
+            ITestManager.class.getMethod( "getGreeting", String.class ) );
+        assertSame( plan,
+                    DispatchPlan.get(
+                        TestManager.class,
+                        ITestManager.class.getMethod( "getGreeting",
+                                                      String.class ) ) );
+        assertEquals( DispatchPlan.Mode.SAME_THREAD, plan.getMode() );
+        assertFalse( plan.runsAsJob() );
+    }
+
+    @Test
+    public void stringResolvesToIFileImplementation() throws Exception {
+        DispatchPlan plan = DispatchPlan.get(
+            TestManager.class,
+            ITestManager.class.getMethod( "runAsJob", String.class ) );
+        assertEquals( TestManager.class.getMethod( "runAsJob",
+                                                   IFile.class,
+                                                   IProgressMonitor.class ),
+                      plan.getImplementation() );
+        assertEquals( DispatchPlan.Mode.DISPATCHER, plan.getMode() );
+        assertTrue( plan.runsAsJob() );
+        assertTrue( plan.implementationTakesMonitor() );
+        assertEquals( 1, plan.getFileIndexes().length );
+        assertEquals( 0, plan.getFileIndexes()[0] );
+    }
+
+    @Test
+    public void uiJobAndReturner() throws Exception {
+        DispatchPlan plan = DispatchPlan.get(
+            TestManager.class,
+            ITestManager.class.getMethod( "getBioObjects",
+                                          IFile.class,
+                                          BioclipseUIJob.class ) );
+        assertEquals( 1, plan.getUIJobIndex() );
+        assertTrue( plan.implementationTakesReturner() );
+        assertTrue( plan.isNotExtended() );
+    }
+
+    @Test
+    public void extendedJob() throws Exception {
+        DispatchPlan plan = DispatchPlan.get(
+            TestManager.class,
+            ITestManager.class.getMethod( "extendedGetBioObjects",
+                                          IFile.class,
+                                          BioclipseJobUpdateHook.class ) );
+        assertFalse( plan.isNotExtended() );
+        assertSame( ExtendedBioclipseJob.class,
+                    plan.getMethodCalled().getReturnType() );
+    }
+
+    @Test
+    public void guiAction() throws Exception {
+        DispatchPlan plan = DispatchPlan.get(
+            TestManager.class,
+            ITestManager.class.getMethod( "guiAction" ) );
+        assertEquals( DispatchPlan.Mode.GUI_THREAD, plan.getMode() );
+    }
+}
@@ -11,6 +11,7 @@ import org.junit.Test;
 import net.bioclipse.core.domain.BioObject;
 import net.bioclipse.core.domain.IBioObject;
 import net.bioclipse.jobs.BioclipseJob;
+import net.bioclipse.jobs.BioclipseJobUpdateHook;
 import net.bioclipse.jobs.BioclipseUIJob;
 import net.bioclipse.managers.business.IBioclipseManager;
 import net.bioclipse.managers.business.JavaManagerMethodDispatcher;
@@ -144,4 +145,26 @@ public class JavaManagerMethodTest
         job.join();
         assertMethodRun();
     }
+    
+    @Test
+    public void blockingIOJob() throws Throwable {
+        assertTrue( file.exists() );
+        
+        BioclipseJob<IBioObject> job 
+            = new BioclipseJob<IBioObject>( "blocking I/O" );
+        job.setMethod( TestManager.class.getMethod( "createBioObject", 
+                                                    IFile.class, 
+                                                    IProgressMonitor.class ) );
+        job.setMethodCalled( 
+            ITestManager.class.getMethod( "createBioObject", 
+                                          IFile.class, 
+                                          BioclipseJobUpdateHook.class ) );
+        job.setArguments( new Object[] { file, null } );
+        job.setBioclipseManager( new TestManager() );
+        job.setBlockingIO( true );
+        job.schedule();
+        job.join();
+        assertMethodRun();
+        assertTrue( job.getReturnValue() instanceof IBioObject );
+    }
 }
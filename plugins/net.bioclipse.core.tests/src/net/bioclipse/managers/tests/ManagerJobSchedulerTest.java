@@ -0,0 +1,161 @@
+package net.bioclipse.managers.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.bioclipse.jobs.BioclipseJob;
+import net.bioclipse.jobs.JobFamily;
+import net.bioclipse.jobs.ManagerJobScheduler;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.junit.Test;
+
+/**
+ * @author jonalv
+ *
+ */
+public class ManagerJobSchedulerTest {
+
+    private static class CountingJob extends BioclipseJob<Object> {
+
+        private final AtomicInteger running;
+        private final AtomicInteger maxRunning;
+        private final CountDownLatch release;
+        volatile boolean ran;
+
+        CountingJob( AtomicInteger running,
+                     AtomicInteger maxRunning,
+                     CountDownLatch release ) {
+            super( "counting job" );
+            this.running    = running;
+            this.maxRunning = maxRunning;
+            this.release    = release;
+        }
+
+        @Override
+        protected IStatus run( IProgressMonitor monitor ) {
+            ran = true;
+            int now = running.incrementAndGet();
+            synchronized ( maxRunning ) {
+                if ( now > maxRunning.get() ) {
+                    maxRunning.set( now );
+                }
+            }
+            try {
+                release.await( 5, TimeUnit.SECONDS );
+            }
+            catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                running.decrementAndGet();
+            }
+            return Status.OK_STATUS;
+        }
+    }
+
+    private static final Set<String> NO_RESOURCES = Collections.emptySet();
+
+    @Test
+    public void workersLimitConcurrency() throws Exception {
+        ManagerJobScheduler scheduler = new ManagerJobScheduler( 2, 10 );
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger max = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch( 0 );
+        Job[] jobs = new Job[6];
+        for ( int i = 0; i < jobs.length; i++ ) {
+            jobs[i] = new CountingJob( running, max, release );
+            scheduler.schedule( jobs[i], "lane", NO_RESOURCES );
+        }
+        for ( Job job : jobs ) {
+            job.join();
+        }
+        assertTrue( max.get() <= 2 );
+        assertEquals( 0, scheduler.getWaitingCount() );
+    }
+
+    @Test
+    public void sameFileIsSerialized() throws Exception {
+        ManagerJobScheduler scheduler = new ManagerJobScheduler( 4, 10 );
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger max = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch( 0 );
+        Set<String> file = new HashSet<String>();
+        file.add( "/Virtual/file.txt" );
+        Job[] jobs = new Job[4];
+        for ( int i = 0; i < jobs.length; i++ ) {
+            jobs[i] = new CountingJob( running, max, release );
+            scheduler.schedule( jobs[i], i % 2 == 0 ? "a" : "b", file );
+        }
+        for ( Job job : jobs ) {
+            job.join();
+        }
+        assertEquals( 1, max.get() );
+    }
+
+    @Test
+    public void nestedJobsDoNotWaitForWorkers() throws Exception {
+        final ManagerJobScheduler scheduler = new ManagerJobScheduler( 1, 10 );
+        final Set<String> file = new HashSet<String>();
+        file.add( "/Virtual/file.txt" );
+        final CountDownLatch joined = new CountDownLatch( 1 );
+        Job parent = new BioclipseJob<Object>( "parent" ) {
+            @Override
+            protected IStatus run( IProgressMonitor monitor ) {
+                AtomicInteger running = new AtomicInteger();
+                Job child = new CountingJob( running,
+                                             new AtomicInteger(),
+                                             new CountDownLatch( 0 ) );
+                scheduler.schedule( child, "lane", file );
+                try {
+                    child.join();
+                }
+                catch ( InterruptedException e ) {
+                    return Status.CANCEL_STATUS;
+                }
+                joined.countDown();
+                return Status.OK_STATUS;
+            }
+        };
+        scheduler.schedule( parent, "lane", file );
+        assertTrue( joined.await( 5, TimeUnit.SECONDS ) );
+        parent.join();
+        assertEquals( 0, scheduler.getWaitingCount() );
+    }
+
+    @Test
+    public void cancelFamily() throws Exception {
+        ManagerJobScheduler scheduler = new ManagerJobScheduler( 1, 10 );
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger max = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch( 1 );
+        JobFamily batch = scheduler.beginBatch( "batch" );
+        CountingJob[] jobs = new CountingJob[3];
+        try {
+            for ( int i = 0; i < jobs.length; i++ ) {
+                jobs[i] = new CountingJob( running, max, release );
+                jobs[i].addFamily( batch );
+                scheduler.schedule( jobs[i], "lane", NO_RESOURCES );
+            }
+        }
+        finally {
+            scheduler.endBatch();
+        }
+        assertEquals( 2, scheduler.getWaitingCount() );
+        batch.cancel();
+        release.countDown();
+        batch.join( null );
+        assertEquals( 0, scheduler.getWaitingCount() );
+        assertTrue( !jobs[1].ran && !jobs[2].ran );
+    }
+}
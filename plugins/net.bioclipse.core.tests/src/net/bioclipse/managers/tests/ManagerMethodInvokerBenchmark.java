@@ -0,0 +1,54 @@
+package net.bioclipse.managers.tests;
+
+import java.lang.reflect.Method;
+
+import net.bioclipse.managers.business.ManagerMethodInvoker;
+
+/**
+ * Compares calling a manager style method through the generated invokers
+ * with calling it through plain reflection. Run as a Java application.
+ * 
+ * @author jonalv
+ *
+ */
+public class ManagerMethodInvokerBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final int CALLS  = 5000000;
+
+    public static void main( String[] args ) throws Exception {
+
+        Method m = ManagerMethodInvokerTest.Target.class
+                       .getMethod( "greet", String.class );
+        ManagerMethodInvokerTest.Target target 
+            = new ManagerMethodInvokerTest.Target();
+        ManagerMethodInvoker generated  = ManagerMethodInvoker.forMethod( m );
+        ManagerMethodInvoker reflective = ManagerMethodInvoker.reflective( m );
+        System.out.println( "Generated invoker in use: " 
+                            + generated.isGenerated() );
+
+        Object[] arguments = new Object[] { "Ceiling cat" };
+        for ( int round = 0; round < ROUNDS; round++ ) {
+            System.out.println( "Round " + round + ": reflection " 
+                                + time( reflective, target, arguments ) 
+                                + " ms, generated " 
+                                + time( generated, target, arguments ) 
+                                + " ms for " + CALLS + " calls" );
+        }
+    }
+
+    private static long time( ManagerMethodInvoker invoker, 
+                              Object target, 
+                              Object[] arguments ) throws Exception {
+        long start = System.nanoTime();
+        int sum = 0;
+        for ( int i = 0; i < CALLS; i++ ) {
+            sum += invoker.invoke( target, arguments ).hashCode() & 1;
+        }
+        long time = ( System.nanoTime() - start ) / 1000000;
+        if ( sum == -1 ) {
+            System.out.println( sum );
+        }
+        return time;
+    }
+}
@@ -0,0 +1,78 @@
+package net.bioclipse.managers.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import net.bioclipse.core.business.BioclipseException;
+import net.bioclipse.managers.business.ManagerMethodInvoker;
+
+import org.junit.Test;
+
+/**
+ * @author jonalv
+ *
+ */
+public class ManagerMethodInvokerTest {
+
+    public static class Target {
+
+        public String greet( String name ) {
+            return "OH HAI " + name;
+        }
+
+        public int add( int a, int b ) {
+            return a + b;
+        }
+
+        public void fail() throws BioclipseException {
+            throw new BioclipseException( "fail" );
+        }
+    }
+
+    @Test
+    public void invokerIsCached() throws Exception {
+        Method m = Target.class.getMethod( "greet", String.class );
+        assertSame( ManagerMethodInvoker.forMethod( m ),
+                    ManagerMethodInvoker.forMethod( m ) );
+    }
+
+    @Test
+    public void sameResultAsReflection() throws Exception {
+        Method m = Target.class.getMethod( "greet", String.class );
+        Target t = new Target();
+        Object[] args = new Object[] { "Ceiling cat" };
+        assertEquals(
+            ManagerMethodInvoker.reflective( m ).invoke( t, args ),
+            ManagerMethodInvoker.forMethod( m ).invoke( t, args ) );
+    }
+
+    @Test
+    public void primitives() throws Exception {
+        Method m = Target.class.getMethod( "add", int.class, int.class );
+        assertEquals( 5, ManagerMethodInvoker.forMethod( m )
+                                             .invoke( new Target(),
+                                                      new Object[] { 2, 3 } ) );
+    }
+
+    @Test
+    public void exceptionsAreWrapped() throws Exception {
+        Method m = Target.class.getMethod( "fail" );
+        for ( ManagerMethodInvoker invoker
+                : new ManagerMethodInvoker[] {
+                      ManagerMethodInvoker.forMethod( m ),
+                      ManagerMethodInvoker.reflective( m ) } ) {
+            try {
+                invoker.invoke( new Target(), new Object[0] );
+                fail( "Should have thrown" );
+            }
+            catch ( InvocationTargetException e ) {
+                assertTrue( e.getCause() instanceof BioclipseException );
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package net.bioclipse.managers.tests;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertNotSame;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.bioclipse.managers.MonitorContainer;
+import net.bioclipse.managers.MonitorContainer.Scope;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.Test;
+
+/**
+ * @author jonalv
+ *
+ */
+public class MonitorContainerTest {
+
+    private final MonitorContainer container = MonitorContainer.getInstance();
+
+    @Test
+    public void nestedScopes() {
+        IProgressMonitor outer = new NullProgressMonitor();
+        IProgressMonitor inner = new NullProgressMonitor();
+        Scope outerScope = container.enter( outer );
+        try {
+            assertSame( outer, container.getMonitor() );
+            Scope innerScope = container.enter( inner );
+            try {
+                assertSame( inner, container.getMonitor() );
+            }
+            finally {
+                container.exit( innerScope );
+            }
+            assertSame( outer, container.getMonitor() );
+        }
+        finally {
+            container.exit( outerScope );
+        }
+        assertNotSame( outer, container.getMonitor() );
+    }
+
+    @Test
+    public void addMonitorReplacesInnermost() {
+        IProgressMonitor first  = new NullProgressMonitor();
+        IProgressMonitor second = new NullProgressMonitor();
+        Scope scope = container.enter( first );
+        try {
+            container.addMonitor( second );
+            assertSame( second, container.getMonitor() );
+        }
+        finally {
+            container.exit( scope );
+        }
+    }
+
+    @Test
+    public void childThreadDoesNotInheritScope() throws Exception {
+        final IProgressMonitor monitor = new NullProgressMonitor();
+        final IProgressMonitor[] seen = new IProgressMonitor[1];
+        Thread child;
+        Scope scope = container.enter( monitor );
+        try {
+            child = new Thread() {
+                public void run() {
+                    seen[0] = container.getMonitor();
+                }
+            };
+            child.start();
+            child.join( 5000 );
+        }
+        finally {
+            container.exit( scope );
+        }
+        assertFalse( child.isAlive() );
+        assertNotSame( monitor, seen[0] );
+    }
+
+    @Test
+    public void wrapWithMonitorIsCleared() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            final IProgressMonitor monitor = new NullProgressMonitor();
+            final IProgressMonitor[] seen = new IProgressMonitor[1];
+            pool.submit( container.wrap( new Runnable() {
+                public void run() {
+                    seen[0] = container.getMonitor();
+                }
+            }, monitor ) ).get();
+            assertSame( monitor, seen[0] );
+            assertNotSame( monitor, pool.submit( 
+                new Callable<IProgressMonitor>() {
+                    public IProgressMonitor call() {
+                        return container.getMonitor();
+                    }
+                } ).get() );
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void wrapCarriesScopeToPooledThread() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            // start the pool thread outside of any scope
+            pool.submit( new Runnable() { public void run() {} } ).get();
+            final IProgressMonitor monitor = new NullProgressMonitor();
+            Scope scope = container.enter( monitor );
+            Future<IProgressMonitor> seen;
+            try {
+                seen = pool.submit( container.wrap( 
+                    new Callable<IProgressMonitor>() {
+                        public IProgressMonitor call() {
+                            return container.getMonitor();
+                        }
+                    } ) );
+            }
+            finally {
+                container.exit( scope );
+            }
+            assertSame( monitor, seen.get() );
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+}
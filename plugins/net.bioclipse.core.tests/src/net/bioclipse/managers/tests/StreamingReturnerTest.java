@@ -0,0 +1,123 @@
+package net.bioclipse.managers.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import net.bioclipse.jobs.StreamingReturner;
+
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.junit.Test;
+
+/**
+ * @author jonalv
+ *
+ */
+public class StreamingReturnerTest {
+
+    @Test
+    public void capacityIsPowerOfTwo() {
+        assertEquals( 16, new StreamingReturner<Object>( "s", 10 ).capacity() );
+        assertEquals( 1,  new StreamingReturner<Object>( "s", 1  ).capacity() );
+    }
+
+    @Test
+    public void streamsInOrderThroughSmallBuffer() throws Exception {
+        final StreamingReturner<Integer> stream 
+            = new StreamingReturner<Integer>( "s", 8 );
+        final int count = 10000;
+        Thread producer = new Thread() {
+            public void run() {
+                for ( int i = 0; i < count; i++ ) {
+                    stream.partialReturn( i );
+                }
+                stream.close();
+            }
+        };
+        producer.start();
+        int expected = 0;
+        for ( Integer i : stream ) {
+            assertEquals( expected++, i.intValue() );
+            assertTrue( stream.size() <= stream.capacity() );
+        }
+        assertEquals( count, expected );
+        producer.join();
+    }
+
+    @Test
+    public void nullAndCompleteReturn() {
+        StreamingReturner<String> stream 
+            = new StreamingReturner<String>( "s", 4 );
+        stream.partialReturn( null );
+        stream.partialReturn( "a" );
+        stream.completeReturn( "done" );
+        assertTrue( stream.hasNext() );
+        assertNull( stream.next() );
+        assertEquals( "a", stream.next() );
+        assertFalse( stream.hasNext() );
+        assertEquals( "done", stream.getCompleteReturn() );
+    }
+
+    @Test
+    public void failureReachesConsumer() {
+        StreamingReturner<String> stream 
+            = new StreamingReturner<String>( "s", 4 );
+        stream.partialReturn( "a" );
+        stream.fail( new IllegalStateException( "broken" ) );
+        assertEquals( "a", stream.next() );
+        try {
+            stream.hasNext();
+            fail( "should have thrown" );
+        }
+        catch ( IllegalStateException e ) {
+            assertEquals( "broken", e.getMessage() );
+        }
+    }
+
+    @Test
+    public void consumingThreadDoesNotWaitForItself() {
+        StreamingReturner<String> stream 
+            = new StreamingReturner<String>( "s", 2 );
+        stream.partialReturn( "a" );
+        stream.partialReturn( "b" );
+        try {
+            stream.partialReturn( "c" );
+            fail( "should have thrown" );
+        }
+        catch ( IllegalStateException e ) {
+            // the buffer is full and nobody else would empty it
+        }
+        assertEquals( "a", stream.next() );
+        stream.partialReturn( "c" );
+        stream.close();
+        assertEquals( "b", stream.next() );
+        assertEquals( "c", stream.next() );
+        assertFalse( stream.hasNext() );
+    }
+
+    @Test
+    public void cancelStopsWaitingProducer() throws Exception {
+        final StreamingReturner<Integer> stream 
+            = new StreamingReturner<Integer>( "s", 2 );
+        final boolean[] canceled = new boolean[1];
+        Thread producer = new Thread() {
+            public void run() {
+                try {
+                    for ( int i = 0; i < 100; i++ ) {
+                        stream.partialReturn( i );
+                    }
+                }
+                catch ( OperationCanceledException e ) {
+                    canceled[0] = true;
+                }
+            }
+        };
+        producer.start();
+        assertEquals( 0, stream.next().intValue() );
+        stream.cancel();
+        producer.join( 5000 );
+        assertTrue( canceled[0] );
+        assertFalse( stream.hasNext() );
+    }
+}
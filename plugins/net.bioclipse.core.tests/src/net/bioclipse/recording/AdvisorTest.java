@@ -0,0 +1,125 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.recording;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+import net.bioclipse.core.NotRecorded;
+import net.bioclipse.core.NotWrapped;
+import net.bioclipse.core.Recorded;
+import net.bioclipse.core.domain.IBioObject;
+
+import org.junit.Test;
+
+/**
+ * @author jonalv
+ *
+ */
+public class AdvisorTest {
+
+    public interface ITestManager {
+        @Recorded
+        public IBioObject load( String path );
+        public String getName();
+        public Object find( String key );
+        public List<IBioObject> loadAll( String path );
+        public int count();
+        public List<String> names();
+        @SuppressWarnings("unchecked")
+        public List all();
+        public List<?> some();
+        @NotWrapped
+        public IBioObject peek( String path );
+        @NotRecorded
+        public boolean logIn( String user, String password );
+    }
+
+    public static class TestManager implements ITestManager {
+        public IBioObject load( String path ) {
+            return null;
+        }
+        @Recorded
+        public String getName() {
+            return null;
+        }
+        public Object find( String key ) {
+            return null;
+        }
+        public List<IBioObject> loadAll( String path ) {
+            return null;
+        }
+        public int count() {
+            return 0;
+        }
+        public List<String> names() {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        public List all() {
+            return null;
+        }
+        public List<?> some() {
+            return null;
+        }
+        public IBioObject peek( String path ) {
+            return null;
+        }
+        @Recorded
+        public boolean logIn( String user, String password ) {
+            return false;
+        }
+    }
+
+    @Test
+    public void recordingAdvisorMatchesRecordedMethods() throws Exception {
+        RecordingAdvisor advisor = new RecordingAdvisor();
+        assertTrue(  advisor.matches( method( "load" ), TestManager.class ) );
+        assertTrue(  advisor.matches( method( "getName" ), 
+                                      TestManager.class ) );
+        assertFalse( advisor.matches( method( "find" ), TestManager.class ) );
+        assertFalse( advisor.matches( method( "count" ), 
+                                      TestManager.class ) );
+        assertFalse( advisor.matches( method( "logIn" ), 
+                                      TestManager.class ) );
+    }
+
+    @Test
+    public void wrapInProxyAdvisorMatchesBioObjectReturns() throws Exception {
+        WrapInProxyAdvisor advisor = new WrapInProxyAdvisor();
+        assertTrue(  advisor.matches( method( "load" ), TestManager.class ) );
+        assertTrue(  advisor.matches( method( "find" ), TestManager.class ) );
+        assertTrue(  advisor.matches( method( "loadAll" ), 
+                                      TestManager.class ) );
+        assertTrue(  advisor.matches( method( "all" ), TestManager.class ) );
+        assertTrue(  advisor.matches( method( "some" ), TestManager.class ) );
+        assertFalse( advisor.matches( method( "getName" ), 
+                                      TestManager.class ) );
+        assertFalse( advisor.matches( method( "names" ), 
+                                      TestManager.class ) );
+        assertFalse( advisor.matches( method( "peek" ), 
+                                      TestManager.class ) );
+        assertFalse( advisor.matches( method( "count" ), 
+                                      TestManager.class ) );
+    }
+
+    private static Method method( String name ) {
+        for ( Method m : ITestManager.class.getMethods() ) {
+            if ( m.getName().equals( name ) ) {
+                return m;
+            }
+        }
+        throw new IllegalArgumentException( name );
+    }
+}
@@ -20,8 +20,15 @@ import org.junit.runners.Suite.SuiteClasses;
  *
  */
 @RunWith(value=Suite.class)
-@SuiteClasses( { RecordTest.class,
-                 ScriptGenerationTests.class } )
+@SuiteClasses( { AdvisorTest.class,
+                 AsyncRecorderTest.class,
+                 HistoryJournalTest.class,
+                 HistoryTest.class,
+                 ProvenanceGeneratorTest.class,
+                 RecordingPolicyTest.class,
+                 RecordTest.class,
+                 ScriptGenerationTests.class,
+                 WrapInProxyAdviceTest.class } )
 public class AllRecordingTests {
 
 }
@@ -0,0 +1,177 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.recording;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import net.bioclipse.managers.business.IBioclipseManager;
+import net.bioclipse.recording.AsyncRecorder.OverflowPolicy;
+
+import org.junit.Test;
+
+/**
+ * @author jonalv
+ *
+ */
+public class AsyncRecorderTest {
+
+    private static final IBioclipseManager manager = new IBioclipseManager() {
+        public String getManagerName() {
+            return "test";
+        }
+    };
+
+    /** a history the recording thread gets stuck in until it is opened */
+    private static class BlockingHistory extends History {
+
+        final CountDownLatch entered = new CountDownLatch( 1 );
+        final CountDownLatch open    = new CountDownLatch( 1 );
+
+        BlockingHistory() {
+            super( 1000, 0 );
+        }
+
+        @Override
+        public void addRecord( IRecord record ) {
+            entered.countDown();
+            try {
+                open.await();
+            }
+            catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+            super.addRecord( record );
+        }
+    }
+
+    /**
+     * @return a recorder whose recording thread is stuck with one call
+     */
+    private static AsyncRecorder stuckRecorder( BlockingHistory history,
+                                                int queueSize,
+                                                OverflowPolicy policy,
+                                                int sampleRate ) 
+                                 throws InterruptedException {
+        AsyncRecorder recorder 
+            = new AsyncRecorder( history, queueSize, policy, sampleRate );
+        recorder.record( "first", manager, new Object[0], null );
+        history.entered.await();
+        return recorder;
+    }
+
+    @Test
+    public void recordsInCallOrder() throws Exception {
+        History history = new History( 1000, 0 );
+        AsyncRecorder recorder 
+            = new AsyncRecorder( history, 4, OverflowPolicy.BLOCK, 1 );
+        for ( int i = 0; i < 100; i++ ) {
+            assertTrue( recorder.record( "doStuff", manager, 
+                                         new Object[] { i }, null ) );
+        }
+        recorder.flush();
+        List<IRecord> records = history.getRecords();
+        assertEquals( 100, records.size() );
+        for ( int i = 0; i < 100; i++ ) {
+            assertEquals( "test.doStuff( " + i + " )", 
+                          records.get( i ).toString() );
+        }
+        assertEquals( 0, recorder.getDroppedCount() );
+        recorder.dispose();
+        assertFalse( recorder.record( "doStuff", manager, 
+                                      new Object[0], null ) );
+    }
+
+    @Test
+    public void dropsWhenFull() throws Exception {
+        BlockingHistory history = new BlockingHistory();
+        AsyncRecorder recorder 
+            = stuckRecorder( history, 10, OverflowPolicy.DROP, 1 );
+        int recorded = 0;
+        for ( int i = 0; i < 100; i++ ) {
+            if ( recorder.record( "doStuff", manager, 
+                                  new Object[] { i }, null ) ) {
+                recorded++;
+            }
+        }
+        assertEquals( 10, recorded );
+        assertEquals( 90, recorder.getDroppedCount() );
+        assertEquals( 90, history.getSkippedCount() );
+        history.open.countDown();
+        recorder.flush();
+        assertEquals( 1 + recorded, history.getRecordCount() );
+        recorder.dispose();
+    }
+
+    @Test
+    public void samplesWhenHalfFull() throws Exception {
+        BlockingHistory history = new BlockingHistory();
+        AsyncRecorder recorder 
+            = stuckRecorder( history, 100, OverflowPolicy.SAMPLE, 10 );
+        int recorded = 0;
+        for ( int i = 0; i < 150; i++ ) {
+            if ( recorder.record( "doStuff", manager, 
+                                  new Object[] { i }, null ) ) {
+                recorded++;
+            }
+        }
+        // 50 calls until half full, then one in ten of the rest
+        assertEquals( 60, recorded );
+        history.open.countDown();
+        recorder.flush();
+        assertEquals( 1 + recorded, history.getRecordCount() );
+        recorder.dispose();
+    }
+
+    @Test
+    public void rendersArgumentsWhenCalled() throws Exception {
+        BlockingHistory history = new BlockingHistory();
+        AsyncRecorder recorder 
+            = stuckRecorder( history, 10, OverflowPolicy.BLOCK, 1 );
+        StringBuilder argument = new StringBuilder( "before" );
+        recorder.record( "doStuff", manager, new Object[] { argument }, null );
+        argument.setLength( 0 );
+        argument.append( "changed" );
+        history.open.countDown();
+        recorder.flush();
+        String recorded = history.getRecords().get( 1 ).toString();
+        assertTrue( recorded.contains( "before" ) );
+        assertFalse( recorded.contains( "changed" ) );
+        recorder.dispose();
+    }
+
+    @Test
+    public void keepsRecordingAfterAnError() throws Exception {
+        History history = new History( 1000, 0 ) {
+            @Override
+            public void addRecord( IRecord record ) {
+                if ( record.toString().contains( "fail" ) ) {
+                    throw new AssertionError( "failing history" );
+                }
+                super.addRecord( record );
+            }
+        };
+        AsyncRecorder recorder 
+            = new AsyncRecorder( history, 1, OverflowPolicy.BLOCK, 1 );
+        assertTrue( recorder.record( "fail", manager, new Object[0], null ) );
+        for ( int i = 0; i < 10; i++ ) {
+            assertTrue( recorder.record( "doStuff", manager, 
+                                         new Object[] { i }, null ) );
+        }
+        recorder.flush();
+        assertEquals( 10, history.getRecordCount() );
+        recorder.dispose();
+    }
+}
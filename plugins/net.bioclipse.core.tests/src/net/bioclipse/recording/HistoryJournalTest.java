@@ -0,0 +1,156 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.recording;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.bioclipse.recording.HistoryJournal.TimedRecord;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jonalv
+ *
+ */
+public class HistoryJournalTest {
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws Exception {
+        directory = File.createTempFile( "journal", "" );
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void deleteDirectory() {
+        for ( File f : directory.listFiles() ) {
+            f.delete();
+        }
+        directory.delete();
+    }
+
+    private static IRecord managerRecord( int i ) {
+        return new ManagerObjectRecord( "doStuff",
+                                        "testManager",
+                                        new Object[] { "file" + i, i },
+                                        "result" );
+    }
+
+    @Test
+    public void readsBackAcrossSegments() throws Exception {
+        HistoryJournal journal = new HistoryJournal( directory, 256, 0 );
+        List<IRecord> written = new ArrayList<IRecord>();
+        for ( int i = 0; i < 50; i++ ) {
+            written.add( managerRecord( i ) );
+        }
+        ScriptRecord script = new ScriptRecord();
+        script.setScript( ScriptRecord.Language.JS, "var x = 1;" );
+        written.add( script );
+        for ( IRecord r : written ) {
+            journal.append( r );
+        }
+        List<TimedRecord> read = journal.read( 0, Long.MAX_VALUE );
+        journal.close();
+        assertTrue( directory.listFiles().length > 1 );
+        assertEquals( written.size(), read.size() );
+        for ( int i = 0; i < 50; i++ ) {
+            assertEquals( written.get( i ).toString(),
+                          read.get( i ).getRecord().toString() );
+        }
+        assertEquals( "var x = 1;", 
+                      ( (ScriptRecord) read.get( 50 ).getRecord() )
+                          .getScript( ScriptRecord.Language.JS ) );
+    }
+
+    @Test
+    public void readsTimeRange() throws Exception {
+        HistoryJournal journal = new HistoryJournal( directory, 256, 0 );
+        for ( int i = 0; i < 20; i++ ) {
+            journal.append( managerRecord( i ) );
+        }
+        journal.flush();
+        Thread.sleep( 20 );
+        long from = System.currentTimeMillis();
+        journal.append( managerRecord( 20 ) );
+        List<TimedRecord> read = journal.read( from, Long.MAX_VALUE );
+        journal.close();
+        assertEquals( 1, read.size() );
+        assertEquals( managerRecord( 20 ).toString(),
+                      read.get( 0 ).getRecord().toString() );
+    }
+
+    @Test
+    public void continuesAfterReopening() throws Exception {
+        HistoryJournal journal = new HistoryJournal( directory, 1024, 0 );
+        journal.append( managerRecord( 0 ) );
+        journal.close();
+        journal = new HistoryJournal( directory, 1024, 0 );
+        journal.append( managerRecord( 1 ) );
+        List<TimedRecord> read = journal.read( 0, Long.MAX_VALUE );
+        journal.close();
+        assertEquals( 2, read.size() );
+        assertEquals( managerRecord( 0 ).toString(),
+                      read.get( 0 ).getRecord().toString() );
+    }
+
+    @Test
+    public void leavesOutRecordsThatCanNotBeWritten() throws Exception {
+        HistoryJournal journal = new HistoryJournal( directory, 1024, 0 );
+        journal.append( managerRecord( 0 ) );
+        journal.append( new ScriptRecord() {
+            @Override
+            public String getScript( Language l ) {
+                throw new IllegalStateException( "broken" );
+            }
+        } );
+        journal.append( managerRecord( 1 ) );
+        List<TimedRecord> read = journal.read( 0, Long.MAX_VALUE );
+        journal.close();
+        assertEquals( 2, read.size() );
+        assertEquals( managerRecord( 1 ).toString(),
+                      read.get( 1 ).getRecord().toString() );
+    }
+
+    @Test
+    public void keepsAtMostMaxSegments() throws Exception {
+        HistoryJournal journal = new HistoryJournal( directory, 64, 3 );
+        for ( int i = 0; i < 30; i++ ) {
+            journal.append( managerRecord( i ) );
+        }
+        journal.close();
+        assertEquals( 3, directory.listFiles().length );
+    }
+
+    @Test
+    public void replaysLikeTheOriginalRecords() throws Exception {
+        HistoryJournal journal = new HistoryJournal( directory, 1024, 0 );
+        IRecord[] records = new IRecord[5];
+        for ( int i = 0; i < records.length; i++ ) {
+            records[i] = managerRecord( i );
+            journal.append( records[i] );
+        }
+        String[] replayed = journal.replay( new JsScriptGenerator(), 
+                                            0, Long.MAX_VALUE );
+        journal.close();
+        assertArrayEquals( new JsScriptGenerator().generateScript( records ),
+                           replayed );
+    }
+}
@@ -0,0 +1,81 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.recording;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author jonalv
+ *
+ */
+public class HistoryTest {
+
+    private static class TestRecord implements IRecord {
+        final int number;
+        TestRecord( int number ) {
+            this.number = number;
+        }
+    }
+
+    @Test
+    public void keepsTheLatestRecords() {
+        History history = new History( 4, 0 );
+        for ( int i = 0; i < 10; i++ ) {
+            history.addRecord( new TestRecord( i ) );
+        }
+        assertEquals( 4, history.getRecordCount() );
+        List<IRecord> records = history.getRecords();
+        assertEquals( 4, records.size() );
+        for ( int i = 0; i < 4; i++ ) {
+            assertEquals( 6 + i, ( (TestRecord) records.get( i ) ).number );
+        }
+    }
+
+    @Test
+    public void iterationDoesNotSeeLaterRecords() {
+        History history = new History( 4, 0 );
+        TestRecord first = new TestRecord( 0 );
+        history.addRecord( first );
+        Iterator<IRecord> iterator = history.iterator();
+        history.addRecord( new TestRecord( 1 ) );
+        assertTrue( iterator.hasNext() );
+        assertSame( first, iterator.next() );
+        assertFalse( iterator.hasNext() );
+    }
+
+    @Test
+    public void concurrentAdds() throws Exception {
+        final History history = new History( 1000, 0 );
+        Thread[] threads = new Thread[4];
+        for ( int t = 0; t < threads.length; t++ ) {
+            threads[t] = new Thread() {
+                public void run() {
+                    for ( int i = 0; i < 250; i++ ) {
+                        history.addRecord( new TestRecord( i ) );
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for ( Thread t : threads ) {
+            t.join();
+        }
+        assertEquals( 1000, history.getRecords().size() );
+    }
+}
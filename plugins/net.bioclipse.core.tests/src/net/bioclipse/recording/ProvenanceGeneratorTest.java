@@ -0,0 +1,217 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.recording;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jonalv
+ *
+ */
+public class ProvenanceGeneratorTest {
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws Exception {
+        directory = File.createTempFile( "provenance", "" );
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void deleteDirectory() {
+        delete( directory );
+    }
+
+    private static void delete( File f ) {
+        if ( f.isDirectory() ) {
+            for ( File child : f.listFiles() ) {
+                delete( child );
+            }
+        }
+        f.delete();
+    }
+
+    private static int countFiles( File f ) {
+        if ( !f.isDirectory() ) {
+            return 1;
+        }
+        int count = 0;
+        for ( File child : f.listFiles() ) {
+            count += countFiles( child );
+        }
+        return count;
+    }
+
+    @Test
+    public void storesContentOnceUnderItsHash() throws Exception {
+        BlobStore store = new BlobStore( directory );
+        String hash = store.put( "abc" );
+        assertEquals( "ba7816bf8f01cfea414140de5dae2223"
+                      + "b00361a396177a9cb410ff61f20015ad", hash );
+        assertEquals( hash, store.put( "abc".getBytes( "UTF-8" ) ) );
+        assertTrue( store.contains( hash ) );
+        assertEquals( "abc", store.getString( hash ) );
+        assertEquals( 1, countFiles( directory ) );
+    }
+
+    @Test
+    public void replaysToTheSameScript() throws Exception {
+        IRecord[] records = new IRecord[] {
+            new ManagerObjectRecord( "load", "cdk", 
+                                     new Object[] { "/a.mol" }, null ),
+            new ManagerObjectRecord( "calculate", "cdk",
+                                     new Object[] { 1, 2.5, null }, null ),
+            new ScriptRecord()
+        };
+        ( (ScriptRecord) records[2] ).setScript( ScriptRecord.Language.JS, 
+                                                 "var x = 1;" );
+        ProvenanceGenerator generator 
+            = new ProvenanceGenerator( new BlobStore( directory ) );
+        String[] bundle = generator.generateScript( records );
+        assertEquals( 1, bundle.length );
+        assertArrayEquals( new JsScriptGenerator().generateScript( records ), 
+                           generator.replay( bundle[0],
+                                             new JsScriptGenerator() ) );
+    }
+
+    @Test
+    public void storesRepeatedArgumentsOnce() throws Exception {
+        StringBuilder content = new StringBuilder();
+        while ( content.length() < 10 * ProvenanceGenerator.INLINE_LENGTH ) {
+            content.append( "C1=CC=CC=C1 " );
+        }
+        IRecord[] records = new IRecord[1000];
+        for ( int i = 0; i < records.length; i++ ) {
+            records[i] = new ManagerObjectRecord( 
+                "fromSmiles", "cdk", 
+                new Object[] { new String( content ), i }, null );
+        }
+        BlobStore store = new BlobStore( directory );
+        ProvenanceGenerator generator = new ProvenanceGenerator( store );
+        String bundle = generator.export( records );
+        // the bundle and the argument
+        assertEquals( 2, countFiles( directory ) );
+        assertTrue( store.contains( BlobStore.hash( content.toString() ) ) );
+        assertTrue( store.get( bundle ).length 
+                    < records.length * content.length() / 10 );
+        IRecord[] read = generator.load( bundle );
+        assertEquals( records.length, read.length );
+        assertEquals( records[999].toString(), read[999].toString() );
+    }
+
+    @Test
+    public void leavesOutUnknownRecords() throws Exception {
+        IRecord[] records = new IRecord[] {
+            new ManagerObjectRecord( "load", "cdk", 
+                                     new Object[] { "/a.mol" }, null ),
+            new IRecord() {},
+            new ManagerObjectRecord( "load", "cdk", 
+                                     new Object[] { "/b.mol" }, null )
+        };
+        ProvenanceGenerator generator 
+            = new ProvenanceGenerator( new BlobStore( directory ) );
+        IRecord[] read = generator.load( generator.export( records ) );
+        assertEquals( 2, read.length );
+        assertEquals( records[0].toString(), read[0].toString() );
+        assertEquals( records[2].toString(), read[1].toString() );
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void onlyHashesNameBlobs() throws Exception {
+        new BlobStore( directory ).fileFor( "../../etc/passwd" );
+    }
+
+    private static String largeString() {
+        StringBuilder content = new StringBuilder();
+        while ( content.length() <= MethodRecord.MAX_PARAMETER_LENGTH ) {
+            content.append( "C1=CC=CC=C1 " );
+        }
+        return content.toString();
+    }
+
+    private static String setProperty( String key, String value ) {
+        String old = System.getProperty( key );
+        if ( value == null ) {
+            System.clearProperty( key );
+        }
+        else {
+            System.setProperty( key, value );
+        }
+        return old;
+    }
+
+    @Test
+    public void largeStringsAreStoredWhenSpillingIsOn() throws Exception {
+        String store = setProperty( "bioclipse.provenance.store", 
+                                    directory.getPath() );
+        String spill = setProperty( "bioclipse.recording.spillDirectory", 
+                                    "true" );
+        try {
+            String content = largeString();
+            LargeStringReference.capture( content );
+            BlobStore blobs = new BlobStore( directory );
+            String hash = BlobStore.hash( content );
+            for ( int i = 0; i < 100 && !blobs.contains( hash ); i++ ) {
+                Thread.sleep( 50 );
+            }
+            assertEquals( content, blobs.getString( hash ) );
+        }
+        finally {
+            setProperty( "bioclipse.provenance.store", store );
+            setProperty( "bioclipse.recording.spillDirectory", spill );
+        }
+    }
+
+    @Test
+    public void largeStringsAreNotStoredByDefault() throws Exception {
+        String store = setProperty( "bioclipse.provenance.store", 
+                                    directory.getPath() );
+        String spill = setProperty( "bioclipse.recording.spillDirectory", 
+                                    null );
+        try {
+            LargeStringReference reference 
+                = LargeStringReference.capture( largeString() );
+            assertNull( reference.getFile() );
+            assertNull( LargeStringReference.spillStore() );
+            assertEquals( 0, countFiles( directory ) );
+        }
+        finally {
+            setProperty( "bioclipse.provenance.store", store );
+            setProperty( "bioclipse.recording.spillDirectory", spill );
+        }
+    }
+
+    @Test
+    public void unknownBundleFails() throws Exception {
+        BlobStore store = new BlobStore( directory );
+        String hash = store.put( "not a bundle" );
+        try {
+            new ProvenanceGenerator( store ).load( hash );
+            fail( "should have thrown" );
+        }
+        catch ( IOException e ) {
+            // expected
+        }
+    }
+}
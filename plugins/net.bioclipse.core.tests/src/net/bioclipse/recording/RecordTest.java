@@ -12,6 +12,8 @@ package net.bioclipse.recording;
 import static org.junit.Assert.*;
 
 import net.bioclipse.core.domain.BioObject;
+import net.bioclipse.core.domain.IBioObject;
+import net.bioclipse.core.domain.RecordableList;
 
 import org.junit.Test;
 
@@ -42,4 +44,47 @@ public class RecordTest {
         assertEquals( "serviceObjectName.methodName( null, null )", 
                   r.toString() );
     }
+
+    @Test
+    public void testMutableParametersRenderedWhenRecorded() {
+        StringBuilder parameter = new StringBuilder( "before" );
+        MethodRecord r = new ManagerObjectRecord( "methodName",
+                                                  "serviceObjectName", 
+                                                  new Object[] {parameter}, 
+                                                  null );
+        parameter.append( " and after" );
+        assertEquals( "serviceObjectName.methodName( before )", 
+                      r.toString() );
+    }
+
+    @Test
+    public void testNullInReturnedList() {
+        RecordableList<IBioObject> list = new RecordableList<IBioObject>();
+        TestObject member = new TestObject();
+        list.add( null );
+        list.add( member );
+        MethodRecord r = new ManagerObjectRecord( "methodName",
+                                                  "serviceObjectName", 
+                                                  new Object[0], 
+                                                  list );
+        assertArrayEquals( new String[] { null, member.getUID() },
+                           r.returnedListContentsIds() );
+    }
+
+    @Test
+    public void testLargeStringParameter() {
+        StringBuilder content = new StringBuilder();
+        while ( content.length() <= MethodRecord.MAX_PARAMETER_LENGTH ) {
+            content.append( "abcdefgh" );
+        }
+        MethodRecord r = new ManagerObjectRecord( "save",
+                                                  "ui", 
+                                                  new Object[] {
+                                                      content.toString() },
+                                                  null );
+        String s = r.toString();
+        assertTrue( s, s.startsWith( "ui.save( \"abcdefgh" ) );
+        assertTrue( s, s.contains( content.length() + " characters" ) );
+        assertTrue( s, s.length() < 300 );
+    }
 }
@@ -0,0 +1,164 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.recording;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+
+import net.bioclipse.core.Recorded;
+import net.bioclipse.managers.business.IBioclipseManager;
+import net.bioclipse.recording.RecordingPolicy.Decision;
+
+import org.junit.Test;
+
+/**
+ * @author jonalv
+ *
+ */
+public class RecordingPolicyTest {
+
+    public interface ITestManager extends IBioclipseManager {
+        @Recorded
+        public void a();
+        @Recorded
+        public void b();
+    }
+
+    private static final ITestManager manager = new ITestManager() {
+        public String getManagerName() {
+            return "test";
+        }
+        public void a() {
+        }
+        public void b() {
+        }
+    };
+
+    private static void call( RecordingAdvice advice, String methodName )
+                        throws Throwable {
+        Method method = ITestManager.class.getMethod( methodName );
+        advice.afterReturning( null, method, new Object[0], manager );
+    }
+
+    private static String methodsOf( History history ) {
+        StringBuilder methods = new StringBuilder();
+        for ( IRecord record : history ) {
+            methods.append( ( (MethodRecord) record ).methodName );
+        }
+        return methods.toString();
+    }
+
+    @Test
+    public void recordsAllByDefault() {
+        RecordingPolicy policy = new RecordingPolicy();
+        assertTrue( policy.isRecordingAll() );
+        assertEquals( Decision.RECORD, policy.decide( "test.a" ) );
+    }
+
+    @Test
+    public void rules() {
+        RecordingPolicy policy = new RecordingPolicy();
+        policy.include( "test" );
+        policy.include( "*.load*" );
+        policy.exclude( "test.b" );
+        assertEquals( Decision.RECORD, policy.decide( "test.a" ) );
+        assertEquals( Decision.SKIP,   policy.decide( "test.b" ) );
+        assertEquals( Decision.RECORD, policy.decide( "cdk.loadMolecule" ) );
+        assertEquals( Decision.SKIP,   policy.decide( "cdk.save" ) );
+        assertEquals( Decision.SKIP,   policy.decide( "testing.a" ) );
+        policy.clearRules();
+        assertEquals( Decision.RECORD, policy.decide( "test.b" ) );
+    }
+
+    @Test
+    public void samplesPerMethod() {
+        RecordingPolicy policy = new RecordingPolicy();
+        policy.setSampleRate( 3 );
+        int a = 0, b = 0;
+        for ( int i = 0; i < 9; i++ ) {
+            if ( policy.decide( "test.a" ) == Decision.RECORD ) {
+                a++;
+            }
+            if ( i % 3 == 0
+                 && policy.decide( "test.b" ) == Decision.RECORD ) {
+                b++;
+            }
+        }
+        assertEquals( 3, a );
+        assertEquals( 1, b );
+    }
+
+    @Test
+    public void limitsRate() {
+        RecordingPolicy policy = new RecordingPolicy();
+        policy.setMaxPerSecond( 5 );
+        int recorded = 0;
+        long start = System.currentTimeMillis();
+        for ( int i = 0; i < 100; i++ ) {
+            if ( policy.decide( "test.a" ) == Decision.RECORD ) {
+                recorded++;
+            }
+        }
+        // at most two seconds started during the loop
+        boolean sameSecond
+            = start / 1000 == System.currentTimeMillis() / 1000;
+        assertTrue( recorded >= 5 );
+        assertTrue( recorded <= ( sameSecond ? 5 : 10 ) );
+    }
+
+    @Test
+    public void countsSkippedCalls() throws Throwable {
+        History history = new History( 100, 0 );
+        RecordingPolicy policy = new RecordingPolicy();
+        policy.exclude( "test.b" );
+        RecordingAdvice advice = new RecordingAdvice( history, null, policy );
+        call( advice, "a" );
+        call( advice, "b" );
+        call( advice, "b" );
+        assertEquals( "a", methodsOf( history ) );
+        assertEquals( 2, history.getSkippedCount() );
+        assertEquals( Long.valueOf( 2 ),
+                      history.getSkippedCounts().get( "test.b" ) );
+    }
+
+    @Test
+    public void compressesRepeats() throws Throwable {
+        History history = new History( 100, 0 );
+        RecordingPolicy policy = new RecordingPolicy();
+        policy.setCompressRepeats( true );
+        RecordingAdvice advice = new RecordingAdvice( history, null, policy );
+        for ( int i = 0; i < 10; i++ ) {
+            call( advice, "a" );
+        }
+        call( advice, "b" );
+        call( advice, "a" );
+        call( advice, "a" );
+        assertEquals( "aaba", methodsOf( history ) );
+        advice.flush();
+        assertEquals( "aabaa", methodsOf( history ) );
+        assertEquals( 8, history.getSkippedCount() );
+    }
+
+    @Test
+    public void recordsUnrepeatedCalls() throws Throwable {
+        History history = new History( 100, 0 );
+        RecordingPolicy policy = new RecordingPolicy();
+        policy.setCompressRepeats( true );
+        RecordingAdvice advice = new RecordingAdvice( history, null, policy );
+        call( advice, "a" );
+        call( advice, "b" );
+        advice.flush();
+        assertEquals( "ab", methodsOf( history ) );
+        assertEquals( 0, history.getSkippedCount() );
+    }
+}
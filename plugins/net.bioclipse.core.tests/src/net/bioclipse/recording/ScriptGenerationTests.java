@@ -221,4 +221,53 @@ public class ScriptGenerationTests {
                 }
         );
     }
+
+    @Test
+    public void testAppendAssignsReturnedBioObjects() {
+
+        TestObject testObject = new TestObject();
+        JsScriptGenerator generator = new JsScriptGenerator();
+
+        assertEquals( "testObject1 = manager.method()",
+                      generator.append( 
+                          new ManagerObjectRecord( "method",
+                                                   "manager",
+                                                   new Object[0],
+                                                   testObject) ) );
+        assertEquals( "manager.method( testObject1 )",
+                      generator.append( 
+                          new ManagerObjectRecord( "method",
+                                                   "manager",
+                                                   new Object[] {
+                                                       testObject
+                                                   },
+                                                   null ) ) );
+        assertEquals( 2, generator.getAppendedStatements().size() );
+    }
+
+    @Test
+    public void testLongHistory() {
+
+        int length = 20000;
+        MethodRecord[] records = new MethodRecord[length];
+        TestObject previous = new TestObject();
+        records[0] = new ManagerObjectRecord( "create",
+                                              "manager",
+                                              new Object[0],
+                                              previous );
+        for ( int i = 1; i < length; i++ ) {
+            TestObject next = new TestObject();
+            records[i] = new ManagerObjectRecord( "transform",
+                                                  "manager",
+                                                  new Object[] { previous },
+                                                  next );
+            previous = next;
+        }
+        String[] script = new JsScriptGenerator().generateScript( records );
+        assertEquals( "testObject2 = manager.transform( testObject1 )",
+                      script[1] );
+        assertEquals( "manager.transform( testObject" + ( length - 1 ) 
+                      + " )",
+                      script[length - 1] );
+    }
 }
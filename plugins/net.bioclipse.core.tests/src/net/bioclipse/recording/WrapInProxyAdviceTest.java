@@ -0,0 +1,139 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.recording;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.bioclipse.core.NotWrapped;
+import net.bioclipse.core.domain.BioObject;
+import net.bioclipse.core.domain.IBioObject;
+import net.bioclipse.core.domain.RecordableList;
+import net.sf.cglib.proxy.Factory;
+
+import org.junit.Test;
+
+/**
+ * @author jonalv
+ *
+ */
+public class WrapInProxyAdviceTest {
+
+    public static class TestBioObject extends BioObject {
+        public IBioObject getChild() {
+            return new TestBioObject();
+        }
+        @NotWrapped
+        public IBioObject getUnwrappedChild() {
+            return new TestBioObject();
+        }
+        public List<IBioObject> getChildren() {
+            List<IBioObject> children = new ArrayList<IBioObject>();
+            children.add( new TestBioObject() );
+            children.add( new TestBioObject() );
+            return children;
+        }
+        public TestBioObject self() {
+            return this;
+        }
+    }
+
+    public static class CountingBioObject extends BioObject {
+        static int constructed;
+        private final String name;
+        public CountingBioObject( String name ) {
+            this.name = name;
+            constructed++;
+        }
+        public String getName() {
+            return name;
+        }
+    }
+
+    public static class FinalMethodBioObject extends BioObject {
+        public final String getName() {
+            return "final";
+        }
+    }
+
+    private final WrapInProxyAdvice advice = new WrapInProxyAdvice();
+
+    @Test
+    public void proxiesShareOneClass() {
+        TestBioObject a = new TestBioObject();
+        TestBioObject b = new TestBioObject();
+        Object proxyA = advice.wrap( a );
+        Object proxyB = advice.wrap( b );
+        assertTrue( proxyA instanceof Factory );
+        assertSame( proxyA.getClass(), proxyB.getClass() );
+        assertEquals( a.getUID(), ( (IBioObject) proxyA ).getUID() );
+        assertEquals( b.getUID(), ( (IBioObject) proxyB ).getUID() );
+        assertSame( proxyA, advice.wrap( proxyA ) );
+    }
+
+    @Test
+    public void returnedBioObjectsAreWrapped() {
+        TestBioObject proxy
+            = (TestBioObject) advice.wrap( new TestBioObject() );
+        assertTrue(  proxy.getChild() instanceof Factory );
+        assertFalse( proxy.getUnwrappedChild() instanceof Factory );
+        assertSame( proxy, proxy.self() );
+        assertTrue( proxy.equals( proxy ) );
+        for ( IBioObject child : proxy.getChildren() ) {
+            assertTrue( child instanceof Factory );
+        }
+    }
+
+    @Test
+    public void recordableListMembersAreWrapped() {
+        RecordableList<IBioObject> list = new RecordableList<IBioObject>();
+        TestBioObject member = new TestBioObject();
+        list.add( member );
+        list.add( new TestBioObject() );
+        RecordableList<?> proxy = (RecordableList<?>) advice.wrap( list );
+        assertEquals( 2, proxy.size() );
+        for ( Object o : proxy ) {
+            assertTrue( o instanceof Factory );
+        }
+        assertEquals( member.getUID(), proxy.get( 0 ).getUID() );
+        assertSame( member, list.get( 0 ) );
+        assertEquals( list.getUID(), proxy.getUID() );
+        assertEquals( list.getUID(), RecordableList.idOfListContainingBioObject(
+                                         member.getUID() ) );
+    }
+
+    @Test
+    public void wrappingRunsNoConstructors() {
+        CountingBioObject o = new CountingBioObject( "counted" );
+        int constructed = CountingBioObject.constructed;
+        CountingBioObject proxy = (CountingBioObject) advice.wrap( o );
+        advice.wrap( new CountingBioObject( "other" ) );
+        assertEquals( constructed + 1, CountingBioObject.constructed );
+        assertTrue( proxy instanceof Factory );
+        assertEquals( "counted", proxy.getName() );
+        assertEquals( o.getUID(), proxy.getUID() );
+    }
+
+    @Test
+    public void finalMethodsGetInterfaceProxies() {
+        FinalMethodBioObject o = new FinalMethodBioObject();
+        Object proxy = advice.wrap( o );
+        assertFalse( proxy instanceof Factory );
+        assertFalse( proxy instanceof FinalMethodBioObject );
+        assertEquals( o.getUID(), ( (IBioObject) proxy ).getUID() );
+        assertSame( proxy, advice.wrap( proxy ) );
+    }
+}
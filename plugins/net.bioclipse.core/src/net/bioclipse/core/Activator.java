@@ -15,6 +15,9 @@ import net.bioclipse.core.util.FileUtil;
 import net.bioclipse.core.util.ListFuncs;
 import net.bioclipse.core.util.LogUtils;
 import net.bioclipse.core.util.Predicate;
+import net.bioclipse.managers.business.ArgumentAdapter;
+import net.bioclipse.managers.business.DispatchPlan;
+import net.bioclipse.managers.business.ManagerMethodInvoker;
 
 import org.apache.log4j.Logger;
 import org.eclipse.core.resources.IProject;
@@ -32,7 +35,9 @@ import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
 import org.osgi.framework.BundleException;
+import org.osgi.framework.BundleListener;
 
 /**
  * The activator class controls the plug-in life cycle
@@ -53,17 +58,34 @@ public class Activator extends Plugin {
     
     private static final Logger logger = Logger.getLogger(Activator.class);
     
+    /**
+     * Drops the cached manager dispatch data, which keeps manager classes
+     * loaded, when a bundle stops so that its class loader can go.
+     */
+    private final BundleListener dispatchCacheCleaner = new BundleListener() {
+        public void bundleChanged(BundleEvent event) {
+            if (event.getType() == BundleEvent.STOPPED 
+                || event.getType() == BundleEvent.UNRESOLVED) {
+                DispatchPlan.clearCache();
+                ArgumentAdapter.clearCache();
+                ManagerMethodInvoker.clearCache();
+            }
+        }
+    };
+    
     public Activator() {
     }
     
     public void start(BundleContext context) throws Exception {
         super.start(context);
         plugin = this;
+        context.addBundleListener(dispatchCacheCleaner);
         getVirtualProject();
         startBundleExtender();
     }
     
     public void stop(BundleContext context) throws Exception {
+        context.removeBundleListener(dispatchCacheCleaner);
         FileUtil.deleteLinkedProject();
         plugin = null;
         super.stop(context);
@@ -12,10 +12,11 @@
  ******************************************************************************/
 package net.bioclipse.core.domain;
 
-import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import net.bioclipse.core.domain.props.BioObjectPropertySource;
 
+import org.apache.log4j.Logger;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.ui.views.properties.IPropertySource;
@@ -29,10 +30,19 @@ import org.eclipse.ui.views.properties.IPropertySource;
  */
 public abstract class BioObject implements IBioObject {
 
+    private static final Logger logger = Logger.getLogger( BioObject.class );
+
+    private static final AtomicReferenceFieldUpdater<BioObject, String> 
+        uidUpdater = AtomicReferenceFieldUpdater.newUpdater( BioObject.class,
+                                                             String.class,
+                                                             "uid" );
+
+    private static volatile IUIDGenerator uidGenerator = configuredGenerator();
+
     /**
-     * An as-good-as-unique ID.
+     * An as-good-as-unique ID, generated the first time it is asked for.
      */
-    private final String uid = UUID.randomUUID().toString();
+    private volatile String uid;
 
     /**
      * The underlying IResource, may be null
@@ -52,7 +62,60 @@ public abstract class BioObject implements IBioObject {
      * Returns this the ID of this <code>BioObject</code>.
      */
     public String getUID() {
-        return uid;
+        String id = uid;
+        if ( id == null ) {
+            uidUpdater.compareAndSet( this, null, uidGenerator.nextUID() );
+            id = uid;
+        }
+        return id;
+    }
+
+    /**
+     * Gives <code>copy</code>, which has not been asked for its ID yet, the
+     * ID of this <code>BioObject</code> so that it stands for the same 
+     * object in recorded scripts.
+     */
+    protected void shareUID( BioObject copy ) {
+        uidUpdater.compareAndSet( copy, null, getUID() );
+    }
+
+    /**
+     * Sets the generator giving BioObjects their UIDs from now on. The 
+     * default is chosen with the system property 
+     * <code>bioclipse.uid.generator</code>: <code>counter</code> for a 
+     * {@link CounterUIDGenerator} (the default), <code>uuid</code> for a 
+     * {@link UUIDGenerator} or the name of an <code>IUIDGenerator</code> 
+     * class.
+     */
+    public static void setUIDGenerator( IUIDGenerator generator ) {
+        if ( generator == null ) {
+            throw new IllegalArgumentException( "generator can not be null" );
+        }
+        uidGenerator = generator;
+    }
+
+    public static IUIDGenerator getUIDGenerator() {
+        return uidGenerator;
+    }
+
+    private static IUIDGenerator configuredGenerator() {
+        String name = System.getProperty( "bioclipse.uid.generator", 
+                                          "counter" );
+        if ( "counter".equals( name ) ) {
+            return new CounterUIDGenerator();
+        }
+        if ( "uuid".equals( name ) ) {
+            return new UUIDGenerator();
+        }
+        try {
+            return (IUIDGenerator) Class.forName( name ).newInstance();
+        }
+        catch ( Exception e ) {
+            logger.warn( "Could not create the UID generator " + name 
+                         + ", using " + CounterUIDGenerator.class.getName(),
+                         e );
+            return new CounterUIDGenerator();
+        }
     }
 
     /**
@@ -0,0 +1,239 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.domain;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A binary sparse matrix, like a set of fingerprints, stored as one bit per
+ * cell with the rows one after the other in an array of words. A
+ * fingerprint of 1024 bits thus takes 128 bytes however many bits are set,
+ * and the set bits of a row are found a word at a time.
+ *
+ * @author jonalv
+ */
+public class BitMatrix extends SparseMatrix {
+
+    private final int rows;
+    private final int columns;
+    private final int rowWords;
+    private final long[] words;
+
+    private BitMatrix( int rows, int columns, long[] words ) {
+        this.rows     = rows;
+        this.columns  = columns;
+        this.rowWords = wordsFor( columns );
+        this.words    = words;
+    }
+
+    private static int wordsFor( int columns ) {
+        return ( columns + 63 ) >>> 6;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns;
+    }
+
+    @Override
+    public int get( int row, int column ) {
+        checkRow( row );
+        checkColumn( column );
+        long word = words[row * rowWords + ( column >>> 6 )];
+        return (int) ( word >>> column ) & 1;
+    }
+
+    /**
+     * @return the first column at or after <code>from</code> that is set in
+     *         the row, or -1 if there is none
+     */
+    public int nextSetBit( int row, int from ) {
+        checkRow( row );
+        if ( from < 0 ) {
+            throw new IndexOutOfBoundsException( "Column: " + from );
+        }
+        if ( from >= columns ) {
+            return -1;
+        }
+        int offset = row * rowWords;
+        int w = from >>> 6;
+        long word = words[offset + w] & ( -1L << from );
+        while ( true ) {
+            if ( word != 0 ) {
+                return ( w << 6 ) + Long.numberOfTrailingZeros( word );
+            }
+            if ( ++w == rowWords ) {
+                return -1;
+            }
+            word = words[offset + w];
+        }
+    }
+
+    @Override
+    public long getEntryCount() {
+        long count = 0;
+        for ( long word : words ) {
+            count += Long.bitCount( word );
+        }
+        return count;
+    }
+
+    @Override
+    public int getRowEntryCount( int row ) {
+        checkRow( row );
+        int count = 0;
+        for ( int w = row * rowWords, end = w + rowWords; w < end; w++ ) {
+            count += Long.bitCount( words[w] );
+        }
+        return count;
+    }
+
+    @Override
+    public int getRow( int row, int[] columns, int[] values ) {
+        checkRow( row );
+        int n = 0;
+        int offset = row * rowWords;
+        for ( int w = 0; w < rowWords; w++ ) {
+            long word = words[offset + w];
+            while ( word != 0 ) {
+                columns[n++] = ( w << 6 ) + Long.numberOfTrailingZeros( word );
+                word &= word - 1;
+            }
+        }
+        if ( values != null ) {
+            Arrays.fill( values, 0, n, 1 );
+        }
+        return n;
+    }
+
+    @Override
+    public BitMatrix getColumns( int from, int to ) {
+        checkColumns( from, to );
+        Builder builder = new Builder( to - from );
+        int[] row = new int[to - from];
+        for ( int r = 0; r < rows; r++ ) {
+            int n = 0;
+            for ( int c = nextSetBit( r, from );
+                  c != -1 && c < to;
+                  c = nextSetBit( r, c + 1 ) ) {
+                row[n++] = c - from;
+            }
+            builder.addRow( row, n );
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return the row as a {@link BitSet}
+     */
+    public BitSet getBitSet( int row ) {
+        checkRow( row );
+        BitSet bits = new BitSet( columns );
+        for ( int c = nextSetBit( row, 0 );
+              c != -1;
+              c = nextSetBit( row, c + 1 ) ) {
+            bits.set( c );
+        }
+        return bits;
+    }
+
+    /**
+     * Builds a matrix row by row.
+     */
+    public static class Builder {
+
+        private final int columns;
+        private final int rowWords;
+        private long[] words;
+        private int rows;
+
+        /**
+         * @param columns the number of columns, or bits, of each row
+         */
+        public Builder( int columns ) {
+            if ( columns < 0 ) {
+                throw new IllegalArgumentException(
+                    "Negative number of columns: " + columns );
+            }
+            this.columns  = columns;
+            this.rowWords = wordsFor( columns );
+            this.words    = new long[16 * rowWords];
+        }
+
+        private int nextRow() {
+            int offset = rows * rowWords;
+            if ( offset + rowWords > words.length ) {
+                words = Arrays.copyOf(
+                    words, Math.max( offset + rowWords, 2 * words.length ) );
+            }
+            rows++;
+            return offset;
+        }
+
+        private void set( int offset, int column ) {
+            if ( column < 0 || column >= columns ) {
+                throw new IllegalArgumentException(
+                    "Column: " + column + ", columns: " + columns );
+            }
+            words[offset + ( column >>> 6 )] |= 1L << column;
+        }
+
+        /**
+         * Adds a row with the bits of a {@link BitSet}.
+         *
+         * @throws IllegalArgumentException if a bit is set outside of the
+         *         matrix
+         */
+        public Builder addRow( BitSet bits ) {
+            int offset = nextRow();
+            for ( int c = bits.nextSetBit( 0 );
+                  c >= 0;
+                  c = bits.nextSetBit( c + 1 ) ) {
+                set( offset, c );
+            }
+            return this;
+        }
+
+        /**
+         * Adds a row with the given columns set, in any order.
+         *
+         * @param count the number of columns
+         * @throws IllegalArgumentException if a column is outside of the
+         *         matrix
+         */
+        public Builder addRow( int[] columns, int count ) {
+            int offset = nextRow();
+            for ( int i = 0; i < count; i++ ) {
+                set( offset, columns[i] );
+            }
+            return this;
+        }
+
+        public int getRowCount() {
+            return rows;
+        }
+
+        /**
+         * @return the matrix of the rows added so far
+         */
+        public BitMatrix build() {
+            return new BitMatrix( rows,
+                                  columns,
+                                  Arrays.copyOf( words, rows * rowWords ) );
+        }
+    }
+}
@@ -14,13 +14,17 @@ import net.bioclipse.core.business.BioclipseException;
 
 /**
  * A lightweight implementation of IMolecule that only consists of a CML
- * string.
+ * string. Other representations worked out for it, like SMILES, are 
+ * kept in its {@link RepresentationCache}.
  * @author olas
  *
  */
 public class CMLMolecule extends BioObject implements IMolecule {
 
-    String cml;
+    private volatile String cml;
+
+    private final RepresentationCache representations 
+        = new RepresentationCache();
     
     /*
      * Needed by Spring for proxying
@@ -30,21 +34,67 @@ public class CMLMolecule extends BioObject implements IMolecule {
     }
     
     public CMLMolecule(String cml) {
-        this.cml=cml;
+        setCML( cml );
     }
 
     public String toCML() throws BioclipseException {
         return cml;
     }
 
+    /**
+     * Replaces the CML, dropping all cached representations.
+     */
+    public void setCML(String cml) {
+        synchronized ( representations ) {
+            this.cml=cml;
+            representations.invalidate();
+            representations.setSourceLength( cml == null ? -1 
+                                                         : cml.length() );
+        }
+    }
+
     /**
      * A molecule with only CML cannot produce SMILES other than via CDK, hence 
-     * always throws BioclipseException.
+     * only returns SMILES put in its {@link RepresentationCache} or 
+     * translated by the translator registered there, and otherwise throws 
+     * UnsupportedOperationException.
      * @throws BioclipseException 
      */ 
     public String toSMILES() throws BioclipseException {
-        throw new UnsupportedOperationException("CMLMolecule can not " +
-        		"return SMILES");
+        final RepresentationCache.Translator translator 
+            = RepresentationCache.getTranslator( RepresentationCache.CML,
+                                                 RepresentationCache.SMILES );
+        String smiles = representations.get( 
+            RepresentationCache.SMILES,
+            translator == null ? Property.USE_CACHED
+                               : Property.USE_CACHED_OR_CALCULATED,
+            new RepresentationCache.Converter<String>() {
+                public String convert() throws BioclipseException {
+                    return translator.translate( cml );
+                }
+            } );
+        if (smiles == null)
+            throw new UnsupportedOperationException("CMLMolecule can not " +
+            		"return SMILES");
+        return smiles;
+    }
+
+    public RepresentationCache getRepresentations() {
+        return representations;
+    }
+
+    /**
+     * @return a hash of the CML, see {@link RepresentationCache#hashOf}
+     */
+    public String getContentHash() throws BioclipseException {
+        return representations.get( 
+            RepresentationCache.HASH,
+            Property.USE_CACHED_OR_CALCULATED,
+            new RepresentationCache.Converter<String>() {
+                public String convert() {
+                    return RepresentationCache.hashOf( cml );
+                }
+            } );
     }
 
     public List<IMolecule> getConformers() {
@@ -0,0 +1,407 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.domain;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A sparse matrix in compressed sparse row form: the columns and values of
+ * all entries in three arrays, row after row, and the index of the first
+ * entry of each row. A binary matrix, where all stored values are 1, has
+ * no array of values. Each entry thus takes 8 bytes, or 4 if binary.
+ * <p>
+ * The entries of a row can be walked directly:
+ * <pre>
+ *   for ( int e = matrix.rowStart( row ); e &lt; matrix.rowEnd( row ); e++ ) {
+ *       int column = matrix.columnAt( e );
+ *       int value  = matrix.valueAt( e );
+ *       ...
+ *   }
+ * </pre>
+ * {@link #transpose()} gives the matrix in compressed sparse column form,
+ * as the rows of the transposed matrix, for walking columns the same way.
+ * Matrices are built with a {@link Builder}.
+ *
+ * @author jonalv
+ */
+public class CSRMatrix extends SparseMatrix {
+
+    private final int rows;
+    private final int columns;
+    /** the first entry of each row and, last, the number of entries */
+    private final int[] rowStarts;
+    private final int[] columnIndices;
+    /** <code>null</code> if binary */
+    private final int[] values;
+
+    private CSRMatrix( int rows,
+                       int columns,
+                       int[] rowStarts,
+                       int[] columnIndices,
+                       int[] values ) {
+        this.rows          = rows;
+        this.columns       = columns;
+        this.rowStarts     = rowStarts;
+        this.columnIndices = columnIndices;
+        this.values        = values;
+    }
+
+    /**
+     * Builds a matrix from the values of a {@link SparseDataset}, whose
+     * rows and columns are counted from 1. The entries can be in any
+     * order. The matrix is binary if all values are 1.
+     *
+     * @param rows at least the largest row in <code>entries</code>
+     * @param columns at least the largest column in <code>entries</code>
+     * @throws IllegalArgumentException if an entry is outside of the
+     *         matrix or has no value
+     */
+    public static CSRMatrix valueOf( Map<Point, Integer> entries,
+                                     int rows,
+                                     int columns ) {
+        int[] rowStarts = new int[rows + 1];
+        boolean binary = true;
+        for ( Map.Entry<Point, Integer> e : entries.entrySet() ) {
+            Point p = e.getKey();
+            if ( p.x < 1 || p.x > rows || p.y < 1 || p.y > columns
+                 || e.getValue() == null ) {
+                throw new IllegalArgumentException(
+                    "Not an entry of a " + rows + "x" + columns
+                    + " matrix: " + p.x + "," + p.y + "=" + e.getValue() );
+            }
+            rowStarts[p.x]++;
+            binary &= e.getValue() == 1;
+        }
+        for ( int r = 0; r < rows; r++ ) {
+            rowStarts[r + 1] += rowStarts[r];
+        }
+        int[] columnIndices = new int[entries.size()];
+        int[] values = binary ? null : new int[entries.size()];
+        int[] next = Arrays.copyOf( rowStarts, rows );
+        for ( Map.Entry<Point, Integer> e : entries.entrySet() ) {
+            int i = next[e.getKey().x - 1]++;
+            columnIndices[i] = e.getKey().y - 1;
+            if ( values != null ) {
+                values[i] = e.getValue();
+            }
+        }
+        for ( int r = 0; r < rows; r++ ) {
+            sortRow( columnIndices, values, rowStarts[r], rowStarts[r + 1] );
+        }
+        return new CSRMatrix( rows, columns, rowStarts, columnIndices, values );
+    }
+
+    /** insertion sort on column, rows are short and mostly sorted */
+    private static void sortRow( int[] columnIndices,
+                                 int[] values,
+                                 int start,
+                                 int end ) {
+        for ( int i = start + 1; i < end; i++ ) {
+            int column = columnIndices[i];
+            int value  = values == null ? 1 : values[i];
+            int j = i - 1;
+            for ( ; j >= start && columnIndices[j] > column; j-- ) {
+                columnIndices[j + 1] = columnIndices[j];
+                if ( values != null ) {
+                    values[j + 1] = values[j];
+                }
+            }
+            columnIndices[j + 1] = column;
+            if ( values != null ) {
+                values[j + 1] = value;
+            }
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns;
+    }
+
+    /**
+     * @return whether all stored values are 1
+     */
+    public boolean isBinary() {
+        return values == null;
+    }
+
+    /**
+     * @return the index of the first entry of the row
+     */
+    public int rowStart( int row ) {
+        checkRow( row );
+        return rowStarts[row];
+    }
+
+    /**
+     * @return the index after the last entry of the row
+     */
+    public int rowEnd( int row ) {
+        checkRow( row );
+        return rowStarts[row + 1];
+    }
+
+    public int columnAt( int entry ) {
+        return columnIndices[entry];
+    }
+
+    public int valueAt( int entry ) {
+        if ( values == null ) {
+            if ( entry < 0 || entry >= columnIndices.length ) {
+                throw new IndexOutOfBoundsException( "Entry: " + entry );
+            }
+            return 1;
+        }
+        return values[entry];
+    }
+
+    @Override
+    public int get( int row, int column ) {
+        checkColumn( column );
+        int i = Arrays.binarySearch( columnIndices,
+                                     rowStart( row ),
+                                     rowEnd( row ),
+                                     column );
+        return i < 0 ? 0 : valueAt( i );
+    }
+
+    @Override
+    public long getEntryCount() {
+        return rowStarts[rows];
+    }
+
+    @Override
+    public int getRowEntryCount( int row ) {
+        return rowEnd( row ) - rowStart( row );
+    }
+
+    @Override
+    public int getRow( int row, int[] columns, int[] values ) {
+        int start = rowStart( row );
+        int n     = rowEnd( row ) - start;
+        System.arraycopy( columnIndices, start, columns, 0, n );
+        if ( values != null ) {
+            if ( this.values == null ) {
+                Arrays.fill( values, 0, n, 1 );
+            }
+            else {
+                System.arraycopy( this.values, start, values, 0, n );
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public CSRMatrix getColumns( int from, int to ) {
+        checkColumns( from, to );
+        int[] starts = new int[rows + 1];
+        for ( int r = 0; r < rows; r++ ) {
+            starts[r + 1] = starts[r]
+                            + slice( r, to ) - slice( r, from );
+        }
+        int[] sliceColumns = new int[starts[rows]];
+        int[] sliceValues  = values == null ? null : new int[starts[rows]];
+        for ( int r = 0; r < rows; r++ ) {
+            int start = slice( r, from );
+            int n     = starts[r + 1] - starts[r];
+            for ( int i = 0; i < n; i++ ) {
+                sliceColumns[starts[r] + i] = columnIndices[start + i] - from;
+            }
+            if ( values != null ) {
+                System.arraycopy( values, start, sliceValues, starts[r], n );
+            }
+        }
+        return new CSRMatrix( rows, to - from, starts,
+                              sliceColumns, sliceValues );
+    }
+
+    /** @return the first entry of the row at or after the column */
+    private int slice( int row, int column ) {
+        int i = Arrays.binarySearch( columnIndices,
+                                     rowStarts[row],
+                                     rowStarts[row + 1],
+                                     column );
+        return i < 0 ? -i - 1 : i;
+    }
+
+    /**
+     * @return the transposed matrix, whose rows are the columns of this
+     *         one
+     */
+    public CSRMatrix transpose() {
+        int[] starts = new int[columns + 1];
+        for ( int column : columnIndices ) {
+            starts[column + 1]++;
+        }
+        for ( int c = 0; c < columns; c++ ) {
+            starts[c + 1] += starts[c];
+        }
+        int[] next = Arrays.copyOf( starts, columns );
+        int[] rowIndices = new int[columnIndices.length];
+        int[] transposed = values == null ? null
+                                          : new int[columnIndices.length];
+        // rows are walked in order so each column gets increasing rows
+        for ( int r = 0; r < rows; r++ ) {
+            for ( int e = rowStarts[r]; e < rowStarts[r + 1]; e++ ) {
+                int i = next[columnIndices[e]]++;
+                rowIndices[i] = r;
+                if ( transposed != null ) {
+                    transposed[i] = values[e];
+                }
+            }
+        }
+        return new CSRMatrix( columns, rows, starts, rowIndices, transposed );
+    }
+
+    @Override
+    public CSRMatrix toCSR() {
+        return this;
+    }
+
+    /**
+     * Builds a matrix row by row. Rows are added either whole with
+     * {@link #addRow(int[], int[], int)} or an entry at a time with
+     * {@link #add(int, int)} followed by {@link #endRow()}. The columns of
+     * a row must increase.
+     */
+    public static class Builder {
+
+        private final int columns;
+        private final boolean binary;
+        private int[] rowStarts = new int[16];
+        private int[] columnIndices = new int[64];
+        private int[] values;
+        private int rows;
+        private int entries;
+
+        /**
+         * @param columns the number of columns of the matrix
+         * @param binary whether all values are 1, so that no values need
+         *               to be stored
+         */
+        public Builder( int columns, boolean binary ) {
+            if ( columns < 0 ) {
+                throw new IllegalArgumentException(
+                    "Negative number of columns: " + columns );
+            }
+            this.columns = columns;
+            this.binary  = binary;
+            if ( !binary ) {
+                values = new int[columnIndices.length];
+            }
+        }
+
+        /**
+         * Adds an entry to the current row.
+         *
+         * @throws IllegalArgumentException if the column is outside of the
+         *         matrix or not after the last one added to the row, or if
+         *         the value is not 1 in a binary matrix
+         */
+        public Builder add( int column, int value ) {
+            if ( column < 0 || column >= columns ) {
+                throw new IllegalArgumentException(
+                    "Column: " + column + ", columns: " + columns );
+            }
+            if ( entries > rowStarts[rows]
+                 && columnIndices[entries - 1] >= column ) {
+                throw new IllegalArgumentException(
+                    "Column " + column + " added after column "
+                    + columnIndices[entries - 1] + " in row " + rows );
+            }
+            if ( binary && value != 1 ) {
+                throw new IllegalArgumentException(
+                    "Value " + value + " in a binary matrix" );
+            }
+            if ( entries == columnIndices.length ) {
+                grow( entries + 1 );
+            }
+            columnIndices[entries] = column;
+            if ( values != null ) {
+                values[entries] = value;
+            }
+            entries++;
+            return this;
+        }
+
+        /**
+         * Ends the current row and starts a new one.
+         */
+        public Builder endRow() {
+            rows++;
+            if ( rows + 1 > rowStarts.length ) {
+                rowStarts = Arrays.copyOf( rowStarts, 2 * rowStarts.length );
+            }
+            rowStarts[rows] = entries;
+            return this;
+        }
+
+        /**
+         * Adds a row.
+         *
+         * @param columns the columns of the entries, increasing
+         * @param values the values of the entries, <code>null</code> for
+         *               all 1
+         * @param count the number of entries
+         */
+        public Builder addRow( int[] columns, int[] values, int count ) {
+            if ( entries + count > columnIndices.length ) {
+                grow( entries + count );
+            }
+            for ( int i = 0; i < count; i++ ) {
+                add( columns[i], values == null ? 1 : values[i] );
+            }
+            return endRow();
+        }
+
+        /**
+         * Adds a row of a binary matrix.
+         *
+         * @param columns the columns of the entries, increasing
+         * @param count the number of entries
+         */
+        public Builder addRow( int[] columns, int count ) {
+            return addRow( columns, null, count );
+        }
+
+        public int getRowCount() {
+            return rows;
+        }
+
+        private void grow( int needed ) {
+            int size = Math.max( needed, 2 * columnIndices.length );
+            columnIndices = Arrays.copyOf( columnIndices, size );
+            if ( values != null ) {
+                values = Arrays.copyOf( values, size );
+            }
+        }
+
+        /**
+         * @return the matrix of the rows ended so far
+         */
+        public CSRMatrix build() {
+            int n = rowStarts[rows];
+            return new CSRMatrix( rows,
+                                  columns,
+                                  Arrays.copyOf( rowStarts, rows + 1 ),
+                                  Arrays.copyOf( columnIndices, n ),
+                                  values == null ? null
+                                                 : Arrays.copyOf( values, n ) );
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.domain;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates UIDs made up of a random prefix, drawn once per generator, and 
+ * a counter, e.g. <code>3f2a9c01b7e4-1a</code>. The prefix keeps the UIDs 
+ * apart from those of other sessions, which may still be around in a 
+ * journaled history, so only one random number is drawn per session 
+ * instead of one per BioObject.
+ * 
+ * @author jonalv
+ */
+public class CounterUIDGenerator implements IUIDGenerator {
+
+    private final String     prefix;
+    private final AtomicLong counter = new AtomicLong();
+
+    public CounterUIDGenerator() {
+        long node = UUID.randomUUID().getMostSignificantBits();
+        // 48 bits as 12 hex digits, leading zeros kept
+        prefix = Long.toHexString( ( node & 0xFFFFFFFFFFFFL ) | ( 1L << 48 ) )
+                     .substring( 1 ) + "-";
+    }
+
+    public String nextUID() {
+        return prefix + Long.toString( counter.incrementAndGet(), 
+                                       Character.MAX_RADIX );
+    }
+
+    /**
+     * @return the number of UIDs generated
+     */
+    public long getCount() {
+        return counter.get();
+    }
+}
@@ -0,0 +1,548 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.domain;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * Writes a {@link DenseDataset} or {@link SparseDataset} to a stream or
+ * file one row at a time, so that the memory used does not grow with the
+ * dataset. Three formats are written:
+ * <dl>
+ * <dt>{@link Format#CSV}</dt>
+ * <dd>the format of {@link DenseDataset#asCSV()}: a line of column
+ * headers, then a line per row with the row header and the values, all
+ * followed by the separator ({@link IDataset#CSV_SEPARATOR} by default),
+ * and the response value if there is a response. Missing values, stored
+ * as <code>NaN</code>, are written as <code>null</code>.</dd>
+ * <dt>{@link Format#BINARY}</dt>
+ * <dd>little-endian: the int <code>0x53444342</code> (the bytes "BCDS"),
+ * the int version 1, the ints rows and columns, a byte 1 if there is a
+ * response and then the response property, the column headers, and per
+ * row the row header, the values as floats and the response value if
+ * there is a response. Strings are an int length followed by as many
+ * UTF-8 bytes, the length -1 meaning <code>null</code>.</dd>
+ * <dt>{@link Format#LIBSVM}</dt>
+ * <dd>a line per row with the response value, if there is a response, and
+ * the values that are not zero or missing as <code>column:value</code>,
+ * columns counted from 1, separated by the separator (a space by
+ * default)</dd>
+ * </dl>
+ * Other kinds of datasets can not be written.
+ *
+ * @author jonalv
+ */
+public class DatasetWriter {
+
+    public enum Format {
+
+        CSV( "csv" ), BINARY( "bin" ), LIBSVM( "svm" );
+
+        private final String extension;
+
+        private Format( String extension ) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    static final int MAGIC   = 0x53444342; // "BCDS" in little-endian
+    static final int VERSION = 1;
+
+    private final Format format;
+    private String separator;
+
+    public DatasetWriter( Format format ) {
+        this.format    = format;
+        this.separator = format == Format.LIBSVM ? " "
+                                                 : IDataset.CSV_SEPARATOR;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * @param separator what to put between the values in CSV and LibSVM
+     *                  files
+     */
+    public void setSeparator( String separator ) {
+        this.separator = separator;
+    }
+
+    /**
+     * Writes the dataset to a stream. The stream is flushed but not
+     * closed.
+     *
+     * @param monitor gets a unit of work per row, may be <code>null</code>
+     * @throws IOException if the stream could not be written to
+     * @throws OperationCanceledException if the monitor was cancelled
+     * @throws IllegalArgumentException for unknown kinds of datasets
+     */
+    public void write( IDataset dataset,
+                       OutputStream out,
+                       IProgressMonitor monitor ) throws IOException {
+        if ( monitor == null ) {
+            monitor = new NullProgressMonitor();
+        }
+        Rows rows = rowsOf( dataset );
+        monitor.beginTask( "Writing " + rows.rowCount + " rows",
+                           rows.rowCount );
+        try {
+            switch ( format ) {
+                case CSV:
+                    writeCSV( rows, out, monitor );
+                    break;
+                case BINARY:
+                    writeBinary( rows, out, monitor );
+                    break;
+                case LIBSVM:
+                    writeLibSVM( rows, out, monitor );
+                    break;
+            }
+            out.flush();
+        }
+        finally {
+            monitor.done();
+        }
+    }
+
+    /**
+     * Writes the dataset to a file, replacing what is in it.
+     *
+     * @see #write(IDataset, OutputStream, IProgressMonitor)
+     * @throws CoreException if the workspace could not be updated
+     */
+    public void write( IDataset dataset,
+                       IFile file,
+                       IProgressMonitor monitor ) throws IOException,
+                                                         CoreException {
+        IPath location = file.getLocation();
+        if ( location != null ) {
+            writeTo( dataset, location.toFile(), monitor );
+            file.refreshLocal( IResource.DEPTH_ZERO, null );
+            return;
+        }
+        // not in the local file system, written through a temporary file
+        File temporary = File.createTempFile( "dataset",
+                                              "." + format.getExtension() );
+        try {
+            writeTo( dataset, temporary, monitor );
+            InputStream in = new FileInputStream( temporary );
+            try {
+                if ( file.exists() ) {
+                    file.setContents( in, true, false, null );
+                }
+                else {
+                    file.create( in, true, null );
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+        finally {
+            temporary.delete();
+        }
+    }
+
+    private void writeTo( IDataset dataset,
+                          File file,
+                          IProgressMonitor monitor ) throws IOException {
+        OutputStream out
+            = new BufferedOutputStream( new FileOutputStream( file ) );
+        try {
+            write( dataset, out, monitor );
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private void writeCSV( Rows rows,
+                           OutputStream stream,
+                           IProgressMonitor monitor ) throws IOException {
+        Writer out = new BufferedWriter(
+                         new OutputStreamWriter( stream, "UTF-8" ) );
+        out.write( "Molceulce" );
+        out.write( separator );
+        if ( rows.colHeaders != null ) {
+            for ( String header : rows.colHeaders ) {
+                out.write( header + separator );
+            }
+        }
+        if ( rows.responseProperty != null ) {
+            out.write( rows.responseProperty );
+        }
+        out.write( '\n' );
+        float[] values = new float[rows.columnCount];
+        Progress progress = new Progress( monitor, rows.rowCount );
+        for ( int r = 0; r < rows.rowCount; r++ ) {
+            rows.nextDense( values );
+            out.write( String.valueOf( rows.rowHeader( r ) ) );
+            out.write( separator );
+            for ( float value : values ) {
+                out.write( Float.isNaN( value ) ? "null"
+                                                : Float.toString( value ) );
+                out.write( separator );
+            }
+            if ( rows.responseProperty != null ) {
+                out.write( String.valueOf( rows.responseValues.get( r ) ) );
+            }
+            out.write( '\n' );
+            progress.worked();
+        }
+        out.flush();
+    }
+
+    private void writeBinary( Rows rows,
+                              OutputStream stream,
+                              IProgressMonitor monitor ) throws IOException {
+        BinaryOutput out = new BinaryOutput( stream );
+        boolean response = rows.responseProperty != null;
+        out.putInt( MAGIC );
+        out.putInt( VERSION );
+        out.putInt( rows.rowCount );
+        out.putInt( rows.columnCount );
+        out.put( (byte) ( response ? 1 : 0 ) );
+        if ( response ) {
+            out.putString( rows.responseProperty );
+        }
+        for ( int c = 0; c < rows.columnCount; c++ ) {
+            out.putString( rows.colHeaders == null
+                           || c >= rows.colHeaders.size()
+                           ? null : rows.colHeaders.get( c ) );
+        }
+        float[] values = new float[rows.columnCount];
+        Progress progress = new Progress( monitor, rows.rowCount );
+        for ( int r = 0; r < rows.rowCount; r++ ) {
+            rows.nextDense( values );
+            out.putString( rows.rowHeader( r ) );
+            for ( float value : values ) {
+                out.putFloat( value );
+            }
+            if ( response ) {
+                out.putString( rows.responseValues.get( r ) );
+            }
+            progress.worked();
+        }
+        out.flush();
+    }
+
+    private void writeLibSVM( Rows rows,
+                              OutputStream stream,
+                              IProgressMonitor monitor ) throws IOException {
+        Writer out = new BufferedWriter(
+                         new OutputStreamWriter( stream, "UTF-8" ) );
+        int[] columns  = new int[rows.columnCount];
+        float[] values = new float[rows.columnCount];
+        Progress progress = new Progress( monitor, rows.rowCount );
+        for ( int r = 0; r < rows.rowCount; r++ ) {
+            int entries = rows.nextSparse( columns, values );
+            String before = null;
+            if ( rows.responseValues != null ) {
+                out.write( String.valueOf( rows.responseValues.get( r ) ) );
+                before = separator;
+            }
+            for ( int i = 0; i < entries; i++ ) {
+                if ( before != null ) {
+                    out.write( before );
+                }
+                out.write( Integer.toString( columns[i] + 1 ) );
+                out.write( ':' );
+                out.write( Float.toString( values[i] ) );
+                before = separator;
+            }
+            out.write( '\n' );
+            progress.worked();
+        }
+        out.flush();
+    }
+
+    /** reports to the monitor about a hundred times and checks for
+     *  cancellation at each row */
+    private static class Progress {
+
+        private final IProgressMonitor monitor;
+        private final int step;
+        private int unreported;
+
+        Progress( IProgressMonitor monitor, int rows ) {
+            this.monitor = monitor;
+            this.step    = Math.max( 1, rows / 100 );
+        }
+
+        void worked() {
+            if ( monitor.isCanceled() ) {
+                throw new OperationCanceledException();
+            }
+            if ( ++unreported == step ) {
+                monitor.worked( unreported );
+                unreported = 0;
+            }
+        }
+    }
+
+    /** a little-endian buffer in front of a stream */
+    private static class BinaryOutput {
+
+        private final OutputStream out;
+        private final ByteBuffer buffer
+            = ByteBuffer.allocate( 1 << 16 ).order( ByteOrder.LITTLE_ENDIAN );
+
+        BinaryOutput( OutputStream out ) {
+            this.out = out;
+        }
+
+        private void room( int bytes ) throws IOException {
+            if ( buffer.remaining() < bytes ) {
+                flush();
+            }
+        }
+
+        void put( byte b ) throws IOException {
+            room( 1 );
+            buffer.put( b );
+        }
+
+        void putInt( int i ) throws IOException {
+            room( 4 );
+            buffer.putInt( i );
+        }
+
+        void putFloat( float f ) throws IOException {
+            room( 4 );
+            buffer.putFloat( f );
+        }
+
+        void putString( String s ) throws IOException {
+            if ( s == null ) {
+                putInt( -1 );
+                return;
+            }
+            byte[] bytes = s.getBytes( "UTF-8" );
+            putInt( bytes.length );
+            if ( bytes.length > buffer.capacity() ) {
+                flush();
+                out.write( bytes );
+                return;
+            }
+            room( bytes.length );
+            buffer.put( bytes );
+        }
+
+        void flush() throws IOException {
+            out.write( buffer.array(), 0, buffer.position() );
+            buffer.clear();
+        }
+    }
+
+    private static Rows rowsOf( IDataset dataset ) {
+        if ( dataset instanceof DenseDataset ) {
+            return new DenseRows( (DenseDataset) dataset );
+        }
+        if ( dataset instanceof SparseDataset ) {
+            return new SparseRows( (SparseDataset) dataset );
+        }
+        throw new IllegalArgumentException( "Can not write datasets of type "
+                                            + dataset.getClass().getName() );
+    }
+
+    /**
+     * The rows of a dataset, read one after another either with all
+     * values or with only those that are not zero.
+     */
+    private abstract static class Rows {
+
+        final int rowCount;
+        final int columnCount;
+        final List<String> colHeaders;
+        final List<String> rowHeaders;
+        final String responseProperty;
+        /** <code>null</code> if there is no response */
+        final List<String> responseValues;
+
+        private int[]   sparseColumns;
+        private float[] sparseValues;
+
+        Rows( int rowCount,
+              int columnCount,
+              List<String> colHeaders,
+              List<String> rowHeaders,
+              String responseProperty,
+              List<String> responseValues ) {
+            this.rowCount         = rowCount;
+            this.columnCount      = columnCount;
+            this.colHeaders       = colHeaders;
+            this.rowHeaders       = rowHeaders;
+            this.responseProperty = responseProperty;
+            this.responseValues   = responseProperty == null ? null
+                                                            : responseValues;
+        }
+
+        String rowHeader( int row ) {
+            return rowHeaders == null || row >= rowHeaders.size()
+                   ? null : rowHeaders.get( row );
+        }
+
+        /** reads the next row into <code>values</code> */
+        void nextDense( float[] values ) {
+            if ( sparseColumns == null ) {
+                sparseColumns = new int[columnCount];
+                sparseValues  = new float[columnCount];
+            }
+            Arrays.fill( values, 0 );
+            int n = nextSparse( sparseColumns, sparseValues );
+            for ( int i = 0; i < n; i++ ) {
+                values[sparseColumns[i]] = sparseValues[i];
+            }
+        }
+
+        /**
+         * Reads the values of the next row that are not zero.
+         *
+         * @return the number of values read
+         */
+        abstract int nextSparse( int[] columns, float[] values );
+    }
+
+    private static class DenseRows extends Rows {
+
+        private final FloatMatrix matrix;
+        private float[] row;
+        private int next;
+
+        DenseRows( DenseDataset dataset ) {
+            this( dataset, dataset.getMatrix() );
+        }
+
+        /**
+         * @param matrix the values of the dataset, got once as it may be
+         *               copied for each call
+         */
+        private DenseRows( DenseDataset dataset, FloatMatrix matrix ) {
+            super( matrix.getRowCount(),
+                   matrix.getColumnCount(),
+                   dataset.getColHeaders(),
+                   dataset.getRowHeaders(),
+                   dataset.getResponseProperty(),
+                   dataset.getResponseValues() );
+            this.matrix = matrix;
+        }
+
+        @Override
+        void nextDense( float[] values ) {
+            matrix.getRow( next++, values );
+        }
+
+        @Override
+        int nextSparse( int[] columns, float[] values ) {
+            row = matrix.getRow( next++, row );
+            int n = 0;
+            for ( int c = 0; c < row.length; c++ ) {
+                // missing values are NaN and left out like zeros
+                if ( row[c] != 0 && !Float.isNaN( row[c] ) ) {
+                    columns[n]  = c;
+                    values[n++] = row[c];
+                }
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Reads the rows of the {@link SparseMatrix} of a sparse dataset. There
+     * are as many rows and columns as there are headers, or as the matrix
+     * has if there are no headers.
+     */
+    private static class SparseRows extends Rows {
+
+        private final SparseMatrix matrix;
+        private final int[] rowColumns;
+        private final int[] rowValues;
+        private int next;
+
+        SparseRows( SparseDataset dataset ) {
+            this( dataset, dataset.getMatrix() );
+        }
+
+        /**
+         * @param matrix the values of the dataset, got once as it may be
+         *               copied for each call
+         */
+        private SparseRows( SparseDataset dataset, SparseMatrix matrix ) {
+            super( rowCount( dataset, matrix ),
+                   columnCount( dataset, matrix ),
+                   dataset.getColHeaders(),
+                   dataset.getRowHeaders(),
+                   dataset.getResponseProperty(),
+                   dataset.getResponseValues() );
+            this.matrix = matrix;
+            rowColumns  = new int[matrix.getColumnCount()];
+            rowValues   = new int[matrix.getColumnCount()];
+        }
+
+        private static int rowCount( SparseDataset dataset,
+                                     SparseMatrix matrix ) {
+            int rows = matrix.getRowCount();
+            return dataset.getRowHeaders() == null
+                   ? rows : Math.max( rows, dataset.getRowHeaders().size() );
+        }
+
+        private static int columnCount( SparseDataset dataset,
+                                        SparseMatrix matrix ) {
+            return dataset.getColHeaders() == null
+                   ? matrix.getColumnCount()
+                   : dataset.getColHeaders().size();
+        }
+
+        @Override
+        int nextSparse( int[] columns, float[] values ) {
+            int row = next++;
+            if ( row >= matrix.getRowCount() ) {
+                return 0;
+            }
+            int stored = matrix.getRow( row, rowColumns, rowValues );
+            int n = 0;
+            for ( int i = 0; i < stored && rowColumns[i] < columnCount; i++ ) {
+                if ( rowValues[i] != 0 ) {
+                    columns[n]  = rowColumns[i];
+                    values[n++] = rowValues[i];
+                }
+            }
+            return n;
+        }
+    }
+}
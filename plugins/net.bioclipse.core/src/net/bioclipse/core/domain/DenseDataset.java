@@ -10,11 +10,25 @@
  ******************************************************************************/
 package net.bioclipse.core.domain;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * A dataset contains a matrix of values (Float) with headers and 
  * an optional response variable.
+ * <p>
+ * The values are kept either in the lists given to the dataset, which are
+ * used as they are and may have rows of different lengths, or in a 
+ * {@link FloatMatrix} of primitive floats given with 
+ * {@link #setMatrix(FloatMatrix)}. Only one of <code>values</code> and 
+ * <code>matrix</code> is set. {@link #getValues()} moves values kept in a 
+ * matrix into lists, so subclasses reading the protected 
+ * <code>values</code> directly should call it first. 
+ * {@link #getMatrix()} copies values kept in lists into a new matrix, off 
+ * the Java heap if the system property 
+ * <code>bioclipse.dataset.offHeap</code> is <code>true</code>.
  * 
  * @author ola
  *
@@ -24,6 +38,7 @@ public class DenseDataset implements IDataset{
 	protected List<String> colHeaders;
 	protected List<String> rowHeaders;
 	protected List<List<Float>> values;
+	protected FloatMatrix matrix;
 	protected String responseProperty;
 	protected List<String> responseValues;
 
@@ -52,11 +67,114 @@ public class DenseDataset implements IDataset{
 	public void setRowHeaders(List<String> rowHeaders) {
 		this.rowHeaders = rowHeaders;
 	}
+	/**
+	 * @return the values, row by row. Values kept in a matrix are first 
+	 *         moved into lists, missing ones as <code>NaN</code>, which the 
+	 *         dataset then keeps instead of the matrix.
+	 */
 	public List<List<Float>> getValues() {
+		if (values == null && matrix != null) {
+			values = toLists(matrix);
+			matrix = null;
+		}
 		return values;
 	}
+	/**
+	 * @param values the rows, kept as they are so later changes to them 
+	 *        change the dataset
+	 */
 	public void setValues(List<List<Float>> values) {
 		this.values = values;
+		this.matrix = null;
+	}
+	/**
+	 * @return the matrix the values are kept in, or a new matrix with a 
+	 *         copy of the values if they are kept in lists. Rows shorter 
+	 *         than the longest are filled up with <code>NaN</code>.
+	 */
+	public FloatMatrix getMatrix() {
+		if (values != null) {
+			return toMatrix(values);
+		}
+		return matrix;
+	}
+	/**
+	 * @param matrix the values, kept in the matrix instead of in lists
+	 */
+	public void setMatrix(FloatMatrix matrix) {
+		this.matrix = matrix;
+		this.values = null;
+	}
+	
+	/**
+	 * @return the values of a row, copied into a new array
+	 */
+	public float[] getRow(int row) {
+		if (values == null) {
+			return matrix.getRow(row, null);
+		}
+		List<Float> list = values.get(row);
+		float[] copy = new float[list.size()];
+		for (int c = 0; c < copy.length; c++) {
+			copy[c] = toFloat(list.get(c));
+		}
+		return copy;
+	}
+	
+	/**
+	 * @return the values of a column, copied into a new array. Rows too 
+	 *         short to have the column give <code>NaN</code>.
+	 */
+	public float[] getColumn(int column) {
+		if (values == null) {
+			return matrix.getColumn(column, null);
+		}
+		float[] copy = new float[values.size()];
+		int r = 0;
+		for (List<Float> row : values) {
+			copy[r++] = column < row.size() ? toFloat(row.get(column)) 
+			                                : Float.NaN;
+		}
+		return copy;
+	}
+	
+	private static float toFloat(Float value) {
+		return value == null ? Float.NaN : value;
+	}
+	
+	private static List<List<Float>> toLists(FloatMatrix matrix) {
+		List<List<Float>> lists 
+			= new ArrayList<List<Float>>(matrix.getRowCount());
+		float[] row = null;
+		for (int r = 0; r < matrix.getRowCount(); r++) {
+			row = matrix.getRow(r, row);
+			List<Float> list = new ArrayList<Float>(row.length);
+			for (float value : row) {
+				list.add(value);
+			}
+			lists.add(list);
+		}
+		return lists;
+	}
+	
+	private static FloatMatrix toMatrix(List<List<Float>> values) {
+		int columns = 0;
+		for (List<Float> row : values) {
+			columns = Math.max(columns, row.size());
+		}
+		FloatMatrix matrix = new FloatMatrix(columns, isOffHeap());
+		float[] copy = new float[columns];
+		for (List<Float> row : values) {
+			for (int c = 0; c < columns; c++) {
+				copy[c] = c < row.size() ? toFloat(row.get(c)) : Float.NaN;
+			}
+			matrix.addRow(copy);
+		}
+		return matrix;
+	}
+	
+	private static boolean isOffHeap() {
+		return Boolean.getBoolean("bioclipse.dataset.offHeap");
 	}
 	
 	public DenseDataset() {
@@ -70,6 +188,14 @@ public class DenseDataset implements IDataset{
 		this.values = values;
 	}
 
+	public DenseDataset(List<String> colHeaders, List<String> rowHeaders,
+			FloatMatrix matrix) {
+		super();
+		this.colHeaders = colHeaders;
+		this.rowHeaders = rowHeaders;
+		this.matrix = matrix;
+	}
+
 	public DenseDataset(List<String> colHeaders, List<String> rowHeaders,
 			List<List<Float>> values, String responseProperty,
 			List<String> responseValues) {
@@ -92,39 +218,21 @@ public class DenseDataset implements IDataset{
 		return asCSV(CSV_SEPARATOR);
 	}
 	
+	/**
+	 * Collects the CSV in a string. Use a {@link DatasetWriter} to write 
+	 * large datasets to a file without doing so.
+	 */
 	public String asCSV(String separator) {
 
-		//Collect as Stringbuffer
-		StringBuffer buf = new StringBuffer(50000);
-		String rowstring = getCSVString(colHeaders, separator);
-		if (responseProperty!=null)
-			 rowstring = rowstring + responseProperty;
-
-		buf.append("Molceulce" + separator + rowstring + "\n");
-
-		int c=0;
-		for (List<Float> row : values){
-			rowstring = getCSVString(row, separator);
-			buf.append(rowHeaders.get(c) + separator + rowstring);
-
-			if (responseProperty!=null)
-				buf.append(responseValues.get(c));
-
-			buf.append("\n");
-			c++;
-			if (c%10==0)
-				System.out.println("Processed " + c + "/" + values.size() + " rows");
-		}
-		return buf.toString();
-	}
-
-	private String getCSVString(List<?> entries, String separator) {
-		
-		StringBuffer b = new StringBuffer();
-		for (Object s : entries){
-			b.append(s + separator);
+		DatasetWriter writer = new DatasetWriter(DatasetWriter.Format.CSV);
+		writer.setSeparator(separator);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(50000);
+		try {
+			writer.write(this, out, null);
+			return out.toString("UTF-8");
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
 		}
-		return b.toString();
 	}
 
 	
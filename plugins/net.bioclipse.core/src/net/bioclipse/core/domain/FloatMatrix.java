@@ -0,0 +1,428 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.domain;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A matrix of primitive floats, stored row by row in blocks of about a
+ * million values. The blocks are <code>float</code> arrays, or direct
+ * buffers outside of the Java heap if the matrix is off heap. Rows are
+ * appended one at a time or in bulk; only the rows in the last block are
+ * moved, when it grows.
+ * <p>
+ * Missing values are stored as <code>NaN</code>. {@link #asLists()} gives
+ * a <code>List&lt;List&lt;Float&gt;&gt;</code> view of the matrix for code
+ * written against lists; it boxes every value read through it so bulk
+ * work should use
+ * {@link #getRow(int, float[])} and {@link #getColumn(int, float[])}.
+ * <p>
+ * A matrix can be read by several threads at once but must not be
+ * changed while being read.
+ *
+ * @author jonalv
+ */
+public class FloatMatrix {
+
+    /** the most values in a block, 4 MB of floats */
+    static final int BLOCK_VALUES = 1 << 20;
+
+    private final int columns;
+    private final boolean offHeap;
+    /** rows per block is 1 << blockShift */
+    private final int blockShift;
+    private final int blockMask;
+
+    private FloatBuffer[] blocks = new FloatBuffer[0];
+    private int rows;
+
+    /**
+     * Creates an empty matrix.
+     *
+     * @param columns the number of values in each row
+     * @param offHeap whether to keep the values outside of the Java heap
+     */
+    public FloatMatrix( int columns, boolean offHeap ) {
+        if ( columns < 0 ) {
+            throw new IllegalArgumentException(
+                "Negative number of columns: " + columns );
+        }
+        this.columns = columns;
+        this.offHeap = offHeap;
+        int shift = 0;
+        while ( ( 2 << shift ) * Math.max( 1, columns ) <= BLOCK_VALUES ) {
+            shift++;
+        }
+        blockShift = shift;
+        blockMask  = ( 1 << shift ) - 1;
+    }
+
+    /**
+     * Creates a matrix of zeros.
+     */
+    public FloatMatrix( int rows, int columns, boolean offHeap ) {
+        this( columns, offHeap );
+        if ( rows < 0 ) {
+            throw new IllegalArgumentException(
+                "Negative number of rows: " + rows );
+        }
+        ensureCapacity( rows );
+        this.rows = rows;
+    }
+
+    /**
+     * Copies lists of values into a new matrix. Lists returned by
+     * {@link #asLists()} are not copied, their matrix is returned.
+     *
+     * @param values rows of the same length, <code>null</code> values are
+     *               stored as <code>NaN</code>
+     * @param offHeap whether a new matrix keeps the values outside of the
+     *                Java heap
+     * @throws IllegalArgumentException if the rows differ in length
+     */
+    public static FloatMatrix valueOf( List<? extends List<Float>> values,
+                                       boolean offHeap ) {
+        if ( values instanceof Rows ) {
+            return ( (Rows) values ).matrix();
+        }
+        FloatMatrix matrix = new FloatMatrix(
+            values.isEmpty() ? 0 : values.get( 0 ).size(), offHeap );
+        matrix.ensureCapacity( values.size() );
+        for ( List<Float> row : values ) {
+            matrix.addRow( matrix.toFloats( row ) );
+        }
+        return matrix;
+    }
+
+    public int getRowCount() {
+        return rows;
+    }
+
+    public int getColumnCount() {
+        return columns;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public float get( int row, int column ) {
+        checkRow( row );
+        checkColumn( column );
+        return blocks[row >>> blockShift].get( offset( row ) + column );
+    }
+
+    public void set( int row, int column, float value ) {
+        checkRow( row );
+        checkColumn( column );
+        blocks[row >>> blockShift].put( offset( row ) + column, value );
+    }
+
+    /**
+     * Copies a row into an array.
+     *
+     * @param into an array of at least as many values as there are
+     *             columns, or <code>null</code>
+     * @return <code>into</code>, or a new array if it was
+     *         <code>null</code>
+     */
+    public float[] getRow( int row, float[] into ) {
+        checkRow( row );
+        if ( into == null ) {
+            into = new float[columns];
+        }
+        FloatBuffer block = blocks[row >>> blockShift];
+        if ( block.hasArray() ) {
+            System.arraycopy( block.array(),
+                              block.arrayOffset() + offset( row ),
+                              into,
+                              0,
+                              columns );
+        }
+        else {
+            FloatBuffer b = block.duplicate();
+            b.position( offset( row ) );
+            b.get( into, 0, columns );
+        }
+        return into;
+    }
+
+    /**
+     * Copies a column into an array.
+     *
+     * @param into an array of at least as many values as there are rows,
+     *             or <code>null</code>
+     * @return <code>into</code>, or a new array if it was
+     *         <code>null</code>
+     */
+    public float[] getColumn( int column, float[] into ) {
+        checkColumn( column );
+        if ( into == null ) {
+            into = new float[rows];
+        }
+        int row = 0;
+        for ( int b = 0; row < rows; b++ ) {
+            FloatBuffer block = blocks[b];
+            int end = Math.min( rows, row + ( 1 << blockShift ) );
+            if ( block.hasArray() ) {
+                float[] array = block.array();
+                int i = block.arrayOffset() + column;
+                for ( ; row < end; row++, i += columns ) {
+                    into[row] = array[i];
+                }
+            }
+            else {
+                for ( int i = column; row < end; row++, i += columns ) {
+                    into[row] = block.get( i );
+                }
+            }
+        }
+        return into;
+    }
+
+    /**
+     * Replaces the values of a row with the first values of an array.
+     */
+    public void setRow( int row, float[] values ) {
+        checkRow( row );
+        checkLength( values.length );
+        FloatBuffer block = blocks[row >>> blockShift];
+        if ( block.hasArray() ) {
+            System.arraycopy( values,
+                              0,
+                              block.array(),
+                              block.arrayOffset() + offset( row ),
+                              columns );
+        }
+        else {
+            FloatBuffer b = block.duplicate();
+            b.position( offset( row ) );
+            b.put( values, 0, columns );
+        }
+    }
+
+    /**
+     * Appends a row.
+     */
+    public void addRow( float[] values ) {
+        checkLength( values.length );
+        ensureCapacity( rows + 1 );
+        rows++;
+        setRow( rows - 1, values );
+    }
+
+    /**
+     * Appends rows stored one after another in an array.
+     *
+     * @param values the values of the rows, row by row
+     * @throws IllegalArgumentException if the number of values is not a
+     *         multiple of the number of columns
+     */
+    public void addRows( float[] values ) {
+        if ( columns == 0 || values.length % columns != 0 ) {
+            throw new IllegalArgumentException(
+                values.length + " values is not a number of rows of "
+                + columns + " values" );
+        }
+        int added = values.length / columns;
+        ensureCapacity( rows + added );
+        int row = rows;
+        rows += added;
+        int from = 0;
+        while ( row < rows ) {
+            // as many rows as fit in the block at once
+            int rowsInBlock = Math.min( rows - row,
+                                        ( 1 << blockShift )
+                                        - ( row & blockMask ) );
+            FloatBuffer b = blocks[row >>> blockShift].duplicate();
+            b.position( offset( row ) );
+            b.put( values, from, rowsInBlock * columns );
+            from += rowsInBlock * columns;
+            row  += rowsInBlock;
+        }
+    }
+
+    /**
+     * @return a view of the rows as lists. Rows can be appended to and
+     *         replaced in it and values can be set in its rows, which
+     *         changes this matrix. <code>NaN</code> is read for missing
+     *         values.
+     */
+    public List<List<Float>> asLists() {
+        return new Rows();
+    }
+
+    private int offset( int row ) {
+        return ( row & blockMask ) * columns;
+    }
+
+    private void ensureCapacity( int capacity ) {
+        int rowsPerBlock = 1 << blockShift;
+        int needed = ( capacity + rowsPerBlock - 1 ) >>> blockShift;
+        if ( needed > blocks.length ) {
+            FloatBuffer[] grown = new FloatBuffer[needed];
+            System.arraycopy( blocks, 0, grown, 0, blocks.length );
+            blocks = grown;
+        }
+        // the blocks before the one with the last row are full already
+        for ( int b = rows == 0 ? 0 : ( rows - 1 ) >>> blockShift;
+              b < needed;
+              b++ ) {
+            int rowsInBlock = Math.min( rowsPerBlock,
+                                        capacity - b * rowsPerBlock );
+            FloatBuffer block = blocks[b];
+            if ( block != null && block.capacity() >= rowsInBlock * columns ) {
+                continue;
+            }
+            // only the last block grows, at least doubling
+            int size = rowsInBlock == rowsPerBlock || block == null
+                       ? rowsInBlock
+                       : Math.min( rowsPerBlock,
+                                   Math.max( rowsInBlock,
+                                             2 * block.capacity()
+                                             / Math.max( 1, columns ) ) );
+            FloatBuffer grown = allocate( size * columns );
+            if ( block != null ) {
+                block = block.duplicate();
+                block.clear();
+                grown.put( block );
+                grown.clear();
+            }
+            blocks[b] = grown;
+        }
+    }
+
+    private FloatBuffer allocate( int values ) {
+        if ( offHeap ) {
+            return ByteBuffer.allocateDirect( values * 4 )
+                             .order( ByteOrder.nativeOrder() )
+                             .asFloatBuffer();
+        }
+        return FloatBuffer.wrap( new float[values] );
+    }
+
+    private void checkRow( int row ) {
+        if ( row < 0 || row >= rows ) {
+            throw new IndexOutOfBoundsException(
+                "Row: " + row + ", rows: " + rows );
+        }
+    }
+
+    private void checkColumn( int column ) {
+        if ( column < 0 || column >= columns ) {
+            throw new IndexOutOfBoundsException(
+                "Column: " + column + ", columns: " + columns );
+        }
+    }
+
+    private void checkLength( int length ) {
+        if ( length < columns ) {
+            throw new IllegalArgumentException(
+                "Row of " + length + " values, expected " + columns );
+        }
+    }
+
+    private float[] toFloats( List<Float> row ) {
+        if ( row.size() != columns ) {
+            throw new IllegalArgumentException(
+                "Row of " + row.size() + " values, expected " + columns );
+        }
+        float[] values = new float[columns];
+        for ( int i = 0; i < columns; i++ ) {
+            Float value = row.get( i );
+            values[i] = value == null ? Float.NaN : value;
+        }
+        return values;
+    }
+
+    private class Rows extends AbstractList<List<Float>>
+                       implements RandomAccess {
+
+        FloatMatrix matrix() {
+            return FloatMatrix.this;
+        }
+
+        @Override
+        public List<Float> get( int row ) {
+            checkRow( row );
+            return new Row( row );
+        }
+
+        @Override
+        public int size() {
+            return rows;
+        }
+
+        @Override
+        public List<Float> set( int row, List<Float> values ) {
+            float[] old = getRow( row, null );
+            setRow( row, toFloats( values ) );
+            return new Row( old );
+        }
+
+        @Override
+        public void add( int index, List<Float> values ) {
+            if ( index != rows ) {
+                throw new UnsupportedOperationException(
+                    "Rows can only be appended" );
+            }
+            addRow( toFloats( values ) );
+            modCount++;
+        }
+    }
+
+    /** a row of the matrix, or a copy of one */
+    private class Row extends AbstractList<Float> implements RandomAccess {
+
+        private final int row;
+        private final float[] copy;
+
+        Row( int row ) {
+            this.row  = row;
+            this.copy = null;
+        }
+
+        Row( float[] copy ) {
+            this.row  = -1;
+            this.copy = copy;
+        }
+
+        @Override
+        public Float get( int column ) {
+            if ( copy != null ) {
+                return copy[column];
+            }
+            return FloatMatrix.this.get( row, column );
+        }
+
+        @Override
+        public Float set( int column, Float value ) {
+            if ( copy != null ) {
+                throw new UnsupportedOperationException();
+            }
+            float old = FloatMatrix.this.get( row, column );
+            FloatMatrix.this.set( row,
+                                  column,
+                                  value == null ? Float.NaN : value );
+            return old;
+        }
+
+        @Override
+        public int size() {
+            return columns;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.domain;
+
+/**
+ * Generates the UIDs of BioObjects. A BioObject asks for its UID the first 
+ * time <code>getUID()</code> is called on it, so implementations must be 
+ * thread safe.
+ * 
+ * @see BioObject#setUIDGenerator(IUIDGenerator)
+ * @author jonalv
+ */
+public interface IUIDGenerator {
+
+    /**
+     * @return a new UID, never returned before during this or any other 
+     *         session
+     */
+    public String nextUID();
+}
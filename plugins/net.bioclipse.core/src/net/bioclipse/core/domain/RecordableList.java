@@ -15,13 +15,9 @@ package net.bioclipse.core.domain;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
-import java.util.Map;
-import java.util.Stack;
 
 import org.eclipse.ui.views.properties.IPropertySource;
 
@@ -37,13 +33,9 @@ public class RecordableList<T extends IBioObject> extends BioObject
      */
     private IPropertySource propertySource;
 
-    //<bioList.id, list of bioObjects in that biolist>
-    private static Map<String, List<String>> createdLists 
-         = Collections.synchronizedMap( new HashMap<String, List<String>>() );
-    
-    //<bioObject.id, bioList.id>
-    private static Map<String, Stack<String>> listIdForObject 
-         = Collections.synchronizedMap( new HashMap<String, Stack<String>>() );
+    /** which lists contain which BioObjects */
+    private static final RecordableListIndex memberships 
+        = new RecordableListIndex();
     
     public List<T> list = new ArrayList<T>();
     
@@ -55,104 +47,74 @@ public class RecordableList<T extends IBioObject> extends BioObject
         this.list = new ArrayList<T>(list);
     }
 
+    /**
+     * @param members to hold instead of the members of this list
+     * @return a list with the same UID as this one, to be handed out in 
+     *         place of it without changing it
+     */
+    public RecordableList<T> withMembers(List<T> members) {
+        RecordableList<T> copy = new RecordableList<T>(members);
+        shareUID( copy );
+        memberships.changed( copy );
+        return copy;
+    }
+
     /**
      * @param id for the sought after bioObject
      * @return id of the latest updated list conatining the bioobject 
      *         with the given id 
      */
     public static String idOfListContainingBioObject(String id) {
-        if(!listIdForObject.containsKey(id)) {
-            throw new IllegalStateException( "No bioObjectlist containing " +
-                                             "that object could be found" );
-        }
-        return listIdForObject.get(id).peek();
-    }
-    
-    public static int positionOfBioObjectInList( String id ) {
-        List<String> list = createdLists.get(idOfListContainingBioObject(id));
-        for (int i = 0; i < list.size(); i++) {
-            if( id.equals(list.get(i))) {
-                return i;
-            }
-        }
-        throw new IllegalStateException( "No bioObjectlist containing " +
-                                         "that object could be found" );
-    }
-    
-    public static boolean existsListContaining(String bioObjectId) {
-        for( List<String> l : createdLists.values() ) {
-            if(l.contains(bioObjectId)) {
-                return true;
-            }
-        }
-        return false;
+        return memberships.latestListContaining( id );
     }
     
     /**
-     *  Updates the created lists table.
+     * @param id for the sought after bioObject
+     * @return position of the bioobject in the latest updated list 
+     *         containing it
      */
-    private void updateCreatedLists( RecordableList<? extends IBioObject> list ) {
-        
-        createdLists.remove(list.getUID());
-        clearListIdForObject( list.getUID() );
-        
-        List<String> newList = new ArrayList<String>();
-        for( IBioObject b : list) {
-            newList.add( b.getUID() );
-            if (listIdForObject.containsKey(b.getUID())) {
-                listIdForObject.get(b.getUID()).push( list.getUID() );
-            }
-            else {
-                Stack<String> newStack = new Stack<String>();
-                newStack.push( list.getUID() );
-                listIdForObject.put(b.getUID(), newStack);
-            }
-        }
-        createdLists.put( list.getUID(), newList );
+    public static int positionOfBioObjectInList( String id ) {
+        return memberships.positionInLatestList( id );
     }
     
-    private void clearListIdForObject(String listId) {
-        
-        for( String objectId : listIdForObject.keySet() ) {
-            Stack<String> stack = listIdForObject.get(objectId);
-            synchronized ( stack ) {
-                if( stack.contains(listId) )
-                    stack.remove(listId);
-            }
-        }
+    public static boolean existsListContaining(String bioObjectId) {
+        return memberships.contains( bioObjectId );
     }
 
     @Recorded
     public boolean add(T e) {
         boolean b = list.add(e);
-        updateCreatedLists(this);
+        memberships.added( this, e, list.size() - 1, true );
         return b;
     }
 
     @Recorded
     public void add(int index, T element) {
         list.add(index, element);
-        updateCreatedLists(this);
+        memberships.added( this, element, index, index == list.size() - 1 );
     }
 
     @Recorded
     public boolean addAll(Collection<? extends T> c) {
+        int start = list.size();
         boolean b = list.addAll(c);
-        updateCreatedLists(this);
+        for ( int i = start; i < list.size(); i++ ) {
+            memberships.added( this, list.get( i ), i, true );
+        }
         return b;
     }
 
     @Recorded
     public boolean addAll(int index, Collection<? extends T> c) {
         boolean b = list.addAll(index, c);
-        updateCreatedLists(this);
+        memberships.changed( this );
         return b;
     }
 
     @Recorded
     public void clear() {
         list.clear();
-        updateCreatedLists(this);
+        memberships.changed( this );
     }
 
     @Recorded
@@ -199,36 +161,40 @@ public class RecordableList<T extends IBioObject> extends BioObject
 
     @Recorded
     public boolean remove(Object o) {
-        boolean b = list.remove(o);
-        updateCreatedLists(this);
-        return b;
+        int i = list.indexOf(o);
+        if ( i == -1 ) {
+            return false;
+        }
+        memberships.removed( this, list.remove(i) );
+        return true;
     }
 
     @Recorded
     public T remove(int index) {
         T t = list.remove(index);
-        updateCreatedLists(this);
+        memberships.removed( this, t );
         return t;
     }
 
     @Recorded
     public boolean removeAll(Collection<?> c) {
         boolean b = list.removeAll(c);
-        updateCreatedLists(this);
+        memberships.changed( this );
         return b;
     }
 
     @Recorded
     public boolean retainAll(Collection<?> c) {
         boolean b = list.retainAll(c);
-        updateCreatedLists(this);
+        memberships.changed( this );
         return b;
     }
 
     @Recorded
     public T set(int index, T element) {
         T t = list.set(index, element);
-        updateCreatedLists(this);
+        memberships.removed( this, t );
+        memberships.added( this, element, index, false );
         return t;
     }
 
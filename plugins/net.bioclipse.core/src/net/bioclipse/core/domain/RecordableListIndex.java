@@ -0,0 +1,287 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.domain;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of which RecordableLists contain which BioObjects, in both
+ * directions: from a list to the UIDs of its members and from a member UID
+ * to the lists containing it. The index is updated with each change to a
+ * list instead of being rebuilt, so building a list one element at a time
+ * is linear.
+ * <p>
+ * The lists are only weakly referenced. When a list has been garbage
+ * collected its entries are removed on the next change or lookup, so the
+ * index never holds more than the members of the lists still in use.
+ *
+ * @author jonalv
+ */
+class RecordableListIndex {
+
+    /**
+     * The index entry of one list. Holds the member UIDs itself so they can
+     * be removed from the index after the list is gone.
+     */
+    private static class ListEntry
+                   extends WeakReference<RecordableList<?>> {
+
+        final String uid;
+        /** UID of each member, mapped to the number of times it occurs */
+        final Map<String, Integer> members = new HashMap<String, Integer>();
+        /** first position of each member, <code>null</code> when stale */
+        Map<String, Integer> positions = new HashMap<String, Integer>();
+        /** when the list was last changed */
+        long changed;
+
+        ListEntry( RecordableList<?> list,
+                   ReferenceQueue<RecordableList<?>> queue ) {
+            super( list, queue );
+            this.uid = list.getUID();
+        }
+    }
+
+    private final ReferenceQueue<RecordableList<?>> queue
+        = new ReferenceQueue<RecordableList<?>>();
+    private final Map<String, ListEntry> lists
+        = new HashMap<String, ListEntry>();
+    /** member UID to the lists containing it, usually just a few */
+    private final Map<String, List<ListEntry>> listsForMember
+        = new HashMap<String, List<ListEntry>>();
+    private long clock;
+
+    /**
+     * Records that <code>member</code> was put into <code>list</code> at
+     * <code>index</code>.
+     *
+     * @param appended whether it was added last so no other member moved
+     */
+    synchronized void added( RecordableList<?> list,
+                             IBioObject member,
+                             int index,
+                             boolean appended ) {
+        expunge();
+        if ( !isIndexed( list ) ) {
+            changed( list );
+            return;
+        }
+        ListEntry entry = entryFor( list );
+        entry.changed = ++clock;
+        if ( member == null ) {
+            entry.positions = null;
+            return;
+        }
+        addMember( entry, member.getUID() );
+        if ( !appended ) {
+            entry.positions = null;
+        }
+        else if ( entry.positions != null
+                  && !entry.positions.containsKey( member.getUID() ) ) {
+            entry.positions.put( member.getUID(), index );
+        }
+    }
+
+    /**
+     * Records that <code>member</code> was taken out of <code>list</code>.
+     */
+    synchronized void removed( RecordableList<?> list, IBioObject member ) {
+        expunge();
+        if ( !isIndexed( list ) ) {
+            changed( list );
+            return;
+        }
+        ListEntry entry = entryFor( list );
+        entry.changed   = ++clock;
+        entry.positions = null;
+        if ( member != null ) {
+            removeMember( entry, member.getUID() );
+        }
+    }
+
+    /**
+     * Reindexes all members of <code>list</code>, for changes touching
+     * many of them.
+     */
+    synchronized void changed( RecordableList<?> list ) {
+        expunge();
+        ListEntry entry = entryFor( list );
+        entry.changed   = ++clock;
+        entry.positions = null;
+        for ( String uid : new ArrayList<String>( entry.members.keySet() ) ) {
+            removeAll( entry, uid );
+        }
+        for ( IBioObject member : list.list ) {
+            if ( member != null ) {
+                addMember( entry, member.getUID() );
+            }
+        }
+    }
+
+    /**
+     * @return whether any list contains the BioObject with the given UID
+     */
+    synchronized boolean contains( String uid ) {
+        expunge();
+        return listsForMember.containsKey( uid );
+    }
+
+    /**
+     * @return UID of the most recently changed list containing the
+     *         BioObject with the given UID
+     * @throws IllegalStateException if there is no such list
+     */
+    synchronized String latestListContaining( String uid ) {
+        return latestEntryContaining( uid ).uid;
+    }
+
+    /**
+     * @return the position of the BioObject with the given UID in the most
+     *         recently changed list containing it
+     * @throws IllegalStateException if there is no such list
+     */
+    synchronized int positionInLatestList( String uid ) {
+        ListEntry entry = latestEntryContaining( uid );
+        if ( entry.positions == null ) {
+            RecordableList<?> list = entry.get();
+            if ( list == null ) {
+                throw noListContaining();
+            }
+            Map<String, Integer> positions = new HashMap<String, Integer>();
+            int i = 0;
+            for ( IBioObject member : list.list ) {
+                if ( member != null
+                     && !positions.containsKey( member.getUID() ) ) {
+                    positions.put( member.getUID(), i );
+                }
+                i++;
+            }
+            entry.positions = positions;
+        }
+        Integer position = entry.positions.get( uid );
+        if ( position == null ) {
+            throw noListContaining();
+        }
+        return position;
+    }
+
+    /**
+     * @return the number of lists in the index, for testing
+     */
+    synchronized int size() {
+        expunge();
+        return lists.size();
+    }
+
+    private ListEntry latestEntryContaining( String uid ) {
+        expunge();
+        List<ListEntry> entries = listsForMember.get( uid );
+        ListEntry latest = null;
+        if ( entries != null ) {
+            for ( ListEntry e : entries ) {
+                if ( ( latest == null || e.changed > latest.changed )
+                     && e.get() != null ) {
+                    latest = e;
+                }
+            }
+        }
+        if ( latest == null ) {
+            throw noListContaining();
+        }
+        return latest;
+    }
+
+    private static IllegalStateException noListContaining() {
+        return new IllegalStateException( "No bioObjectlist containing " +
+                                          "that object could be found" );
+    }
+
+    /**
+     * @return whether the entry for the UID of <code>list</code> is for 
+     *         this very list. A list first seen, or a copy sharing the UID 
+     *         of another list, has to be indexed as a whole.
+     */
+    private boolean isIndexed( RecordableList<?> list ) {
+        ListEntry entry = lists.get( list.getUID() );
+        return entry != null && entry.get() == list;
+    }
+
+    private ListEntry entryFor( RecordableList<?> list ) {
+        ListEntry entry = lists.get( list.getUID() );
+        if ( entry == null || entry.get() != list ) {
+            if ( entry != null ) {
+                forget( entry );
+            }
+            entry = new ListEntry( list, queue );
+            lists.put( entry.uid, entry );
+        }
+        return entry;
+    }
+
+    private void addMember( ListEntry entry, String uid ) {
+        Integer count = entry.members.get( uid );
+        entry.members.put( uid, count == null ? 1 : count + 1 );
+        if ( count == null ) {
+            List<ListEntry> entries = listsForMember.get( uid );
+            if ( entries == null ) {
+                entries = new ArrayList<ListEntry>( 2 );
+                listsForMember.put( uid, entries );
+            }
+            entries.add( entry );
+        }
+    }
+
+    private void removeMember( ListEntry entry, String uid ) {
+        Integer count = entry.members.get( uid );
+        if ( count == null ) {
+            return;
+        }
+        if ( count > 1 ) {
+            entry.members.put( uid, count - 1 );
+        }
+        else {
+            removeAll( entry, uid );
+        }
+    }
+
+    private void removeAll( ListEntry entry, String uid ) {
+        entry.members.remove( uid );
+        List<ListEntry> entries = listsForMember.get( uid );
+        if ( entries != null ) {
+            entries.remove( entry );
+            if ( entries.isEmpty() ) {
+                listsForMember.remove( uid );
+            }
+        }
+    }
+
+    private void forget( ListEntry entry ) {
+        for ( String uid : new ArrayList<String>( entry.members.keySet() ) ) {
+            removeAll( entry, uid );
+        }
+        if ( lists.get( entry.uid ) == entry ) {
+            lists.remove( entry.uid );
+        }
+    }
+
+    /**
+     * Removes the entries of the lists that have been garbage collected.
+     */
+    private void expunge() {
+        for ( Object gone = queue.poll(); gone != null; gone = queue.poll() ) {
+            forget( (ListEntry) gone );
+        }
+    }
+}
@@ -0,0 +1,434 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.domain;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.bioclipse.core.business.BioclipseException;
+import net.bioclipse.core.domain.IMolecule.Property;
+
+/**
+ * The representations of a molecule other than the one it was created
+ * from, worked out when first asked for and then kept until the molecule
+ * changes. A {@link CMLMolecule} can thus hand out SMILES, once something
+ * has converted it, without it being converted again:
+ * <pre>
+ *   String smiles = molecule.getRepresentations().get(
+ *       RepresentationCache.SMILES,
+ *       Property.USE_CACHED_OR_CALCULATED,
+ *       new RepresentationCache.Converter&lt;String&gt;() {
+ *           public String convert() throws BioclipseException {
+ *               return ... ;
+ *           }
+ *       } );
+ * </pre>
+ * Plugins that can convert between representations, like CDK, register a
+ * {@link Translator} with {@link #setTranslator(Key, Key, Translator)};
+ * <code>CMLMolecule.toSMILES()</code> and 
+ * <code>SMILESMolecule.toCML()</code> then convert once and cache.
+ * <p>
+ * Values are held through soft references, so the garbage collector can
+ * take them when memory runs low. All caches together also keep no more
+ * than a budget of bytes, by default 32 MB or the number of megabytes in
+ * system property <code>bioclipse.molecule.cache.size</code>, and the
+ * values used longest ago are dropped first when it is exceeded. The 
+ * values of a cache no longer in use stop counting once the garbage 
+ * collector has taken the cache.
+ *
+ * @author jonalv
+ */
+public class RepresentationCache {
+
+    /**
+     * A kind of representation that can be cached.
+     */
+    public static final class Key<T> {
+
+        private final int index;
+        private final String name;
+
+        private Key( int index, String name ) {
+            this.index = index;
+            this.name  = name;
+        }
+
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Works out a representation that is not cached.
+     */
+    public interface Converter<T> {
+        public T convert() throws BioclipseException;
+    }
+
+    /**
+     * Converts a molecule from one string representation to another.
+     */
+    public interface Translator {
+        public String translate( String source ) throws BioclipseException;
+    }
+
+    public static final Key<String> CML = new Key<String>( 0, "CML" );
+
+    public static final Key<String> SMILES = new Key<String>( 1, "SMILES" );
+
+    /**
+     * A parsed XOM <code>nu.xom.Document</code> of the CML. The core plugin
+     * does not depend on XOM, so it is cached as an <code>Object</code> by
+     * those who parse it.
+     */
+    public static final Key<Object> DOCUMENT
+        = new Key<Object>( 2, "document" );
+
+    /**
+     * A hash of the content the molecule was created from, see
+     * {@link #hashOf(String)}.
+     */
+    public static final Key<String> HASH = new Key<String>( 3, "hash" );
+
+    private static final int KEYS = 4;
+
+    private static final Budget budget = new Budget(
+        Long.getLong( "bioclipse.molecule.cache.size", 32 ) * 1024 * 1024 );
+
+    private static final ConcurrentMap<String, Translator> translators
+        = new ConcurrentHashMap<String, Translator>();
+
+    private final Value[] values = new Value[KEYS];
+
+    /** refers to this cache from its values, created with the first one */
+    private Owner owner;
+
+    /** counts changes so that values worked out before one are not kept */
+    private int generation;
+
+    /** length of the string the molecule was created from, -1 if unknown */
+    private int sourceLength = -1;
+
+    /**
+     * Gets a representation.
+     *
+     * @param property {@link Property#USE_CACHED} to return only a cached
+     *                 value, <code>null</code> if there is none,
+     *                 {@link Property#USE_CACHED_OR_CALCULATED} to convert
+     *                 and cache if there is none, or
+     *                 {@link Property#USE_CALCULATED} to always convert
+     *                 and cache
+     * @param converter works out the value, not needed for
+     *                  {@link Property#USE_CACHED}
+     * @throws BioclipseException if the converter does
+     */
+    public <T> T get( Key<T> key, Property property, Converter<T> converter )
+                 throws BioclipseException {
+        int seen;
+        synchronized ( this ) {
+            if ( property != Property.USE_CALCULATED ) {
+                T value = cached( key );
+                if ( value != null || property == Property.USE_CACHED ) {
+                    return value;
+                }
+            }
+            seen = generation;
+        }
+        T value = converter.convert();
+        synchronized ( this ) {
+            if ( seen == generation ) {
+                store( key, value );
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return the cached representation or <code>null</code>
+     */
+    public synchronized <T> T get( Key<T> key ) {
+        return cached( key );
+    }
+
+    /**
+     * Caches a representation worked out elsewhere.
+     */
+    public synchronized <T> void put( Key<T> key, T value ) {
+        store( key, value );
+    }
+
+    /**
+     * Sets the length of the string the molecule was created from, which 
+     * the size of a parsed document of it is guessed from.
+     */
+    public synchronized void setSourceLength( int length ) {
+        sourceLength = length;
+    }
+
+    /**
+     * Drops all cached representations. Called when the molecule changes.
+     */
+    public synchronized void invalidate() {
+        generation++;
+        for ( int i = 0; i < KEYS; i++ ) {
+            if ( values[i] != null ) {
+                budget.remove( values[i] );
+                values[i] = null;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T cached( Key<T> key ) {
+        Value cached = values[key.index];
+        Object value = cached == null ? null : cached.get();
+        if ( value != null ) {
+            budget.touch( cached );
+        }
+        return (T) value;
+    }
+
+    private void store( Key<?> key, Object value ) {
+        if ( values[key.index] != null ) {
+            budget.remove( values[key.index] );
+            values[key.index] = null;
+        }
+        if ( value != null ) {
+            if ( owner == null ) {
+                owner = budget.newOwner( this );
+            }
+            values[key.index] = budget.add( value, sizeOf( value ), owner );
+        }
+    }
+
+    /**
+     * @return roughly the bytes taken by a value. Documents are guessed at
+     *         ten times the cached CML, or the string the molecule was 
+     *         created from, or 16 kB if neither is known.
+     */
+    private long sizeOf( Object value ) {
+        if ( value instanceof String ) {
+            return sizeOf( ( (String) value ).length() );
+        }
+        Value cml = values[CML.index];
+        Object string = cml == null ? null : cml.get();
+        if ( string != null ) {
+            return 10 * sizeOf( string );
+        }
+        return sourceLength < 0 ? 16 * 1024
+                                : 10 * sizeOf( sourceLength );
+    }
+
+    private static long sizeOf( int length ) {
+        return 40 + 2 * length;
+    }
+
+    /**
+     * Registers how to convert molecules from one representation to 
+     * another, replacing any translator registered before.
+     *
+     * @param translator the translator, or <code>null</code> to remove it
+     */
+    public static void setTranslator( Key<String> from,
+                                      Key<String> to,
+                                      Translator translator ) {
+        if ( translator == null ) {
+            translators.remove( from + "->" + to );
+        }
+        else {
+            translators.put( from + "->" + to, translator );
+        }
+    }
+
+    /**
+     * @return the registered translator or <code>null</code>
+     */
+    public static Translator getTranslator( Key<String> from, 
+                                            Key<String> to ) {
+        return translators.get( from + "->" + to );
+    }
+
+    /**
+     * @return a hex encoded SHA-1 digest of the UTF-8 bytes of the content
+     */
+    public static String hashOf( String content ) {
+        try {
+            byte[] digest = MessageDigest.getInstance( "SHA-1" )
+                                         .digest( content.getBytes( "UTF-8" ) );
+            StringBuilder hex = new StringBuilder( 2 * digest.length );
+            for ( byte b : digest ) {
+                hex.append( Character.forDigit( ( b >> 4 ) & 0xf, 16 ) )
+                   .append( Character.forDigit( b & 0xf, 16 ) );
+            }
+            return hex.toString();
+        }
+        catch ( NoSuchAlgorithmException e ) {
+            throw new IllegalStateException( "No SHA-1 available", e );
+        }
+        catch ( UnsupportedEncodingException e ) {
+            throw new IllegalStateException( "No UTF-8 available", e );
+        }
+    }
+
+    /**
+     * Sets the number of bytes all caches together keep, dropping values
+     * if they are over it.
+     */
+    public static void setBudget( long bytes ) {
+        if ( bytes < 0 ) {
+            throw new IllegalArgumentException( "Negative budget: " + bytes );
+        }
+        budget.setLimit( bytes );
+    }
+
+    public static long getBudget() {
+        return budget.getLimit();
+    }
+
+    /**
+     * @return the number of bytes the caches are thought to keep now
+     */
+    public static long getUsed() {
+        return budget.getUsed();
+    }
+
+    private static class Value extends SoftReference<Object> {
+
+        final long size;
+        final Owner owner;
+
+        Value( Object value, 
+               long size, 
+               Owner owner, 
+               ReferenceQueue<Object> queue ) {
+            super( value, queue );
+            this.size  = size;
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * Weakly refers to a cache, so that its values can be dropped once the
+     * garbage collector has taken it.
+     */
+    private static class Owner extends WeakReference<RepresentationCache> {
+
+        Owner( RepresentationCache cache, ReferenceQueue<Object> queue ) {
+            super( cache, queue );
+        }
+    }
+
+    /**
+     * The values of all caches, used longest ago first. Values taken by the
+     * garbage collector, and the values of caches it has taken, are 
+     * dropped when values are added or the bytes used are asked for.
+     */
+    private static class Budget {
+
+        private final ReferenceQueue<Object> collected
+            = new ReferenceQueue<Object>();
+        private final LinkedHashMap<Value, Value> values
+            = new LinkedHashMap<Value, Value>( 256, 0.75f, true );
+        private long limit;
+        private long used;
+
+        Budget( long limit ) {
+            this.limit = limit;
+        }
+
+        Owner newOwner( RepresentationCache cache ) {
+            return new Owner( cache, collected );
+        }
+
+        synchronized Value add( Object value, long size, Owner owner ) {
+            dropCollected();
+            Value added = new Value( value, size, owner, collected );
+            values.put( added, added );
+            used += size;
+            shrink();
+            return added;
+        }
+
+        synchronized void touch( Value value ) {
+            values.get( value );
+        }
+
+        synchronized void remove( Value value ) {
+            if ( values.remove( value ) != null ) {
+                used -= value.size;
+            }
+            value.clear();
+        }
+
+        synchronized void setLimit( long limit ) {
+            this.limit = limit;
+            shrink();
+        }
+
+        synchronized long getLimit() {
+            return limit;
+        }
+
+        synchronized long getUsed() {
+            dropCollected();
+            return used;
+        }
+
+        private void shrink() {
+            Iterator<Value> eldest = values.keySet().iterator();
+            while ( used > limit && eldest.hasNext() ) {
+                Value value = eldest.next();
+                eldest.remove();
+                used -= value.size;
+                value.clear();
+            }
+        }
+
+        private void dropCollected() {
+            Set<Owner> released = null;
+            Reference<?> reference;
+            while ( ( reference = collected.poll() ) != null ) {
+                if ( reference instanceof Owner ) {
+                    if ( released == null ) {
+                        released = new HashSet<Owner>();
+                    }
+                    released.add( (Owner) reference );
+                }
+                else if ( values.remove( reference ) != null ) {
+                    used -= ( (Value) reference ).size;
+                }
+            }
+            if ( released == null ) {
+                return;
+            }
+            Iterator<Value> i = values.keySet().iterator();
+            while ( i.hasNext() ) {
+                Value value = i.next();
+                if ( released.contains( value.owner ) ) {
+                    i.remove();
+                    used -= value.size;
+                    value.clear();
+                }
+            }
+        }
+    }
+}
@@ -14,13 +14,17 @@ import net.bioclipse.core.business.BioclipseException;
 
 /**
  * A leightweight implementation of IMolecule that only consists of a Smiles
- * string.
+ * string. Other representations worked out for it, like CML, are kept 
+ * in its {@link RepresentationCache}.
  * @author jonalv, olas
  *
  */
 public class SMILESMolecule extends BioObject implements IMolecule {
 
-    String smiles;
+    private volatile String smiles;
+
+    private final RepresentationCache representations 
+        = new RepresentationCache();
     
     /*
      * Needed by Spring for proxying
@@ -30,7 +34,7 @@ public class SMILESMolecule extends BioObject implements IMolecule {
     }
     
     public SMILESMolecule(String smiles) {
-        this.smiles=smiles;
+        setSMILES( smiles );
     }
 
     public String toSMILES()
@@ -38,14 +42,60 @@ public class SMILESMolecule extends BioObject implements IMolecule {
         return smiles;
     }
 
+    /**
+     * Replaces the SMILES, dropping all cached representations.
+     */
+    public void setSMILES(String smiles) {
+        synchronized ( representations ) {
+            this.smiles=smiles;
+            representations.invalidate();
+            representations.setSourceLength( smiles == null 
+                                             ? -1 : smiles.length() );
+        }
+    }
+
     /**
      * A molecule with only SMILES cannot produce CML other than via CDK, hence 
-     * always throws BioclipseException.
+     * only returns CML put in its {@link RepresentationCache} or translated 
+     * by the translator registered there, and otherwise throws 
+     * UnsupportedOperationException.
      * @throws BioclipseException 
      */ 
     public String toCML() throws BioclipseException {
-        throw new UnsupportedOperationException("SmilesMolecule can not " +
-        		"return CML");
+        final RepresentationCache.Translator translator 
+            = RepresentationCache.getTranslator( RepresentationCache.SMILES,
+                                                 RepresentationCache.CML );
+        String cml = representations.get( 
+            RepresentationCache.CML,
+            translator == null ? Property.USE_CACHED
+                               : Property.USE_CACHED_OR_CALCULATED,
+            new RepresentationCache.Converter<String>() {
+                public String convert() throws BioclipseException {
+                    return translator.translate( smiles );
+                }
+            } );
+        if (cml == null)
+            throw new UnsupportedOperationException("SmilesMolecule can not " +
+            		"return CML");
+        return cml;
+    }
+
+    public RepresentationCache getRepresentations() {
+        return representations;
+    }
+
+    /**
+     * @return a hash of the SMILES, see {@link RepresentationCache#hashOf}
+     */
+    public String getContentHash() throws BioclipseException {
+        return representations.get( 
+            RepresentationCache.HASH,
+            Property.USE_CACHED_OR_CALCULATED,
+            new RepresentationCache.Converter<String>() {
+                public String convert() {
+                    return RepresentationCache.hashOf( smiles );
+                }
+            } );
     }
 
     public List<IMolecule> getConformers() {
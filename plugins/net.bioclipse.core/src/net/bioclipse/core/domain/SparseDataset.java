@@ -11,16 +11,21 @@
 package net.bioclipse.core.domain;
 
 import java.awt.Point;
-import java.io.FileWriter;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 
 /**
  * A dataset contains a matrix of values (Float) with headers and 
  * an optional response variable.
+ * <p>
+ * The values are kept either in the map given to the dataset, which is 
+ * used as it is, or in a {@link SparseMatrix} given with 
+ * {@link #setMatrix}, e.g. a {@link BitMatrix} keeping fingerprints as 
+ * bits. Only one of <code>values</code> and <code>matrix</code> is set. 
+ * {@link #getValues()} moves values kept in a matrix into a map, so 
+ * subclasses reading the protected <code>values</code> directly should 
+ * call it first. {@link #getMatrix()} copies values kept in a map into a 
+ * new {@link CSRMatrix}.
  * 
  * @author ola
  *
@@ -33,13 +38,72 @@ public class SparseDataset implements IDataset{
 	protected String responseProperty;
 	protected List<String> responseValues;
 	protected LinkedHashMap<Point, Integer> values;
+	protected SparseMatrix matrix;
 
 	
+	/**
+	 * @return the values, row by row, with rows and columns counted from 
+	 *         1. Values kept in a matrix are first moved into a map, 
+	 *         which the dataset then keeps instead of the matrix.
+	 */
 	public LinkedHashMap<Point, Integer> getValues() {
+		if (values == null && matrix != null) {
+			values = toMap(matrix);
+			matrix = null;
+		}
 		return values;
 	}
+	/**
+	 * @param values with rows and columns counted from 1, in any order, 
+	 *        kept as they are so later changes to them change the dataset
+	 */
 	public void setValues(LinkedHashMap<Point, Integer> values) {
 		this.values = values;
+		this.matrix = null;
+	}
+	/**
+	 * @return the matrix the values are kept in, or a new 
+	 *         {@link CSRMatrix} with a copy of the values if they are kept 
+	 *         in a map. It has as many rows and columns as there are 
+	 *         headers, or more if the values need it.
+	 * @throws IllegalArgumentException if a value in the map is 
+	 *         <code>null</code> or not in a row and column counted from 1
+	 */
+	public SparseMatrix getMatrix() {
+		if (values != null) {
+			return toMatrix(values);
+		}
+		return matrix;
+	}
+	/**
+	 * @param matrix the values, kept in the matrix instead of in a map
+	 */
+	public void setMatrix(SparseMatrix matrix) {
+		this.matrix = matrix;
+		this.values = null;
+	}
+	
+	private static LinkedHashMap<Point, Integer> toMap(SparseMatrix matrix) {
+		LinkedHashMap<Point, Integer> values 
+			= new LinkedHashMap<Point, Integer>();
+		int[] columns = new int[matrix.getColumnCount()];
+		int[] entries = new int[matrix.getColumnCount()];
+		for (int row = 0; row < matrix.getRowCount(); row++) {
+			int n = matrix.getRow(row, columns, entries);
+			for (int i = 0; i < n; i++)
+				values.put(new Point(row + 1, columns[i] + 1), entries[i]);
+		}
+		return values;
+	}
+	
+	private CSRMatrix toMatrix(LinkedHashMap<Point, Integer> values) {
+		int rows = rowHeaders == null ? 0 : rowHeaders.size();
+		int columns = colHeaders == null ? 0 : colHeaders.size();
+		for (Point p : values.keySet()) {
+			rows = Math.max(rows, p.x);
+			columns = Math.max(columns, p.y);
+		}
+		return CSRMatrix.valueOf(values, rows, columns);
 	}
 	public String getResponseProperty() {
 		return responseProperty;
@@ -78,6 +142,14 @@ public class SparseDataset implements IDataset{
 		this.values = values;
 	}
 
+	public SparseDataset(List<String> colHeaders, List<String> rowHeaders,
+			SparseMatrix matrix) {
+		super();
+		this.colHeaders = colHeaders;
+		this.rowHeaders = rowHeaders;
+		this.matrix = matrix;
+	}
+
 	public SparseDataset(List<String> colHeaders, List<String> rowHeaders,
 			String responseProperty, List<String> responseValues,
 			LinkedHashMap<Point, Integer> values) {
@@ -119,23 +191,26 @@ public class SparseDataset implements IDataset{
 
 	public String toSparseString(String separator) {
 
-		StringBuffer buf = new StringBuffer(50000);
-
-		int c=0;  //line number
-		for (Point p : values.keySet()){
-			if (p.x==c)
-				buf.append(separator + p.y+":"+values.get(p));
-			else if (p.x==(c+1)){
-				//next line
-				if (c!=0)  //not first line
-					buf.append("\n");
-				c++;
-				buf.append(p.y+":"+values.get(p));
+		StringBuilder buf = new StringBuilder(50000);
+		SparseMatrix matrix = getMatrix();
+
+		//lines up to the last row with values, empty rows as empty lines
+		int last = matrix.getRowCount() - 1;
+		while (last >= 0 && matrix.getRowEntryCount(last) == 0)
+			last--;
+		int[] columns = new int[matrix.getColumnCount()];
+		int[] values = new int[matrix.getColumnCount()];
+		for (int row = 0; row <= last; row++) {
+			int n = matrix.getRow(row, columns, values);
+			for (int i = 0; i < n; i++) {
+				if (i > 0)
+					buf.append(separator);
+				buf.append(columns[i] + 1).append(':').append(values[i]);
 			}
+			buf.append("\n");
 		}
-		buf.append("\n");  //last newline
-		
-		System.out.println(buf.toString());
+		if (last < 0)
+			buf.append("\n");
 
 		return buf.toString();
 	}
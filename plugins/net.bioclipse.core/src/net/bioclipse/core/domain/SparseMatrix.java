@@ -0,0 +1,104 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.domain;
+
+/**
+ * An immutable matrix of integers where most values are zero, so that
+ * only the others are stored. Rows and columns are counted from 0. The
+ * entries of a row are read without allocating anything with
+ * {@link #getRow(int, int[], int[])}:
+ * <pre>
+ *   int[] columns = new int[matrix.getColumnCount()];
+ *   int[] values  = new int[matrix.getColumnCount()];
+ *   for ( int row = 0; row < matrix.getRowCount(); row++ ) {
+ *       int n = matrix.getRow( row, columns, values );
+ *       ...
+ *   }
+ * </pre>
+ * {@link CSRMatrix} stores the entries row by row and {@link BitMatrix}
+ * stores binary matrices, like fingerprints, as bits.
+ *
+ * @author jonalv
+ */
+public abstract class SparseMatrix {
+
+    public abstract int getRowCount();
+
+    public abstract int getColumnCount();
+
+    /**
+     * @return the value in the cell, 0 if it is not stored
+     */
+    public abstract int get( int row, int column );
+
+    /**
+     * @return the number of stored entries in the whole matrix
+     */
+    public abstract long getEntryCount();
+
+    /**
+     * @return the number of stored entries in the row
+     */
+    public abstract int getRowEntryCount( int row );
+
+    /**
+     * Copies the stored entries of a row, in increasing column order.
+     *
+     * @param columns gets the columns of the entries, must have room for
+     *                them all
+     * @param values gets the values of the entries, may be
+     *               <code>null</code>
+     * @return the number of entries copied
+     */
+    public abstract int getRow( int row, int[] columns, int[] values );
+
+    /**
+     * @return a matrix of the columns from <code>from</code>, inclusive, to
+     *         <code>to</code>, exclusive, of this one
+     */
+    public abstract SparseMatrix getColumns( int from, int to );
+
+    /**
+     * @return the matrix stored row by row
+     */
+    public CSRMatrix toCSR() {
+        CSRMatrix.Builder builder
+            = new CSRMatrix.Builder( getColumnCount(), false );
+        int[] columns = new int[getColumnCount()];
+        int[] values  = new int[getColumnCount()];
+        for ( int row = 0; row < getRowCount(); row++ ) {
+            builder.addRow( columns, values, getRow( row, columns, values ) );
+        }
+        return builder.build();
+    }
+
+    void checkRow( int row ) {
+        if ( row < 0 || row >= getRowCount() ) {
+            throw new IndexOutOfBoundsException(
+                "Row: " + row + ", rows: " + getRowCount() );
+        }
+    }
+
+    void checkColumn( int column ) {
+        if ( column < 0 || column >= getColumnCount() ) {
+            throw new IndexOutOfBoundsException(
+                "Column: " + column + ", columns: " + getColumnCount() );
+        }
+    }
+
+    void checkColumns( int from, int to ) {
+        if ( from < 0 || to > getColumnCount() || from > to ) {
+            throw new IndexOutOfBoundsException(
+                "Columns: " + from + " to " + to + ", columns: "
+                + getColumnCount() );
+        }
+    }
+}
@@ -11,17 +11,32 @@
 package net.bioclipse.core.domain;
 
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * A matrix of strings, with rows and columns counted from 1, kept as an
+ * array of rows that are each a <code>String[]</code>. Column names are
+ * looked up in a hash map.
+ * <p>
+ * The matrix is not synchronized. Fill it from one thread and then hand
+ * out {@link #asReadOnly()}, which many threads can read at the same time
+ * as long as nothing is written to the matrix any more.
+ */
 public class StringMatrix implements IStringMatrix {
 
-	private Map<Integer,Map<Integer,String>> matrix;
+	private static final String[] NO_ROW = new String[0];
+
+	/** <code>null</code> for rows where nothing has been set */
+	private String[][] matrix = new String[16][];
 	private int cols;
 	private int rows;
-	private Map<Integer,String> rowHeaders;
-	private Map<Integer,String> colHeaders;
+	private String[] rowHeaders;
+	private String[] colHeaders;
+	/** the first column with each name */
+	private Map<String,Integer> colIndex;
 
 	public StringMatrix() {
 		cols = 0;
@@ -45,14 +60,34 @@ public class StringMatrix implements IStringMatrix {
 			);
 	}
 
+	private static String[] grow(String[] array, int index) {
+		if (array == null)
+			return new String[Math.max(index + 1, 16)];
+		if (index < array.length)
+			return array;
+		return Arrays.copyOf(array, Math.max(index + 1, 2 * array.length));
+	}
+
+	private String[] rowForWriting(int row) {
+		if (row >= matrix.length)
+			matrix = Arrays.copyOf(
+				matrix, Math.max(row + 1, 2 * matrix.length)
+			);
+		String[] matrixRow = matrix[row];
+		if (matrixRow == null || cols >= matrixRow.length) {
+			matrixRow = grow(matrixRow, cols);
+			matrix[row] = matrixRow;
+		}
+		return matrixRow;
+	}
+
 	public String get(int row, int col) {
 		checkDimensions(row, col);
 
-		if (matrix == null) return "";
-		Map<Integer,String> matrixRow = matrix.get(row);
+		String[] matrixRow = row < matrix.length ? matrix[row] : null;
 		if (matrixRow == null) return "";
 
-		return matrixRow.get(col);
+		return col < matrixRow.length ? matrixRow[col] : null;
 	}
 
 	public String get(int row, String col) {
@@ -65,19 +100,15 @@ public class StringMatrix implements IStringMatrix {
 	}
 
 	public boolean hasColumn(String col) {
-		if (colHeaders == null) return false;
+		if (colIndex == null) return false;
 
-		return colHeaders.containsValue(col);
+		return colIndex.containsKey(col);
 	}
 
 	public int getColumnNumber(String col) {
-		if (colHeaders != null) {
-			for (Integer colIndex : colHeaders.keySet()) {
-				String colname = colHeaders.get(colIndex);
-				if (colname != null && colname.equals(col))
-					return colIndex;
-			}
-		}
+		Integer colNo = colIndex == null ? null : colIndex.get(col);
+		if (colNo != null)
+			return colNo;
 		throw new IllegalAccessError(
 			"No column found with this label."
 		);
@@ -87,7 +118,7 @@ public class StringMatrix implements IStringMatrix {
 		checkCols(index);
 
 		if (colHeaders == null) return "";
-		return colHeaders.get(index);
+		return index < colHeaders.length ? colHeaders[index] : null;
 	}
 
 	public int getRowCount() {
@@ -98,7 +129,7 @@ public class StringMatrix implements IStringMatrix {
 		checkRows(index);
 
 		if (rowHeaders == null) return "";
-		return rowHeaders.get(index);
+		return index < rowHeaders.length ? rowHeaders[index] : null;
 	}
 
 	public boolean hasColHeader() {
@@ -114,32 +145,62 @@ public class StringMatrix implements IStringMatrix {
 		if (col > cols) cols = col;
 		checkDimensions(row, col);
 
-		if (matrix == null)
-			matrix = new Hashtable<Integer, Map<Integer,String>>(row);
-		Map<Integer,String> matrixRow = matrix.get(row);
-		if (matrixRow == null) {
-			matrixRow = new Hashtable<Integer, String>(col);
-			matrix.put(row, matrixRow);
-		}
-		
-		matrixRow.put(col, value);
+		rowForWriting(row)[col] = value;
+	}
+
+	/**
+	 * Adds a row after the last one, with the values in the columns from
+	 * 1 on.
+	 *
+	 * @return the number of the new row
+	 */
+	public int addRow(String... values) {
+		if (values.length > cols) cols = values.length;
+		rows++;
+		String[] matrixRow = rowForWriting(rows);
+		System.arraycopy(values, 0, matrixRow, 1, values.length);
+		return rows;
+	}
+
+	/**
+	 * Adds rows after the last one, as with {@link #addRow(String...)}.
+	 */
+	public void addRows(List<String[]> values) {
+		if (rows + values.size() >= matrix.length)
+			matrix = Arrays.copyOf(
+				matrix, Math.max(rows + values.size() + 1, 2 * matrix.length)
+			);
+		for (String[] row : values)
+			addRow(row);
 	}
 
 	public void setColumnName(int index, String name) {
 		if (index > cols) cols = index;
 		checkCols(index);
 
-		if (colHeaders == null)
-			colHeaders = new Hashtable<Integer,String>();
-		colHeaders.put(index, name);
+		colHeaders = grow(colHeaders, index);
+		String old = colHeaders[index];
+		colHeaders[index] = name;
+		if (colIndex == null)
+			colIndex = new HashMap<String,Integer>();
+		if (old != null && Integer.valueOf(index).equals(colIndex.get(old))) {
+			colIndex.remove(old);
+			for (int i = 0; i < colHeaders.length; i++)
+				if (old.equals(colHeaders[i])) {
+					colIndex.put(old, i);
+					break;
+				}
+		}
+		Integer first = name == null ? null : colIndex.get(name);
+		if (name != null && (first == null || first > index))
+			colIndex.put(name, index);
 	}
 
 	public void setRowName(int index, String name) {
 		checkRows(index);
 
-		if (rowHeaders == null)
-			rowHeaders = new Hashtable<Integer,String>();
-		rowHeaders.put(index, name);
+		rowHeaders = grow(rowHeaders, index);
+		rowHeaders[index] = name;
 	}
 
 	public void setSize(int row, int col) {
@@ -158,7 +219,9 @@ public class StringMatrix implements IStringMatrix {
 		int rowCount = getRowCount();
 		List<String> results = new ArrayList<String>(rowCount);
 		for (int i=1; i<=rowCount; i++) {
-			String result = get(i,col);
+			String[] matrixRow = i < matrix.length ? matrix[i] : null;
+			if (matrixRow == null) matrixRow = NO_ROW;
+			String result = col < matrixRow.length ? matrixRow[col] : null;
 			results.add(result == null ? "" : result);
 		}
 		return results;
@@ -169,6 +232,15 @@ public class StringMatrix implements IStringMatrix {
 		return getColumn(colNo);
 	}
 
+	/**
+	 * @return a view of this matrix that can not be changed. It shares
+	 *         the values of this matrix and can be read by many threads
+	 *         at once, once this matrix is no longer written to.
+	 */
+	public IStringMatrix asReadOnly() {
+		return new ReadOnlyView(this);
+	}
+
 	public String toString() {
 		StringBuffer buffer = new StringBuffer();
 		buffer.append('[');
@@ -222,5 +294,78 @@ public class StringMatrix implements IStringMatrix {
 			names.add(getRowName(i));
 		return names;
 	}
-	
+
+	private static class ReadOnlyView implements IStringMatrix {
+
+		private final StringMatrix matrix;
+
+		ReadOnlyView(StringMatrix matrix) {
+			this.matrix = matrix;
+		}
+
+		private static UnsupportedOperationException readOnly() {
+			return new UnsupportedOperationException(
+				"The matrix is read-only."
+			);
+		}
+
+		public void set(int row, int col, String value) {
+			throw readOnly();
+		}
+		public void set(int row, String col, String value) {
+			throw readOnly();
+		}
+		public void setSize(int row, int col) {
+			throw readOnly();
+		}
+		public void setColumnName(int index, String name) {
+			throw readOnly();
+		}
+		public void setRowName(int index, String name) {
+			throw readOnly();
+		}
+
+		public String get(int row, int col) {
+			return matrix.get(row, col);
+		}
+		public String get(int row, String col) {
+			return matrix.get(row, col);
+		}
+		public int getColumnCount() {
+			return matrix.getColumnCount();
+		}
+		public int getColumnNumber(String col) {
+			return matrix.getColumnNumber(col);
+		}
+		public int getRowCount() {
+			return matrix.getRowCount();
+		}
+		public boolean hasRowHeader() {
+			return matrix.hasRowHeader();
+		}
+		public boolean hasColHeader() {
+			return matrix.hasColHeader();
+		}
+		public String getColumnName(int index) {
+			return matrix.getColumnName(index);
+		}
+		public String getRowName(int index) {
+			return matrix.getRowName(index);
+		}
+		public List<String> getColumnNames() {
+			return matrix.getColumnNames();
+		}
+		public List<String> getRowNames() {
+			return matrix.getRowNames();
+		}
+		public List<String> getColumn(int index) {
+			return matrix.getColumn(index);
+		}
+		public List<String> getColumn(String col) {
+			return matrix.getColumn(col);
+		}
+		public String toString() {
+			return matrix.toString();
+		}
+	}
 }
@@ -0,0 +1,26 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.domain;
+
+import java.util.UUID;
+
+/**
+ * Generates random UUIDs as UIDs, as BioObjects always did before the 
+ * generator could be chosen.
+ * 
+ * @author jonalv
+ */
+public class UUIDGenerator implements IUIDGenerator {
+
+    public String nextUID() {
+        return UUID.randomUUID().toString();
+    }
+}
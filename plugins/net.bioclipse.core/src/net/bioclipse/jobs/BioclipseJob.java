@@ -5,12 +5,17 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import net.bioclipse.core.ResourcePathTransformer;
 import net.bioclipse.core.SilentNotification;
 import net.bioclipse.core.business.BioclipseException;
 import net.bioclipse.core.util.LogUtils;
+import net.bioclipse.managers.MonitorContainer;
+import net.bioclipse.managers.business.ArgumentAdapter;
 import net.bioclipse.managers.business.IBioclipseManager;
+import net.bioclipse.managers.business.ManagerMethodInvoker;
 
 import org.aopalliance.intercept.MethodInvocation;
 import org.apache.log4j.Logger;
@@ -44,6 +49,15 @@ public class BioclipseJob<T> extends Job {
     private static Logger logger = Logger.getLogger( BioclipseJob.class );
     
     private BioclipseJobUpdateHook<Object> hook = null;
+
+    private final Set<Object> families = new CopyOnWriteArraySet<Object>();
+
+    private volatile boolean blockingIO;
+    /** the I/O thread running this job, guarded by ioLock */
+    private Thread ioThread;
+    /** whether the I/O task has been queued, guarded by ioLock */
+    private boolean released;
+    private final Object ioLock = new Object();
     
     public BioclipseJob( String name, 
                          Method methodToBeInvocated, 
@@ -64,6 +78,9 @@ public class BioclipseJob<T> extends Job {
     protected IStatus run( IProgressMonitor monitor ) {
 
         if ( newWay ) {
+            if ( blockingIO ) {
+                return runInIOThread( monitor );
+            }
             return runNewWay(monitor);
         }
         
@@ -112,7 +129,8 @@ public class BioclipseJob<T> extends Job {
                 monitor.beginTask( "", IProgressMonitor.UNKNOWN );
             }
         
-            returnValue = getMethod().invoke( getInvocation().getThis(), args );
+            returnValue = ManagerMethodInvoker.forMethod( getMethod() )
+                              .invoke( getInvocation().getThis(), args );
             
             int i = Arrays.asList( getInvocation().getMethod()
                                                   .getParameterTypes() )
@@ -169,101 +187,133 @@ public class BioclipseJob<T> extends Job {
         return Status.OK_STATUS;
     }
 
+    /**
+     * Runs the manager method in the BlockingIOExecutor and lets this job's 
+     * worker thread go. The job is finished by the I/O thread. The I/O 
+     * thread waits until the task has been queued, after which this method
+     * only returns ASYNC_FINISH, but <code>setThread</code> and 
+     * <code>done</code> may still be called before that return.
+     */
+    private IStatus runInIOThread( final IProgressMonitor monitor ) {
+        synchronized ( ioLock ) {
+            released = false;
+        }
+        BlockingIOExecutor.execute( new Runnable() {
+            public void run() {
+                boolean interrupted = false;
+                synchronized ( ioLock ) {
+                    while ( !released ) {
+                        try {
+                            ioLock.wait();
+                        }
+                        catch ( InterruptedException e ) {
+                            interrupted = true;
+                        }
+                    }
+                    ioThread = Thread.currentThread();
+                    setThread( ioThread );
+                }
+                if ( interrupted ) {
+                    Thread.currentThread().interrupt();
+                }
+                IStatus status = null;
+                try {
+                    status = runNewWay( monitor );
+                }
+                catch ( OperationCanceledException e ) {
+                    status = Status.CANCEL_STATUS;
+                }
+                finally {
+                    synchronized ( ioLock ) {
+                        ioThread = null;
+                    }
+                    // clear any interrupt made by canceling()
+                    Thread.interrupted();
+                    done( status != null 
+                          ? status 
+                          : new Status( IStatus.ERROR, 
+                                        "net.bioclipse.managers", 
+                                        "Failed to run " + getName() ) );
+                }
+            }
+        }, monitor );
+        synchronized ( ioLock ) {
+            released = true;
+            ioLock.notifyAll();
+        }
+        return ASYNC_FINISH;
+    }
+
+    /**
+     * Interrupts the I/O thread running this job so that blocking I/O 
+     * waiting in it can notice the cancellation.
+     */
+    @Override
+    protected void canceling() {
+        synchronized ( ioLock ) {
+            if ( ioThread != null ) {
+                ioThread.interrupt();
+            }
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private IStatus runNewWay( IProgressMonitor monitor ) {
         
         long startTime = System.currentTimeMillis();
+        StreamingReturner<?> stream = null;
+        Throwable failure = null;
+        // manager methods called by this one use the job's monitor
+        MonitorContainer.Scope scope 
+            = MonitorContainer.getInstance().enter( monitor );
         try {
-            final List<Object> newArguments = new ArrayList<Object>();
-            newArguments.addAll( Arrays.asList( this.arguments ) );
-            
-            boolean usingReturner = false;
+            ArgumentAdapter adapter = ArgumentAdapter.get( methodCalled, 
+                                                           methodToRun );
+            boolean usingReturner = adapter.usesReturner();
             final ReturnCollector returnCollector = new ReturnCollector();
-            //add partial returner
-            for ( Class<?> param : methodToRun.getParameterTypes() ) {
-                if ( param == IReturner.class ) {
-                    usingReturner = true;
-                    int returnerPos = -1;
-                    for ( Object o : newArguments ) {
-                        if ( o instanceof IReturner ) {
-                            returnerPos = newArguments.indexOf( o );
-                        }
-                    }
-                    if ( returnerPos == -1 )  {
-                        newArguments.add( returnCollector );
-                    }
-                    //If doing a complete return both the hook and the returner
-                    //needs to be called. So decorating the original with a new 
-                    //ReturnCollector that calls both for the complete return.
-                    else {
-                        final int finalReturnerPos = returnerPos;
-                        newArguments.set( returnerPos, new ReturnCollector() {
-                            IReturner collector;
-                            {
-                                collector 
-                                    = ( (IReturner)
-                                      newArguments.get( finalReturnerPos ) );
-                            }
-                            @Override
-                            public void completeReturn( Object returnValue ) {
-                                collector.completeReturn( returnValue );
-                                returnCollector.completeReturn( returnValue );
-                                super.completeReturn( returnValue );
-                            }
-                            @Override
-                            public void partialReturn( Object o ) {
-                                collector.partialReturn( o );
-                                super.partialReturn( returnValue );
-                            }
-                        });
-                    }
-                }
+            IReturner returner = null;
+            int returnerPos = adapter.getReturnerIndex();
+            if ( returnerPos != -1 && 
+                 arguments[returnerPos] instanceof StreamingReturner ) {
+                stream = (StreamingReturner<?>) arguments[returnerPos];
             }
-            
-            //remove partial returner if needed
-            if ( !usingReturner ) {
-                int toBeremoved = -1;
-                for ( int i = 0; i < arguments.length; i++ ) {
-                    if ( newArguments.get(i) instanceof IReturner ) {
-                        toBeremoved = i;
-                    }
+            if ( usingReturner ) {
+                if ( returnerPos == -1 || arguments[returnerPos] == null ) {
+                    returner = returnCollector;
                 }
-                if ( toBeremoved != -1 ) {
-                    Object o = newArguments.remove( toBeremoved );
-                    if ( o instanceof BioclipseJobUpdateHook ) {
-                        hook = (BioclipseJobUpdateHook<Object>) o;
-                    }
+                //If doing a complete return both the hook and the returner
+                //needs to be called. So decorating the original with a new 
+                //IReturner that calls both for the complete return.
+                else {
+                    final IReturner collector 
+                        = (IReturner) arguments[returnerPos];
+                    returner = new IReturner() {
+                        public void completeReturn( Object returnValue ) {
+                            collector.completeReturn( returnValue );
+                            returnCollector.completeReturn( returnValue );
+                        }
+                        public void partialReturn( Object o ) {
+                            collector.partialReturn( o );
+                        }
+                    };
                 }
             }
-            
-            int i = Arrays.asList( methodCalled.getParameterTypes() )
-                          .indexOf( BioclipseUIJob.class );
-    
-            final BioclipseUIJob uiJob ;
-            
-            if ( i != -1 )
-                uiJob = ( (BioclipseUIJob)arguments[i] );
-            else {
-                uiJob = null;
-            }
-            if ( uiJob != null ) {
-                newArguments.remove( uiJob );
+            //the partial returner is not passed on, keep it as hook
+            else if ( returnerPos != -1 && 
+                      arguments[returnerPos] 
+                          instanceof BioclipseJobUpdateHook ) {
+                hook = (BioclipseJobUpdateHook<Object>) arguments[returnerPos];
             }
-
-            newArguments.add( monitor );
             
-            arguments = newArguments.toArray();
-            //translate String -> IFile
-            for ( int j = 0; j < arguments.length; j++ ) {
-                if ( arguments[j] instanceof String &&
-                     methodToRun.getParameterTypes()[j] == IFile.class ) {
-                    arguments[j] = ResourcePathTransformer.getInstance()
-                                       .transform( (String)arguments[j] );
-                }
-            }
+            final BioclipseUIJob uiJob = adapter.getUIJobIndex() != -1 
+                ? (BioclipseUIJob) arguments[adapter.getUIJobIndex()]
+                : null;
+
+            arguments = adapter.adapt( arguments, returner, monitor );
 
-            returnValue = methodToRun.invoke( bioclipseManager, 
-                                              arguments );
+            returnValue = ManagerMethodInvoker.forMethod( methodToRun )
+                                              .invoke( bioclipseManager, 
+                                                       arguments );
             
             if (hook != null) {
                 hook.completeReturn( returnValue );
@@ -310,6 +360,7 @@ public class BioclipseJob<T> extends Job {
             if (e instanceof InvocationTargetException) {
                 returnValue = e.getCause();
             }
+            failure = (Throwable) returnValue;
 
             Throwable t = e;
             while ( t != null ) {
@@ -336,6 +387,16 @@ public class BioclipseJob<T> extends Job {
             }
         }
         finally {
+            //end the stream so that its consumer stops waiting
+            if ( stream != null ) {
+                if ( failure != null ) {
+                    stream.fail( failure );
+                }
+                else {
+                    stream.close();
+                }
+            }
+            MonitorContainer.getInstance().exit( scope );
             monitor.done();
         }
         
@@ -362,6 +423,10 @@ public class BioclipseJob<T> extends Job {
         this.arguments = arguemtns;
     }
 
+    public Object[] getArguments() {
+        return arguments;
+    }
+
     public MethodInvocation getInvocation() {
         return invocation;
     }
@@ -369,6 +434,38 @@ public class BioclipseJob<T> extends Job {
     public void setBioclipseManager( IBioclipseManager manager ) {
         this.bioclipseManager = manager;
     }
+
+    public IBioclipseManager getBioclipseManager() {
+        return bioclipseManager;
+    }
+
+    /**
+     * @param blockingIO whether the manager method should be run in the
+     *                   {@link BlockingIOExecutor} instead of in the job's
+     *                   worker thread
+     */
+    public void setBlockingIO( boolean blockingIO ) {
+        this.blockingIO = blockingIO;
+    }
+
+    public boolean isBlockingIO() {
+        return blockingIO;
+    }
+
+    /**
+     * Makes this job a member of the given family, see 
+     * {@link Job#belongsTo(Object)}.
+     * 
+     * @param family the family, typically a {@link JobFamily}
+     */
+    public void addFamily( Object family ) {
+        families.add( family );
+    }
+
+    @Override
+    public boolean belongsTo( Object family ) {
+        return families.contains( family ) || super.belongsTo( family );
+    }
     
     public void setMethodCalled( Method methodCalled ) {
 
@@ -0,0 +1,111 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.jobs;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.bioclipse.managers.MonitorContainer;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Runs the bodies of BioclipseJobs for manager methods that mostly wait for
+ * I/O (see {@link net.bioclipse.managers.business.BlockingIO}). The job 
+ * itself returns <code>ASYNC_FINISH</code> at once, freeing its platform 
+ * worker thread, and is finished from here when the method returns. The 
+ * threads are cheap, small stack daemon threads that are kept alive for a 
+ * short while only, so many downloads can be in flight without growing the 
+ * platform thread pool.
+ * <p>
+ * The number of threads is read from the system property
+ * <code>bioclipse.jobs.ioThreads</code>. Setting the system property
+ * <code>bioclipse.jobs.blockingIO</code> (or 
+ * <code>bioclipse.jobs.blockingIO.&lt;managerName&gt;</code>) to 
+ * <code>true</code> runs all jobs (of that manager) here, annotated or not.
+ * 
+ * @author jonalv
+ */
+public class BlockingIOExecutor {
+
+    public static final String THREADS_PROPERTY     = "bioclipse.jobs.ioThreads";
+    public static final String BLOCKING_IO_PROPERTY = "bioclipse.jobs.blockingIO";
+
+    private static final long STACK_SIZE = 256 * 1024;
+
+    private static final ThreadPoolExecutor executor;
+
+    static {
+        int threads = Integer.getInteger( THREADS_PROPERTY, 256 );
+        executor = new ThreadPoolExecutor( 
+            threads, 
+            threads, 
+            10, TimeUnit.SECONDS, 
+            new LinkedBlockingQueue<Runnable>(), 
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+                public Thread newThread( Runnable r ) {
+                    Thread t = new Thread( null, 
+                                           r, 
+                                           "BlockingIO-" 
+                                             + count.incrementAndGet(), 
+                                           STACK_SIZE );
+                    t.setDaemon( true );
+                    return t;
+                }
+            } );
+        executor.allowCoreThreadTimeOut( true );
+    }
+
+    private BlockingIOExecutor() {
+    }
+
+    /**
+     * @param managerName name of the manager
+     * @return whether the system properties say that all jobs of the given 
+     *         manager should be run here
+     */
+    public static boolean isEnabledFor( String managerName ) {
+        return Boolean.getBoolean( BLOCKING_IO_PROPERTY )
+            || Boolean.getBoolean( BLOCKING_IO_PROPERTY + "." + managerName );
+    }
+
+    /**
+     * Runs the given task in one of the I/O threads with the monitor scope
+     * of the calling thread.
+     * 
+     * @param task the task to run
+     */
+    public static void execute( Runnable task ) {
+        executor.execute( MonitorContainer.getInstance().wrap( task ) );
+    }
+
+    /**
+     * Runs the given task in one of the I/O threads with the given monitor.
+     * 
+     * @param task the task to run
+     * @param monitor the monitor of the task
+     */
+    public static void execute( Runnable task, IProgressMonitor monitor ) {
+        executor.execute( MonitorContainer.getInstance()
+                                          .wrap( task, monitor ) );
+    }
+
+    /**
+     * @return number of I/O threads currently running a task
+     */
+    public static int getActiveCount() {
+        return executor.getActiveCount();
+    }
+}
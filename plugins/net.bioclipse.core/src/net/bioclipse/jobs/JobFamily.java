@@ -0,0 +1,66 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.jobs;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * A family of BioclipseJobs. Every job scheduled by the
+ * {@link ManagerJobScheduler} belongs to the family of its manager and to
+ * the families of any batches open in the scheduling thread, so all of them
+ * can be cancelled or waited for together.
+ *
+ * @author jonalv
+ */
+public class JobFamily {
+
+    private final String name;
+
+    public JobFamily( String name ) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Cancels all jobs in this family, including the ones still waiting for
+     * a free worker.
+     */
+    public void cancel() {
+        Job.getJobManager().cancel( this );
+    }
+
+    /**
+     * Waits until all jobs in this family have finished.
+     *
+     * @param monitor for cancelling the wait, may be <code>null</code>
+     * @throws InterruptedException if the waiting thread was interrupted
+     */
+    public void join( IProgressMonitor monitor ) throws InterruptedException {
+        Job.getJobManager().join( this, monitor );
+    }
+
+    /**
+     * @return the jobs in this family that are scheduled, waiting for a
+     *         free worker or running
+     */
+    public Job[] getJobs() {
+        return Job.getJobManager().find( this );
+    }
+
+    @Override
+    public String toString() {
+        return "JobFamily[" + name + "]";
+    }
+}
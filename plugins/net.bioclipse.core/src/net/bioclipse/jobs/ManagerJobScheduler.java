@@ -0,0 +1,477 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.jobs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.bioclipse.core.ResourcePathTransformer;
+import net.bioclipse.managers.business.ArgumentAdapter;
+import net.bioclipse.managers.business.IBioclipseManager;
+
+import org.apache.log4j.Logger;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Schedules the BioclipseJobs created by the manager method dispatcher.
+ * <p>
+ * Every manager gets a lane with a limited number of workers. A job is only
+ * handed to the platform job manager when its lane has a free worker and no
+ * running job uses any of the same files; until then it is scheduled with a
+ * very long delay (so that <code>Job.join()</code>, <code>cancel()</code>
+ * and the job families work as usual) and woken up in order of arrival when
+ * it may run. Scheduling rules are deliberately not used for this since a job
+ * with a rule may only begin rules it contains, which would break manager
+ * methods that modify the workspace.
+ * <p>
+ * When too many jobs are waiting in a lane the scheduling thread blocks
+ * until there is room again. The GUI thread and threads running a job are
+ * never blocked.
+ * <p>
+ * A job scheduled by a job that this scheduler is running starts at once,
+ * even if that takes its lane above the number of workers, and may use the
+ * files of the job that scheduled it. The scheduling job may well be
+ * joining it, and with all workers taken by such jobs nothing would ever
+ * run otherwise.
+ * <p>
+ * The number of workers and the queue size are read from the system
+ * properties <code>bioclipse.jobs.workers</code> (or
+ * <code>bioclipse.jobs.workers.&lt;managerName&gt;</code> for a single
+ * manager) and <code>bioclipse.jobs.queueSize</code>.
+ *
+ * @author jonalv
+ */
+public class ManagerJobScheduler {
+
+    public static final String WORKERS_PROPERTY    = "bioclipse.jobs.workers";
+    public static final String QUEUE_SIZE_PROPERTY = "bioclipse.jobs.queueSize";
+
+    /** delay for jobs waiting for a worker, they are woken up when ready */
+    private static final long WAITING_DELAY = 24L * 60 * 60 * 1000;
+
+    private static final Logger logger
+        = Logger.getLogger( ManagerJobScheduler.class );
+
+    private static final ManagerJobScheduler instance
+        = new ManagerJobScheduler();
+
+    private final Map<String, Lane> lanes = new HashMap<String, Lane>();
+    /** Jobs waiting for a worker, in order of arrival */
+    private final LinkedList<Entry> waiting = new LinkedList<Entry>();
+    /** Resources used by running jobs */
+    private final Set<String> usedResources = new HashSet<String>();
+    /** Jobs that have been given a worker, by job */
+    private final Map<Job, Entry> started = new HashMap<Job, Entry>();
+    private final ThreadLocal<LinkedList<JobFamily>> batches
+        = new ThreadLocal<LinkedList<JobFamily>>();
+
+    private final int defaultWorkers;
+    private final int queueSize;
+
+    ManagerJobScheduler() {
+        this( Integer.getInteger(
+                  WORKERS_PROPERTY,
+                  2 * Runtime.getRuntime().availableProcessors() ),
+              Integer.getInteger( QUEUE_SIZE_PROPERTY, 1000 ) );
+    }
+
+    /**
+     * @param defaultWorkers number of workers for managers that have no
+     *                       system property of their own
+     * @param queueSize number of jobs that can wait for a worker in one lane
+     *                  before the scheduling thread is blocked
+     */
+    public ManagerJobScheduler( int defaultWorkers, int queueSize ) {
+        if ( defaultWorkers < 1 || queueSize < 1 ) {
+            throw new IllegalArgumentException(
+                "Need at least one worker and a queue size of at least one" );
+        }
+        this.defaultWorkers = defaultWorkers;
+        this.queueSize      = queueSize;
+    }
+
+    /**
+     * @return the scheduler used by the manager method dispatcher
+     */
+    public static ManagerJobScheduler getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param managerName name of a manager
+     * @return the family of all jobs scheduled for that manager
+     */
+    public synchronized JobFamily getFamily( String managerName ) {
+        return lane( managerName ).family;
+    }
+
+    /**
+     * Sets the number of jobs that may run at the same time for a manager.
+     */
+    public void setWorkers( String managerName, int workers ) {
+        if ( workers < 1 ) {
+            throw new IllegalArgumentException(
+                "Need at least one worker, was: " + workers );
+        }
+        List<Entry> ready;
+        synchronized ( this ) {
+            lane( managerName ).workers = workers;
+            ready = promote();
+            notifyAll();
+        }
+        wakeUp( ready );
+    }
+
+    public synchronized int getWorkers( String managerName ) {
+        return lane( managerName ).workers;
+    }
+
+    /**
+     * Starts a batch in the calling thread. All jobs scheduled by this thread
+     * until {@link #endBatch()} is called belong to the returned family.
+     * Batches can be nested.
+     *
+     * @param name name of the batch
+     * @return the family of the jobs in the batch
+     */
+    public JobFamily beginBatch( String name ) {
+        LinkedList<JobFamily> open = batches.get();
+        if ( open == null ) {
+            open = new LinkedList<JobFamily>();
+            batches.set( open );
+        }
+        JobFamily family = new JobFamily( name );
+        open.addLast( family );
+        return family;
+    }
+
+    /**
+     * Ends the innermost batch started in the calling thread.
+     */
+    public void endBatch() {
+        LinkedList<JobFamily> open = batches.get();
+        if ( open == null || open.isEmpty() ) {
+            throw new IllegalStateException( "No batch has been started" );
+        }
+        open.removeLast();
+        if ( open.isEmpty() ) {
+            batches.remove();
+        }
+    }
+
+    /**
+     * Adds the families of the job's manager and of the open batches to the
+     * job without scheduling it. Used for ExtendedBioclipseJobs which are
+     * scheduled by the caller.
+     *
+     * @param job the job
+     */
+    public void addFamilies( BioclipseJob<?> job ) {
+        IBioclipseManager manager = job.getBioclipseManager();
+        if ( manager != null ) {
+            job.addFamily( getFamily( manager.getManagerName() ) );
+        }
+        LinkedList<JobFamily> open = batches.get();
+        if ( open != null ) {
+            for ( JobFamily family : open ) {
+                job.addFamily( family );
+            }
+        }
+    }
+
+    /**
+     * Schedules a job created by the manager method dispatcher in the lane
+     * of its manager. The files among its arguments are used for keeping
+     * jobs using the same file from running at the same time.
+     *
+     * @param job the job to schedule
+     */
+    public void schedule( BioclipseJob<?> job ) {
+        addFamilies( job );
+        IBioclipseManager manager = job.getBioclipseManager();
+        schedule( job,
+                  manager != null ? manager.getManagerName() : "",
+                  resourcesOf( job ) );
+    }
+
+    /**
+     * Schedules a job in the given lane.
+     *
+     * @param job the job to schedule
+     * @param laneName name of the lane, normally the manager name
+     * @param resources paths of the files used by the job
+     */
+    public void schedule( Job job, String laneName, Set<String> resources ) {
+
+        Entry entry;
+        boolean runNow;
+        synchronized ( this ) {
+            Lane lane = lane( laneName );
+            Entry parent = started.get( Job.getJobManager().currentJob() );
+            if ( parent == null && mayBlock() ) {
+                try {
+                    while ( lane.waiting >= queueSize ) {
+                        wait();
+                    }
+                }
+                catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            entry = new Entry( job, lane, resources, parent );
+            if ( parent != null ) {
+                // the parent may be waiting for it, so no waiting in line
+                runNow = mayStart( entry, usedResources );
+            }
+            else {
+                // not passing waiting jobs of the same manager or using the
+                // same files
+                Set<String> unavailable
+                    = new HashSet<String>( usedResources );
+                for ( Entry e : waiting ) {
+                    unavailable.addAll( e.resources );
+                }
+                runNow = lane.waiting == 0 && mayStart( entry, unavailable );
+            }
+            if ( runNow ) {
+                start( entry );
+            }
+            else {
+                waiting.addLast( entry );
+                lane.waiting++;
+            }
+        }
+        job.addJobChangeListener( entry );
+        if ( runNow ) {
+            job.schedule();
+            return;
+        }
+        job.schedule( WAITING_DELAY );
+        boolean wake;
+        synchronized ( this ) {
+            entry.sleeping = true;
+            wake = entry.started;
+        }
+        if ( wake ) {
+            job.wakeUp();
+        }
+    }
+
+    /**
+     * @return number of jobs waiting for a worker
+     */
+    public synchronized int getWaitingCount() {
+        return waiting.size();
+    }
+
+    private Lane lane( String name ) {
+        Lane lane = lanes.get( name );
+        if ( lane == null ) {
+            lane = new Lane( name,
+                             Integer.getInteger( WORKERS_PROPERTY + "." + name,
+                                                 defaultWorkers ) );
+            lanes.put( name, lane );
+        }
+        return lane;
+    }
+
+    private static boolean mayBlock() {
+        return Display.getCurrent() == null
+               && Job.getJobManager().currentJob() == null;
+    }
+
+    /**
+     * A job scheduled by a running job needs no free worker and may use the
+     * files of the jobs it was scheduled from.
+     */
+    private static boolean mayStart( Entry entry, Set<String> unavailable ) {
+        if ( entry.parent == null
+             && entry.lane.running >= entry.lane.workers ) {
+            return false;
+        }
+        for ( String resource : entry.resources ) {
+            if ( unavailable.contains( resource )
+                 && ( entry.parent == null
+                      || !entry.parent.uses( resource ) ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void start( Entry entry ) {
+        entry.started = true;
+        entry.lane.running++;
+        for ( String resource : entry.resources ) {
+            if ( usedResources.add( resource ) ) {
+                entry.held.add( resource );
+            }
+        }
+        started.put( entry.job, entry );
+    }
+
+    /**
+     * Starts the waiting jobs that may run now. A job is not passed by a
+     * later job using the same file, so jobs using a file run in the order
+     * they were scheduled.
+     *
+     * @return the started jobs that already sleep and need waking up
+     */
+    private List<Entry> promote() {
+        List<Entry> ready = new ArrayList<Entry>();
+        Set<String> unavailable = new HashSet<String>( usedResources );
+        for ( Iterator<Entry> i = waiting.iterator(); i.hasNext(); ) {
+            Entry entry = i.next();
+            if ( mayStart( entry, unavailable ) ) {
+                i.remove();
+                entry.lane.waiting--;
+                start( entry );
+                unavailable.addAll( entry.resources );
+                if ( entry.sleeping ) {
+                    ready.add( entry );
+                }
+            }
+            else {
+                unavailable.addAll( entry.resources );
+            }
+        }
+        return ready;
+    }
+
+    private static void wakeUp( List<Entry> entries ) {
+        for ( Entry entry : entries ) {
+            entry.job.wakeUp();
+        }
+    }
+
+    private void finished( Entry entry ) {
+        List<Entry> ready;
+        synchronized ( this ) {
+            if ( entry.started ) {
+                entry.lane.running--;
+                usedResources.removeAll( entry.held );
+                started.remove( entry.job );
+            }
+            else if ( waiting.remove( entry ) ) {
+                entry.lane.waiting--;
+            }
+            ready = promote();
+            notifyAll();
+        }
+        wakeUp( ready );
+    }
+
+    /**
+     * A waiting job was woken up by someone else than this scheduler, let it
+     * run even if that means going above the number of workers.
+     */
+    private synchronized void forceStart( Entry entry ) {
+        if ( !entry.started && waiting.remove( entry ) ) {
+            entry.lane.waiting--;
+            start( entry );
+            notifyAll();
+        }
+    }
+
+    private static Set<String> resourcesOf( BioclipseJob<?> job ) {
+        Set<String> resources = new LinkedHashSet<String>();
+        Object[] arguments = job.getArguments();
+        if ( arguments == null ) {
+            return resources;
+        }
+        for ( Object argument : arguments ) {
+            if ( argument instanceof IFile ) {
+                resources.add( ( (IFile) argument ).getFullPath().toString() );
+            }
+        }
+        if ( job.getMethodCalled() == null || job.getMethod() == null ) {
+            return resources;
+        }
+        ArgumentAdapter adapter = ArgumentAdapter.get( job.getMethodCalled(),
+                                                       job.getMethod() );
+        for ( int i : adapter.getFileArgumentIndexes() ) {
+            if ( arguments[i] instanceof String ) {
+                String path = (String) arguments[i];
+                try {
+                    path = ResourcePathTransformer.getInstance()
+                                                  .transform( path )
+                                                  .getFullPath().toString();
+                }
+                catch ( IllegalArgumentException e ) {
+                    // the job will fail on it, the path itself will do here
+                    logger.debug( "Could not resolve " + path );
+                }
+                resources.add( path );
+            }
+        }
+        return resources;
+    }
+
+    private static class Lane {
+
+        final JobFamily family;
+        int workers;
+        int running;
+        int waiting;
+
+        Lane( String name, int workers ) {
+            this.family  = new JobFamily( name );
+            this.workers = workers;
+        }
+    }
+
+    private class Entry extends JobChangeAdapter {
+
+        final Job job;
+        final Lane lane;
+        final Set<String> resources;
+        /** the resources this job and not one it was scheduled from holds */
+        final Set<String> held = new HashSet<String>();
+        /** the running job that scheduled this one, if any */
+        final Entry parent;
+        boolean started;
+        boolean sleeping;
+
+        Entry( Job job, Lane lane, Set<String> resources, Entry parent ) {
+            this.job       = job;
+            this.lane      = lane;
+            this.resources = resources;
+            this.parent    = parent;
+        }
+
+        boolean uses( String resource ) {
+            return resources.contains( resource )
+                   || parent != null && parent.uses( resource );
+        }
+
+        @Override
+        public void aboutToRun( IJobChangeEvent event ) {
+            forceStart( this );
+        }
+
+        @Override
+        public void done( IJobChangeEvent event ) {
+            job.removeJobChangeListener( this );
+            finished( this );
+        }
+    }
+}
@@ -0,0 +1,346 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.jobs;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * An update hook that streams the partial returns of a manager method to a
+ * consumer while the method is still running, instead of collecting them
+ * all until it is done. The partial returns go through a bounded, lock free
+ * ring buffer; a producer finding it full waits until the consumer has
+ * taken something out.
+ * <p>
+ * Pass it as the <code>BioclipseJobUpdateHook</code> of a manager method
+ * running as a job and read the results from another thread. Manager
+ * methods called from a script run in the script's own thread, so a
+ * script starts the method in a thread of its own:
+ * <pre>
+ *   var stream = new Packages.net.bioclipse.jobs.StreamingReturner(
+ *                    "Reading molecules", 1024 );
+ *   new java.lang.Thread( new java.lang.Runnable( {
+ *       run: function() { manager.loadMolecules( file, stream ); }
+ *   } ) ).start();
+ *   while ( stream.hasNext() ) {
+ *       var molecule = stream.next();
+ *       ...
+ *   }
+ * </pre>
+ * The stream ends when the method does a complete return or when it
+ * returns or fails, however it was run. If the method fails the consumer
+ * gets the failure wrapped in a <code>RuntimeException</code>. A consumer
+ * not interested in the rest of the results calls {@link #cancel()},
+ * making the next <code>partialReturn</code> throw an
+ * <code>OperationCanceledException</code>.
+ * <p>
+ * Any number of threads may produce but only one thread should consume.
+ * That is the thread that created the stream until some thread starts
+ * reading it. A producer running in the consuming thread could never see
+ * the buffer emptied, so it gets an <code>IllegalStateException</code>
+ * instead of waiting once the buffer is full.
+ *
+ * @author jonalv
+ */
+public class StreamingReturner<T> extends BioclipseJobUpdateHook<T>
+                                  implements Iterable<T>, Iterator<T> {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /** stands in for <code>null</code> in the buffer */
+    private static final Object NULL = new Object();
+
+    private static final long MAX_WAIT = TimeUnit.MILLISECONDS.toNanos( 1 );
+
+    private final AtomicReferenceArray<Object> buffer;
+    /**
+     * sequence number of each slot, telling whether it is free for the
+     * producer of a given round or filled for the consumer
+     */
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong producerPosition = new AtomicLong();
+    private final AtomicLong consumerPosition = new AtomicLong();
+
+    private volatile boolean   closed;
+    private volatile boolean   canceled;
+    private volatile Throwable failure;
+    private volatile T         completeValue;
+
+    /** the next element for the iterator, null if not yet taken */
+    private Object next;
+
+    /** the thread reading the stream */
+    private volatile Thread consumer = Thread.currentThread();
+    private volatile boolean reading;
+
+    public StreamingReturner( String jobName ) {
+        this( jobName, DEFAULT_CAPACITY );
+    }
+
+    /**
+     * @param jobName name of the job running the manager method
+     * @param capacity number of partial returns that can be buffered,
+     *                 rounded up to a power of two
+     */
+    public StreamingReturner( String jobName, int capacity ) {
+        super( jobName );
+        if ( capacity < 1 ) {
+            throw new IllegalArgumentException(
+                "capacity must be at least 1, was: " + capacity );
+        }
+        int size = Integer.highestOneBit( capacity );
+        if ( size < capacity ) {
+            size <<= 1;
+        }
+        buffer    = new AtomicReferenceArray<Object>( size );
+        sequences = new AtomicLongArray( size );
+        for ( int i = 0; i < size; i++ ) {
+            sequences.set( i, i );
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Adds a partial return to the stream, waiting while the buffer is full.
+     *
+     * @throws OperationCanceledException if the consumer has cancelled
+     *         the stream or the waiting thread was interrupted
+     * @throws IllegalStateException if the buffer is full and this is the
+     *         thread consuming the stream
+     */
+    @Override
+    public void partialReturn( T object ) {
+        Object element = object == null ? NULL : object;
+        long wait = 0;
+        while ( !offer( element ) ) {
+            if ( canceled ) {
+                throw new OperationCanceledException();
+            }
+            if ( closed ) {
+                throw new IllegalStateException(
+                    "Partial return after the stream was closed" );
+            }
+            if ( consumer == Thread.currentThread() ) {
+                throw new IllegalStateException(
+                    "The stream is full and would wait for the thread "
+                    + "filling it to read it, run the producer in another "
+                    + "thread or use a larger capacity" );
+            }
+            wait = pause( wait );
+            if ( Thread.interrupted() ) {
+                throw new OperationCanceledException();
+            }
+        }
+        if ( canceled ) {
+            throw new OperationCanceledException();
+        }
+    }
+
+    /**
+     * Ends the stream with a complete return. Partial returns already made
+     * can still be read.
+     */
+    @Override
+    public void completeReturn( T object ) {
+        completeValue = object;
+        close();
+    }
+
+    /**
+     * Ends the stream. Called by the job when the manager method returns.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Ends the stream with a failure which is thrown to the consumer once
+     * it has read the partial returns made before the failure.
+     *
+     * @param t the failure
+     */
+    public void fail( Throwable t ) {
+        failure = t;
+        closed  = true;
+    }
+
+    /**
+     * Tells the producer that no more partial returns are wanted and drops
+     * what is buffered.
+     */
+    public void cancel() {
+        canceled = true;
+        next = null;
+        while ( poll() != null ) {
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    /**
+     * @return the value of the complete return, if any
+     */
+    public T getCompleteReturn() {
+        return completeValue;
+    }
+
+    /**
+     * @return this, the stream can only be iterated once
+     */
+    public Iterator<T> iterator() {
+        return this;
+    }
+
+    /**
+     * Waits until there is a partial return to read or the stream has
+     * ended.
+     *
+     * @return whether there is another partial return
+     * @throws RuntimeException wrapping the failure of the producer
+     */
+    public boolean hasNext() {
+        if ( !reading ) {
+            reading  = true;
+            consumer = Thread.currentThread();
+        }
+        if ( next != null ) {
+            return true;
+        }
+        long wait = 0;
+        while ( true ) {
+            if ( canceled ) {
+                return false;
+            }
+            next = poll();
+            if ( next != null ) {
+                return true;
+            }
+            if ( closed ) {
+                // anything returned before closing is in the buffer by now
+                next = poll();
+                if ( next != null ) {
+                    return true;
+                }
+                Throwable t = failure;
+                if ( t instanceof RuntimeException ) {
+                    throw (RuntimeException) t;
+                }
+                if ( t != null ) {
+                    throw new RuntimeException(
+                        "The producer of the stream failed", t );
+                }
+                return false;
+            }
+            wait = pause( wait );
+            if ( Thread.interrupted() ) {
+                Thread.currentThread().interrupt();
+                throw new OperationCanceledException();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if ( !hasNext() ) {
+            throw new NoSuchElementException();
+        }
+        Object element = next;
+        next = null;
+        return element == NULL ? null : (T) element;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return number of partial returns waiting to be read
+     */
+    public int size() {
+        long size = producerPosition.get() - consumerPosition.get();
+        return (int) Math.max( 0, Math.min( size, buffer.length() ) );
+    }
+
+    public int capacity() {
+        return buffer.length();
+    }
+
+    private boolean offer( Object element ) {
+        long position = producerPosition.get();
+        int index;
+        while ( true ) {
+            index = (int) position & mask;
+            long difference = sequences.get( index ) - position;
+            if ( difference == 0 ) {
+                if ( producerPosition.compareAndSet( position,
+                                                     position + 1 ) ) {
+                    break;
+                }
+            }
+            else if ( difference < 0 ) {
+                return false;
+            }
+            position = producerPosition.get();
+        }
+        buffer.set( index, element );
+        sequences.set( index, position + 1 );
+        return true;
+    }
+
+    private Object poll() {
+        long position = consumerPosition.get();
+        int index;
+        while ( true ) {
+            index = (int) position & mask;
+            long difference = sequences.get( index ) - ( position + 1 );
+            if ( difference == 0 ) {
+                if ( consumerPosition.compareAndSet( position,
+                                                     position + 1 ) ) {
+                    break;
+                }
+            }
+            else if ( difference < 0 ) {
+                return null;
+            }
+            position = consumerPosition.get();
+        }
+        Object element = buffer.get( index );
+        buffer.set( index, null );
+        sequences.set( index, position + mask + 1 );
+        return element;
+    }
+
+    /**
+     * Backs off a little longer each time, up to a millisecond.
+     */
+    private static long pause( long wait ) {
+        if ( wait == 0 ) {
+            Thread.yield();
+            return 1000;
+        }
+        LockSupport.parkNanos( wait );
+        return Math.min( wait * 2, MAX_WAIT );
+    }
+}
@@ -12,8 +12,7 @@
 
 package net.bioclipse.managers;
 
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
 
 import org.apache.log4j.Logger;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -22,6 +21,13 @@ import org.eclipse.core.runtime.NullProgressMonitor;
 /**
  * A singleton keeping track of all monitors used by all threads executing 
  * JavaScript scripts by connecting a monitor with a thread.
+ * <p>
+ * The monitors are kept in a thread local as a chain of immutable scopes, 
+ * so looking one up takes no locks. Other threads, including those started 
+ * by a thread with a monitor, do not see it. Code handing work to another 
+ * thread passes the monitor along through {@link #wrap(Runnable)}, 
+ * {@link #wrap(Callable)} or {@link #wrap(Runnable, IProgressMonitor)}, 
+ * which remove it from that thread again when the work is done.
  * 
  * @author jonalv
  *
@@ -30,13 +36,40 @@ public class MonitorContainer {
 
     private static MonitorContainer _instance = new MonitorContainer();
     private static Logger logger = Logger.getLogger( MonitorContainer.class );
-    
-    private volatile Map<Thread, IProgressMonitor> monitors;
-    private volatile Map<Thread, Long>             lastWarningTimes;
-    
+
+    private static final int WARNING_TIMEOUT = 120;
+
+    /**
+     * A monitor registered for a thread, possibly nested in the scope of 
+     * another monitor. Only the <code>closed</code> flag ever changes.
+     */
+    public static final class Scope {
+
+        private final IProgressMonitor monitor;
+        private final Scope            parent;
+        private volatile boolean       closed;
+
+        private Scope( IProgressMonitor monitor, Scope parent ) {
+            this.monitor = monitor;
+            this.parent  = parent;
+        }
+
+        public IProgressMonitor getMonitor() {
+            return monitor;
+        }
+    }
+
+    private final ThreadLocal<Scope> scopes = new ThreadLocal<Scope>();
+
+    private final ThreadLocal<long[]> lastWarningTimes 
+        = new ThreadLocal<long[]>() {
+            @Override
+            protected long[] initialValue() {
+                return new long[] { Long.MIN_VALUE };
+            }
+        };
+
     private MonitorContainer() {
-        monitors         = new WeakHashMap<Thread, IProgressMonitor>();
-        lastWarningTimes = new WeakHashMap<Thread, Long>();
     }
 
     public static MonitorContainer getInstance() {
@@ -44,36 +77,175 @@ public class MonitorContainer {
     }
     
     /**
-     * Associates the given monitor with the current thread.
+     * Associates the given monitor with the current thread, replacing the 
+     * monitor of the innermost scope.
      * 
      * @param monitor to be associated with the current thread
      */
-    public synchronized void addMonitor( IProgressMonitor monitor ) {
-        monitors.put( Thread.currentThread(), monitor );
+    public void addMonitor( IProgressMonitor monitor ) {
+        Scope current = scopes.get();
+        Scope parent = null;
+        if ( current != null ) {
+            current.closed = true;
+            parent = current.parent;
+        }
+        scopes.set( new Scope( monitor, parent ) );
     }
-    
+
+    /**
+     * Opens a nested scope in which the given monitor is the current 
+     * thread's monitor. Must be closed with {@link #exit(Scope)}:
+     * <pre>
+     * Scope scope = MonitorContainer.getInstance().enter( monitor );
+     * try {
+     *     ...
+     * }
+     * finally {
+     *     MonitorContainer.getInstance().exit( scope );
+     * }
+     * </pre>
+     * 
+     * @param monitor the monitor to use within the scope
+     * @return the new scope
+     */
+    public Scope enter( IProgressMonitor monitor ) {
+        Scope scope = new Scope( monitor, scopes.get() );
+        scopes.set( scope );
+        return scope;
+    }
+
+    /**
+     * Closes the given scope and all scopes nested in it, making the monitor 
+     * of the enclosing scope the current one again.
+     * 
+     * @param scope a scope returned by {@link #enter(IProgressMonitor)}
+     */
+    public void exit( Scope scope ) {
+        Scope current = scopes.get();
+        while ( current != null && current != scope ) {
+            current.closed = true;
+            current = current.parent;
+        }
+        scope.closed = true;
+        if ( scope.parent == null ) {
+            scopes.remove();
+        }
+        else {
+            scopes.set( scope.parent );
+        }
+    }
+
     /**
      * @return monitor associated with the current thread
      */
-    public synchronized IProgressMonitor getMonitor() {
-        Thread t = Thread.currentThread();
-        IProgressMonitor m =  monitors.get( t );
-        if ( m == null ) {
-            
-            int timeout = 120;
-            if ( !lastWarningTimes.containsKey( t ) || 
-                    System.currentTimeMillis()
-                        - lastWarningTimes.get( t ) > 1000 * timeout ) {
-                   
-                lastWarningTimes.put( t, System.currentTimeMillis() );
-                logger.warn( "The MonitorContainer could not find a monitor " +
-                             "connected to current thread so returning a " +
-                             "NullProgressMonitor. This warning will not be " +
-                             "repeated withing the comming " + timeout + 
-                             " seconds for thread with id: ." + t.getId() );
+    public IProgressMonitor getMonitor() {
+        Scope scope = openScope();
+        if ( scope != null ) {
+            return scope.monitor;
+        }
+        long[] lastWarningTime = lastWarningTimes.get();
+        long now = System.currentTimeMillis();
+        if ( lastWarningTime[0] == Long.MIN_VALUE || 
+             now - lastWarningTime[0] > 1000 * WARNING_TIMEOUT ) {
+
+            lastWarningTime[0] = now;
+            logger.warn( "The MonitorContainer could not find a monitor " +
+                         "connected to current thread so returning a " +
+                         "NullProgressMonitor. This warning will not be " +
+                         "repeated withing the comming " + WARNING_TIMEOUT + 
+                         " seconds for thread with id: ." 
+                         + Thread.currentThread().getId() );
+        }
+        return new NullProgressMonitor();
+    }
+
+    /**
+     * @param task a task to be run in another thread
+     * @return a task running <code>task</code> with the monitor scope of the 
+     *         thread calling this method
+     */
+    public Runnable wrap( final Runnable task ) {
+        final Scope captured = snapshot();
+        return new Runnable() {
+            public void run() {
+                Scope previous = install( captured );
+                try {
+                    task.run();
+                }
+                finally {
+                    install( previous );
+                }
             }
-            m = new NullProgressMonitor();
+        };
+    }
+
+    /**
+     * @param task a task to be run in another thread
+     * @param monitor the monitor for the task
+     * @return a task running <code>task</code> with the given monitor
+     */
+    public Runnable wrap( final Runnable task, 
+                          final IProgressMonitor monitor ) {
+        final Scope scope = new Scope( monitor, null );
+        return new Runnable() {
+            public void run() {
+                Scope previous = install( scope );
+                try {
+                    task.run();
+                }
+                finally {
+                    install( previous );
+                }
+            }
+        };
+    }
+
+    /**
+     * @param task a task to be run in another thread
+     * @return a task running <code>task</code> with the monitor scope of the 
+     *         thread calling this method
+     */
+    public <T> Callable<T> wrap( final Callable<T> task ) {
+        final Scope captured = snapshot();
+        return new Callable<T>() {
+            public T call() throws Exception {
+                Scope previous = install( captured );
+                try {
+                    return task.call();
+                }
+                finally {
+                    install( previous );
+                }
+            }
+        };
+    }
+
+    private Scope openScope() {
+        Scope scope = scopes.get();
+        while ( scope != null && scope.closed ) {
+            scope = scope.parent;
+        }
+        return scope;
+    }
+
+    /**
+     * A copy of the current monitor's scope that stays open even if the 
+     * original is closed, a wrapped task may run after the submitting 
+     * thread has moved on.
+     */
+    private Scope snapshot() {
+        Scope scope = openScope();
+        return scope == null ? null : new Scope( scope.monitor, null );
+    }
+
+    private Scope install( Scope scope ) {
+        Scope previous = scopes.get();
+        if ( scope == null ) {
+            scopes.remove();
+        }
+        else {
+            scopes.set( scope );
         }
-        return m;
+        return previous;
     }
 }
@@ -3,7 +3,6 @@ package net.bioclipse.managers.business;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -13,11 +12,9 @@ import net.bioclipse.core.IResourcePathTransformer;
 import net.bioclipse.core.ResourcePathTransformer;
 import net.bioclipse.core.business.BioclipseException;
 import net.bioclipse.core.util.LogUtils;
-import net.bioclipse.jobs.BioclipseJob;
-import net.bioclipse.jobs.BioclipseJobUpdateHook;
 import net.bioclipse.jobs.BioclipseUIJob;
-import net.bioclipse.jobs.ExtendedBioclipseJob;
 import net.bioclipse.jobs.IReturner;
+import net.bioclipse.jobs.StreamingReturner;
 import net.bioclipse.managers.MonitorContainer;
 
 import org.aopalliance.intercept.MethodInterceptor;
@@ -86,29 +83,26 @@ public abstract class AbstractManagerMethodDispatcher
     public Object invoke( MethodInvocation invocation ) throws Throwable {
 
         try {
-           IBioclipseManager manager = (IBioclipseManager) invocation.getThis();
-                    
-            Method m = findMethodToRun(invocation);
-            if ( invocation.getMethod().getAnnotation( GuiAction.class ) != null ) {
+            IBioclipseManager manager = (IBioclipseManager) invocation.getThis();
+            DispatchPlan plan = DispatchPlan.get( manager.getClass(),
+                                                  invocation.getMethod() );
+            Method m = plan.getImplementation();
+            if ( plan.getMode() == DispatchPlan.Mode.GUI_THREAD ) {
                 
-                logger.debug( manager.getManagerName() + "." 
-                              + invocation.getMethod().getName() 
-                              + " has @GuiAction - running in gui thread" );
-                return doInvokeInGuiThread( (IBioclipseManager)invocation.getThis(),
+                if ( logger.isDebugEnabled() ) {
+                    logger.debug( manager.getManagerName() + "." 
+                                  + invocation.getMethod().getName() 
+                                  + " has @GuiAction - running in gui thread" );
+                }
+                return doInvokeInGuiThread( manager,
                                             m,
                                             invocation.getArguments(),
                                             invocation );
             }
             
             Object returnValue;
-            if ( ( !BioclipseJob.class
-                                .isAssignableFrom( invocation.getMethod()
-                                                             .getReturnType() ) 
-                   && invocation.getMethod().getReturnType() != void.class )
-                 || Arrays.asList( invocation.getMethod().getParameterTypes() )
-                          .contains( IProgressMonitor.class ) ) {
-                if ( Arrays.asList( m.getParameterTypes() )
-                           .contains( IProgressMonitor.class) &&
+            if ( plan.getMode() == DispatchPlan.Mode.SAME_THREAD ) {
+                if ( plan.implementationTakesMonitor() &&
                      !(this instanceof JavaScriptManagerMethodDispatcher) )  {
                     
                     int timeout = 120;
@@ -129,24 +123,20 @@ public abstract class AbstractManagerMethodDispatcher
                     }
                 }
                 
-                returnValue = doInvokeInSameThread( (IBioclipseManager)
-                                                invocation.getThis(), 
-                                                m, 
-                                                invocation.getArguments(),
-                                                invocation );
+                returnValue = doInvokeInSameThread( manager, 
+                                                    m, 
+                                                    invocation.getArguments(),
+                                                    invocation );
             }
             else {
-                returnValue = doInvoke( (IBioclipseManager)invocation.getThis(), 
+                returnValue = doInvoke( manager, 
                                         m, 
                                         invocation.getArguments(),
                                         invocation,
-                                        invocation.getMethod()
-                                                  .getReturnType() 
-                                            != ExtendedBioclipseJob.class );
+                                        plan.isNotExtended() );
             }
     
-            if ( returnValue instanceof IFile && 
-                 invocation.getMethod().getReturnType() == String.class ) {
+            if ( returnValue instanceof IFile && plan.returnsPath() ) {
                 returnValue = ( (IFile) returnValue ).getLocationURI()
                                                      .getPath();
             }
@@ -196,70 +186,59 @@ public abstract class AbstractManagerMethodDispatcher
                             boolean notExtended ) 
                   throws BioclipseException {
 
-        List<Object> newArguments = new ArrayList<Object>();
-        newArguments.addAll( Arrays.asList( arguments ) );
+        DispatchPlan plan = DispatchPlan.get( manager.getClass(), 
+                                              methodCalled.getMethod() );
+        ArgumentAdapter adapter = plan.getArgumentAdapter();
         
-        boolean doingPartialReturns = false;
-        ReturnCollector returnCollector = new ReturnCollector();
-        //add partial returner
-        for ( Class<?> param : method.getParameterTypes() ) {
-            if ( param == IReturner.class ) {
-                doingPartialReturns = true;
-                newArguments.add( returnCollector );
-            }
-        }
+        boolean doingPartialReturns = adapter.usesReturner();
+        ReturnCollector returnCollector 
+            = doingPartialReturns ? new ReturnCollector() : null;
         
-        //remove any BioclipseUIJob
-        BioclipseUIJob uiJob = null;
-        for ( Object o : newArguments ) {
-            if ( o instanceof BioclipseUIJob) {
-                uiJob = (BioclipseUIJob) o;
-            }
-        }
-        if ( uiJob != null ) {
-            newArguments.remove( uiJob );
-        }
+        //find any BioclipseUIJob, it is not passed on
+        BioclipseUIJob uiJob = adapter.getUIJobIndex() != -1 
+            ? (BioclipseUIJob) arguments[adapter.getUIJobIndex()]
+            : null;
         
-        if ( Arrays.asList( method.getParameterTypes() )
-                   .contains( IProgressMonitor.class ) 
-             ) {
-            IProgressMonitor m = MonitorContainer.getInstance().getMonitor();
-            if ( m == null ) { 
-                m = new NullProgressMonitor(); 
-            }
-            if ( newArguments.size() < method.getParameterTypes().length ) {
-                newArguments.add( m );
+        IProgressMonitor monitor = null;
+        if ( adapter.needsMonitor() ) {
+            monitor = MonitorContainer.getInstance().getMonitor();
+            if ( monitor == null ) { 
+                monitor = new NullProgressMonitor(); 
             }
         }
         
-        arguments = newArguments.toArray();
-
-        //translate String -> IFile
-        for ( int i = 0; i < arguments.length; i++ ) {
-            if ( arguments[i] instanceof String &&
-                 method.getParameterTypes()[i] == IFile.class ) {
-                arguments[i] 
-                    = transformer.transform( (String)arguments[i] );
-            }
-        }
+        StreamingReturner<Object> stream = streamOf( adapter, arguments );
+        arguments = adapter.adapt( arguments, 
+                                   stream != null && doingPartialReturns
+                                       ? streamingTo( stream, returnCollector )
+                                       : returnCollector, 
+                                   monitor,
+                                   transformer );
         
         Object returnValue = null;
+        Throwable failure = null;
         try {
             if ( doingPartialReturns ) {
-                method.invoke( manager, arguments );
+                invokeTarget( plan, manager, arguments );
                 returnValue = returnCollector.getReturnValue();
                 if ( returnValue == null ) {
                     returnValue = returnCollector.getReturnValues();
                 }
             }
             else {
-                returnValue = method.invoke( manager, arguments );
+                returnValue = invokeTarget( plan, manager, arguments );
+                if ( stream != null ) {
+                    stream.completeReturn( returnValue );
+                }
             }
         } catch ( IllegalArgumentException e ) {
+            failure = e;
             throw new RuntimeException("Failed to run method (Message was: "+e.getMessage()+")", e);
         } catch ( IllegalAccessException e ) {
+            failure = e;
         	throw new RuntimeException("Failed to run method (Message was: "+e.getMessage()+")", e);
         } catch ( InvocationTargetException e ) {
+            failure = e.getCause();
             Throwable t = e;
             while ( t.getCause() != null ) {
                 t = t.getCause();
@@ -271,6 +250,14 @@ public abstract class AbstractManagerMethodDispatcher
                 }
             }
             throw new RuntimeException("Failed to run method (Message was: "+t.getMessage()+")", t);
+        } catch ( RuntimeException e ) {
+            failure = e;
+            throw e;
+        } catch ( Error e ) {
+            failure = e;
+            throw e;
+        } finally {
+            endStream( stream, failure );
         }
         
         if ( uiJob != null ) {
@@ -290,82 +277,75 @@ public abstract class AbstractManagerMethodDispatcher
         }
         return returnValue;
     }
-    
-    private Method findMethodToRun(MethodInvocation invocation) {
-        
-        Method result;
-        
-        //If a method with the same signature exists use that one
-        try {
-            result = invocation.getThis().getClass()
-                               .getMethod( invocation.getMethod()
-                                                     .getName(), 
-                                           invocation.getMethod()
-                                                     .getParameterTypes() );
-        } 
-        catch ( SecurityException e ) {
-            throw new RuntimeException("Failed to find the method to run", e);
-        } 
-        catch ( NoSuchMethodException e ) {
-            result = null;
+
+    /**
+     * @return the StreamingReturner passed in place of the returner, or 
+     *         <code>null</code>
+     */
+    @SuppressWarnings("unchecked")
+    protected static StreamingReturner<Object> streamOf( 
+                                                   ArgumentAdapter adapter,
+                                                   Object[] arguments ) {
+        int i = adapter.getReturnerIndex();
+        return i != -1 && arguments[i] instanceof StreamingReturner
+               ? (StreamingReturner<Object>) arguments[i]
+               : null;
+    }
+
+    /**
+     * @return a returner handing the partial returns to the stream and the 
+     *         complete return to both the stream and the collector
+     */
+    protected static IReturner<Object> streamingTo( 
+                                  final StreamingReturner<Object> stream,
+                                  final ReturnCollector<Object> collector ) {
+        return new IReturner<Object>() {
+            public void partialReturn( Object object ) {
+                stream.partialReturn( object );
+            }
+            public void completeReturn( Object object ) {
+                stream.completeReturn( object );
+                collector.completeReturn( object );
+            }
+        };
+    }
+
+    /**
+     * Ends a stream fed by a manager method run in the calling thread so 
+     * that its consumer stops waiting, whether the method returned or not.
+     * 
+     * @param stream the stream, may be <code>null</code>
+     * @param failure what the method threw, <code>null</code> if it 
+     *                returned
+     */
+    protected static void endStream( StreamingReturner<?> stream, 
+                                     Throwable failure ) {
+        if ( stream == null ) {
+            return;
         }
-        if ( result != null ) {
-            return result;
+        if ( failure != null ) {
+            stream.fail( failure );
         }
+        else {
+            stream.close();
+        }
+    }
 
-        //Look for "the JavaScript method" (taking String instead of IFile)
-        METHODS:
-        for ( Method m : invocation.getThis().getClass().getMethods() ) {
-            Method refMethod = invocation.getMethod();
-            int refLength = refMethod.getParameterTypes().length;
-            int mLength   = m.getParameterTypes().length;
-            if ( m.getName().equals( refMethod.getName() ) &&
-                  mLength >= refLength && 
-                  mLength <= refLength + 2 ) {
-                PARAMS:
-                for ( int i = 0, j = 0; 
-                      i < m.getParameterTypes().length; 
-                      i++ ) {
-                    Class<?> currentParam = m.getParameterTypes()[i];
-                    if ( currentParam == IReturner.class ) {
-                        continue PARAMS;
-                    }
-                    if ( invocation.getMethod()
-                                   .getParameterTypes().length >= j + 1 &&
-                         ( invocation.getMethod().getParameterTypes()[j] 
-                             == BioclipseUIJob.class  || 
-                             invocation.getMethod().getParameterTypes()[j] 
-                             == BioclipseJobUpdateHook.class  ) ) {
-                        j++;
-                    }
-                    if ( currentParam == IProgressMonitor.class &&
-                         // can only skip if there is nothing 
-                         // corresponding in the refMethods parameter types.
-                         refMethod.getParameterTypes().length < j + 1 ) {
-                        continue PARAMS;
-                    }
-                    if ( invocation.getMethod()
-                                   .getParameterTypes().length <= j ) {
-                        continue METHODS;
-                    }
-                    Class<?> refParam = invocation.getMethod()
-                                                  .getParameterTypes()[j++];
-                    if ( currentParam == refParam ) {
-                        continue PARAMS;
-                    }
-                    if ( currentParam == IFile.class && 
-                         refParam == String.class ) {
-                        continue PARAMS;
-                    }
-                    continue METHODS;
-                }
-                return m;
-            }
+    /**
+     * Calls the manager implementation, reporting the time spent in it to 
+     * the {@link DispatchMetrics}.
+     */
+    protected static Object invokeTarget( DispatchPlan plan, 
+                                          Object manager, 
+                                          Object[] arguments ) 
+                            throws InvocationTargetException, 
+                                   IllegalAccessException {
+        long start = System.nanoTime();
+        try {
+            return plan.getInvoker().invoke( manager, arguments );
+        }
+        finally {
+            DispatchMetrics.targetTime( System.nanoTime() - start );
         }
-        
-        throw new RuntimeException(
-            "Failed to find a method to run on " 
-            + invocation.getThis().getClass() + 
-            " that could correspond to " + invocation.getMethod() );
     }
 }
@@ -0,0 +1,276 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.managers.business;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.bioclipse.core.IResourcePathTransformer;
+import net.bioclipse.core.ResourcePathTransformer;
+import net.bioclipse.jobs.BioclipseUIJob;
+import net.bioclipse.jobs.IReturner;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Rewrites the arguments of a call to a manager interface method into the
+ * arguments of the manager implementation method that is actually run. The
+ * mapping from argument positions is worked out once per pair of methods so
+ * that each call only fills in one correctly sized array:
+ * <ul>
+ *   <li>a <code>BioclipseUIJob</code> argument is left out (unless the
+ *       implementation also takes one)</li>
+ *   <li>an <code>IReturner</code> parameter gets the returner given to
+ *       {@link #adapt(Object[], IReturner, IProgressMonitor)}, or the
+ *       returner passed by the caller if that is <code>null</code></li>
+ *   <li>a passed <code>IReturner</code> (e.g. a
+ *       <code>BioclipseJobUpdateHook</code>) is left out if the
+ *       implementation does not take one</li>
+ *   <li>an <code>IProgressMonitor</code> parameter without a corresponding
+ *       argument gets the given monitor</li>
+ *   <li>a <code>String</code> passed for an <code>IFile</code> parameter is
+ *       transformed into an <code>IFile</code></li>
+ * </ul>
+ *
+ * @author jonalv
+ */
+public class ArgumentAdapter {
+
+    private static final int RETURNER = -1;
+    private static final int MONITOR  = -2;
+    private static final int MISSING  = -3;
+
+    private static final
+        ConcurrentMap<Method, ConcurrentMap<Method, ArgumentAdapter>> adapters
+            = new ConcurrentHashMap<Method,
+                                    ConcurrentMap<Method, ArgumentAdapter>>();
+
+    private final int[]     sources;
+    private final boolean[] files;
+    private final boolean   usesReturner;
+    private final boolean   needsMonitor;
+    private final int       uiJobIndex;
+    private final int       returnerIndex;
+    private final int[]     fileArgumentIndexes;
+
+    ArgumentAdapter( Class<?>[] sourceTypes, Class<?>[] targetTypes ) {
+
+        sources = new int[targetTypes.length];
+        files   = new boolean[targetTypes.length];
+        boolean returner = false;
+        boolean monitor  = false;
+        int uiJob        = -1;
+        int passedReturner = -1;
+
+        int i = 0;
+        for ( int j = 0; j < targetTypes.length; j++ ) {
+            Class<?> type = targetTypes[j];
+            // skip arguments that are not passed on to the implementation
+            while ( i < sourceTypes.length && sourceTypes[i] != type ) {
+                if ( sourceTypes[i] == BioclipseUIJob.class ) {
+                    uiJob = i++;
+                }
+                else if ( IReturner.class.isAssignableFrom( sourceTypes[i] )
+                          && type != IReturner.class ) {
+                    passedReturner = i++;
+                }
+                else {
+                    break;
+                }
+            }
+            if ( type == IReturner.class ) {
+                if ( i < sourceTypes.length &&
+                     IReturner.class.isAssignableFrom( sourceTypes[i] ) ) {
+                    passedReturner = i++;
+                }
+                sources[j] = RETURNER;
+                returner = true;
+            }
+            else if ( type == IProgressMonitor.class &&
+                      ( i >= sourceTypes.length ||
+                        sourceTypes[i] != IProgressMonitor.class ) ) {
+                sources[j] = MONITOR;
+                monitor = true;
+            }
+            else if ( i < sourceTypes.length ) {
+                sources[j] = i++;
+                files[j] = type == IFile.class;
+            }
+            else {
+                sources[j] = MISSING;
+            }
+        }
+        for ( ; i < sourceTypes.length; i++ ) {
+            if ( sourceTypes[i] == BioclipseUIJob.class ) {
+                uiJob = i;
+            }
+            else if ( IReturner.class.isAssignableFrom( sourceTypes[i] ) ) {
+                passedReturner = i;
+            }
+        }
+
+        usesReturner  = returner;
+        needsMonitor  = monitor;
+        uiJobIndex    = uiJob;
+        returnerIndex = passedReturner;
+
+        int count = 0;
+        for ( int j = 0; j < files.length; j++ ) {
+            if ( files[j] ) {
+                count++;
+            }
+        }
+        fileArgumentIndexes = new int[count];
+        for ( int j = 0, k = 0; j < files.length; j++ ) {
+            if ( files[j] ) {
+                fileArgumentIndexes[k++] = sources[j];
+            }
+        }
+    }
+
+    /**
+     * @param source the manager interface method being called
+     * @param target the manager implementation method to run
+     * @return a cached adapter from arguments of <code>source</code> to
+     *         arguments of <code>target</code>
+     */
+    public static ArgumentAdapter get( Method source, Method target ) {
+
+        ConcurrentMap<Method, ArgumentAdapter> forTarget
+            = adapters.get( target );
+        if ( forTarget == null ) {
+            forTarget = new ConcurrentHashMap<Method, ArgumentAdapter>();
+            ConcurrentMap<Method, ArgumentAdapter> existing
+                = adapters.putIfAbsent( target, forTarget );
+            if ( existing != null ) {
+                forTarget = existing;
+            }
+        }
+        ArgumentAdapter adapter = forTarget.get( source );
+        if ( adapter == null ) {
+            adapter = new ArgumentAdapter( source.getParameterTypes(),
+                                           target.getParameterTypes() );
+            ArgumentAdapter existing = forTarget.putIfAbsent( source,
+                                                              adapter );
+            if ( existing != null ) {
+                adapter = existing;
+            }
+        }
+        return adapter;
+    }
+
+    /**
+     * Drops the cached adapters. They refer to the classes of the managers, so
+     * they are dropped when a bundle stops to let its class loader go.
+     */
+    public static void clearCache() {
+        adapters.clear();
+    }
+
+    /**
+     * Creates the argument array for the implementation method, 
+     * transforming paths with the shared 
+     * <code>ResourcePathTransformer</code>.
+     *
+     * @see #adapt(Object[], IReturner, IProgressMonitor, 
+     *             IResourcePathTransformer)
+     */
+    public Object[] adapt( Object[] arguments,
+                           IReturner<?> returner,
+                           IProgressMonitor monitor ) {
+        return adapt( arguments, 
+                      returner, 
+                      monitor, 
+                      ResourcePathTransformer.getInstance() );
+    }
+
+    /**
+     * Creates the argument array for the implementation method.
+     *
+     * @param arguments the arguments of the call to the interface method
+     * @param returner returner for an <code>IReturner</code> parameter, if
+     *                 <code>null</code> the returner among
+     *                 <code>arguments</code> is used
+     * @param monitor monitor for an <code>IProgressMonitor</code> parameter
+     *                without corresponding argument
+     * @param transformer transforms <code>String</code>s passed for 
+     *                    <code>IFile</code> parameters
+     * @return a new array with the arguments for the implementation method
+     */
+    public Object[] adapt( Object[] arguments,
+                           IReturner<?> returner,
+                           IProgressMonitor monitor,
+                           IResourcePathTransformer transformer ) {
+
+        Object[] result = new Object[sources.length];
+        for ( int j = 0; j < sources.length; j++ ) {
+            int i = sources[j];
+            if ( i >= 0 ) {
+                Object argument = arguments[i];
+                if ( files[j] && argument instanceof String ) {
+                    argument = transformer.transform( (String) argument );
+                }
+                result[j] = argument;
+            }
+            else if ( i == RETURNER ) {
+                result[j] = returner != null || returnerIndex == -1
+                            ? returner
+                            : arguments[returnerIndex];
+            }
+            else if ( i == MONITOR ) {
+                result[j] = monitor;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return whether the implementation method takes an IReturner
+     */
+    public boolean usesReturner() {
+        return usesReturner;
+    }
+
+    /**
+     * @return whether a monitor must be given to
+     *         {@link #adapt(Object[], IReturner, IProgressMonitor)}
+     */
+    public boolean needsMonitor() {
+        return needsMonitor;
+    }
+
+    /**
+     * @return index among the interface method arguments of a
+     *         BioclipseUIJob that is left out or -1 if there is none
+     */
+    public int getUIJobIndex() {
+        return uiJobIndex;
+    }
+
+    /**
+     * @return index among the interface method arguments of a passed
+     *         IReturner or -1 if there is none
+     */
+    public int getReturnerIndex() {
+        return returnerIndex;
+    }
+
+    /**
+     * @return indexes among the interface method arguments of the arguments
+     *         passed on as <code>IFile</code>s. Callers must not modify the
+     *         returned array.
+     */
+    public int[] getFileArgumentIndexes() {
+        return fileArgumentIndexes;
+    }
+}
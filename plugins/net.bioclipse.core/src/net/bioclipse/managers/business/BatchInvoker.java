@@ -0,0 +1,469 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.managers.business;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.bioclipse.core.business.BioclipseException;
+import net.bioclipse.jobs.IReturner;
+import net.bioclipse.managers.MonitorContainer;
+import net.bioclipse.managers.business.AbstractManagerMethodDispatcher.ReturnCollector;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.Undefined;
+import org.mozilla.javascript.Wrapper;
+import org.springframework.aop.framework.Advised;
+
+/**
+ * Calls one manager method many times, once for each given argument tuple.
+ * The method to run is resolved once for the whole batch and the calls are
+ * then made directly on the manager implementation, bypassing the proxy's
+ * interceptor chain (so the calls are not recorded in the history). At most
+ * <code>parallelism</code> calls run at the same time and the results are
+ * handed to the returner in the order of the argument tuples as soon as they
+ * are available.
+ * <p>
+ * The tuples can come straight from a script: JavaScript arrays are read
+ * as lists and numbers, which arrive as <code>Double</code>s, are converted
+ * to the parameter types of the method. A batch started from within a call
+ * of another batch runs its calls one after another in the calling thread,
+ * so that nested batches can not fill up the pool and wait for each other.
+ *
+ * @author jonalv
+ */
+public class BatchInvoker {
+
+    private static final ExecutorService sharedExecutor;
+
+    static {
+        int processors = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            processors,
+            processors,
+            30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+                public Thread newThread( Runnable r ) {
+                    Thread t = new Thread( r, "BatchInvoker-"
+                                              + count.incrementAndGet() );
+                    t.setDaemon( true );
+                    return t;
+                }
+            } );
+        executor.allowCoreThreadTimeOut( true );
+        sharedExecutor = executor;
+    }
+
+    /** set in the threads running the calls of a batch */
+    private static final ThreadLocal<Boolean> inBatch
+        = new ThreadLocal<Boolean>();
+
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    /**
+     * Creates a BatchInvoker running one call per available processor at the
+     * same time in a shared thread pool.
+     */
+    public BatchInvoker() {
+        this( sharedExecutor, Runtime.getRuntime().availableProcessors() );
+    }
+
+    /**
+     * @param executor the executor to run the calls in
+     * @param parallelism the maximum number of calls running at the same time
+     */
+    public BatchInvoker( ExecutorService executor, int parallelism ) {
+        if ( parallelism < 1 ) {
+            throw new IllegalArgumentException(
+                "parallelism must be at least 1, was: " + parallelism );
+        }
+        this.executor    = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Calls the method named <code>methodName</code> on
+     * <code>manager</code> once for every argument tuple.
+     *
+     * @param manager the manager (or its Spring proxy)
+     * @param methodName name of the manager method
+     * @param argumentTuples the arguments for each call: a
+     *                       <code>List</code>, an <code>Object[]</code>
+     *                       or a JavaScript array of tuples, each tuple
+     *                       being one of those or a single argument
+     * @param returner gets one partial return per tuple, in tuple order
+     * @param monitor used for cancellation and reporting progress
+     * @throws BioclipseException if any of the calls threw one
+     */
+    public void invoke( Object manager,
+                        String methodName,
+                        Object argumentTuples,
+                        IReturner<Object> returner,
+                        IProgressMonitor monitor )
+                throws BioclipseException {
+
+        List<Object[]> tuples = new ArrayList<Object[]>();
+        for ( Object tuple : toList( argumentTuples ) ) {
+            tuples.add( toArray( tuple ) );
+        }
+        if ( monitor == null ) {
+            monitor = new NullProgressMonitor();
+        }
+        monitor.beginTask( "Running " + methodName + " on "
+                           + tuples.size() + " argument tuples",
+                           tuples.size() );
+        try {
+            if ( tuples.isEmpty() ) {
+                return;
+            }
+            Object target = unwrap( manager );
+            Method method = findMethod( manager, methodName, tuples.get( 0 ) );
+            Class<?>[] types = method.getParameterTypes();
+            for ( Object[] tuple : tuples ) {
+                convert( types, tuple );
+            }
+            final DispatchPlan plan
+                = DispatchPlan.get( target.getClass(), method );
+            if ( plan.getMode() == DispatchPlan.Mode.GUI_THREAD ) {
+                throw new BioclipseException(
+                    methodName + " must run in the GUI thread and can not "
+                    + "be called in a batch" );
+            }
+            if ( inBatch.get() != null ) {
+                runInline( plan, target, tuples, returner, monitor );
+            }
+            else {
+                run( plan, target, tuples, returner, monitor );
+            }
+        }
+        finally {
+            monitor.done();
+        }
+    }
+
+    private void run( final DispatchPlan plan,
+                      final Object target,
+                      List<Object[]> tuples,
+                      IReturner<Object> returner,
+                      final IProgressMonitor monitor )
+                 throws BioclipseException {
+
+        // monitor for the individual calls, only forwarding cancellation
+        final IProgressMonitor callMonitor = new NullProgressMonitor() {
+            @Override
+            public boolean isCanceled() {
+                return monitor.isCanceled();
+            }
+        };
+        LinkedList<Future<Object>> running = new LinkedList<Future<Object>>();
+        int next = 0;
+        try {
+            while ( next < tuples.size() || !running.isEmpty() ) {
+                while ( next < tuples.size()
+                        && running.size() < parallelism ) {
+                    if ( monitor.isCanceled() ) {
+                        throw new OperationCanceledException();
+                    }
+                    final Object[] tuple = tuples.get( next++ );
+                    running.add( executor.submit( 
+                        MonitorContainer.getInstance().wrap( 
+                            new Callable<Object>() {
+                                public Object call() throws Exception {
+                                    inBatch.set( Boolean.TRUE );
+                                    try {
+                                        return invokeOnce( plan, target, 
+                                                           tuple, 
+                                                           callMonitor );
+                                    }
+                                    finally {
+                                        inBatch.remove();
+                                    }
+                                }
+                            } ) ) );
+                }
+                Object result = running.removeFirst().get();
+                returner.partialReturn( result );
+                monitor.worked( 1 );
+            }
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new OperationCanceledException();
+        }
+        catch ( ExecutionException e ) {
+            Throwable t = e.getCause();
+            if ( t instanceof BioclipseException ) {
+                throw (BioclipseException) t;
+            }
+            if ( t instanceof RuntimeException ) {
+                throw (RuntimeException) t;
+            }
+            throw new RuntimeException( "Failed to run method (Message was: "
+                                        + t.getMessage() + ")", t );
+        }
+        finally {
+            for ( Future<Object> f : running ) {
+                f.cancel( true );
+            }
+        }
+    }
+
+    /**
+     * Runs the calls one after another in this thread, for batches started
+     * from a call of another batch.
+     */
+    private static void runInline( DispatchPlan plan,
+                                   Object target,
+                                   List<Object[]> tuples,
+                                   IReturner<Object> returner,
+                                   IProgressMonitor monitor )
+                        throws BioclipseException {
+        for ( Object[] tuple : tuples ) {
+            if ( monitor.isCanceled() ) {
+                throw new OperationCanceledException();
+            }
+            returner.partialReturn( invokeOnce( plan, target, 
+                                                tuple, monitor ) );
+            monitor.worked( 1 );
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object invokeOnce( DispatchPlan plan,
+                                      Object target,
+                                      Object[] tuple,
+                                      IProgressMonitor monitor )
+                          throws BioclipseException {
+
+        ArgumentAdapter adapter = plan.getArgumentAdapter();
+        ReturnCollector returnCollector
+            = adapter.usesReturner() ? new ReturnCollector() : null;
+        Object[] arguments = adapter.adapt( tuple, returnCollector, monitor );
+        try {
+            Object returnValue = plan.getInvoker().invoke( target, arguments );
+            if ( returnCollector != null ) {
+                returnValue = returnCollector.getReturnValue();
+                if ( returnValue == null ) {
+                    returnValue = returnCollector.getReturnValues();
+                }
+            }
+            return returnValue;
+        }
+        catch ( IllegalAccessException e ) {
+            throw new RuntimeException( "Failed to run method (Message was: "
+                                        + e.getMessage() + ")", e );
+        }
+        catch ( InvocationTargetException e ) {
+            Throwable t = e;
+            while ( t.getCause() != null ) {
+                t = t.getCause();
+                if ( t instanceof BioclipseException ) {
+                    throw (BioclipseException)t;
+                }
+                if ( t instanceof OperationCanceledException ) {
+                    throw (OperationCanceledException)t;
+                }
+            }
+            throw new RuntimeException( "Failed to run method (Message was: "
+                                        + t.getMessage() + ")", t );
+        }
+    }
+
+    private static Object unwrap( Object manager ) throws BioclipseException {
+        if ( manager instanceof Advised ) {
+            try {
+                return ( (Advised) manager ).getTargetSource().getTarget();
+            }
+            catch ( Exception e ) {
+                throw new BioclipseException(
+                    "Could not get the manager behind the proxy", e );
+            }
+        }
+        return manager;
+    }
+
+    private static List<?> toList( Object values ) {
+        if ( values instanceof Wrapper ) {
+            values = ( (Wrapper) values ).unwrap();
+        }
+        if ( values instanceof List<?> ) {
+            return (List<?>) values;
+        }
+        if ( values instanceof Object[] ) {
+            return Arrays.asList( (Object[]) values );
+        }
+        if ( values instanceof Scriptable ) {
+            Scriptable array = (Scriptable) values;
+            long length = 0;
+            if ( array instanceof NativeArray ) {
+                length = ( (NativeArray) array ).getLength();
+            }
+            else if ( array.get( "length", array ) instanceof Number ) {
+                length = ( (Number) array.get( "length", array ) )
+                         .longValue();
+            }
+            List<Object> list = new ArrayList<Object>( (int) length );
+            for ( int i = 0; i < length; i++ ) {
+                list.add( fromScript( array.get( i, array ) ) );
+            }
+            return list;
+        }
+        throw new IllegalArgumentException(
+            "The argument tuples must be a list or an array, was: "
+            + ( values == null ? null : values.getClass().getName() ) );
+    }
+
+    private static Object fromScript( Object value ) {
+        if ( value instanceof Wrapper ) {
+            return ( (Wrapper) value ).unwrap();
+        }
+        if ( value == Scriptable.NOT_FOUND || value instanceof Undefined ) {
+            return null;
+        }
+        return value;
+    }
+
+    private static Object[] toArray( Object tuple ) {
+        if ( tuple instanceof Object[] ) {
+            return ( (Object[]) tuple ).clone();
+        }
+        if ( tuple instanceof List<?> || tuple instanceof Scriptable ) {
+            return toList( tuple ).toArray();
+        }
+        return new Object[] { tuple };
+    }
+
+    /**
+     * Converts numbers, like the <code>Double</code>s of a script, to the
+     * number types of the parameters.
+     */
+    private static void convert( Class<?>[] types, Object[] tuple ) {
+        for ( int i = 0; i < tuple.length; i++ ) {
+            tuple[i] = fromScript( tuple[i] );
+            if ( tuple[i] instanceof Number
+                 && !types[i].isInstance( tuple[i] ) ) {
+                tuple[i] = toNumber( types[i], (Number) tuple[i] );
+            }
+        }
+    }
+
+    private static Object toNumber( Class<?> type, Number n ) {
+        if ( type == int.class    || type == Integer.class ) {
+            return n.intValue();
+        }
+        if ( type == long.class   || type == Long.class ) {
+            return n.longValue();
+        }
+        if ( type == double.class || type == Double.class ) {
+            return n.doubleValue();
+        }
+        if ( type == float.class  || type == Float.class ) {
+            return n.floatValue();
+        }
+        if ( type == short.class  || type == Short.class ) {
+            return n.shortValue();
+        }
+        if ( type == byte.class   || type == Byte.class ) {
+            return n.byteValue();
+        }
+        return n;
+    }
+
+    private static boolean isNumberType( Class<?> type ) {
+        return type == int.class    || type == Integer.class
+            || type == long.class   || type == Long.class
+            || type == double.class || type == Double.class
+            || type == float.class  || type == Float.class
+            || type == short.class  || type == Short.class
+            || type == byte.class   || type == Byte.class;
+    }
+
+    /**
+     * Finds the manager interface method with the given name that can take
+     * the given arguments.
+     */
+    private static Method findMethod( Object manager,
+                                      String methodName,
+                                      Object[] arguments )
+                          throws BioclipseException {
+
+        Class<?>[] interfaces = manager instanceof Advised
+            ? ( (Advised) manager ).getProxiedInterfaces()
+            : new Class<?>[] { manager.getClass() };
+        for ( Class<?> c : interfaces ) {
+            METHODS:
+            for ( Method m : c.getMethods() ) {
+                Class<?>[] types = m.getParameterTypes();
+                if ( !m.getName().equals( methodName ) ||
+                     types.length != arguments.length ) {
+                    continue METHODS;
+                }
+                for ( int i = 0; i < types.length; i++ ) {
+                    if ( !accepts( types[i], arguments[i] ) ) {
+                        continue METHODS;
+                    }
+                }
+                return m;
+            }
+        }
+        throw new BioclipseException(
+            "Found no method " + methodName + " taking " + arguments.length
+            + " arguments of the given types" );
+    }
+
+    private static boolean accepts( Class<?> type, Object argument ) {
+        argument = fromScript( argument );
+        if ( argument == null ) {
+            return !type.isPrimitive();
+        }
+        if ( type.isInstance( argument ) ) {
+            return true;
+        }
+        if ( argument instanceof Number && isNumberType( type ) ) {
+            return true;
+        }
+        if ( type == IFile.class && argument instanceof String ) {
+            return true;
+        }
+        if ( type.isPrimitive() ) {
+            return ( type == int.class     && argument instanceof Integer )
+                || ( type == double.class  && argument instanceof Double  )
+                || ( type == boolean.class && argument instanceof Boolean )
+                || ( type == long.class    && argument instanceof Long    )
+                || ( type == float.class   && argument instanceof Float   )
+                || ( type == short.class   && argument instanceof Short   )
+                || ( type == byte.class    && argument instanceof Byte    )
+                || ( type == char.class    && argument instanceof Character );
+        }
+        return false;
+    }
+}
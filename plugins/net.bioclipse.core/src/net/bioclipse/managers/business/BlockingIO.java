@@ -0,0 +1,30 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.managers.business;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicates that the method spends most of its time waiting for network or
+ * workspace I/O. When run as a BioclipseJob the method is run in the
+ * {@link net.bioclipse.jobs.BlockingIOExecutor} instead of occupying a 
+ * platform worker thread. Can be put on the manager interface method or on 
+ * the implementing method.
+ * 
+ * @author jonalv
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface BlockingIO {
+}
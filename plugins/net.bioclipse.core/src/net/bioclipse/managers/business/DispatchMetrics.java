@@ -0,0 +1,248 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.managers.business;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Formatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the {@link MethodMetrics} of all manager methods called through a 
+ * manager proxy with the {@link MetricsAdvice} in its interceptor chain, 
+ * and exports them as text, JSON or CSV. Gathering can be turned off with 
+ * the system property <code>bioclipse.metrics=false</code> or 
+ * {@link #setEnabled(boolean)}.
+ * 
+ * @author jonalv
+ */
+public class DispatchMetrics {
+
+    private static final DispatchMetrics instance = new DispatchMetrics();
+
+    private final ConcurrentMap<Method, MethodMetrics> metrics
+        = new ConcurrentHashMap<Method, MethodMetrics>();
+
+    /** the calls being measured in the current thread */
+    private final ThreadLocal<Frame> frames = new ThreadLocal<Frame>();
+
+    private volatile boolean enabled 
+        = !"false".equals( System.getProperty( "bioclipse.metrics" ) );
+
+    /**
+     * A call being measured, nested calls get a frame of their own.
+     */
+    static final class Frame {
+        final Frame parent;
+        long targetNanos = -1;
+
+        Frame( Frame parent ) {
+            this.parent = parent;
+        }
+    }
+
+    DispatchMetrics() {
+    }
+
+    public static DispatchMetrics getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled( boolean enabled ) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Adds time spent in a manager implementation to the call measured in 
+     * the current thread, if any. Called by the dispatchers.
+     * 
+     * @param nanos time spent in the implementation method
+     */
+    public static void targetTime( long nanos ) {
+        Frame frame = instance.frames.get();
+        if ( frame != null ) {
+            frame.targetNanos = frame.targetNanos < 0 
+                                ? nanos 
+                                : frame.targetNanos + nanos;
+        }
+    }
+
+    Frame enter() {
+        Frame frame = new Frame( frames.get() );
+        frames.set( frame );
+        return frame;
+    }
+
+    void exit( Frame frame ) {
+        if ( frame.parent == null ) {
+            frames.remove();
+        }
+        else {
+            frames.set( frame.parent );
+        }
+    }
+
+    /**
+     * @param method the manager interface method
+     * @param managerName name of the manager
+     * @return the metrics for the method, created if not there
+     */
+    MethodMetrics forMethod( Method method, String managerName ) {
+        MethodMetrics m = metrics.get( method );
+        if ( m == null ) {
+            m = new MethodMetrics( nameOf( method, managerName ) );
+            MethodMetrics existing = metrics.putIfAbsent( method, m );
+            if ( existing != null ) {
+                m = existing;
+            }
+        }
+        return m;
+    }
+
+    /**
+     * @return the metrics of all called methods, the ones with the most 
+     *         total time first
+     */
+    public List<MethodMetrics> getMetrics() {
+        List<MethodMetrics> result 
+            = new ArrayList<MethodMetrics>( metrics.values() );
+        Collections.sort( result, new Comparator<MethodMetrics>() {
+            public int compare( MethodMetrics m1, MethodMetrics m2 ) {
+                double t1 = m1.getLatencies().getMean() * m1.getCalls();
+                double t2 = m2.getLatencies().getMean() * m2.getCalls();
+                return Double.compare( t2, t1 );
+            }
+        });
+        return result;
+    }
+
+    public void reset() {
+        for ( MethodMetrics m : metrics.values() ) {
+            m.reset();
+        }
+    }
+
+    /**
+     * @return a table of the metrics with times in milliseconds
+     */
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+        Formatter f = new Formatter( sb, Locale.US );
+        f.format( "%-50s %8s %6s %10s %10s %10s %10s %10s %10s %12s%n",
+                  "method", "calls", "errors", "mean", "p50", "p99", "max",
+                  "target", "overhead", "bytes" );
+        for ( MethodMetrics m : getMetrics() ) {
+            LatencyHistogram h = m.getLatencies();
+            f.format( "%-50s %8d %6d %10.3f %10.3f %10.3f %10.3f %10.3f "
+                      + "%10.3f %12d%n",
+                      m.getName(), m.getCalls(), m.getErrors(), 
+                      h.getMean() / 1e6,
+                      h.getValueAtPercentile( 50 ) / 1e6,
+                      h.getValueAtPercentile( 99 ) / 1e6,
+                      h.getMax() / 1e6,
+                      m.getTargetNanos() / 1e6,
+                      m.getOverheadNanos() / 1e6,
+                      m.getBytesReturned() );
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the metrics as a JSON array with one object per method, times
+     *         in milliseconds
+     */
+    public String toJSON() {
+        StringBuilder sb = new StringBuilder( "[" );
+        boolean first = true;
+        for ( MethodMetrics m : getMetrics() ) {
+            LatencyHistogram h = m.getLatencies();
+            if ( !first ) {
+                sb.append( ',' );
+            }
+            first = false;
+            sb.append( "\n  {\"method\": \"" )
+              .append( m.getName().replace( "\\", "\\\\" )
+                                  .replace( "\"", "\\\"" ) )
+              .append( "\", \"calls\": " ).append( m.getCalls() )
+              .append( ", \"errors\": " ).append( m.getErrors() )
+              .append( ", \"meanMs\": " ).append( ms( h.getMean() ) )
+              .append( ", \"p50Ms\": " )
+              .append( ms( h.getValueAtPercentile( 50 ) ) )
+              .append( ", \"p90Ms\": " )
+              .append( ms( h.getValueAtPercentile( 90 ) ) )
+              .append( ", \"p99Ms\": " )
+              .append( ms( h.getValueAtPercentile( 99 ) ) )
+              .append( ", \"maxMs\": " ).append( ms( h.getMax() ) )
+              .append( ", \"directCalls\": " ).append( m.getDirectCalls() )
+              .append( ", \"targetMs\": " ).append( ms( m.getTargetNanos() ) )
+              .append( ", \"overheadMs\": " )
+              .append( ms( m.getOverheadNanos() ) )
+              .append( ", \"bytesReturned\": " )
+              .append( m.getBytesReturned() )
+              .append( '}' );
+        }
+        return sb.append( first ? "]" : "\n]" ).toString();
+    }
+
+    /**
+     * @return the metrics as comma separated values with a header line, 
+     *         times in milliseconds
+     */
+    public String toCSV() {
+        StringBuilder sb = new StringBuilder( 
+            "method,calls,errors,meanMs,p50Ms,p90Ms,p99Ms,maxMs,directCalls,"
+            + "targetMs,overheadMs,bytesReturned\n" );
+        for ( MethodMetrics m : getMetrics() ) {
+            LatencyHistogram h = m.getLatencies();
+            sb.append( '"' ).append( m.getName().replace( "\"", "\"\"" ) )
+              .append( '"' )
+              .append( ',' ).append( m.getCalls() )
+              .append( ',' ).append( m.getErrors() )
+              .append( ',' ).append( ms( h.getMean() ) )
+              .append( ',' ).append( ms( h.getValueAtPercentile( 50 ) ) )
+              .append( ',' ).append( ms( h.getValueAtPercentile( 90 ) ) )
+              .append( ',' ).append( ms( h.getValueAtPercentile( 99 ) ) )
+              .append( ',' ).append( ms( h.getMax() ) )
+              .append( ',' ).append( m.getDirectCalls() )
+              .append( ',' ).append( ms( m.getTargetNanos() ) )
+              .append( ',' ).append( ms( m.getOverheadNanos() ) )
+              .append( ',' ).append( m.getBytesReturned() )
+              .append( '\n' );
+        }
+        return sb.toString();
+    }
+
+    private static String ms( double nanos ) {
+        return String.format( Locale.US, "%.3f", nanos / 1e6 );
+    }
+
+    private static String nameOf( Method method, String managerName ) {
+        StringBuilder sb = new StringBuilder( managerName )
+            .append( '.' ).append( method.getName() ).append( '(' );
+        Class<?>[] types = method.getParameterTypes();
+        for ( int i = 0; i < types.length; i++ ) {
+            if ( i > 0 ) {
+                sb.append( ", " );
+            }
+            sb.append( types[i].getSimpleName() );
+        }
+        return sb.append( ')' ).toString();
+    }
+}
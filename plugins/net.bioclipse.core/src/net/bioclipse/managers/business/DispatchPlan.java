@@ -0,0 +1,345 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.managers.business;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.bioclipse.jobs.BioclipseJob;
+import net.bioclipse.jobs.BioclipseJobUpdateHook;
+import net.bioclipse.jobs.BioclipseUIJob;
+import net.bioclipse.jobs.ExtendedBioclipseJob;
+import net.bioclipse.jobs.IReturner;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Everything the manager method dispatchers need to know about how to run a
+ * call to a manager interface method on a given manager class. A plan is
+ * resolved the first time the (manager class, interface method) pair is seen
+ * and then reused for all following calls.
+ *
+ * @author jonalv
+ */
+public class DispatchPlan {
+
+    /**
+     * How the dispatcher should execute the call.
+     */
+    public enum Mode {
+        /** Run asynchronously in the GUI thread (<code>@GuiAction</code>) */
+        GUI_THREAD,
+        /** Run directly in the calling thread */
+        SAME_THREAD,
+        /** Let the dispatcher decide, possibly creating a BioclipseJob */
+        DISPATCHER
+    }
+
+    private static final
+        ConcurrentMap<Class<?>, ConcurrentMap<Method, DispatchPlan>> plans
+            = new ConcurrentHashMap<Class<?>,
+                                    ConcurrentMap<Method, DispatchPlan>>();
+
+    private final Method   methodCalled;
+    private final Method   implementation;
+    private final Class<?>[] implementationParameterTypes;
+    private final Mode     mode;
+    private final boolean  implementationTakesMonitor;
+    private final boolean  implementationTakesReturner;
+    private final boolean  calledTakesMonitor;
+    private final boolean  runsAsJob;
+    private final boolean  notExtended;
+    private final boolean  returnsPath;
+    private final boolean  blockingIO;
+    private final int      uiJobIndex;
+    private final int[]    fileIndexes;
+    private final ManagerMethodInvoker invoker;
+    private final ArgumentAdapter argumentAdapter;
+
+    private DispatchPlan( Method methodCalled, Method implementation ) {
+
+        this.methodCalled   = methodCalled;
+        this.implementation = implementation;
+        this.implementationParameterTypes
+            = implementation.getParameterTypes();
+        this.invoker = ManagerMethodInvoker.forMethod( implementation );
+        this.argumentAdapter = ArgumentAdapter.get( methodCalled,
+                                                    implementation );
+
+        Class<?>[] calledTypes = methodCalled.getParameterTypes();
+        Class<?> returnType    = methodCalled.getReturnType();
+
+        calledTakesMonitor = indexOf( calledTypes,
+                                      IProgressMonitor.class ) != -1;
+        uiJobIndex         = indexOf( calledTypes, BioclipseUIJob.class );
+        implementationTakesMonitor
+            = indexOf( implementationParameterTypes,
+                       IProgressMonitor.class ) != -1;
+        implementationTakesReturner
+            = indexOf( implementationParameterTypes, IReturner.class ) != -1;
+
+        List<Integer> files = new ArrayList<Integer>();
+        for ( int i = 0; i < implementationParameterTypes.length; i++ ) {
+            if ( implementationParameterTypes[i] == IFile.class ) {
+                files.add( i );
+            }
+        }
+        fileIndexes = new int[files.size()];
+        for ( int i = 0; i < fileIndexes.length; i++ ) {
+            fileIndexes[i] = files.get( i );
+        }
+
+        if ( methodCalled.getAnnotation( GuiAction.class ) != null ) {
+            mode = Mode.GUI_THREAD;
+        }
+        else if ( ( !BioclipseJob.class.isAssignableFrom( returnType )
+                    && returnType != void.class )
+                  || calledTakesMonitor ) {
+            mode = Mode.SAME_THREAD;
+        }
+        else {
+            mode = Mode.DISPATCHER;
+        }
+
+        runsAsJob = implementationTakesMonitor
+                    && ( returnType == void.class
+                         || returnType == BioclipseJob.class
+                         || returnType == ExtendedBioclipseJob.class );
+        notExtended = returnType != ExtendedBioclipseJob.class;
+        returnsPath = returnType == String.class;
+        blockingIO = methodCalled.getAnnotation( BlockingIO.class ) != null
+                     || implementation.getAnnotation( BlockingIO.class ) 
+                            != null;
+    }
+
+    /**
+     * Drops the cached plans. They refer to the classes of the managers, so
+     * they are dropped when a bundle stops to let its class loader go.
+     */
+    public static void clearCache() {
+        plans.clear();
+    }
+
+    /**
+     * Returns the plan for running <code>methodCalled</code> on an instance
+     * of <code>managerClass</code>, resolving it if this is the first call.
+     *
+     * @param managerClass the class of the manager implementation
+     * @param methodCalled the manager interface method being called
+     * @return the dispatch plan
+     */
+    public static DispatchPlan get( Class<?> managerClass,
+                                    Method methodCalled ) {
+
+        ConcurrentMap<Method, DispatchPlan> forClass
+            = plans.get( managerClass );
+        if ( forClass == null ) {
+            forClass = new ConcurrentHashMap<Method, DispatchPlan>();
+            ConcurrentMap<Method, DispatchPlan> existing
+                = plans.putIfAbsent( managerClass, forClass );
+            if ( existing != null ) {
+                forClass = existing;
+            }
+        }
+        DispatchPlan plan = forClass.get( methodCalled );
+        if ( plan == null ) {
+            plan = new DispatchPlan( methodCalled,
+                                     findMethodToRun( managerClass,
+                                                      methodCalled ) );
+            DispatchPlan existing = forClass.putIfAbsent( methodCalled, plan );
+            if ( existing != null ) {
+                plan = existing;
+            }
+        }
+        return plan;
+    }
+
+    private static int indexOf( Class<?>[] types, Class<?> type ) {
+        for ( int i = 0; i < types.length; i++ ) {
+            if ( types[i] == type ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Method findMethodToRun( Class<?> managerClass,
+                                           Method refMethod ) {
+
+        Method result;
+        Class<?>[] refTypes = refMethod.getParameterTypes();
+
+        //If a method with the same signature exists use that one
+        try {
+            result = managerClass.getMethod( refMethod.getName(), refTypes );
+        }
+        catch ( SecurityException e ) {
+            throw new RuntimeException("Failed to find the method to run", e);
+        }
+        catch ( NoSuchMethodException e ) {
+            result = null;
+        }
+        if ( result != null ) {
+            return result;
+        }
+
+        //Look for "the JavaScript method" (taking String instead of IFile)
+        int refLength = refTypes.length;
+        METHODS:
+        for ( Method m : managerClass.getMethods() ) {
+            Class<?>[] mTypes = m.getParameterTypes();
+            int mLength = mTypes.length;
+            if ( m.getName().equals( refMethod.getName() ) &&
+                  mLength >= refLength &&
+                  mLength <= refLength + 2 ) {
+                PARAMS:
+                for ( int i = 0, j = 0; i < mLength; i++ ) {
+                    Class<?> currentParam = mTypes[i];
+                    if ( currentParam == IReturner.class ) {
+                        continue PARAMS;
+                    }
+                    if ( refLength >= j + 1 &&
+                         ( refTypes[j] == BioclipseUIJob.class  ||
+                           refTypes[j] == BioclipseJobUpdateHook.class ) ) {
+                        j++;
+                    }
+                    if ( currentParam == IProgressMonitor.class &&
+                         // can only skip if there is nothing
+                         // corresponding in the refMethods parameter types.
+                         refLength < j + 1 ) {
+                        continue PARAMS;
+                    }
+                    if ( refLength <= j ) {
+                        continue METHODS;
+                    }
+                    Class<?> refParam = refTypes[j++];
+                    if ( currentParam == refParam ) {
+                        continue PARAMS;
+                    }
+                    if ( currentParam == IFile.class &&
+                         refParam == String.class ) {
+                        continue PARAMS;
+                    }
+                    continue METHODS;
+                }
+                return m;
+            }
+        }
+
+        throw new RuntimeException(
+            "Failed to find a method to run on "
+            + managerClass + " that could correspond to " + refMethod );
+    }
+
+    /**
+     * @return the manager interface method that was called
+     */
+    public Method getMethodCalled() {
+        return methodCalled;
+    }
+
+    /**
+     * @return the manager implementation method to run
+     */
+    public Method getImplementation() {
+        return implementation;
+    }
+
+    /**
+     * @return the invoker used for calling the implementation method
+     */
+    public ManagerMethodInvoker getInvoker() {
+        return invoker;
+    }
+
+    /**
+     * @return the adapter from the called method's arguments to the
+     *         implementation method's arguments
+     */
+    public ArgumentAdapter getArgumentAdapter() {
+        return argumentAdapter;
+    }
+
+    /**
+     * @return the parameter types of the implementation method. Callers must
+     *         not modify the returned array.
+     */
+    public Class<?>[] getImplementationParameterTypes() {
+        return implementationParameterTypes;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public boolean implementationTakesMonitor() {
+        return implementationTakesMonitor;
+    }
+
+    public boolean implementationTakesReturner() {
+        return implementationTakesReturner;
+    }
+
+    public boolean calledTakesMonitor() {
+        return calledTakesMonitor;
+    }
+
+    /**
+     * @return whether the Java dispatcher should run the call as a
+     *         BioclipseJob
+     */
+    public boolean runsAsJob() {
+        return runsAsJob;
+    }
+
+    /**
+     * @return <code>false</code> if the called method returns an
+     *         ExtendedBioclipseJob which should not be scheduled automatically
+     */
+    public boolean isNotExtended() {
+        return notExtended;
+    }
+
+    /**
+     * @return whether a returned IFile should be converted to its path
+     */
+    public boolean returnsPath() {
+        return returnsPath;
+    }
+
+    /**
+     * @return whether the called or the implementation method is annotated
+     *         with <code>@BlockingIO</code>
+     */
+    public boolean isBlockingIO() {
+        return blockingIO;
+    }
+
+    /**
+     * @return index of the BioclipseUIJob among the called method's
+     *         parameters or -1 if there is none
+     */
+    public int getUIJobIndex() {
+        return uiJobIndex;
+    }
+
+    /**
+     * @return indexes of the implementation parameters of type IFile. Callers
+     *         must not modify the returned array.
+     */
+    public int[] getFileIndexes() {
+        return fileIndexes;
+    }
+}
@@ -0,0 +1,22 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.managers.business;
+
+import org.aopalliance.intercept.MethodInterceptor;
+
+/**
+ * Advice measuring the calls to manager methods, see {@link MetricsAdvice}.
+ * 
+ * @author jonalv
+ */
+public interface IMetricsAdvice extends MethodInterceptor {
+
+}
@@ -1,9 +1,7 @@
 package net.bioclipse.managers.business;
 
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 
 import net.bioclipse.core.IResourcePathTransformer;
 import net.bioclipse.core.ResourcePathTransformer;
@@ -12,16 +10,16 @@ import net.bioclipse.core.util.LogUtils;
 import net.bioclipse.jobs.BioclipseJob;
 import net.bioclipse.jobs.BioclipseJobUpdateHook;
 import net.bioclipse.jobs.BioclipseUIJob;
+import net.bioclipse.jobs.BlockingIOExecutor;
 import net.bioclipse.jobs.ExtendedBioclipseJob;
-import net.bioclipse.jobs.IReturner;
+import net.bioclipse.jobs.ManagerJobScheduler;
+import net.bioclipse.jobs.StreamingReturner;
 import net.bioclipse.managers.business.AbstractManagerMethodDispatcher.ReturnCollector;
 
 import org.aopalliance.intercept.MethodInvocation;
 import org.apache.log4j.Logger;
-import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResourceRuleFactory;
 import org.eclipse.core.resources.ResourcesPlugin;
-import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Status;
@@ -50,93 +48,60 @@ public class JavaManagerMethodDispatcher
                             boolean notExtended) 
                   throws BioclipseException {
 
-        if ( Arrays.asList( method.getParameterTypes() )
-                   .contains( IProgressMonitor.class ) &&
-             ( invocation.getMethod()
-                         .getReturnType() == void.class || 
-               invocation.getMethod()
-                         .getReturnType() == BioclipseJob.class ||
-               invocation.getMethod()
-                         .getReturnType() == ExtendedBioclipseJob.class ) ) {
-            
-            return runAsJob(manager, method, arguments, invocation, notExtended);
+        DispatchPlan plan = DispatchPlan.get( manager.getClass(), 
+                                              invocation.getMethod() );
+        if ( plan.runsAsJob() ) {
+            return runAsJob( manager, method, arguments, invocation, 
+                             notExtended, plan );
         }
         
-        return runInSameThread(manager, method, arguments);
+        return runInSameThread(manager, method, arguments, plan);
     }
 
     private Object runInSameThread( IBioclipseManager manager, Method method,
-                                    Object[] arguments ) 
+                                    Object[] arguments, DispatchPlan plan ) 
                    throws BioclipseException {
 
-        //translate String -> IFile
-        for ( int i = 0; i < arguments.length; i++ ) {
-            if ( arguments[i] instanceof String &&
-                 method.getParameterTypes()[i] == IFile.class ) {
-                arguments[i] = transformer.transform( (String)arguments[i] );
-            }
-        }
+        ArgumentAdapter adapter = plan.getArgumentAdapter();
         
-        List<Object> args = new ArrayList<Object>( Arrays.asList( arguments ) );
-        
-        boolean doingPartialReturns = false;
-        ReturnCollector returnCollector = new ReturnCollector();
-        
-        //add partial returner if needed
-        for ( Class<?> param : method.getParameterTypes() ) {
-            if ( param.isAssignableFrom( IReturner.class ) ) {
-                doingPartialReturns = true;
-                args.add( returnCollector );
-            }
-        }
-        
-        //remove partial returner if needed
-        if ( !doingPartialReturns ) {
-            int toBeremoved = -1;
-            for ( int i = 0; i < arguments.length; i++ ) {
-                if ( args.get(i) instanceof IReturner ) {
-                    toBeremoved = i;
-                }
-            }
-            if ( toBeremoved != -1 ) {
-                args.remove( toBeremoved );
-            }
-        }
+        boolean doingPartialReturns = adapter.usesReturner();
+        ReturnCollector returnCollector 
+            = doingPartialReturns ? new ReturnCollector() : null;
         
-        //Add a NullProgressMonitor if needed
-        if ( Arrays.asList( method.getParameterTypes() )
-                   .contains( IProgressMonitor.class ) &&
-             !Arrays.asList( arguments ).contains( IProgressMonitor.class ) ) {
-            
-            args.add( new NullProgressMonitor() );
-        }
-        
-        //Remove BioclipseUiJob if there
-        BioclipseUIJob<Object> uiJob = null;
-        for ( Object o : args ) {
-            if ( o instanceof BioclipseUIJob ) {
-                uiJob = (BioclipseUIJob<Object>) o;
-            }
-        }
-        if ( uiJob != null ) {
-            args.remove( uiJob );
-        }
-
-        arguments = args.toArray();
+        //BioclipseUiJob is not passed on
+        BioclipseUIJob<Object> uiJob = adapter.getUIJobIndex() != -1
+            ? (BioclipseUIJob<Object>) arguments[adapter.getUIJobIndex()]
+            : null;
+
+        StreamingReturner<Object> stream = streamOf( adapter, arguments );
+        arguments = adapter.adapt( arguments, 
+                                   stream != null && doingPartialReturns
+                                       ? streamingTo( stream, returnCollector )
+                                       : returnCollector,
+                                   adapter.needsMonitor() 
+                                       ? new NullProgressMonitor() 
+                                       : null,
+                                   transformer );
         Object returnValue = null;
+        Throwable failure = null;
         try {
             if ( doingPartialReturns ) {
-                method.invoke( manager, arguments );
+                invokeTarget( plan, manager, arguments );
                 returnValue = returnCollector.getReturnValue();
                 if ( returnValue == null ) {
                     returnValue = returnCollector.getReturnValues();
                 }
             }
             else {
-                returnValue = method.invoke( manager, arguments );
+                returnValue = invokeTarget( plan, manager, arguments );
+                if ( stream != null ) {
+                    stream.completeReturn( returnValue );
+                }
             }
         } 
         catch ( Exception e ) {
+            failure = e instanceof InvocationTargetException 
+                      ? e.getCause() : e;
             Throwable t = e;
             while ( t.getCause() != null ) {
                 if ( t.getCause() instanceof BioclipseException) {
@@ -149,6 +114,13 @@ public class JavaManagerMethodDispatcher
                 + "." + method.getName(), 
                 e);
         }
+        catch ( Error e ) {
+            failure = e;
+            throw e;
+        }
+        finally {
+            endStream( stream, failure );
+        }
         if ( uiJob != null ) {
             final BioclipseUIJob<Object> finalUiJob = uiJob;
             finalUiJob.setReturnValue( returnValue );
@@ -165,7 +137,8 @@ public class JavaManagerMethodDispatcher
                              Method method,
                              Object[] arguments, 
                              MethodInvocation invocation, 
-                             boolean notExtended ) {
+                             boolean notExtended,
+                             DispatchPlan plan ) {
 
         //find update hook
         BioclipseJobUpdateHook hook = null;
@@ -192,9 +165,15 @@ public class JavaManagerMethodDispatcher
         job.setMethodCalled( invocation.getMethod() );
         job.setBioclipseManager( manager );
                
+        job.setBlockingIO( 
+            plan.isBlockingIO() 
+            || BlockingIOExecutor.isEnabledFor( manager.getManagerName() ) );
         job.setUser( false );
         if ( notExtended ) {
-            job.schedule();
+            ManagerJobScheduler.getInstance().schedule( job );
+        }
+        else {
+            ManagerJobScheduler.getInstance().addFamilies( job );
         }
         return job;
     }
@@ -206,9 +185,10 @@ public class JavaManagerMethodDispatcher
                                           final MethodInvocation invocation ) {
 
         //translate String -> IFile
-        for ( int i = 0; i < arguments.length; i++ ) {
-            if ( arguments[i] instanceof String &&
-                 method.getParameterTypes()[i] == IFile.class ) {
+        for ( int i : DispatchPlan.get( manager.getClass(), 
+                                        invocation.getMethod() )
+                                  .getFileIndexes() ) {
+            if ( i < arguments.length && arguments[i] instanceof String ) {
                 arguments[i] = transformer.transform( (String)arguments[i] );
             }
         }
@@ -216,7 +196,8 @@ public class JavaManagerMethodDispatcher
 
             public void run() {
                 try {
-                    method.invoke( manager, arguments );
+                    ManagerMethodInvoker.forMethod( method )
+                                        .invoke( manager, arguments );
                 } catch ( Exception e ) {
                     Throwable root = LogUtils.findRootOrBioclipseException( e ); 
                     LogUtils.handleException( 
@@ -0,0 +1,123 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.managers.business;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in nanoseconds with log-linear buckets in the 
+ * style of HdrHistogram: each power of two is split into eight buckets so 
+ * every recorded value is known to within 12.5%, whatever its magnitude. 
+ * Recording is a couple of atomic increments and takes no locks.
+ * 
+ * @author jonalv
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS     = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS         
+        = ( 64 - SUB_BUCKET_BITS + 1 ) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray( BUCKETS );
+    private final AtomicLong      count  = new AtomicLong();
+    private final AtomicLong      sum    = new AtomicLong();
+    private final AtomicLong      max    = new AtomicLong();
+
+    /**
+     * @param nanos a latency, negative values are counted as 0
+     */
+    public void record( long nanos ) {
+        if ( nanos < 0 ) {
+            nanos = 0;
+        }
+        counts.incrementAndGet( indexOf( nanos ) );
+        count.incrementAndGet();
+        sum.addAndGet( nanos );
+        long current = max.get();
+        while ( nanos > current && !max.compareAndSet( current, nanos ) ) {
+            current = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return a value that at least <code>percentile</code> percent of the 
+     *         recorded values are smaller than or equal to, 0 if nothing has
+     *         been recorded
+     */
+    public long getValueAtPercentile( double percentile ) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for ( int i = 0; i < BUCKETS; i++ ) {
+            snapshot[i] = counts.get( i );
+            total += snapshot[i];
+        }
+        if ( total == 0 ) {
+            return 0;
+        }
+        long wanted = (long) Math.ceil( total * percentile / 100.0 );
+        if ( wanted < 1 ) {
+            wanted = 1;
+        }
+        long seen = 0;
+        for ( int i = 0; i < BUCKETS; i++ ) {
+            seen += snapshot[i];
+            if ( seen >= wanted ) {
+                return Math.min( highestValueIn( i ), max.get() );
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for ( int i = 0; i < BUCKETS; i++ ) {
+            counts.set( i, 0 );
+        }
+        count.set( 0 );
+        sum.set( 0 );
+        max.set( 0 );
+    }
+
+    static int indexOf( long value ) {
+        if ( value < SUB_BUCKETS ) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros( value );
+        int sub = (int) ( value >>> ( exponent - SUB_BUCKET_BITS ) ) 
+                  & ( SUB_BUCKETS - 1 );
+        return ( exponent - SUB_BUCKET_BITS + 1 ) * SUB_BUCKETS + sub;
+    }
+
+    static long highestValueIn( int index ) {
+        if ( index < SUB_BUCKETS ) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = index % SUB_BUCKETS;
+        long lowest = ( SUB_BUCKETS + sub ) << ( exponent - SUB_BUCKET_BITS );
+        return lowest + ( 1L << ( exponent - SUB_BUCKET_BITS ) ) - 1;
+    }
+}
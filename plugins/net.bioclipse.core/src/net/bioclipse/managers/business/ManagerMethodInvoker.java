@@ -0,0 +1,194 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.managers.business;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.sf.cglib.reflect.FastClass;
+import net.sf.cglib.reflect.FastMethod;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Calls a manager method. Where possible a cglib generated
+ * <code>FastClass</code> is used so that the call is a direct call instead of
+ * going through <code>Method.invoke</code>. If no such class can be generated
+ * (for example because the manager's class loader can not see cglib) plain
+ * reflection is used instead.
+ * <p>
+ * Just like <code>Method.invoke</code> any exception thrown by the manager
+ * method is wrapped in an <code>InvocationTargetException</code> so callers
+ * unwrap exceptions the same way whichever invoker they get.
+ *
+ * @author jonalv
+ */
+public abstract class ManagerMethodInvoker {
+
+    private static final Logger logger
+        = Logger.getLogger( ManagerMethodInvoker.class );
+
+    private static final ConcurrentMap<Method, ManagerMethodInvoker> invokers
+        = new ConcurrentHashMap<Method, ManagerMethodInvoker>();
+
+    private static final ConcurrentMap<Class<?>, Object> fastClasses
+        = new ConcurrentHashMap<Class<?>, Object>();
+
+    /**
+     * Placeholder in <code>fastClasses</code> for classes that cglib could
+     * not generate a FastClass for.
+     */
+    private static final Object NO_FAST_CLASS = new Object();
+
+    private final Method method;
+
+    private ManagerMethodInvoker( Method method ) {
+        this.method = method;
+    }
+
+    /**
+     * @param method the method to be called
+     * @return a cached invoker for the given method
+     */
+    public static ManagerMethodInvoker forMethod( Method method ) {
+        ManagerMethodInvoker invoker = invokers.get( method );
+        if ( invoker == null ) {
+            invoker = create( method );
+            ManagerMethodInvoker existing
+                = invokers.putIfAbsent( method, invoker );
+            if ( existing != null ) {
+                invoker = existing;
+            }
+        }
+        return invoker;
+    }
+
+    /**
+     * Drops the cached invokers and FastClasses. They refer to the classes of the managers, so
+     * they are dropped when a bundle stops to let its class loader go.
+     */
+    public static void clearCache() {
+        invokers.clear();
+        fastClasses.clear();
+    }
+
+    /**
+     * Creates an invoker that always uses reflection. Mainly intended for
+     * comparing against the generated invokers.
+     *
+     * @param method the method to be called
+     * @return a new reflective invoker
+     */
+    public static ManagerMethodInvoker reflective( Method method ) {
+        return new ReflectiveInvoker( method );
+    }
+
+    /**
+     * Calls the method on <code>target</code> with the given arguments.
+     *
+     * @param target the object to call the method on
+     * @param arguments the arguments, already matching the parameter types
+     * @return the return value of the method
+     * @throws InvocationTargetException if the method threw an exception
+     * @throws IllegalAccessException if the method could not be accessed
+     */
+    public abstract Object invoke( Object target, Object[] arguments )
+                           throws InvocationTargetException,
+                                  IllegalAccessException;
+
+    /**
+     * @return whether this invoker calls the method without reflection
+     */
+    public abstract boolean isGenerated();
+
+    public Method getMethod() {
+        return method;
+    }
+
+    private static ManagerMethodInvoker create( Method method ) {
+        Class<?> type = method.getDeclaringClass();
+        if ( !Modifier.isPublic( method.getModifiers() ) ||
+             !Modifier.isPublic( type.getModifiers() ) ) {
+            return new ReflectiveInvoker( method );
+        }
+        Object fastClass = fastClasses.get( type );
+        if ( fastClass == null ) {
+            try {
+                fastClass = FastClass.create( type.getClassLoader(), type );
+            }
+            catch ( Throwable t ) {
+                logger.debug( "Could not generate a FastClass for "
+                              + type.getName() + ", using reflection ("
+                              + t.getClass().getSimpleName() + ": "
+                              + t.getMessage() + ")" );
+                fastClass = NO_FAST_CLASS;
+            }
+            Object existing = fastClasses.putIfAbsent( type, fastClass );
+            if ( existing != null ) {
+                fastClass = existing;
+            }
+        }
+        if ( fastClass == NO_FAST_CLASS ) {
+            return new ReflectiveInvoker( method );
+        }
+        try {
+            return new GeneratedInvoker(
+                method, ( (FastClass) fastClass ).getMethod( method ) );
+        }
+        catch ( Throwable t ) {
+            logger.debug( "No FastMethod for " + method + ", using reflection" );
+            return new ReflectiveInvoker( method );
+        }
+    }
+
+    private static class ReflectiveInvoker extends ManagerMethodInvoker {
+
+        ReflectiveInvoker( Method method ) {
+            super( method );
+        }
+
+        @Override
+        public Object invoke( Object target, Object[] arguments )
+                      throws InvocationTargetException,
+                             IllegalAccessException {
+            return getMethod().invoke( target, arguments );
+        }
+
+        @Override
+        public boolean isGenerated() {
+            return false;
+        }
+    }
+
+    private static class GeneratedInvoker extends ManagerMethodInvoker {
+
+        private final FastMethod fastMethod;
+
+        GeneratedInvoker( Method method, FastMethod fastMethod ) {
+            super( method );
+            this.fastMethod = fastMethod;
+        }
+
+        @Override
+        public Object invoke( Object target, Object[] arguments )
+                      throws InvocationTargetException {
+            return fastMethod.invoke( target, arguments );
+        }
+
+        @Override
+        public boolean isGenerated() {
+            return true;
+        }
+    }
+}
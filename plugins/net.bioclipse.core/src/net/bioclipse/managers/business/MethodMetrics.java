@@ -0,0 +1,118 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.managers.business;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The metrics gathered for one manager method by the {@link MetricsAdvice}.
+ * 
+ * @author jonalv
+ */
+public class MethodMetrics {
+
+    private final String name;
+
+    private final LatencyHistogram latencies     = new LatencyHistogram();
+    private final AtomicLong       errors        = new AtomicLong();
+    private final AtomicLong       bytesReturned = new AtomicLong();
+    private final AtomicLong       targetNanos   = new AtomicLong();
+    private final AtomicLong       overheadNanos = new AtomicLong();
+    private final AtomicLong       directCalls   = new AtomicLong();
+
+    MethodMetrics( String name ) {
+        this.name = name;
+    }
+
+    /**
+     * @param totalNanos time from entering the manager proxy until the call 
+     *                   returned
+     * @param targetNanos time spent in the manager implementation or -1 if 
+     *                    it was not run during the call (e.g. it was 
+     *                    started as a job)
+     * @param bytes estimated size of the return value
+     * @param failed whether the call threw an exception
+     */
+    void record( long totalNanos, long targetNanos, long bytes, 
+                 boolean failed ) {
+        latencies.record( totalNanos );
+        if ( failed ) {
+            errors.incrementAndGet();
+        }
+        if ( bytes > 0 ) {
+            bytesReturned.addAndGet( bytes );
+        }
+        if ( targetNanos >= 0 ) {
+            directCalls.incrementAndGet();
+            this.targetNanos.addAndGet( targetNanos );
+            overheadNanos.addAndGet( Math.max( 0, totalNanos - targetNanos ) );
+        }
+    }
+
+    /**
+     * @return manager name, method name and parameter types
+     */
+    public String getName() {
+        return name;
+    }
+
+    public long getCalls() {
+        return latencies.getCount();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getBytesReturned() {
+        return bytesReturned.get();
+    }
+
+    /**
+     * @return the latencies of the calls as seen by the caller
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * @return number of calls where the implementation was run before the
+     *         call returned
+     */
+    public long getDirectCalls() {
+        return directCalls.get();
+    }
+
+    /**
+     * @return total time spent in the manager implementation for the direct
+     *         calls
+     */
+    public long getTargetNanos() {
+        return targetNanos.get();
+    }
+
+    /**
+     * @return total time spent in the interceptors and the dispatcher for 
+     *         the direct calls
+     */
+    public long getOverheadNanos() {
+        return overheadNanos.get();
+    }
+
+    void reset() {
+        latencies.reset();
+        errors.set( 0 );
+        bytesReturned.set( 0 );
+        targetNanos.set( 0 );
+        overheadNanos.set( 0 );
+        directCalls.set( 0 );
+    }
+}
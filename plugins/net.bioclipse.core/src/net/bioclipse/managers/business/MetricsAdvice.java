@@ -0,0 +1,121 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.managers.business;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+import net.bioclipse.managers.business.DispatchMetrics.Frame;
+
+import org.aopalliance.intercept.MethodInvocation;
+
+/**
+ * Measures the calls to manager methods. Put first in a manager proxy's 
+ * interceptor chain so that the time of the recording, the proxy wrapping 
+ * and the dispatching is included. The dispatchers report the time spent in 
+ * the manager implementation itself, see 
+ * {@link DispatchMetrics#targetTime(long)}, the rest of the call is counted 
+ * as dispatch overhead.
+ * 
+ * @author jonalv
+ */
+public class MetricsAdvice implements IMetricsAdvice {
+
+    private final DispatchMetrics metrics;
+
+    public MetricsAdvice() {
+        this( DispatchMetrics.getInstance() );
+    }
+
+    MetricsAdvice( DispatchMetrics metrics ) {
+        this.metrics = metrics;
+    }
+
+    public Object invoke( MethodInvocation invocation ) throws Throwable {
+
+        if ( !metrics.isEnabled() ) {
+            return invocation.proceed();
+        }
+        Frame frame = metrics.enter();
+        long start = System.nanoTime();
+        boolean failed = true;
+        Object returnValue = null;
+        try {
+            returnValue = invocation.proceed();
+            failed = false;
+            return returnValue;
+        }
+        finally {
+            long total = System.nanoTime() - start;
+            metrics.exit( frame );
+            Object manager = invocation.getThis();
+            metrics.forMethod( invocation.getMethod(),
+                               manager instanceof IBioclipseManager
+                                   ? ( (IBioclipseManager) manager )
+                                         .getManagerName()
+                                   : invocation.getMethod()
+                                               .getDeclaringClass()
+                                               .getSimpleName() )
+                   .record( total, frame.targetNanos, 
+                            estimateSize( returnValue ), failed );
+        }
+    }
+
+    /** number of elements of a collection looked at when estimating */
+    private static final int SAMPLE = 16;
+
+    /** levels of nested collections looked into when estimating */
+    private static final int DEPTH = 3;
+
+    /**
+     * A rough estimate of the size in bytes of a return value, only 
+     * strings, arrays and collections of them are counted. Collections are 
+     * not walked, the size is worked out from their first elements so that
+     * measuring a call costs the same however much it returns.
+     */
+    static long estimateSize( Object o ) {
+        try {
+            return estimateSize( o, DEPTH );
+        }
+        catch ( RuntimeException e ) {
+            // changed by another thread, the measuring must not fail the call
+            return 0;
+        }
+    }
+
+    private static long estimateSize( Object o, int depth ) {
+        if ( o == null ) {
+            return 0;
+        }
+        if ( o instanceof CharSequence ) {
+            return 2L * ( (CharSequence) o ).length();
+        }
+        if ( o instanceof byte[] ) {
+            return ( (byte[]) o ).length;
+        }
+        if ( o instanceof char[] ) {
+            return 2L * ( (char[]) o ).length;
+        }
+        if ( o instanceof Collection<?> && depth > 0 ) {
+            Collection<?> collection = (Collection<?>) o;
+            long size = 0;
+            int sampled = 0;
+            Iterator<?> elements = collection.iterator();
+            while ( sampled < SAMPLE && elements.hasNext() ) {
+                size += estimateSize( elements.next(), depth - 1 );
+                sampled++;
+            }
+            return sampled == 0 ? 0 
+                                : size * collection.size() / sampled;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,343 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.recording;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.bioclipse.core.domain.IBioObject;
+import net.bioclipse.managers.business.IBioclipseManager;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Adds recorded calls to the history in a background thread. The calling
+ * thread builds the record, so that the arguments are rendered as they
+ * were when the call was made, and puts it in a bounded queue; the
+ * recording thread adds the records to the history in call order.
+ * <p>
+ * What happens to a call when the queue is full is decided by the
+ * overflow policy, chosen with the system property
+ * <code>bioclipse.recording.overflow</code>:
+ * <dl>
+ * <dt><code>block</code> (default)</dt>
+ * <dd>the caller waits for room, no call goes unrecorded</dd>
+ * <dt><code>drop</code></dt>
+ * <dd>the call is not recorded</dd>
+ * <dt><code>sample</code></dt>
+ * <dd>once the queue is half full only every
+ * <code>bioclipse.recording.sampleRate</code>th call (default 10) is
+ * recorded, and none while it is full</dd>
+ * </dl>
+ * The size of the queue is set with
+ * <code>bioclipse.recording.queueSize</code> (default 10000). Dropped calls
+ * are counted as skipped in the history. Scripts
+ * generated from a history missing dropped calls may refer to variables
+ * that are never assigned. Should the recording thread stop on an error,
+ * all later calls are dropped instead of waiting for it.
+ *
+ * @author jonalv
+ */
+public class AsyncRecorder {
+
+    public static final int DEFAULT_QUEUE_SIZE  = 10000;
+    public static final int DEFAULT_SAMPLE_RATE = 10;
+
+    public enum OverflowPolicy { BLOCK, DROP, SAMPLE }
+
+    private static final Logger logger
+        = Logger.getLogger( AsyncRecorder.class );
+
+    /** milliseconds between checks that the recording thread still runs */
+    private static final long PUT_WAIT     = 100;
+    /** milliseconds dispose waits for the queued calls to be recorded */
+    private static final long DISPOSE_WAIT = 10000;
+
+    /** the record of a call, or a marker if there is a latch */
+    private static class Call {
+        final String         methodName;
+        final IRecord        record;
+        final CountDownLatch done;
+
+        Call( String methodName, IRecord record, CountDownLatch done ) {
+            this.methodName = methodName;
+            this.record     = record;
+            this.done       = done;
+        }
+    }
+
+    /** tells the recording thread to stop once everything before it is
+     *  recorded */
+    private static final Call CLOSE = new Call( null, null,
+                                                new CountDownLatch( 0 ) );
+
+    private final IHistory history;
+    private final BlockingQueue<Call> queue;
+    private final OverflowPolicy policy;
+    private final int sampleRate;
+    private final int sampleThreshold;
+    private final AtomicLong overflowing = new AtomicLong();
+    private final AtomicLong dropped     = new AtomicLong();
+    private final Thread recorder;
+    private volatile boolean closed;
+    /** set when the recording thread has stopped */
+    private volatile boolean dead;
+
+    /**
+     * @param history where the records go
+     * @param queueSize the number of calls that can wait to be recorded
+     * @param policy what to do with calls when the queue is full
+     * @param sampleRate with {@link OverflowPolicy#SAMPLE}, record one call
+     *                   in this many when the queue is half full
+     */
+    public AsyncRecorder( IHistory history,
+                          int queueSize,
+                          OverflowPolicy policy,
+                          int sampleRate ) {
+        if ( queueSize < 1 ) {
+            throw new IllegalArgumentException(
+                "queueSize must be at least 1, was: " + queueSize );
+        }
+        this.history         = history;
+        this.queue           = new ArrayBlockingQueue<Call>( queueSize );
+        this.policy          = policy;
+        this.sampleRate      = Math.max( 1, sampleRate );
+        this.sampleThreshold = queueSize / 2;
+        recorder = new Thread( new Runnable() {
+            public void run() {
+                try {
+                    record();
+                }
+                catch ( Throwable t ) {
+                    logger.error( "The recording thread stopped, no more "
+                                  + "calls will be recorded", t );
+                }
+                finally {
+                    dead = true;
+                    releaseWaiting();
+                }
+            }
+        }, "Recording" );
+        recorder.setDaemon( true );
+        recorder.start();
+    }
+
+    /**
+     * Creates a recorder configured by the system properties
+     * <code>bioclipse.recording.queueSize</code>,
+     * <code>bioclipse.recording.overflow</code> and
+     * <code>bioclipse.recording.sampleRate</code>.
+     */
+    public static AsyncRecorder createConfigured( IHistory history ) {
+        String overflow = System.getProperty( "bioclipse.recording.overflow",
+                                              "block" );
+        OverflowPolicy policy;
+        try {
+            policy = OverflowPolicy.valueOf( overflow.toUpperCase() );
+        }
+        catch ( IllegalArgumentException e ) {
+            logger.warn( "Unknown recording overflow policy: " + overflow
+                         + ", blocking" );
+            policy = OverflowPolicy.BLOCK;
+        }
+        return new AsyncRecorder(
+            history,
+            Integer.getInteger( "bioclipse.recording.queueSize",
+                                DEFAULT_QUEUE_SIZE ),
+            policy,
+            Integer.getInteger( "bioclipse.recording.sampleRate",
+                                DEFAULT_SAMPLE_RATE ) );
+    }
+
+    /**
+     * Records a call and queues the record to be added to the history.
+     *
+     * @param target the manager or BioObject the method was called on
+     * @return whether the call will be recorded
+     */
+    public boolean record( String methodName,
+                           Object target,
+                           Object[] args,
+                           Object returnValue ) {
+        if ( closed ) {
+            return false;
+        }
+        if ( !dead && ( policy != OverflowPolicy.SAMPLE || sampled() ) ) {
+            Call call;
+            try {
+                call = new Call( methodName, 
+                                 toRecord( methodName, target, 
+                                           args, returnValue ),
+                                 null );
+            }
+            catch ( RuntimeException e ) {
+                logger.warn( "Could not record " + methodName, e );
+                return false;
+            }
+            try {
+                if ( policy == OverflowPolicy.BLOCK ? put( call )
+                                                    : queue.offer( call ) ) {
+                    return true;
+                }
+            }
+            catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        dropped.incrementAndGet();
+        history.addSkipped( RecordingPolicy.nameOf( methodName, target ) );
+        return false;
+    }
+
+    /**
+     * Waits until the calls queued so far are in the history, or until the
+     * recording thread has stopped.
+     */
+    public void flush() throws InterruptedException {
+        if ( dead ) {
+            return;
+        }
+        CountDownLatch done = new CountDownLatch( 1 );
+        if ( put( new Call( null, null, done ) ) ) {
+            while ( !done.await( PUT_WAIT, TimeUnit.MILLISECONDS ) ) {
+                if ( dead ) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Records what is queued and stops the recording thread, waiting at 
+     * most {@value #DISPOSE_WAIT} milliseconds for it. Later calls are not 
+     * recorded.
+     */
+    public void dispose() {
+        if ( closed ) {
+            return;
+        }
+        closed = true;
+        try {
+            put( CLOSE );
+            recorder.join( DISPOSE_WAIT );
+            if ( recorder.isAlive() ) {
+                logger.warn( "The recording thread did not stop within "
+                             + DISPOSE_WAIT + " ms, leaving it" );
+            }
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of calls not recorded because the queue was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * With {@link OverflowPolicy#SAMPLE}, whether this call is one of 
+     * those recorded.
+     */
+    private boolean sampled() {
+        return queue.size() < sampleThreshold
+               || overflowing.incrementAndGet() % sampleRate == 0;
+    }
+
+    /**
+     * Queues a call, waiting while the queue is full and the recording
+     * thread runs.
+     *
+     * @return whether the call was queued
+     */
+    private boolean put( Call call ) throws InterruptedException {
+        while ( !dead ) {
+            if ( queue.offer( call, PUT_WAIT, TimeUnit.MILLISECONDS ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Releases anyone waiting for a flush and drops what is queued, once
+     * the recording thread has stopped.
+     */
+    private void releaseWaiting() {
+        Call call;
+        while ( ( call = queue.poll() ) != null ) {
+            if ( call.done != null ) {
+                call.done.countDown();
+            }
+        }
+    }
+
+    private void record() {
+        List<Call> batch = new ArrayList<Call>();
+        boolean stop = false;
+        while ( !stop ) {
+            try {
+                batch.add( queue.take() );
+            }
+            catch ( InterruptedException e ) {
+                break;
+            }
+            queue.drainTo( batch );
+            for ( Call call : batch ) {
+                if ( call == CLOSE ) {
+                    stop = true;
+                }
+                else if ( call.done != null ) {
+                    call.done.countDown();
+                }
+                else {
+                    try {
+                        history.addRecord( call.record );
+                    }
+                    catch ( Throwable t ) {
+                        // the records after it can still be added
+                        logger.warn( "Could not record " + call.methodName,
+                                     t );
+                    }
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private static IRecord toRecord( String methodName,
+                                     Object target,
+                                     Object[] args,
+                                     Object returnValue ) {
+        if ( target instanceof IBioObject ) {
+            return new BioObjectRecord( methodName,
+                                        ( (IBioObject) target ).getUID(),
+                                        args,
+                                        returnValue );
+        }
+        return new ManagerObjectRecord(
+            methodName,
+            ( (IBioclipseManager) target ).getManagerName(),
+            args,
+            returnValue );
+    }
+}
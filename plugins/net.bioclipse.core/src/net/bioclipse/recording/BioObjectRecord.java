@@ -8,6 +8,8 @@
  *******************************************************************************/
 package net.bioclipse.recording;
 
+import java.util.List;
+
 public class BioObjectRecord extends MethodRecord {
 
     protected String bioObjectId;
@@ -21,6 +23,18 @@ public class BioObjectRecord extends MethodRecord {
         this.bioObjectId = bioObjectId;
     }
 
+    BioObjectRecord( String methodName,
+                     String bioObjectId,
+                     List<Parameter> parameters,
+                     String returnObjectId,
+                     String returnType,
+                     String[] returnedListContentsIds ) {
+
+        super( methodName, parameters, returnObjectId, 
+               returnType, returnedListContentsIds );
+        this.bioObjectId = bioObjectId;
+    }
+
     public String toString() {
         
         StringBuilder sb = new StringBuilder();
@@ -29,7 +43,7 @@ public class BioObjectRecord extends MethodRecord {
             Parameter p = paramaters.get(i);
             
             if( p instanceof NonBioObjectParameter ) {
-                sb.append( ( (NonBioObjectParameter)p ).stringRepresentation );
+                sb.append( ( (NonBioObjectParameter)p ).getStringRepresentation() );
             }
             else if( p instanceof BioObjectParameter) {
                 sb.append(p.type);
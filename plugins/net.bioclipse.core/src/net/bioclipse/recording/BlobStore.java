@@ -0,0 +1,270 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.recording;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A directory of blobs named after the SHA-256 hash of their content.
+ * Putting the same content twice stores it once, so arguments repeated
+ * over many calls only take up space once. The blobs are spread over
+ * subdirectories named after the first two hex digits of the hash.
+ * <p>
+ * Blobs are written to a temporary file which is then renamed, so a blob
+ * is either complete or missing, also when several threads or sessions
+ * put the same content.
+ *
+ * @author jonalv
+ */
+public class BlobStore {
+
+    private static final Logger logger = Logger.getLogger( BlobStore.class );
+
+    private final File directory;
+
+    /**
+     * @param directory the directory to keep the blobs in, created if
+     *                  missing
+     * @throws IOException if the directory can not be created
+     */
+    public BlobStore( File directory ) throws IOException {
+        if ( !directory.isDirectory() && !directory.mkdirs() ) {
+            throw new IOException( "Could not create the blob store "
+                                   + "directory: " + directory );
+        }
+        this.directory = directory;
+    }
+
+    /**
+     * Opens the store configured by the system property
+     * <code>bioclipse.provenance.store</code>, by default
+     * <code>provenance</code> in the state location of the core plugin in
+     * the workspace.
+     *
+     * @return the store or <code>null</code> if it could not be opened
+     */
+    public static BlobStore openConfigured() {
+        File directory = configuredDirectory();
+        if ( directory == null ) {
+            return null;
+        }
+        try {
+            return new BlobStore( directory );
+        }
+        catch ( IOException e ) {
+            logger.warn( "Could not open the blob store in " + directory, e );
+            return null;
+        }
+    }
+
+    /**
+     * @return the directory of the store opened by {@link #openConfigured()},
+     *         <code>null</code> if there is none
+     */
+    static File configuredDirectory() {
+        String property = System.getProperty( "bioclipse.provenance.store" );
+        if ( property != null && property.length() > 0 ) {
+            return new File( property );
+        }
+        net.bioclipse.core.Activator core
+            = net.bioclipse.core.Activator.getDefault();
+        if ( core == null ) {
+            return null;
+        }
+        return new File( core.getStateLocation().toFile(), "provenance" );
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Stores <code>content</code> unless it is already stored.
+     *
+     * @return the SHA-256 hash of the content, as 64 hex digits
+     * @throws IOException if the blob could not be written
+     */
+    public String put( final byte[] content ) throws IOException {
+        String hash = toHex( newDigest().digest( content ) );
+        write( hash, new Content() {
+            public void writeTo( OutputStream out ) throws IOException {
+                out.write( content );
+            }
+        } );
+        return hash;
+    }
+
+    /**
+     * Stores the UTF-8 encoding of <code>content</code> unless it is
+     * already stored.
+     *
+     * @return the SHA-256 hash of the UTF-8 bytes
+     * @throws IOException if the blob could not be written
+     */
+    public String put( String content ) throws IOException {
+        return put( content.getBytes( "UTF-8" ) );
+    }
+
+    /**
+     * Stores a string whose hash is already known, without encoding it
+     * all at once.
+     */
+    void put( String hash, final String content ) throws IOException {
+        write( hash, new Content() {
+            public void writeTo( OutputStream out ) throws IOException {
+                Writer writer = new OutputStreamWriter( out, "UTF-8" );
+                writer.write( content );
+                writer.flush();
+            }
+        } );
+    }
+
+    public boolean contains( String hash ) {
+        return fileFor( hash ).isFile();
+    }
+
+    /**
+     * @return the content of the blob
+     * @throws FileNotFoundException if there is no blob with that hash
+     * @throws IOException if the blob could not be read
+     */
+    public byte[] get( String hash ) throws IOException {
+        RandomAccessFile file = new RandomAccessFile( fileFor( hash ), "r" );
+        try {
+            byte[] content = new byte[(int) file.length()];
+            file.readFully( content );
+            return content;
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    /**
+     * @return the content of the blob decoded as UTF-8
+     */
+    public String getString( String hash ) throws IOException {
+        return new String( get( hash ), "UTF-8" );
+    }
+
+    /**
+     * @return the file the blob with the given hash is, or would be,
+     *         stored in
+     * @throws IllegalArgumentException if <code>hash</code> is not 64 lower
+     *         case hex digits, so that it can not name any other file
+     */
+    public File fileFor( String hash ) {
+        if ( !isHash( hash ) ) {
+            throw new IllegalArgumentException( "Not a hash: " + hash );
+        }
+        return new File( new File( directory, hash.substring( 0, 2 ) ),
+                         hash.substring( 2 ) );
+    }
+
+    private interface Content {
+        void writeTo( OutputStream out ) throws IOException;
+    }
+
+    private void write( String hash, Content content ) throws IOException {
+        File file = fileFor( hash );
+        if ( file.isFile() ) {
+            return;
+        }
+        File parent = file.getParentFile();
+        if ( !parent.isDirectory() && !parent.mkdirs()
+             && !parent.isDirectory() ) {
+            throw new IOException( "Could not create " + parent );
+        }
+        File temporary = File.createTempFile( hash.substring( 2, 10 ),
+                                              ".part",
+                                              parent );
+        try {
+            FileOutputStream out = new FileOutputStream( temporary );
+            try {
+                content.writeTo( out );
+            }
+            finally {
+                out.close();
+            }
+            if ( !temporary.renameTo( file ) && !file.isFile() ) {
+                throw new IOException( "Could not store blob " + file );
+            }
+        }
+        finally {
+            temporary.delete();
+        }
+    }
+
+    private static boolean isHash( String hash ) {
+        if ( hash == null || hash.length() != 64 ) {
+            return false;
+        }
+        for ( int i = 0; i < hash.length(); i++ ) {
+            char c = hash.charAt( i );
+            if ( ( c < '0' || c > '9' ) && ( c < 'a' || c > 'f' ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance( "SHA-256" );
+        }
+        catch ( NoSuchAlgorithmException e ) {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    static String toHex( byte[] bytes ) {
+        StringBuilder hex = new StringBuilder( bytes.length * 2 );
+        for ( byte b : bytes ) {
+            hex.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) )
+               .append( Character.forDigit( b & 0xF, 16 ) );
+        }
+        return hex.toString();
+    }
+
+    static byte[] fromHex( String hex ) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for ( int i = 0; i < bytes.length; i++ ) {
+            bytes[i] = (byte) Integer.parseInt(
+                                  hex.substring( 2 * i, 2 * i + 2 ), 16 );
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the SHA-256 hash of the UTF-8 encoding of <code>s</code>,
+     *         as if it was put in a store
+     */
+    static String hash( String s ) {
+        try {
+            return toHex( newDigest().digest( s.getBytes( "UTF-8" ) ) );
+        }
+        catch ( UnsupportedEncodingException e ) {
+            throw new IllegalStateException( e );
+        }
+    }
+}
@@ -13,38 +13,130 @@
 package net.bioclipse.recording;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.eclipse.swt.widgets.Display;
 
 /**
+ * Keeps the latest records in a fixed size ring buffer. Adding a record 
+ * takes no locks, when the buffer is full the oldest record is 
+ * overwritten. The size is read from the system property 
+ * <code>bioclipse.history.size</code> (default 100).
+ * <p>
+ * Listeners are notified in the UI thread, at most once per 
+ * <code>bioclipse.history.eventInterval</code> milliseconds (default 50) 
+ * however many records were added in between.
+ * <p>
+ * Records are also written to a {@link HistoryJournal}, if there is one, 
+ * so that the full history survives restarts.
+ * <p>
+ * Calls that were not recorded, because of the {@link RecordingPolicy} or 
+ * a full recording queue, are counted per call name.
+ * 
  * @author jonalv
  *
  */
 public class History implements IHistory {
 
-    private List<IRecord> records;
-    private List<IHistoryListener> historyListeners;
+    public static final int DEFAULT_SIZE = 100;
+    public static final int DEFAULT_EVENT_INTERVAL = 50;
+
+    /** a record together with its place in the sequence of all records */
+    private static class Entry {
+        final long    sequence;
+        final IRecord record;
+
+        Entry( long sequence, IRecord record ) {
+            this.sequence = sequence;
+            this.record   = record;
+        }
+    }
+
+    private final AtomicReferenceArray<Entry> entries;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final List<IHistoryListener> historyListeners 
+        = new CopyOnWriteArrayList<IHistoryListener>();
+
+    private final int eventInterval;
+    private final AtomicBoolean eventPending = new AtomicBoolean();
+    private volatile long lastEvent;
+
+    private volatile HistoryJournal journal;
+
+    private final AtomicLong skipped = new AtomicLong();
+    /** call name to the number of such calls not recorded */
+    private final ConcurrentMap<String, AtomicLong> skippedCalls
+        = new ConcurrentHashMap<String, AtomicLong>();
     
     public History() {
-        records          = Collections.synchronizedList( 
-                                           new LinkedList<IRecord>() );
-        historyListeners = Collections.synchronizedList( 
-                                           new LinkedList<IHistoryListener>() );
+        this( Integer.getInteger( "bioclipse.history.size", DEFAULT_SIZE ),
+              Integer.getInteger( "bioclipse.history.eventInterval", 
+                                  DEFAULT_EVENT_INTERVAL ) );
+        journal = HistoryJournal.openConfigured();
+    }
+
+    /**
+     * @param size the number of records kept
+     * @param eventInterval minimum number of milliseconds between two 
+     *                      history events
+     */
+    public History( int size, int eventInterval ) {
+        if ( size < 1 ) {
+            throw new IllegalArgumentException( 
+                "History size must be at least 1, was: " + size );
+        }
+        entries = new AtomicReferenceArray<Entry>( size );
+        this.eventInterval = Math.max( 0, eventInterval );
     }
     
     /* (non-Javadoc)
      * @see net.bioclipse.recording.IHistory#addRecord(net.bioclipse.recording.MethodRecord)
      */
     public void addRecord( IRecord record ) {
-        if ( records.size() >= 100 ) {
-            records.remove( 0 );
+        long sequence = nextSequence.getAndIncrement();
+        entries.set( indexOf( sequence ), new Entry( sequence, record ) );
+        HistoryJournal journal = this.journal;
+        if ( journal != null ) {
+            journal.append( record );
+        }
+        if ( !historyListeners.isEmpty() 
+             && eventPending.compareAndSet( false, true ) ) {
+            postHistoryEvent();
         }
-        records.add(record);
-        Display.getDefault().asyncExec( new Runnable() {
+    }
+
+    private int indexOf( long sequence ) {
+        return (int) ( sequence % entries.length() );
+    }
+
+    /**
+     * Posts one event for all records added until it has been fired, 
+     * delayed so that events come at most once per event interval.
+     */
+    private void postHistoryEvent() {
+        final Display display = Display.getDefault();
+        display.asyncExec( new Runnable() {
             public void run() {
+                long wait = lastEvent + eventInterval 
+                            - System.currentTimeMillis();
+                if ( wait > 0 ) {
+                    display.timerExec( (int) wait, this );
+                    return;
+                }
+                // records added from here on post a new event
+                eventPending.set( false );
+                lastEvent = System.currentTimeMillis();
                 fireHistoryEvent( new HistoryEvent() );
             }
         } );
@@ -60,11 +152,121 @@ public class History implements IHistory {
      * @see net.bioclipse.recording.IHistory#getRecords()
      */
     public List<IRecord> getRecords() {
-        return new ArrayList<IRecord>(records);
+        List<IRecord> records = new ArrayList<IRecord>( entries.length() );
+        for ( IRecord record : this ) {
+            records.add( record );
+        }
+        return records;
+    }
+
+    /**
+     * Iterates over the records, oldest first, directly in the ring 
+     * buffer without copying it. Records added after the iteration 
+     * started are not seen and records overwritten by them before being 
+     * reached are skipped.
+     */
+    public Iterator<IRecord> iterator() {
+        final long end = nextSequence.get();
+        return new Iterator<IRecord>() {
+
+            private long    position = Math.max( 0, end - entries.length() );
+            private IRecord next;
+
+            public boolean hasNext() {
+                while ( next == null && position < end ) {
+                    Entry entry = entries.get( indexOf( position ) );
+                    if ( entry != null && entry.sequence == position ) {
+                        next = entry.record;
+                    }
+                    position++;
+                }
+                return next != null;
+            }
+
+            public IRecord next() {
+                if ( !hasNext() ) {
+                    throw new NoSuchElementException();
+                }
+                IRecord record = next;
+                next = null;
+                return record;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
     }
     
     public int getRecordCount() {
-        return records.size();
+        return (int) Math.min( nextSequence.get(), entries.length() );
+    }
+
+    public void addSkipped( String name ) {
+        skipped.incrementAndGet();
+        AtomicLong count = skippedCalls.get( name );
+        if ( count == null ) {
+            AtomicLong existing 
+                = skippedCalls.putIfAbsent( name, count = new AtomicLong() );
+            if ( existing != null ) {
+                count = existing;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    /**
+     * @return the number of calls not recorded per call name, sorted on 
+     *         name
+     */
+    public SortedMap<String, Long> getSkippedCounts() {
+        SortedMap<String, Long> counts = new TreeMap<String, Long>();
+        for ( Map.Entry<String, AtomicLong> e : skippedCalls.entrySet() ) {
+            counts.put( e.getKey(), e.getValue().get() );
+        }
+        return counts;
+    }
+
+    /**
+     * Forgets the calls skipped so far.
+     */
+    public void clearSkipped() {
+        skippedCalls.clear();
+        skipped.set( 0 );
+    }
+
+    /**
+     * @return the number of records kept
+     */
+    public int getSize() {
+        return entries.length();
+    }
+
+    /**
+     * @return the journal the records are written to, <code>null</code> if
+     *         none
+     */
+    public HistoryJournal getJournal() {
+        return journal;
+    }
+
+    public void setJournal( HistoryJournal journal ) {
+        this.journal = journal;
+    }
+
+    /**
+     * Writes what is left to the journal and closes it.
+     */
+    public void dispose() {
+        HistoryJournal journal = this.journal;
+        this.journal = null;
+        if ( journal != null ) {
+            journal.close();
+        }
     }
 
     public void addHistoryListener(IHistoryListener l) {
@@ -0,0 +1,597 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.recording;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import net.bioclipse.recording.RecordCodec.Decoder;
+import net.bioclipse.recording.RecordCodec.Encoder;
+
+import org.apache.log4j.Logger;
+
+/**
+ * An append only journal of history records on disk. Records are handed
+ * to a background thread which encodes them and writes them to the
+ * current segment file through a buffered <code>FileChannel</code>. When
+ * a segment has grown past the segment size a new one is started,
+ * optionally deleting the oldest segments so that at most a given number
+ * are kept.
+ * <p>
+ * Each segment starts with a header holding the time of its first record,
+ * followed by the records, each one prefixed with its length and a
+ * checksum so a record torn by a crash is detected and left out when
+ * reading. Strings that repeat within a segment, like manager names,
+ * method names, types and BioObject UIDs, are written once and then
+ * referred to by number, see {@link RecordCodec}.
+ * <p>
+ * If the writer thread stops on an unexpected error the journal stops
+ * taking records, so that recorded calls never wait for it.
+ * <p>
+ * The records of a time range can be read back and turned into a script:
+ * <pre>
+ *   String[] script = journal.replay( new JsScriptGenerator(), from, to );
+ * </pre>
+ *
+ * @author jonalv
+ */
+public class HistoryJournal {
+
+    public static final long DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+    public static final int  DEFAULT_QUEUE_SIZE   = 10000;
+    public static final int  DEFAULT_MAX_SEGMENTS = 16;
+
+    private static final Logger logger 
+        = Logger.getLogger( HistoryJournal.class );
+
+    private static final int  MAGIC        = 0x42634a6c; // "BcJl"
+    private static final int  VERSION      = 1;
+    private static final int  HEADER_SIZE  = 4 + 4 + 8;
+    private static final int  BUFFER_SIZE  = 64 * 1024;
+    private static final String PREFIX     = "history-";
+    private static final String SUFFIX     = ".journal";
+    /** how long a full queue is waited for before looking at the writer */
+    private static final long   PUT_WAIT   = 100;
+
+    /** a record waiting to be written */
+    private static class Entry {
+        final long          time;
+        final IRecord       record;
+        final CountDownLatch flushed;
+
+        Entry( long time, IRecord record, CountDownLatch flushed ) {
+            this.time    = time;
+            this.record  = record;
+            this.flushed = flushed;
+        }
+    }
+
+    /** a record read back together with the time it was added */
+    public static class TimedRecord {
+        private final long    time;
+        private final IRecord record;
+
+        TimedRecord( long time, IRecord record ) {
+            this.time   = time;
+            this.record = record;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public IRecord getRecord() {
+            return record;
+        }
+    }
+
+    /** tells the writer to stop once everything before it is written */
+    private static final Entry CLOSE = new Entry( 0, null, null );
+
+    private final File directory;
+    private final long segmentSize;
+    private final int  maxSegments;
+    private final BlockingQueue<Entry> queue;
+    private final Thread writer;
+    private volatile boolean closed;
+    /** set when the writer thread has stopped */
+    private volatile boolean dead;
+
+    /* only used by the writer thread */
+    private FileChannel channel;
+    private long        segmentLength;
+    private int         segmentNumber;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect( BUFFER_SIZE );
+    private final Map<String, Integer> strings = new HashMap<String, Integer>();
+    private final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+
+    /**
+     * @param directory the directory for the segment files, created if
+     *                  missing
+     * @param segmentSize size in bytes after which a new segment is started
+     * @param maxSegments the number of segments to keep, 0 for all
+     * @throws IOException if the directory can not be created
+     */
+    public HistoryJournal( File directory, long segmentSize, int maxSegments )
+           throws IOException {
+        if ( !directory.isDirectory() && !directory.mkdirs() ) {
+            throw new IOException( "Could not create the history journal "
+                                   + "directory: " + directory );
+        }
+        this.directory   = directory;
+        this.segmentSize = Math.max( HEADER_SIZE + 1, segmentSize );
+        this.maxSegments = Math.max( 0, maxSegments );
+        File[] segments  = segments();
+        segmentNumber    = segments.length == 0
+                           ? 0 : numberOf( segments[segments.length - 1] );
+        queue  = new LinkedBlockingQueue<Entry>( DEFAULT_QUEUE_SIZE );
+        writer = new Thread( new Runnable() {
+            public void run() {
+                try {
+                    write();
+                }
+                catch ( Throwable t ) {
+                    logger.error( "The history journal writer stopped, no "
+                                  + "more records will be written", t );
+                }
+                finally {
+                    dead = true;
+                    closeSegment();
+                    releaseWaiting();
+                }
+            }
+        }, "History journal writer" );
+        writer.setDaemon( true );
+        writer.start();
+    }
+
+    /**
+     * Opens the journal configured by the system properties
+     * <code>bioclipse.history.journal</code>, 
+     * <code>bioclipse.history.journal.segmentSize</code> and
+     * <code>bioclipse.history.journal.maxSegments</code>. There is no 
+     * journal unless the first one is set, either to the directory to use 
+     * or to <code>true</code> for <code>history</code> in the state 
+     * location of the core plugin. By default the 
+     * {@value #DEFAULT_MAX_SEGMENTS} newest segments are kept, 0 keeps all.
+     *
+     * @return the journal or <code>null</code> if there should be none or 
+     *         it could not be opened
+     */
+    public static HistoryJournal openConfigured() {
+        File directory;
+        net.bioclipse.core.Activator core 
+            = net.bioclipse.core.Activator.getDefault();
+        String property = System.getProperty( "bioclipse.history.journal" );
+        if ( property == null || property.length() == 0
+             || "none".equals( property ) || "false".equals( property ) ) {
+            return null;
+        }
+        if ( !"true".equals( property ) ) {
+            directory = new File( property );
+        }
+        else if ( core != null ) {
+            directory = new File( core.getStateLocation().toFile(), 
+                                  "history" );
+        }
+        else {
+            return null;
+        }
+        try {
+            return new HistoryJournal(
+                directory,
+                Long.getLong( "bioclipse.history.journal.segmentSize",
+                              DEFAULT_SEGMENT_SIZE ),
+                Integer.getInteger( "bioclipse.history.journal.maxSegments",
+                                    DEFAULT_MAX_SEGMENTS ) );
+        }
+        catch ( IOException e ) {
+            logger.warn( "Could not open the history journal in "
+                         + directory, e );
+            return null;
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Queues a record to be written, waiting if the writer is far behind.
+     * The record is dropped if the writer has stopped.
+     */
+    public void append( IRecord record ) {
+        if ( closed ) {
+            return;
+        }
+        try {
+            put( new Entry( System.currentTimeMillis(), record, null ) );
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits until all records appended so far have been written to disk, or
+     * until the writer has stopped.
+     */
+    public void flush() throws InterruptedException {
+        if ( closed ) {
+            return;
+        }
+        CountDownLatch flushed = new CountDownLatch( 1 );
+        if ( put( new Entry( 0, null, flushed ) ) ) {
+            while ( !flushed.await( PUT_WAIT, TimeUnit.MILLISECONDS ) ) {
+                if ( dead ) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes what is queued and stops the writer.
+     */
+    public void close() {
+        if ( closed ) {
+            return;
+        }
+        closed = true;
+        try {
+            put( CLOSE );
+            writer.join();
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads back the records added in a time range, after writing what is
+     * queued.
+     *
+     * @param from start of the range in milliseconds since the epoch
+     * @param to end of the range (inclusive)
+     * @return the records, oldest first
+     * @throws IOException if a segment could not be read
+     */
+    public List<TimedRecord> read( long from, long to ) throws IOException {
+        try {
+            flush();
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+        List<TimedRecord> records = new ArrayList<TimedRecord>();
+        File[] segments = segments();
+        for ( int i = 0; i < segments.length; i++ ) {
+            if ( i + 1 < segments.length
+                 && firstTimeOf( segments[i + 1] ) < from ) {
+                continue;
+            }
+            if ( firstTimeOf( segments[i] ) > to ) {
+                break;
+            }
+            readSegment( segments[i], from, to, records );
+        }
+        return records;
+    }
+
+    /**
+     * Generates a script from the records added in a time range.
+     *
+     * @param generator a fresh script generator
+     * @param from start of the range in milliseconds since the epoch
+     * @param to end of the range (inclusive)
+     * @return the script commands
+     * @throws IOException if a segment could not be read
+     */
+    public String[] replay( IScriptGenerator generator, long from, long to )
+                    throws IOException {
+        List<TimedRecord> timed = read( from, to );
+        IRecord[] records = new IRecord[timed.size()];
+        for ( int i = 0; i < records.length; i++ ) {
+            records[i] = timed.get( i ).getRecord();
+        }
+        return generator.generateScript( records );
+    }
+
+    /**
+     * Queues an entry, waiting while the queue is full and the writer runs.
+     * 
+     * @return whether the entry was queued
+     */
+    private boolean put( Entry entry ) throws InterruptedException {
+        while ( !dead ) {
+            if ( queue.offer( entry, PUT_WAIT, TimeUnit.MILLISECONDS ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Releases anyone waiting for a flush and drops what is queued, once 
+     * the writer has stopped.
+     */
+    private void releaseWaiting() {
+        Entry entry;
+        while ( ( entry = queue.poll() ) != null ) {
+            if ( entry.flushed != null ) {
+                entry.flushed.countDown();
+            }
+        }
+    }
+
+    /*
+     * Writing, all in the writer thread
+     */
+
+    private void write() {
+        List<Entry> batch = new ArrayList<Entry>();
+        boolean stop = false;
+        while ( !stop ) {
+            try {
+                batch.add( queue.take() );
+            }
+            catch ( InterruptedException e ) {
+                break;
+            }
+            queue.drainTo( batch );
+            stop = batch.contains( CLOSE );
+            for ( Entry entry : batch ) {
+                if ( entry.record != null ) {
+                    try {
+                        writeRecord( entry );
+                    }
+                    catch ( IOException e ) {
+                        logger.warn( "Could not write to the history journal, "
+                                     + "starting a new segment", e );
+                        closeSegment();
+                    }
+                    catch ( Throwable t ) {
+                        // e.g. a record that could not be encoded, the 
+                        // records after it can still be written
+                        logger.warn( "Could not write record to the history "
+                                     + "journal, leaving it out", t );
+                    }
+                }
+            }
+            try {
+                flushBuffer();
+            }
+            catch ( Throwable t ) {
+                logger.warn( "Could not write to the history journal", t );
+                closeSegment();
+            }
+            for ( Entry entry : batch ) {
+                if ( entry.flushed != null ) {
+                    entry.flushed.countDown();
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void writeRecord( Entry entry ) throws IOException {
+        if ( channel == null || segmentLength >= segmentSize ) {
+            startSegment( entry.time );
+        }
+        encoded.reset();
+        Encoder out = new Encoder( encoded, strings );
+        try {
+            out.writeLong( entry.time );
+            out.writeRecord( entry.record );
+        }
+        catch ( RuntimeException e ) {
+            // later records must not refer to strings of this one
+            out.reset();
+            throw e;
+        }
+        int length = encoded.size();
+        if ( length == 0 ) {
+            return;
+        }
+        byte[] bytes = encoded.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update( bytes, 0, length );
+        if ( buffer.remaining() < 8 + length ) {
+            flushBuffer();
+        }
+        if ( buffer.remaining() < 8 + length ) {
+            ByteBuffer large = ByteBuffer.allocate( 8 + length );
+            large.putInt( length ).putInt( (int) crc.getValue() )
+                 .put( bytes, 0, length ).flip();
+            while ( large.hasRemaining() ) {
+                channel.write( large );
+            }
+        }
+        else {
+            buffer.putInt( length ).putInt( (int) crc.getValue() )
+                  .put( bytes, 0, length );
+        }
+        segmentLength += 8 + length;
+    }
+
+    private void flushBuffer() throws IOException {
+        if ( channel == null ) {
+            buffer.clear();
+            return;
+        }
+        buffer.flip();
+        while ( buffer.hasRemaining() ) {
+            channel.write( buffer );
+        }
+        buffer.clear();
+    }
+
+    private void startSegment( long firstTime ) throws IOException {
+        flushBuffer();
+        closeSegment();
+        File file = new File( directory,
+                              PREFIX
+                              + String.format( "%08d", ++segmentNumber )
+                              + SUFFIX );
+        channel = new RandomAccessFile( file, "rw" ).getChannel();
+        channel.truncate( 0 );
+        ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+        header.putInt( MAGIC ).putInt( VERSION ).putLong( firstTime ).flip();
+        while ( header.hasRemaining() ) {
+            channel.write( header );
+        }
+        segmentLength = HEADER_SIZE;
+        strings.clear();
+        deleteOldSegments();
+    }
+
+    private void closeSegment() {
+        buffer.clear();
+        if ( channel == null ) {
+            return;
+        }
+        try {
+            channel.force( false );
+            channel.close();
+        }
+        catch ( IOException e ) {
+            logger.warn( "Could not close history journal segment", e );
+        }
+        channel = null;
+    }
+
+    private void deleteOldSegments() {
+        if ( maxSegments == 0 ) {
+            return;
+        }
+        File[] segments = segments();
+        for ( int i = 0; i < segments.length - maxSegments; i++ ) {
+            if ( !segments[i].delete() ) {
+                logger.warn( "Could not delete old history journal segment "
+                             + segments[i] );
+            }
+        }
+    }
+
+    /*
+     * Reading
+     */
+
+    private File[] segments() {
+        File[] segments = directory.listFiles( new FileFilter() {
+            public boolean accept( File f ) {
+                return f.getName().startsWith( PREFIX )
+                       && f.getName().endsWith( SUFFIX );
+            }
+        } );
+        if ( segments == null ) {
+            return new File[0];
+        }
+        Arrays.sort( segments );
+        return segments;
+    }
+
+    private static int numberOf( File segment ) {
+        String name = segment.getName();
+        try {
+            return Integer.parseInt(
+                name.substring( PREFIX.length(),
+                                name.length() - SUFFIX.length() ) );
+        }
+        catch ( NumberFormatException e ) {
+            return 0;
+        }
+    }
+
+    private static long firstTimeOf( File segment ) throws IOException {
+        RandomAccessFile file = new RandomAccessFile( segment, "r" );
+        try {
+            if ( file.length() < HEADER_SIZE || file.readInt() != MAGIC ) {
+                return Long.MAX_VALUE;
+            }
+            file.readInt();
+            return file.readLong();
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    private static void readSegment( File segment,
+                                     long from,
+                                     long to,
+                                     List<TimedRecord> records )
+                        throws IOException {
+        RandomAccessFile file = new RandomAccessFile( segment, "r" );
+        try {
+            FileChannel channel = file.getChannel();
+            if ( channel.size() < HEADER_SIZE ) {
+                return;
+            }
+            MappedByteBuffer in = channel.map( FileChannel.MapMode.READ_ONLY,
+                                               0, channel.size() );
+            if ( in.getInt() != MAGIC || in.getInt() != VERSION ) {
+                logger.warn( "Not a history journal segment: " + segment );
+                return;
+            }
+            in.getLong();
+            List<String> strings = new ArrayList<String>();
+            CRC32 crc = new CRC32();
+            while ( in.remaining() >= 8 ) {
+                int length   = in.getInt();
+                int checksum = in.getInt();
+                if ( length <= 0 || length > in.remaining() ) {
+                    break; // torn write at the end of the segment
+                }
+                byte[] bytes = new byte[length];
+                in.get( bytes );
+                crc.reset();
+                crc.update( bytes, 0, length );
+                if ( (int) crc.getValue() != checksum ) {
+                    logger.warn( "Corrupt record in history journal segment "
+                                 + segment + ", skipping the rest of it" );
+                    break;
+                }
+                Decoder decoder = new Decoder( ByteBuffer.wrap( bytes ),
+                                               strings );
+                long time = decoder.readLong();
+                IRecord record = decoder.readRecord();
+                if ( time >= from && time <= to && record != null ) {
+                    records.add( new TimedRecord( time, record ) );
+                }
+            }
+        }
+        catch ( BufferUnderflowException e ) {
+            logger.warn( "Truncated record in history journal segment "
+                         + segment );
+        }
+        finally {
+            file.close();
+        }
+    }
+}
@@ -18,13 +18,29 @@ import java.util.List;
  * @author jonalv
  *
  */
-public interface IHistory {
+public interface IHistory extends Iterable<IRecord> {
 
     public void addRecord(IRecord record);
 
+    /**
+     * @return a copy of the records, oldest first
+     */
     public List<IRecord> getRecords();
     
     public int getRecordCount();
+
+    /**
+     * Counts a call that was not recorded.
+     *
+     * @param name the name of the call, see 
+     *             {@link RecordingPolicy#nameOf(String, Object)}
+     */
+    public void addSkipped(String name);
+
+    /**
+     * @return the number of calls not recorded
+     */
+    public long getSkippedCount();
     
     public void addHistoryListener(IHistoryListener l);
     
@@ -12,10 +12,12 @@
 package net.bioclipse.recording;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import net.bioclipse.core.domain.RecordableList;
 import net.bioclipse.recording.MethodRecord.BioObjectParameter;
@@ -23,6 +25,17 @@ import net.bioclipse.recording.MethodRecord.NonBioObjectParameter;
 import net.bioclipse.recording.MethodRecord.Parameter;
 
 /**
+ * Turns records into JavaScript statements. 
+ * <p>
+ * {@link #generateScript(IRecord[])} first makes one pass backwards over
+ * the records to find which returned BioObjects are referenced later on,
+ * those get assigned to variables, and then one pass forwards writing the
+ * statements. 
+ * <p>
+ * {@link #append(IRecord)} writes the statement for one record at a time 
+ * as the records arrive. Since it can not know what comes later it 
+ * assigns every returned BioObject to a variable.
+ *
  * @author jonalv, masak
  *
  */
@@ -33,6 +46,8 @@ public class JsScriptGenerator implements IScriptGenerator {
     // (String id, String variableName) in variables hash table
     private Map<String, String> variables
         = new Hashtable<String, String>();
+    // statements generated by append
+    private List<String> appended = new ArrayList<String>();
 
     private void increaseRefNumber(String type) {
         if( refNumber.containsKey(type) ) {
@@ -94,49 +109,93 @@ public class JsScriptGenerator implements IScriptGenerator {
     public String[] generateScript( IRecord[] records ) {
         List<String> statements = new ArrayList<String>();
 
-        List<IRecord> recordsList = Arrays.asList(records);
-
-        int i = 0;
-        for ( IRecord record : records )
-            if( record instanceof MethodRecord) {
-                statements.add( recordToJsStatement(
-                        record,
-                        recordsList.subList(++i, recordsList.size())) );
+        boolean[] referenced = findReferencedReturns( records );
+        for ( int i = 0; i < records.length; i++ )
+            if( records[i] instanceof MethodRecord) {
+                statements.add( toJsStatement( records[i], referenced[i] ) );
             }
 
 
         return statements.toArray( new String[records.length] );
     }
 
-    private boolean isReferenced(String objectId, List<IRecord> rest) {
+    /**
+     * Generates the statement for the next record, as records arrive.
+     *
+     * @param record the next record
+     * @return the statement
+     */
+    public String append( IRecord record ) {
+        String statement = toJsStatement( record, true );
+        appended.add( statement );
+        return statement;
+    }
 
-        for ( IRecord record : rest ) {
-            if(!(record instanceof MethodRecord)) {
+    /**
+     * @return the statements generated by {@link #append(IRecord)} so far
+     */
+    public List<String> getAppendedStatements() {
+        return Collections.unmodifiableList( appended );
+    }
+
+    /**
+     * Goes backwards through the records collecting the ids referenced by
+     * the records after each one.
+     *
+     * @return for each record whether its returned object is referenced 
+     *         by a later record
+     */
+    private boolean[] findReferencedReturns( IRecord[] records ) {
+        boolean[] referenced = new boolean[records.length];
+        Set<String> referencedIds = new HashSet<String>();
+        // any later reference to an object in a list counts as a reference
+        boolean listMemberReferenced = false;
+        for ( int i = records.length - 1; i >= 0; i-- ) {
+            if ( !( records[i] instanceof MethodRecord ) ) {
                 continue;
             }
-            MethodRecord r = (MethodRecord)record;
-            if ( r instanceof BioObjectRecord
-                && ((BioObjectRecord)r).bioObjectId.equals(objectId) )
-
-                return true;
+            MethodRecord r = (MethodRecord) records[i];
+            referenced[i] = !"".equals( r.returnObjectId )
+                            && ( listMemberReferenced 
+                                 || referencedIds.contains( 
+                                        r.returnObjectId ) );
+            for ( String id : referencedIds( r ) ) {
+                referencedIds.add( id );
+                if ( !listMemberReferenced 
+                     && RecordableList.existsListContaining( id ) ) {
+                    listMemberReferenced = true;
+                }
+            }
+        }
+        return referenced;
+    }
 
-            for ( MethodRecord.Parameter p : r.paramaters )
-                if ( p instanceof BioObjectParameter
-                     && ((BioObjectParameter)p).id.equals(objectId) )
+    /**
+     * @return the ids of the BioObjects the record is called on or takes 
+     *         as parameters
+     */
+    private static List<String> referencedIds( MethodRecord r ) {
+        List<String> ids = new ArrayList<String>();
+        if ( r instanceof BioObjectRecord ) {
+            ids.add( ( (BioObjectRecord)r ).bioObjectId );
+        }
+        for ( MethodRecord.Parameter p : r.paramaters ) {
+            if( p instanceof BioObjectParameter) {
+                ids.add( ((BioObjectParameter)p).id );
+            }
+        }
+        return ids;
+    }
 
-                    return true;
+    private boolean isReferenced(String objectId, List<IRecord> rest) {
 
-            List<String> ids = new ArrayList<String>();
-            if ( r instanceof BioObjectRecord ) {
-                ids.add( ( (BioObjectRecord)r ).bioObjectId );
-            }
-            for ( MethodRecord.Parameter p : r.paramaters ) {
-                if( p instanceof BioObjectParameter) {
-                    ids.add( ((BioObjectParameter)p).id );
-                }
+        for ( IRecord record : rest ) {
+            if(!(record instanceof MethodRecord)) {
+                continue;
             }
-            for(String id : ids) {
-                if( RecordableList.existsListContaining(id) ) {
+            for ( String id : referencedIds( (MethodRecord)record ) ) {
+                if ( id.equals(objectId)
+                     || RecordableList.existsListContaining(id) ) {
                     return true;
                 }
             }
@@ -148,6 +207,19 @@ public class JsScriptGenerator implements IScriptGenerator {
     public String recordToJsStatement( IRecord record,
                                        List<IRecord> rest ) {
 
+        return toJsStatement( 
+                   record, 
+                   record instanceof MethodRecord
+                   && isReferenced( ( (MethodRecord)record ).returnObjectId, 
+                                    rest ) );
+    }
+
+    /**
+     * @param returnReferenced whether the returned object is referenced 
+     *                         later on and so should get a variable
+     */
+    private String toJsStatement( IRecord record, boolean returnReferenced ) {
+
         if( record instanceof MethodRecord ) {
 
             MethodRecord r = (MethodRecord)record;
@@ -161,7 +233,7 @@ public class JsScriptGenerator implements IScriptGenerator {
                 }
                 else if (p instanceof NonBioObjectParameter) {
                     NonBioObjectParameter nbp = (NonBioObjectParameter)p;
-                    paramStrings.add(nbp.stringRepresentation);
+                    paramStrings.add(nbp.getStringRepresentation());
                 }
                 else {
                     throw new IllegalStateException( "Unrecognized " +
@@ -171,7 +243,7 @@ public class JsScriptGenerator implements IScriptGenerator {
             StringBuilder statement = new StringBuilder();
 
             if ( !"".equals( r.returnObjectId )
-                    && isReferenced(r.returnObjectId, rest)
+                    && returnReferenced
                  || isPrimitive(r.returnType) ) {
 
                 statement.append( getVariableName(r.returnType, r.returnObjectId) );
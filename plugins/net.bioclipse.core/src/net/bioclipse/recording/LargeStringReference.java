@@ -0,0 +1,186 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Stands in for a string parameter too large to keep in a record. Only
+ * the start of the string, its length and the SHA-256 hash of its content
+ * are kept in the record. Only if the system property
+ * <code>bioclipse.recording.spillDirectory</code> is set the whole string
+ * is put, in the background, in a {@link BlobStore}: in the directory the
+ * property names, or in the one opened by 
+ * {@link BlobStore#openConfigured()} if it is <code>true</code>. The same
+ * string passed many times is stored once. Nothing is ever removed from
+ * the store, so like the {@link HistoryJournal} it is off by default.
+ *
+ * @author jonalv
+ */
+class LargeStringReference {
+
+    static final int PREFIX_LENGTH = 64;
+
+    private static final Logger logger
+        = Logger.getLogger( LargeStringReference.class );
+
+    private static final int CHUNK = 8192;
+
+    private static ExecutorService spiller;
+    private static BlobStore       store;
+
+    private final String prefix;
+    private final int    length;
+    private final String hash;
+    private final File   file;
+
+    private LargeStringReference( String s, BlobStore store ) {
+        prefix = s.substring( 0, Math.min( PREFIX_LENGTH, s.length() ) );
+        length = s.length();
+        hash   = sha256( s );
+        file   = store == null ? null : store.fileFor( hash );
+    }
+
+    /**
+     * @param s a large string parameter
+     * @return a reference to it, the string is written to the spill
+     *         store if there is one
+     */
+    static LargeStringReference capture( String s ) {
+        BlobStore store = spillStore();
+        LargeStringReference reference = new LargeStringReference( s, store );
+        if ( store != null ) {
+            reference.spill( store, s );
+        }
+        return reference;
+    }
+
+    /**
+     * @return the store large strings are put in, <code>null</code> if 
+     *         they are not kept
+     */
+    static synchronized BlobStore spillStore() {
+        String property
+            = System.getProperty( "bioclipse.recording.spillDirectory" );
+        if ( property == null || property.length() == 0
+             || "none".equals( property ) || "false".equals( property ) ) {
+            return null;
+        }
+        File directory = "true".equals( property ) 
+                         ? BlobStore.configuredDirectory()
+                         : new File( property );
+        if ( directory == null ) {
+            return null;
+        }
+        if ( store == null || !store.getDirectory().equals( directory ) ) {
+            try {
+                store = new BlobStore( directory );
+            }
+            catch ( IOException e ) {
+                logger.warn( "Could not open the recorded parameter store", 
+                             e );
+                return null;
+            }
+        }
+        return store;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    String getHash() {
+        return hash;
+    }
+
+    /**
+     * @return the file in the spill store the whole string is written to, 
+     *         <code>null</code> if it is not kept
+     */
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the start of the string
+     */
+    String getPrefix() {
+        return prefix;
+    }
+
+    private void spill( final BlobStore store, final String s ) {
+        if ( file.exists() ) {
+            return;
+        }
+        spiller().execute( new Runnable() {
+            public void run() {
+                try {
+                    store.put( hash, s );
+                }
+                catch ( IOException e ) {
+                    logger.warn( "Could not write recorded parameter to "
+                                 + file, e );
+                }
+            }
+        } );
+    }
+
+    private static synchronized ExecutorService spiller() {
+        if ( spiller == null ) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    public Thread newThread( Runnable r ) {
+                        Thread t = new Thread( r, "Recorded parameter writer" );
+                        t.setDaemon( true );
+                        return t;
+                    }
+                } );
+            executor.allowCoreThreadTimeOut( true );
+            spiller = executor;
+        }
+        return spiller;
+    }
+
+    /**
+     * @return the same hash as the store gives the UTF-8 bytes of 
+     *         <code>s</code>, without encoding it all at once
+     */
+    private static String sha256( String s ) {
+        try {
+            MessageDigest digest = BlobStore.newDigest();
+            for ( int i = 0; i < s.length(); ) {
+                int end = Math.min( s.length(), i + CHUNK );
+                if ( end < s.length() 
+                     && Character.isHighSurrogate( s.charAt( end - 1 ) ) ) {
+                    end--; // keep surrogate pairs together
+                }
+                digest.update( s.substring( i, end ).getBytes( "UTF-8" ) );
+                i = end;
+            }
+            return BlobStore.toHex( digest.digest() );
+        }
+        catch ( UnsupportedEncodingException e ) {
+            throw new IllegalStateException( e );
+        }
+    }
+}
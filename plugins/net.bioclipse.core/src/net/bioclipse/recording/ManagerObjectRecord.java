@@ -8,6 +8,8 @@
  *******************************************************************************/
 package net.bioclipse.recording;
 
+import java.util.List;
+
 public class ManagerObjectRecord extends MethodRecord {
 
     protected String managerObjectName;
@@ -20,6 +22,18 @@ public class ManagerObjectRecord extends MethodRecord {
         super(methodName, parameters, returnValue);
         this.managerObjectName = managerObjectName;
     }
+
+    ManagerObjectRecord( String methodName,
+                         String managerObjectName,
+                         List<Parameter> parameters,
+                         String returnObjectId,
+                         String returnType,
+                         String[] returnedListContentsIds ) {
+
+        super( methodName, parameters, returnObjectId, 
+               returnType, returnedListContentsIds );
+        this.managerObjectName = managerObjectName;
+    }
     
     public String toString() {
         
@@ -29,7 +43,7 @@ public class ManagerObjectRecord extends MethodRecord {
             Parameter p = paramaters.get(i);
             
             if( p instanceof NonBioObjectParameter ) {
-                sb.append( ( (NonBioObjectParameter)p ).stringRepresentation );
+                sb.append( ( (NonBioObjectParameter)p ).getStringRepresentation() );
             }
             else if( p instanceof BioObjectParameter) {
                 sb.append(p.type);
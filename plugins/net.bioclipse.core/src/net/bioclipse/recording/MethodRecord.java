@@ -20,11 +20,24 @@ import net.bioclipse.core.domain.RecordableList;
 import net.bioclipse.core.domain.IBioObject;
 
 /**
+ * A recorded method call. Arguments that can not change, strings and boxed
+ * primitives, are not turned into script strings until a script is 
+ * generated, other arguments and the ids of a returned list are taken when
+ * the call is recorded. String arguments longer than 
+ * <code>bioclipse.recording.maxParameterLength</code> characters (default
+ * 1048576) are not kept, see {@link LargeStringReference}, so scripts only
+ * replay calls with their real arguments up to that length. A null member
+ * of a returned list gets a <code>null</code> id.
+ * 
  * @author jonalv, masak, ola
  *
  */
 public abstract class MethodRecord implements IRecord {
 
+    static final int MAX_PARAMETER_LENGTH 
+        = Integer.getInteger( "bioclipse.recording.maxParameterLength", 
+                              1024 * 1024 );
+
     static abstract class Parameter {
 
         String  type;
@@ -36,12 +49,88 @@ public abstract class MethodRecord implements IRecord {
     
     static class NonBioObjectParameter extends Parameter {
         
-        String stringRepresentation;
+        /** the immutable argument until it has been rendered, strings are 
+         *  kept also after that */
+        private Object value;
+        private String stringRepresentation;
+        /** the stand in for a large string argument, if it was one */
+        private LargeStringReference largeString;
         
         NonBioObjectParameter(String type, String stringrepresentation) {
             super(type);
             this.stringRepresentation = stringrepresentation;
         }
+
+        /**
+         * @return a parameter rendering <code>value</code> when it is 
+         *         first needed if it can not change, otherwise rendering 
+         *         it now
+         */
+        static NonBioObjectParameter of( String type, Object value ) {
+            if ( !isImmutable( value ) ) {
+                return new NonBioObjectParameter( type, render( value ) );
+            }
+            NonBioObjectParameter p = new NonBioObjectParameter( type, null );
+            p.value = value;
+            if ( value instanceof LargeStringReference ) {
+                p.largeString = (LargeStringReference) value;
+            }
+            return p;
+        }
+
+        /**
+         * @return the stand in for the string argument if it was too large 
+         *         to keep, otherwise <code>null</code>
+         */
+        LargeStringReference getLargeString() {
+            return largeString;
+        }
+
+        synchronized String getStringRepresentation() {
+            if ( stringRepresentation == null ) {
+                stringRepresentation = render( value );
+                if ( !( value instanceof String ) ) {
+                    value = null;
+                }
+            }
+            return stringRepresentation;
+        }
+
+        /**
+         * @return the argument if it was a string that is kept, otherwise 
+         *         <code>null</code>
+         */
+        synchronized String getString() {
+            return value instanceof String ? (String) value : null;
+        }
+
+        private static boolean isImmutable( Object value ) {
+            return value instanceof String
+                || value instanceof LargeStringReference
+                || value instanceof Number 
+                   && value.getClass().getName().startsWith( "java.lang." )
+                || value instanceof Boolean
+                || value instanceof Character;
+        }
+
+        static String render( Object value ) {
+            if ( value instanceof String ) {
+                return "\"" 
+                       + escapeNonPrintableCharacters( (String)value ) 
+                       + "\"";
+            }
+            if ( value instanceof LargeStringReference ) {
+                LargeStringReference r = (LargeStringReference)value;
+                return "\"" 
+                       + escapeNonPrintableCharacters( r.getPrefix() ) 
+                       + "...\" /* " + r.getLength() 
+                       + " characters, SHA-256 " + r.getHash() 
+                       + ( r.getFile() == null 
+                           ? "" : ", stored in " + r.getFile() ) 
+                       + " */";
+            }
+            return String.valueOf( value );
+        }
     }
     
     static class BioObjectParameter extends Parameter {
@@ -61,7 +150,6 @@ public abstract class MethodRecord implements IRecord {
     
     protected List<Parameter> paramaters;
     
-    @SuppressWarnings("unchecked")
     public MethodRecord( String methodName, 
                          Object[] parameters, 
                          Object returnValue ) {
@@ -84,14 +172,17 @@ public abstract class MethodRecord implements IRecord {
                 params.add( new BioObjectParameter( name, bioObject.getUID() ) );
             }
             else if( p instanceof String) {
-                String s = escapeNonPrintableCharacters( (String)p );
-                params.add( new NonBioObjectParameter( "String",
-                                                       "\"" + s + "\"" ) );
+                String s = (String)p;
+                params.add( NonBioObjectParameter.of( 
+                                "String",
+                                s.length() > MAX_PARAMETER_LENGTH
+                                    ? LargeStringReference.capture( s )
+                                    : s ) );
             }
             else {
-                params.add( new NonBioObjectParameter( p.getClass()
-                                                        .getSimpleName(), 
-                                                       p.toString() ) );
+                params.add( NonBioObjectParameter.of( p.getClass()
+                                                       .getSimpleName(), 
+                                                      p ) );
             }
         }
         paramaters = params;
@@ -122,24 +213,55 @@ public abstract class MethodRecord implements IRecord {
          * List contents IDs
          */
         if (returnValue instanceof RecordableList) {
-            RecordableList<IBioObject> returnedList
-                = (RecordableList<IBioObject>) returnValue;
-            returnedListContentsIds = new String[ returnedList.size() ];
-            
-            int i = 0;
-            for ( IBioObject bioObject : returnedList )
-                returnedListContentsIds[i++] = bioObject.getUID();
+            // one copy of the contents instead of iterating the live list
+            Object[] contents = ((RecordableList<?>) returnValue).toArray();
+            returnedListContentsIds = new String[ contents.length ];
+            for ( int i = 0; i < contents.length; i++ )
+                returnedListContentsIds[i] 
+                    = contents[i] == null 
+                          ? null : ((IBioObject) contents[i]).getUID();
         }
     }
 
+    /**
+     * Restores a record from already converted parameters, as read back 
+     * from a {@link HistoryJournal}.
+     */
+    MethodRecord( String methodName,
+                  List<Parameter> parameters,
+                  String returnObjectId,
+                  String returnType,
+                  String[] returnedListContentsIds ) {
+        this.methodName              = methodName;
+        this.paramaters              = parameters;
+        this.returnObjectId          = returnObjectId;
+        this.returnType              = returnType;
+        this.returnedListContentsIds = returnedListContentsIds;
+    }
+
     private static String toVariableCase(String name) {
         return Character.toLowerCase( name.charAt(0) ) 
            + name.substring(1);
     }
 
     private static String escapeNonPrintableCharacters(String string) {
-        return string.replaceAll("\\t", "\\\\t")
-                     .replaceAll("\\n", "\\\\n");
+        if ( string.indexOf( '\t' ) == -1 && string.indexOf( '\n' ) == -1 ) {
+            return string;
+        }
+        StringBuilder escaped = new StringBuilder( string.length() + 16 );
+        for ( int i = 0; i < string.length(); i++ ) {
+            char c = string.charAt( i );
+            if ( c == '\t' ) {
+                escaped.append( "\\t" );
+            }
+            else if ( c == '\n' ) {
+                escaped.append( "\\n" );
+            }
+            else {
+                escaped.append( c );
+            }
+        }
+        return escaped.toString();
     }
 
     public String getMethodName() {
@@ -167,6 +289,15 @@ public abstract class MethodRecord implements IRecord {
             throw new IllegalStateException("Can only return element ids "
                     + "of a BioList");
         
+        return returnedListContentsIds();
+    }
+
+    /**
+     * @return the ids of the contents of the returned list, as it was when 
+     *         the call was recorded, <code>null</code> if no list was 
+     *         returned
+     */
+    String[] returnedListContentsIds() {
         return returnedListContentsIds;
     }
 }
@@ -0,0 +1,307 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.recording;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.bioclipse.recording.MethodRecord.NonBioObjectParameter;
+import net.bioclipse.recording.RecordCodec.Decoder;
+import net.bioclipse.recording.RecordCodec.Encoder;
+
+/**
+ * Generates a binary provenance bundle instead of a script. The bundle
+ * holds the records in the encoding of the {@link HistoryJournal}, but
+ * argument values longer than a hash are put in a {@link BlobStore} and
+ * referred to by their SHA-256 hash, string arguments by the hash of the
+ * string itself. An argument passed to thousands of
+ * calls is thus stored once, and a bundle is about the size of the calls
+ * and the unique data in them. The bundle itself is put in the store too:
+ * <pre>
+ *   ProvenanceGenerator generator = new ProvenanceGenerator( store );
+ *   String bundle = generator.export( history.getRecords()
+ *                                            .toArray( new IRecord[0] ) );
+ *   ...
+ *   String[] script = generator.replay( bundle, new JsScriptGenerator() );
+ * </pre>
+ * As an <code>IScriptGenerator</code> it returns the hash of the bundle as
+ * the only script command.
+ * <p>
+ * String arguments too large to be kept in the records are referred to by
+ * the hash computed when they were recorded. Their content is found if it
+ * was put in this store or in the spill store of the recording, see
+ * {@link LargeStringReference}; otherwise the bundle only holds their
+ * beginning.
+ *
+ * @author jonalv
+ */
+public class ProvenanceGenerator implements IScriptGenerator {
+
+    private static final int MAGIC   = 0x42635076; // "BcPv"
+    private static final int VERSION = 1;
+
+    /** values with UTF-8 encodings up to this length are written inline */
+    static final int INLINE_LENGTH = 64;
+
+    private static final byte INLINE_VALUE       = 0;
+    /** the script string of a value in a blob */
+    private static final byte BLOB_VALUE         = 1;
+    private static final byte LARGE_STRING_VALUE = 2;
+    /** the content of a string argument in a blob */
+    private static final byte STRING_BLOB_VALUE  = 3;
+
+    private static final int HASH_LENGTH = 32;
+
+    private final BlobStore store;
+
+    /**
+     * Uses the store opened by {@link BlobStore#openConfigured()}, where 
+     * large string arguments are put when they are recorded if 
+     * <code>bioclipse.recording.spillDirectory</code> is <code>true</code>.
+     *
+     * @throws IllegalStateException if there is no such store
+     */
+    public ProvenanceGenerator() {
+        this( BlobStore.openConfigured() );
+        if ( store == null ) {
+            throw new IllegalStateException( "No provenance store" );
+        }
+    }
+
+    /**
+     * @param store the store for the bundles and the argument values
+     */
+    public ProvenanceGenerator( BlobStore store ) {
+        this.store = store;
+    }
+
+    public BlobStore getStore() {
+        return store;
+    }
+
+    /**
+     * Exports the records as a bundle.
+     *
+     * @return a single command: the hash of the bundle in the store
+     * @throws IllegalStateException if the bundle could not be stored
+     */
+    public String[] generateScript( IRecord[] records ) {
+        try {
+            return new String[] { export( records ) };
+        }
+        catch ( IOException e ) {
+            throw new IllegalStateException(
+                "Could not store the provenance bundle in "
+                + store.getDirectory(), e );
+        }
+    }
+
+    /**
+     * Puts a bundle of the records, and the argument values it refers to,
+     * in the store. Records of unknown types are left out of the bundle.
+     *
+     * @return the hash of the bundle
+     * @throws IOException if something could not be stored
+     */
+    public String export( IRecord[] records ) throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        BundleEncoder out = new BundleEncoder( encoded );
+        int written = 0;
+        for ( IRecord record : records ) {
+            if ( out.writeRecord( record ) ) {
+                written++;
+            }
+        }
+        ByteArrayOutputStream bytes 
+            = new ByteArrayOutputStream( encoded.size() + 16 );
+        writeInt( bytes, MAGIC );
+        writeInt( bytes, VERSION );
+        RecordCodec.writeVarInt( bytes, written );
+        encoded.writeTo( bytes );
+        return store.put( bytes.toByteArray() );
+    }
+
+    /**
+     * Reads the records of a bundle, with the argument values taken from
+     * the store.
+     *
+     * @param bundle the hash of the bundle
+     * @return the records, records of unknown types left out
+     * @throws IOException if the bundle or a value in it could not be read
+     */
+    public IRecord[] load( String bundle ) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap( store.get( bundle ) );
+        try {
+            if ( in.getInt() != MAGIC || in.getInt() != VERSION ) {
+                throw new IOException( "Not a provenance bundle: " + bundle );
+            }
+            BundleDecoder decoder = new BundleDecoder( in );
+            int size = decoder.readVarInt();
+            List<IRecord> records = new ArrayList<IRecord>( size );
+            for ( int i = 0; i < size; i++ ) {
+                IRecord record = decoder.readRecord();
+                if ( record != null ) {
+                    records.add( record );
+                }
+            }
+            return records.toArray( new IRecord[records.size()] );
+        }
+        catch ( BlobException e ) {
+            throw e.getCause();
+        }
+        catch ( BufferUnderflowException e ) {
+            throw new IOException( "Truncated provenance bundle: " + bundle );
+        }
+    }
+
+    /**
+     * Generates a script from the records of a bundle.
+     *
+     * @param bundle the hash of the bundle
+     * @param generator a fresh script generator
+     * @return the script commands
+     * @throws IOException if the bundle could not be read
+     */
+    public String[] replay( String bundle, IScriptGenerator generator )
+                    throws IOException {
+        return generator.generateScript( load( bundle ) );
+    }
+
+    private static void writeInt( ByteArrayOutputStream out, int i ) {
+        for ( int shift = 24; shift >= 0; shift -= 8 ) {
+            out.write( i >>> shift );
+        }
+    }
+
+    private class BundleEncoder extends Encoder {
+
+        /** script string to the hash of its blob, within one bundle */
+        private final Map<String, String> stored
+            = new HashMap<String, String>();
+
+        BundleEncoder( ByteArrayOutputStream out ) {
+            super( out, new HashMap<String, Integer>() );
+        }
+
+        @Override
+        void writeValue( NonBioObjectParameter p ) throws IOException {
+            LargeStringReference large = p.getLargeString();
+            if ( large != null ) {
+                writeByte( LARGE_STRING_VALUE );
+                writeBytes( BlobStore.fromHex( large.getHash() ) );
+                writeString( p.getStringRepresentation() );
+                return;
+            }
+            String value = p.getStringRepresentation();
+            byte[] bytes = value == null ? null : value.getBytes( "UTF-8" );
+            if ( bytes == null || bytes.length <= INLINE_LENGTH ) {
+                writeByte( INLINE_VALUE );
+                writeString( value );
+                return;
+            }
+            String string = p.getString();
+            if ( string != null ) {
+                writeByte( STRING_BLOB_VALUE );
+                writeBytes( BlobStore.fromHex( put( string ) ) );
+                return;
+            }
+            writeByte( BLOB_VALUE );
+            writeBytes( BlobStore.fromHex( put( value ) ) );
+        }
+
+        /**
+         * @return the hash of <code>content</code> in the store
+         */
+        private String put( String content ) throws IOException {
+            String hash = stored.get( content );
+            if ( hash == null ) {
+                hash = store.put( content );
+                stored.put( content, hash );
+            }
+            return hash;
+        }
+    }
+
+    private class BundleDecoder extends Decoder {
+
+        BundleDecoder( ByteBuffer in ) {
+            super( in, new ArrayList<String>() );
+        }
+
+        @Override
+        NonBioObjectParameter readValue( String type ) {
+            byte kind = readByte();
+            try {
+                switch ( kind ) {
+                    case INLINE_VALUE:
+                        return new NonBioObjectParameter( type, readString() );
+                    case BLOB_VALUE:
+                        return new NonBioObjectParameter(
+                            type, store.getString( readHash() ) );
+                    case STRING_BLOB_VALUE:
+                        return new NonBioObjectParameter(
+                            type, 
+                            NonBioObjectParameter.render( 
+                                store.getString( readHash() ) ) );
+                    case LARGE_STRING_VALUE: {
+                        String hash     = readHash();
+                        String fallback = readString();
+                        BlobStore spill = LargeStringReference.spillStore();
+                        String content  = null;
+                        if ( store.contains( hash ) ) {
+                            content = store.getString( hash );
+                        }
+                        else if ( spill != null && spill.contains( hash ) ) {
+                            content = spill.getString( hash );
+                        }
+                        return new NonBioObjectParameter(
+                            type,
+                            content == null
+                                ? fallback
+                                : NonBioObjectParameter.render( content ) );
+                    }
+                    default:
+                        throw new BlobException( new IOException(
+                            "Unknown kind of value in provenance bundle: "
+                            + kind ) );
+                }
+            }
+            catch ( IOException e ) {
+                throw new BlobException( e );
+            }
+        }
+
+        private String readHash() {
+            return BlobStore.toHex( readBytes( HASH_LENGTH ) );
+        }
+    }
+
+    /** carries a failure to read a blob out of the decoder */
+    private static class BlobException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        BlobException( IOException cause ) {
+            super( cause );
+        }
+
+        @Override
+        public IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,353 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.recording;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import net.bioclipse.recording.MethodRecord.BioObjectParameter;
+import net.bioclipse.recording.MethodRecord.NonBioObjectParameter;
+import net.bioclipse.recording.MethodRecord.Parameter;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The binary encoding of records shared by the {@link HistoryJournal} and
+ * the {@link ProvenanceGenerator}. Strings are written as their length plus
+ * one followed by the UTF-8 bytes, 0 meaning null. Shared strings, like
+ * manager names, method names, types and BioObject UIDs, are written as
+ * the number of an earlier occurrence plus one, or 0 followed by the
+ * string the first time.
+ * <p>
+ * The values of the non BioObject parameters are written by
+ * {@link Encoder#writeValue(NonBioObjectParameter)} and read by
+ * {@link Decoder#readValue(String)}, which can be overridden to keep the
+ * values somewhere else.
+ *
+ * @author jonalv
+ */
+class RecordCodec {
+
+    private static final Logger logger = Logger.getLogger( RecordCodec.class );
+
+    static final byte MANAGER_RECORD   = 1;
+    static final byte BIOOBJECT_RECORD = 2;
+    static final byte SCRIPT_RECORD    = 3;
+    static final byte COMPOSITE_RECORD = 4;
+
+    static final byte NON_BIOOBJECT_PARAMETER = 0;
+    static final byte BIOOBJECT_PARAMETER     = 1;
+
+    private RecordCodec() {
+    }
+
+    static void writeVarInt( ByteArrayOutputStream out, int i ) {
+        while ( ( i & ~0x7F ) != 0 ) {
+            out.write( ( i & 0x7F ) | 0x80 );
+            i >>>= 7;
+        }
+        out.write( i );
+    }
+
+    static class Encoder {
+
+        private final ByteArrayOutputStream out;
+        private final Map<String, Integer> strings;
+        private final List<String> added = new ArrayList<String>();
+
+        Encoder( ByteArrayOutputStream out, Map<String, Integer> strings ) {
+            this.out     = out;
+            this.strings = strings;
+        }
+
+        /** forgets what was written, including new shared strings */
+        void reset() {
+            out.reset();
+            for ( String s : added ) {
+                strings.remove( s );
+            }
+            added.clear();
+        }
+
+        /**
+         * Writes a record. Nothing is written for records of unknown types,
+         * so what was written before them is kept.
+         *
+         * @return whether the record was written
+         */
+        boolean writeRecord( IRecord record ) throws IOException {
+            if ( record instanceof ManagerObjectRecord ) {
+                ManagerObjectRecord r = (ManagerObjectRecord) record;
+                writeByte( MANAGER_RECORD );
+                writeSharedString( r.managerObjectName );
+                writeMethodRecord( r );
+            }
+            else if ( record instanceof BioObjectRecord ) {
+                BioObjectRecord r = (BioObjectRecord) record;
+                writeByte( BIOOBJECT_RECORD );
+                writeSharedString( r.bioObjectId );
+                writeMethodRecord( r );
+            }
+            else if ( record instanceof ScriptRecord ) {
+                writeByte( SCRIPT_RECORD );
+                writeString( ( (ScriptRecord) record )
+                                 .getScript( ScriptRecord.Language.JS ) );
+            }
+            else if ( record instanceof CompositeRecord ) {
+                Map<String, String> scripts
+                    = ( (CompositeRecord) record ).scripts;
+                writeByte( COMPOSITE_RECORD );
+                writeVarInt( scripts.size() );
+                for ( Map.Entry<String, String> e : scripts.entrySet() ) {
+                    writeSharedString( e.getKey() );
+                    writeString( e.getValue() );
+                }
+            }
+            else {
+                logger.debug( "Not encoding record of unknown type: "
+                              + record.getClass().getName() );
+                return false;
+            }
+            return true;
+        }
+
+        private void writeMethodRecord( MethodRecord r ) throws IOException {
+            writeSharedString( r.methodName );
+            writeVarInt( r.paramaters.size() );
+            for ( Parameter p : r.paramaters ) {
+                if ( p instanceof BioObjectParameter ) {
+                    writeByte( BIOOBJECT_PARAMETER );
+                    writeSharedString( p.type );
+                    writeSharedString( ( (BioObjectParameter) p ).id );
+                }
+                else {
+                    writeByte( NON_BIOOBJECT_PARAMETER );
+                    writeSharedString( p.type );
+                    writeValue( (NonBioObjectParameter) p );
+                }
+            }
+            writeSharedString( r.returnObjectId );
+            writeSharedString( r.returnType );
+            String[] ids = r.returnedListContentsIds();
+            writeVarInt( ids == null ? 0 : ids.length + 1 );
+            if ( ids != null ) {
+                for ( String id : ids ) {
+                    writeSharedString( id );
+                }
+            }
+        }
+
+        /**
+         * Writes the value of a parameter, by default its script string.
+         */
+        void writeValue( NonBioObjectParameter p ) throws IOException {
+            writeString( p.getStringRepresentation() );
+        }
+
+        void writeByte( int b ) {
+            out.write( b );
+        }
+
+        void writeBytes( byte[] bytes ) {
+            out.write( bytes, 0, bytes.length );
+        }
+
+        void writeLong( long l ) {
+            for ( int shift = 56; shift >= 0; shift -= 8 ) {
+                out.write( (int) ( l >>> shift ) );
+            }
+        }
+
+        void writeVarInt( int i ) {
+            RecordCodec.writeVarInt( out, i );
+        }
+
+        void writeString( String s ) throws UnsupportedEncodingException {
+            if ( s == null ) {
+                writeVarInt( 0 );
+                return;
+            }
+            byte[] bytes = s.getBytes( "UTF-8" );
+            writeVarInt( bytes.length + 1 );
+            out.write( bytes, 0, bytes.length );
+        }
+
+        void writeSharedString( String s )
+             throws UnsupportedEncodingException {
+            Integer number = s == null ? null : strings.get( s );
+            if ( number != null ) {
+                writeVarInt( number + 1 );
+                return;
+            }
+            writeVarInt( 0 );
+            writeString( s );
+            if ( s != null ) {
+                strings.put( s, strings.size() );
+                added.add( s );
+            }
+        }
+    }
+
+    static class Decoder {
+
+        private final ByteBuffer in;
+        private final List<String> strings;
+
+        Decoder( ByteBuffer in, List<String> strings ) {
+            this.in      = in;
+            this.strings = strings;
+        }
+
+        /**
+         * @return the next record, <code>null</code> if it is of an
+         *         unknown type
+         */
+        IRecord readRecord() {
+            byte kind = readByte();
+            switch ( kind ) {
+                case MANAGER_RECORD: {
+                    String managerName = readSharedString();
+                    String methodName  = readSharedString();
+                    List<Parameter> parameters = readParameters();
+                    return new ManagerObjectRecord( methodName,
+                                                    managerName,
+                                                    parameters,
+                                                    readSharedString(),
+                                                    readSharedString(),
+                                                    readIds() );
+                }
+                case BIOOBJECT_RECORD: {
+                    String bioObjectId = readSharedString();
+                    String methodName  = readSharedString();
+                    List<Parameter> parameters = readParameters();
+                    return new BioObjectRecord( methodName,
+                                                bioObjectId,
+                                                parameters,
+                                                readSharedString(),
+                                                readSharedString(),
+                                                readIds() );
+                }
+                case SCRIPT_RECORD: {
+                    ScriptRecord record = new ScriptRecord();
+                    record.setScript( ScriptRecord.Language.JS,
+                                      readString() );
+                    return record;
+                }
+                case COMPOSITE_RECORD: {
+                    CompositeRecord record = new CompositeRecord();
+                    int size = readVarInt();
+                    for ( int i = 0; i < size; i++ ) {
+                        String language = readSharedString();
+                        record.addScriptRecord( language, readString() );
+                    }
+                    return record;
+                }
+                default:
+                    logger.warn( "Unknown record type: " + kind );
+                    return null;
+            }
+        }
+
+        private List<Parameter> readParameters() {
+            int size = readVarInt();
+            List<Parameter> parameters = new ArrayList<Parameter>( size );
+            for ( int i = 0; i < size; i++ ) {
+                byte kind   = readByte();
+                String type = readSharedString();
+                if ( kind == BIOOBJECT_PARAMETER ) {
+                    parameters.add(
+                        new BioObjectParameter( type, readSharedString() ) );
+                }
+                else {
+                    parameters.add( readValue( type ) );
+                }
+            }
+            return parameters;
+        }
+
+        private String[] readIds() {
+            int size = readVarInt();
+            if ( size == 0 ) {
+                return null;
+            }
+            String[] ids = new String[size - 1];
+            for ( int i = 0; i < ids.length; i++ ) {
+                ids[i] = readSharedString();
+            }
+            return ids;
+        }
+
+        /**
+         * Reads what {@link Encoder#writeValue(NonBioObjectParameter)}
+         * wrote.
+         */
+        NonBioObjectParameter readValue( String type ) {
+            return new NonBioObjectParameter( type, readString() );
+        }
+
+        byte readByte() {
+            return in.get();
+        }
+
+        byte[] readBytes( int length ) {
+            byte[] bytes = new byte[length];
+            in.get( bytes );
+            return bytes;
+        }
+
+        long readLong() {
+            return in.getLong();
+        }
+
+        int readVarInt() {
+            int value = 0;
+            for ( int shift = 0; ; shift += 7 ) {
+                byte b = in.get();
+                value |= ( b & 0x7F ) << shift;
+                if ( ( b & 0x80 ) == 0 ) {
+                    return value;
+                }
+            }
+        }
+
+        String readString() {
+            int length = readVarInt();
+            if ( length == 0 ) {
+                return null;
+            }
+            byte[] bytes = new byte[length - 1];
+            in.get( bytes );
+            try {
+                return new String( bytes, "UTF-8" );
+            }
+            catch ( UnsupportedEncodingException e ) {
+                throw new IllegalStateException( e );
+            }
+        }
+
+        String readSharedString() {
+            int number = readVarInt();
+            if ( number > 0 ) {
+                return strings.get( number - 1 );
+            }
+            String s = readString();
+            if ( s != null ) {
+                strings.add( s );
+            }
+            return s;
+        }
+    }
+}
@@ -14,15 +14,24 @@ package net.bioclipse.recording;
 
 import java.lang.reflect.Method;
 
+import net.bioclipse.core.NotRecorded;
 import net.bioclipse.core.Recorded;
 import net.bioclipse.core.domain.BioObject;
 import net.bioclipse.core.domain.IBioObject;
 import net.bioclipse.managers.business.IBioclipseManager;
+import net.bioclipse.recording.RecordingPolicy.Decision;
 
 import org.apache.log4j.Logger;
 
 
 /**
+ * Records calls to <code>@Recorded</code> methods in the history. The 
+ * records are built by an {@link AsyncRecorder} so the calls do not wait 
+ * for them, unless the system property 
+ * <code>bioclipse.recording.async</code> is <code>false</code>. Which 
+ * calls are recorded is decided by a {@link RecordingPolicy}, the calls 
+ * it skips are counted in the history.
+ * 
  * @author jonalv, olas
  *
  */
@@ -30,11 +39,64 @@ public class RecordingAdvice implements IRecordingAdvice {
 
     private History history;
     
+    /** null when recording on the calling thread */
+    private final AsyncRecorder recorder;
+    
+    private final RecordingPolicy policy;
+    
+    /** a call held as the last of a run of repeated calls */
+    private static class HeldCall {
+        final String   name;
+        final String   methodName;
+        final Object   target;
+        final Object[] args;
+        final Object   returnValue;
+        
+        HeldCall( String name, 
+                  String methodName, 
+                  Object target, 
+                  Object[] args, 
+                  Object returnValue ) {
+            this.name        = name;
+            this.methodName  = methodName;
+            this.target      = target;
+            this.args        = args;
+            this.returnValue = returnValue;
+        }
+    }
+    
+    /** recorded when a call to another method is, guarded by this */
+    private volatile HeldCall held;
+    
     private static final Logger logger 
         = Logger.getLogger(RecordingAdvice.class);
     
     public RecordingAdvice(History history) {
-        this.history = history;
+        this( history, 
+              Boolean.valueOf( System.getProperty( "bioclipse.recording.async",
+                                                   "true" ) ) 
+                  ? AsyncRecorder.createConfigured( history ) : null );
+    }
+
+    /**
+     * @param recorder the recorder to hand the calls to, <code>null</code> 
+     *                 for recording on the calling thread
+     */
+    public RecordingAdvice( History history, AsyncRecorder recorder ) {
+        this( history, recorder, RecordingPolicy.getInstance() );
+    }
+
+    /**
+     * @param recorder the recorder to hand the calls to, <code>null</code> 
+     *                 for recording on the calling thread
+     * @param policy decides which calls to record
+     */
+    public RecordingAdvice( History history, 
+                            AsyncRecorder recorder, 
+                            RecordingPolicy policy ) {
+        this.history  = history;
+        this.recorder = recorder;
+        this.policy   = policy;
     }
     
     public void afterReturning( Object returnValue, 
@@ -42,32 +104,136 @@ public class RecordingAdvice implements IRecordingAdvice {
                                 Object[] args, 
                                 Object target ) throws Throwable {
 
-        if ( !method.isAnnotationPresent(Recorded.class) ) {
+        // the RecordingAdvisor only lets @Recorded methods through, this is
+        // for when the advice is added to a proxy without it
+        if ( !method.isAnnotationPresent(Recorded.class)
+             || method.isAnnotationPresent(NotRecorded.class) ) {
+            return;
+        }
+        
+        if ( !( target instanceof IBioObject 
+                || target instanceof IBioclipseManager ) ) {
+            String message = "@Recorded method is on object of unexpected "
+                + "type: " + target.getClass().getName() + "." 
+                + method.getName();
+            
+            assert false: message;        // for development time
+            logger.warn(message);         // for logged end-user distrib
             return;
         }
         
-        if (target instanceof IBioObject) {
+        if ( policy.isRecordingAll() && held == null ) {
+            record( method.getName(), target, args, returnValue );
+            return;
+        }
+        
+        String name = RecordingPolicy.nameOf( method.getName(), target );
+        if ( policy.isCompressingRepeats() ) {
+            // decide and record in one go so that the first and the last 
+            // of a run are recorded in order
+            synchronized ( this ) {
+                record( policy.decide( name ), 
+                        name, method.getName(), target, args, returnValue );
+            }
+        }
+        else {
+            record( policy.decide( name ), 
+                    name, method.getName(), target, args, returnValue );
+        }
+    }
+
+    private void record( Decision decision,
+                         String name,
+                         String methodName, 
+                         Object target, 
+                         Object[] args, 
+                         Object returnValue ) {
+        switch ( decision ) {
+            case RECORD:
+                recordHeld();
+                record( methodName, target, args, returnValue );
+                break;
+            case HOLD:
+                synchronized ( this ) {
+                    if ( held != null ) {
+                        history.addSkipped( held.name );
+                    }
+                    held = new HeldCall( 
+                        name, methodName, target, args, returnValue );
+                }
+                break;
+            default:
+                history.addSkipped( name );
+        }
+    }
+
+    /**
+     * Records the last call of a run of repeated calls, if any is held.
+     */
+    private void recordHeld() {
+        if ( held == null ) {
+            return;
+        }
+        HeldCall call;
+        synchronized ( this ) {
+            call = held;
+            held = null;
+        }
+        if ( call != null ) {
+            record( call.methodName, call.target, call.args, 
+                    call.returnValue );
+        }
+    }
+
+    private void record( String methodName, 
+                         Object target, 
+                         Object[] args, 
+                         Object returnValue ) {
+        if ( recorder != null ) {
+            recorder.record( methodName, target, args, returnValue );
+        }
+        else if (target instanceof IBioObject) {
             history.addRecord( 
-                    new BioObjectRecord( method.getName(),
+                    new BioObjectRecord( methodName,
                                          ((BioObject) target).getUID(),
                                          args,
                                          returnValue ) );            
         }
-        else if (target instanceof IBioclipseManager) {
+        else {
             IBioclipseManager manager = (IBioclipseManager) target;
             history.addRecord( 
-                    new ManagerObjectRecord( method.getName(), 
+                    new ManagerObjectRecord( methodName, 
                                              manager.getManagerName(),
                                              args, 
                                              returnValue ) );            
         }
-        else {
-            String message = "@Recorded method is on object of unexpected "
-                + "type: " + target.getClass().getName() + "." 
-                + method.getName();
-            
-            assert false: message;        // for development time
-            logger.warn(message);         // for logged end-user distrib
+    }
+
+    /**
+     * Waits until the calls recorded so far are in the history.
+     */
+    public void flush() throws InterruptedException {
+        recordHeld();
+        if ( recorder != null ) {
+            recorder.flush();
+        }
+    }
+
+    public AsyncRecorder getRecorder() {
+        return recorder;
+    }
+
+    public RecordingPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Records what is left and stops the recording thread.
+     */
+    public void dispose() {
+        recordHeld();
+        if ( recorder != null ) {
+            recorder.dispose();
         }
     }
 }
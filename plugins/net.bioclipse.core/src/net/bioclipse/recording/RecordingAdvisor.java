@@ -0,0 +1,56 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.recording;
+
+import java.lang.reflect.Method;
+
+import net.bioclipse.core.NotRecorded;
+import net.bioclipse.core.Recorded;
+
+import org.aopalliance.aop.Advice;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.aop.support.StaticMethodMatcherPointcutAdvisor;
+
+/**
+ * Applies the recording advice only to methods annotated with 
+ * {@link Recorded}, either in the proxied interface or in the 
+ * implementing class, and not annotated with {@link NotRecorded} in 
+ * either. The pointcut is static so Spring decides once per method whether
+ * the advice goes into the interceptor chain, all other methods are called
+ * without it.
+ * 
+ * @author jonalv
+ */
+public class RecordingAdvisor extends StaticMethodMatcherPointcutAdvisor {
+
+    private static final long serialVersionUID = 1L;
+
+    public RecordingAdvisor() {
+    }
+
+    public RecordingAdvisor( Advice advice ) {
+        super( advice );
+    }
+
+    @SuppressWarnings("unchecked")
+    public boolean matches( Method method, Class targetClass ) {
+        Method implementation 
+            = targetClass == null 
+              ? method
+              : AopUtils.getMostSpecificMethod( method, targetClass );
+        if ( method.isAnnotationPresent( NotRecorded.class )
+             || implementation.isAnnotationPresent( NotRecorded.class ) ) {
+            return false;
+        }
+        return method.isAnnotationPresent( Recorded.class )
+               || implementation.isAnnotationPresent( Recorded.class );
+    }
+}
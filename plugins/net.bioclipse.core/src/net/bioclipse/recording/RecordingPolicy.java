@@ -0,0 +1,417 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.recording;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import net.bioclipse.managers.business.IBioclipseManager;
+
+import org.apache.log4j.Logger;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.osgi.service.prefs.Preferences;
+
+/**
+ * Decides which <code>@Recorded</code> calls the {@link RecordingAdvice}
+ * puts in the history. Calls are named <code>manager.method</code>, or
+ * <code>Class.method</code> for calls on BioObjects, and are recorded
+ * when:
+ * <ul>
+ * <li>no include rule is given or an include rule matches the name, and
+ *     no exclude rule does. Rules are names where <code>*</code> matches
+ *     anything, a rule without a dot matches all methods of a manager.</li>
+ * <li>it is one of every <i>sampleRate</i> calls to the method, the
+ *     first one included.</li>
+ * <li>fewer than <i>maxPerSecond</i> calls to the method have been
+ *     recorded in the current second, if there is a limit.</li>
+ * </ul>
+ * When repeats are compressed only the first and the last of a run of
+ * calls to the same method are recorded; the last is held by the advice
+ * until a call to another method is recorded.
+ * <p>
+ * The shared policy is read from the preferences of the core plugin,
+ * {@link #INCLUDE}, {@link #EXCLUDE}, {@link #SAMPLE_RATE},
+ * {@link #MAX_PER_SECOND} and {@link #COMPRESS_REPEATS}, and read again
+ * when they change. Scripts change it through the <code>bioclipse</code>
+ * manager; such changes last until the preferences change or the
+ * policy is reset.
+ *
+ * @author jonalv
+ */
+public class RecordingPolicy {
+
+    public static final String PREFERENCE_NODE  = "net.bioclipse.core";
+    /** comma separated rules for the calls to record */
+    public static final String INCLUDE          = "recording.include";
+    /** comma separated rules for the calls not to record */
+    public static final String EXCLUDE          = "recording.exclude";
+    public static final String SAMPLE_RATE      = "recording.sampleRate";
+    /** 0 for no limit */
+    public static final String MAX_PER_SECOND   = "recording.maxPerSecond";
+    public static final String COMPRESS_REPEATS = "recording.compressRepeats";
+
+    /** what to do with a call */
+    public enum Decision {
+        RECORD,
+        SKIP,
+        /** hold on to the call as the last of a run of repeats */
+        HOLD
+    }
+
+    private static final Logger logger
+        = Logger.getLogger( RecordingPolicy.class );
+
+    private static RecordingPolicy instance;
+
+    /** the calls to a method, for sampling and rate limiting */
+    private static class Counter {
+        final AtomicLong    calls    = new AtomicLong();
+        final AtomicInteger inSecond = new AtomicInteger();
+        volatile long second;
+
+        boolean withinRate( int maxPerSecond ) {
+            long now = System.currentTimeMillis() / 1000;
+            if ( now != second ) {
+                synchronized ( this ) {
+                    if ( now != second ) {
+                        inSecond.set( 0 );
+                        second = now;
+                    }
+                }
+            }
+            return inSecond.incrementAndGet() <= maxPerSecond;
+        }
+    }
+
+    /** include and exclude rules, replaced when they change */
+    private static class Rules {
+        final List<String> includes;
+        final List<String> excludes;
+        /** name to whether the rules let it through */
+        final ConcurrentMap<String, Boolean> accepted
+            = new ConcurrentHashMap<String, Boolean>();
+
+        Rules( List<String> includes, List<String> excludes ) {
+            this.includes = Collections.unmodifiableList( includes );
+            this.excludes = Collections.unmodifiableList( excludes );
+        }
+
+        boolean accepts( String name ) {
+            Boolean accepts = accepted.get( name );
+            if ( accepts == null ) {
+                accepts = ( includes.isEmpty()
+                            || matchesAny( includes, name ) )
+                          && !matchesAny( excludes, name );
+                accepted.put( name, accepts );
+            }
+            return accepts;
+        }
+
+        boolean isEmpty() {
+            return includes.isEmpty() && excludes.isEmpty();
+        }
+    }
+
+    private static final Rules NO_RULES
+        = new Rules( Collections.<String>emptyList(),
+                     Collections.<String>emptyList() );
+
+    private volatile Rules rules = NO_RULES;
+    private volatile int sampleRate = 1;
+    private volatile int maxPerSecond;
+    private volatile boolean compressRepeats;
+
+    private final ConcurrentMap<String, Counter> counters
+        = new ConcurrentHashMap<String, Counter>();
+
+    /** the name of the last call let through, guarded by this */
+    private String lastName;
+
+    /**
+     * Creates a policy recording every call.
+     */
+    public RecordingPolicy() {
+    }
+
+    /**
+     * @return the policy shared by the recording advices, read from the
+     *         preferences
+     */
+    public static synchronized RecordingPolicy getInstance() {
+        if ( instance == null ) {
+            instance = new RecordingPolicy();
+            instance.followPreferences();
+        }
+        return instance;
+    }
+
+    /**
+     * @return the name calls to <code>methodName</code> on
+     *         <code>target</code> are known by in the rules
+     */
+    public static String nameOf( String methodName, Object target ) {
+        String owner = target instanceof IBioclipseManager
+                       ? ( (IBioclipseManager) target ).getManagerName()
+                       : target.getClass().getSimpleName();
+        return owner + "." + methodName;
+    }
+
+    /**
+     * @return whether every call is recorded, so that there is no need to
+     *         ask
+     */
+    public boolean isRecordingAll() {
+        return rules.isEmpty() && sampleRate == 1
+               && maxPerSecond == 0 && !compressRepeats;
+    }
+
+    /**
+     * @param name the name of a call, see {@link #nameOf(String, Object)}
+     * @return what to do with the call
+     */
+    public Decision decide( String name ) {
+        if ( !rules.accepts( name ) ) {
+            return Decision.SKIP;
+        }
+        int sampleRate   = this.sampleRate;
+        int maxPerSecond = this.maxPerSecond;
+        if ( sampleRate > 1 || maxPerSecond > 0 ) {
+            Counter counter = counter( name );
+            if ( sampleRate > 1
+                 && counter.calls.getAndIncrement() % sampleRate != 0 ) {
+                return Decision.SKIP;
+            }
+            if ( maxPerSecond > 0 && !counter.withinRate( maxPerSecond ) ) {
+                return Decision.SKIP;
+            }
+        }
+        if ( compressRepeats ) {
+            synchronized ( this ) {
+                if ( name.equals( lastName ) ) {
+                    return Decision.HOLD;
+                }
+                lastName = name;
+            }
+        }
+        return Decision.RECORD;
+    }
+
+    private static boolean matchesAny( List<String> rules, String name ) {
+        for ( String rule : rules ) {
+            if ( matches( rule, name ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean matches( String rule, String name ) {
+        if ( rule.indexOf( '.' ) == -1 ) {
+            rule += ".*";
+        }
+        StringBuilder regex = new StringBuilder();
+        for ( String part : rule.split( "\\*", -1 ) ) {
+            if ( regex.length() > 0 ) {
+                regex.append( ".*" );
+            }
+            regex.append( Pattern.quote( part ) );
+        }
+        return name.matches( regex.toString() );
+    }
+
+    private Counter counter( String name ) {
+        Counter counter = counters.get( name );
+        if ( counter == null ) {
+            counter = new Counter();
+            Counter existing = counters.putIfAbsent( name, counter );
+            if ( existing != null ) {
+                counter = existing;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Records only calls matching this rule, or another include rule.
+     */
+    public synchronized void include( String rule ) {
+        rules = new Rules( with( rules.includes, rule ), rules.excludes );
+    }
+
+    /**
+     * Does not record calls matching this rule.
+     */
+    public synchronized void exclude( String rule ) {
+        rules = new Rules( rules.includes, with( rules.excludes, rule ) );
+    }
+
+    private static List<String> with( List<String> rules, String rule ) {
+        List<String> copy = new ArrayList<String>( rules );
+        copy.add( rule.trim() );
+        return copy;
+    }
+
+    /**
+     * Removes all include and exclude rules.
+     */
+    public synchronized void clearRules() {
+        rules = NO_RULES;
+    }
+
+    public List<String> getIncludes() {
+        return rules.includes;
+    }
+
+    public List<String> getExcludes() {
+        return rules.excludes;
+    }
+
+    /**
+     * @param sampleRate record one in this many calls to each method, 1
+     *                   for all
+     */
+    public void setSampleRate( int sampleRate ) {
+        if ( sampleRate < 1 ) {
+            throw new IllegalArgumentException(
+                "sampleRate must be at least 1, was: " + sampleRate );
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @param maxPerSecond the most calls to each method recorded per
+     *                     second, 0 for no limit
+     */
+    public void setMaxPerSecond( int maxPerSecond ) {
+        if ( maxPerSecond < 0 ) {
+            throw new IllegalArgumentException(
+                "maxPerSecond can not be negative, was: " + maxPerSecond );
+        }
+        this.maxPerSecond = maxPerSecond;
+    }
+
+    public int getMaxPerSecond() {
+        return maxPerSecond;
+    }
+
+    public synchronized void setCompressRepeats( boolean compressRepeats ) {
+        this.compressRepeats = compressRepeats;
+        lastName = null;
+    }
+
+    public boolean isCompressingRepeats() {
+        return compressRepeats;
+    }
+
+    /**
+     * Goes back to recording every call.
+     */
+    public synchronized void reset() {
+        clearRules();
+        sampleRate   = 1;
+        maxPerSecond = 0;
+        setCompressRepeats( false );
+        counters.clear();
+    }
+
+    /**
+     * Sets the policy to what the preferences say.
+     */
+    public synchronized void load( Preferences preferences ) {
+        reset();
+        for ( String rule : preferences.get( INCLUDE, "" ).split( "," ) ) {
+            if ( rule.trim().length() > 0 ) {
+                include( rule );
+            }
+        }
+        for ( String rule : preferences.get( EXCLUDE, "" ).split( "," ) ) {
+            if ( rule.trim().length() > 0 ) {
+                exclude( rule );
+            }
+        }
+        sampleRate   = Math.max( 1, preferences.getInt( SAMPLE_RATE, 1 ) );
+        maxPerSecond = Math.max( 0, preferences.getInt( MAX_PER_SECOND, 0 ) );
+        setCompressRepeats(
+            preferences.getBoolean( COMPRESS_REPEATS, false ) );
+    }
+
+    /**
+     * Sets the policy back to what the preferences of the core plugin say.
+     */
+    public void loadPreferences() {
+        try {
+            load( InstanceScope.INSTANCE.getNode( PREFERENCE_NODE ) );
+        }
+        catch ( RuntimeException e ) {
+            logger.debug( "No preferences, recording every call", e );
+            reset();
+        }
+    }
+
+    private void followPreferences() {
+        final IEclipsePreferences preferences;
+        try {
+            preferences = InstanceScope.INSTANCE.getNode( PREFERENCE_NODE );
+        }
+        catch ( RuntimeException e ) {
+            logger.debug( "No preferences, recording every call", e );
+            return;
+        }
+        load( preferences );
+        preferences.addPreferenceChangeListener(
+            new IPreferenceChangeListener() {
+                public void preferenceChange( PreferenceChangeEvent event ) {
+                    if ( event.getKey().startsWith( "recording." ) ) {
+                        load( preferences );
+                    }
+                }
+            } );
+    }
+
+    @Override
+    public String toString() {
+        if ( isRecordingAll() ) {
+            return "Recording every call";
+        }
+        List<String> includes = rules.includes;
+        List<String> excludes = rules.excludes;
+        StringBuilder s = new StringBuilder( "Recording" );
+        s.append( includes.isEmpty() ? " all calls"
+                                     : " calls matching " + includes );
+        if ( !excludes.isEmpty() ) {
+            s.append( " except " ).append( excludes );
+        }
+        if ( sampleRate > 1 ) {
+            s.append( ", one in " ).append( sampleRate );
+        }
+        if ( maxPerSecond > 0 ) {
+            s.append( ", at most " ).append( maxPerSecond )
+             .append( " per second and method" );
+        }
+        if ( compressRepeats ) {
+            s.append( ", only the first and last of repeated calls" );
+        }
+        return s.toString();
+    }
+}
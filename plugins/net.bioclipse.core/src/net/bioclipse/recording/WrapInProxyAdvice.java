@@ -8,24 +8,404 @@
  *******************************************************************************/
 package net.bioclipse.recording;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import net.bioclipse.core.domain.IBioObject;
+import net.bioclipse.core.domain.RecordableList;
+import net.sf.cglib.proxy.Callback;
+import net.sf.cglib.proxy.CallbackFilter;
+import net.sf.cglib.proxy.Enhancer;
+import net.sf.cglib.proxy.Factory;
+import net.sf.cglib.proxy.MethodInterceptor;
+import net.sf.cglib.proxy.MethodProxy;
+import net.sf.cglib.proxy.NoOp;
 
 import org.aopalliance.intercept.MethodInvocation;
+import org.apache.log4j.Logger;
+import org.springframework.aop.framework.Advised;
 import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.util.ClassUtils;
 
+/**
+ * Wraps returned BioObjects in proxies with this advice so that the
+ * BioObjects they in turn return get wrapped too. The BioObjects in a
+ * returned <code>RecordableList</code> or <code>List</code> are wrapped
+ * as well, in a new list so that the returned one is never changed.
+ * <p>
+ * The proxy class for each BioObject class is generated once by cglib.
+ * Its instances are created the way Objenesis does it, through the
+ * serialization constructor of the JVM, so the constructors of the
+ * BioObject class are never run again for a proxy. The proxy then is an
+ * instance of the BioObject class but all its methods are passed on to
+ * the wrapped BioObject, and its own fields are never used.
+ * <p>
+ * BioObject classes that can not be subclassed this way, because they
+ * are final, declare final methods that would not reach the wrapped
+ * BioObject or the JVM has no serialization constructors, are wrapped in
+ * a Spring proxy for their interfaces instead. Such proxies are not
+ * instances of the BioObject class. Only classes that can never be
+ * subclassed, or whose class loader can not load the proxy class, are
+ * remembered as such, generating the proxy class is tried again for
+ * other failures.
+ */
 public class WrapInProxyAdvice implements IWrapInProxyAdvice {
 
-    
+    private static final Logger logger
+        = Logger.getLogger( WrapInProxyAdvice.class );
+
+    /** callback index of the methods that can return BioObjects */
+    private static final int WRAPPING    = 0;
+    /** callback index of the methods just passed on to the target */
+    private static final int PASSING     = 1;
+    /** callback index of <code>finalize</code> */
+    private static final int NOT_PROXIED = 2;
+
+    /** the types of the callbacks at the indexes above */
+    private static final Class<?>[] CALLBACK_TYPES
+        = { MethodInterceptor.class, MethodInterceptor.class, NoOp.class };
+
+    /**
+     * Placeholder in <code>templates</code> for classes that no template
+     * can be generated for.
+     */
+    private static final Template NO_TEMPLATE = new Template( null );
+
+    /**
+     * The <code>sun.reflect.ReflectionFactory</code> giving constructors
+     * that do not run the constructors of the class they create, or
+     * <code>null</code> if this JVM has none.
+     */
+    private static final Object reflectionFactory = reflectionFactory();
+
+    /** only advises the methods of the wrapped BioObjects that can return
+     *  BioObjects */
+    private final WrapInProxyAdvisor advisor = new WrapInProxyAdvisor( this );
+
+    /** BioObject class to its proxy class or NO_TEMPLATE */
+    private final ConcurrentMap<Class<?>, Template> templates
+        = new ConcurrentHashMap<Class<?>, Template>();
+
     public Object invoke(MethodInvocation invocation) throws Throwable {
-        Object returnValue = invocation.proceed();
-        if(  returnValue instanceof IBioObject && 
-           !(returnValue instanceof net.sf.cglib.proxy.Factory) ) {
-            ProxyFactory pf = new ProxyFactory();
-            pf.addAdvice(this);
-//            pf.addAdvice(Activator.getDefault().getRecordingAdvice());
-            pf.setTarget(returnValue);
-            returnValue = pf.getProxy();
-        }
-        return returnValue;
+        return wrapReturnValue( invocation.proceed(),
+                                invocation.getMethod().getReturnType() );
+    }
+
+    private Object wrapReturnValue( Object returnValue, Class<?> returnType ) {
+        if ( returnValue instanceof List<?>
+             && !( returnValue instanceof IBioObject ) ) {
+            return wrapAll( (List<?>) returnValue, returnType );
+        }
+        return wrap( returnValue );
+    }
+
+    /**
+     * @param o any object
+     * @return a proxy for <code>o</code> if it is a BioObject not already
+     *         wrapped, otherwise <code>o</code>
+     */
+    public Object wrap( Object o ) {
+        if (  !(o instanceof IBioObject) ||
+               (o instanceof Factory)    ||
+               (o instanceof Advised) ) {
+            return o;
+        }
+        if ( o instanceof RecordableList<?> ) {
+            o = wrapMembers( (RecordableList<?>) o );
+        }
+        Template template = template( o.getClass() );
+        if ( template != NO_TEMPLATE ) {
+            try {
+                Factory proxy = (Factory) template.constructor.newInstance();
+                proxy.setCallbacks( callbacks( o ) );
+                return proxy;
+            }
+            catch ( InstantiationException e ) {
+                noTemplate( o.getClass(), e );
+            }
+            catch ( IllegalAccessException e ) {
+                noTemplate( o.getClass(), e );
+            }
+            catch ( InvocationTargetException e ) {
+                noTemplate( o.getClass(), e.getCause() );
+            }
+        }
+        ProxyFactory pf = new ProxyFactory();
+        pf.addAdvisor(advisor);
+//        pf.addAdvice(Activator.getDefault().getRecordingAdvice());
+        pf.setTarget(o);
+        pf.setInterfaces( ClassUtils.getAllInterfaces( o ) );
+        return pf.getProxy();
+    }
+
+    /**
+     * Wraps the BioObjects of a returned list. The list is replaced by an
+     * <code>ArrayList</code> only if something was wrapped and the method
+     * was declared to return something an <code>ArrayList</code> fits in.
+     */
+    private Object wrapAll( List<?> list, Class<?> returnType ) {
+        if ( !returnType.isAssignableFrom( ArrayList.class ) ) {
+            return list;
+        }
+        List<Object> wrapped = null;
+        int i = 0;
+        for ( Object o : list ) {
+            Object w = wrap( o );
+            if ( w != o && wrapped == null ) {
+                wrapped = new ArrayList<Object>( list.size() );
+                wrapped.addAll( list.subList( 0, i ) );
+            }
+            if ( wrapped != null ) {
+                wrapped.add( w );
+            }
+            i++;
+        }
+        return wrapped == null ? list : wrapped;
+    }
+
+    /**
+     * @return a new list with the same UID holding proxies for the members
+     *         of <code>list</code>, or <code>list</code> if none of them
+     *         needed one. The proxies have the same UIDs as the members so
+     *         the list memberships stay the same.
+     */
+    @SuppressWarnings("unchecked")
+    private RecordableList<?> wrapMembers( RecordableList<?> list ) {
+        if ( list.getClass() != RecordableList.class ) {
+            return list;
+        }
+        Object[] members = list.toArray();
+        boolean changed = false;
+        for ( int i = 0; i < members.length; i++ ) {
+            Object w = wrap( members[i] );
+            if ( w != members[i] ) {
+                members[i] = w;
+                changed = true;
+            }
+        }
+        if ( !changed ) {
+            return list;
+        }
+        List<IBioObject> wrapped = new ArrayList<IBioObject>();
+        for ( Object member : members ) {
+            wrapped.add( (IBioObject) member );
+        }
+        return ( (RecordableList<IBioObject>) list ).withMembers( wrapped );
+    }
+
+    private Template template( Class<?> c ) {
+        Template template = templates.get( c );
+        if ( template == null ) {
+            if ( !canSubclass( c ) ) {
+                template = NO_TEMPLATE;
+            }
+            else {
+                try {
+                    template = createTemplate( c );
+                }
+                catch ( UnsupportedOperationException e ) {
+                    // the JVM will not give such constructors next time
+                    template = noTemplate( c, e );
+                }
+                catch ( RuntimeException e ) {
+                    return noTemplate( c, e );
+                }
+                catch ( LinkageError e ) {
+                    // the class loader will fail the same way every time
+                    template = noTemplate( c, e );
+                }
+            }
+            Template existing = templates.putIfAbsent( c, template );
+            if ( existing != null ) {
+                template = existing;
+            }
+        }
+        return template;
+    }
+
+    /**
+     * @return whether <code>c</code> is a class cglib can subclass, that 
+     *         is not final, has a constructor that is not private and has 
+     *         no final methods of its own that the proxy would not pass on
+     */
+    private static boolean canSubclass( Class<?> c ) {
+        if ( Modifier.isFinal( c.getModifiers() ) 
+             || c.getClassLoader() == null
+             || reflectionFactory == null ) {
+            return false;
+        }
+        for ( Class<?> k = c; k != Object.class; k = k.getSuperclass() ) {
+            for ( Method method : k.getDeclaredMethods() ) {
+                int modifiers = method.getModifiers();
+                if ( Modifier.isFinal( modifiers )
+                     && !Modifier.isStatic( modifiers )
+                     && !Modifier.isPrivate( modifiers ) ) {
+                    return false;
+                }
+            }
+        }
+        for ( Constructor<?> constructor : c.getDeclaredConstructors() ) {
+            if ( !Modifier.isPrivate( constructor.getModifiers() ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Template noTemplate( Class<?> c, Throwable t ) {
+        logger.debug( "Could not generate a proxy class for " + c.getName()
+                      + ", using ProxyFactory ("
+                      + t.getClass().getSimpleName() + ": "
+                      + t.getMessage() + ")" );
+        return NO_TEMPLATE;
+    }
+
+    private Template createTemplate( Class<?> c ) {
+        Enhancer enhancer = new Enhancer();
+        enhancer.setClassLoader( c.getClassLoader() );
+        enhancer.setSuperclass( c );
+        enhancer.setCallbackFilter( new ProxyCallbackFilter( advisor, c ) );
+        enhancer.setCallbackTypes( CALLBACK_TYPES );
+        Class<?> proxyClass = enhancer.createClass();
+        return new Template( constructorWithoutInitialization( proxyClass ) );
+    }
+
+    /**
+     * @return a constructor for <code>c</code> that runs only the 
+     *         constructor of <code>Object</code>
+     */
+    private static Constructor<?> constructorWithoutInitialization(
+                                                               Class<?> c ) {
+        try {
+            Method method = reflectionFactory.getClass().getMethod(
+                                "newConstructorForSerialization",
+                                Class.class, Constructor.class );
+            Constructor<?> constructor = (Constructor<?>) method.invoke(
+                reflectionFactory, c, Object.class.getDeclaredConstructor() );
+            constructor.setAccessible( true );
+            return constructor;
+        }
+        catch ( NoSuchMethodException e ) {
+            throw new UnsupportedOperationException( e );
+        }
+        catch ( IllegalAccessException e ) {
+            throw new UnsupportedOperationException( e );
+        }
+        catch ( InvocationTargetException e ) {
+            throw new UnsupportedOperationException( e.getCause() );
+        }
+    }
+
+    private static Object reflectionFactory() {
+        try {
+            return Class.forName( "sun.reflect.ReflectionFactory" )
+                        .getMethod( "getReflectionFactory" )
+                        .invoke( null );
+        }
+        catch ( Exception e ) {
+            logger.debug( "No ReflectionFactory, BioObjects will be wrapped "
+                          + "in proxies for their interfaces" );
+            return null;
+        }
+    }
+
+    private Callback[] callbacks( Object target ) {
+        return new Callback[] { new Delegator( target, this ),
+                                new Delegator( target, null ),
+                                NoOp.INSTANCE };
+    }
+
+    /** The constructor to create the proxies of a BioObject class with. */
+    private static class Template {
+
+        final Constructor<?> constructor;
+
+        Template( Constructor<?> constructor ) {
+            this.constructor = constructor;
+        }
+    }
+
+    /**
+     * Sorts the methods of a BioObject class on callback index once when
+     * its proxy class is generated.
+     */
+    private static class ProxyCallbackFilter implements CallbackFilter {
+
+        private final WrapInProxyAdvisor advisor;
+        private final Class<?> targetClass;
+
+        ProxyCallbackFilter( WrapInProxyAdvisor advisor,
+                             Class<?> targetClass ) {
+            this.advisor     = advisor;
+            this.targetClass = targetClass;
+        }
+
+        public int accept( Method method ) {
+            if ( method.getName().equals( "finalize" )
+                 && method.getParameterTypes().length == 0 ) {
+                return NOT_PROXIED;
+            }
+            return advisor.matches( method, targetClass ) ? WRAPPING
+                                                          : PASSING;
+        }
+
+        @Override
+        public boolean equals( Object o ) {
+            return o instanceof ProxyCallbackFilter
+                   && ( (ProxyCallbackFilter) o ).targetClass == targetClass;
+        }
+
+        @Override
+        public int hashCode() {
+            return targetClass.hashCode();
+        }
+    }
+
+    /**
+     * Calls the BioObject behind a proxy and, if it has an advice, wraps
+     * what is returned.
+     */
+    private static class Delegator implements MethodInterceptor {
+
+        private final Object target;
+        private final WrapInProxyAdvice advice;
+
+        Delegator( Object target, WrapInProxyAdvice advice ) {
+            this.target = target;
+            this.advice = advice;
+        }
+
+        public Object intercept( Object proxy,
+                                 Method method,
+                                 Object[] args,
+                                 MethodProxy methodProxy ) throws Throwable {
+            if ( args.length == 1 && method.getName().equals( "equals" ) ) {
+                args = new Object[] { targetOf( args[0] ) };
+            }
+            Object returnValue = methodProxy.invoke( target, args );
+            if ( returnValue == target ) {
+                return proxy;
+            }
+            return advice == null
+                   ? returnValue
+                   : advice.wrapReturnValue( returnValue,
+                                             method.getReturnType() );
+        }
+
+        private static Object targetOf( Object o ) {
+            if ( o instanceof Factory ) {
+                Callback callback = ( (Factory) o ).getCallback( PASSING );
+                if ( callback instanceof Delegator ) {
+                    return ( (Delegator) callback ).target;
+                }
+            }
+            return o;
+        }
     }
 }
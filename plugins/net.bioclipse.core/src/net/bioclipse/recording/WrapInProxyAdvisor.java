@@ -0,0 +1,96 @@
+/* *****************************************************************************
+ * Copyright (c) 2009  Jonathan Alvarsson <jonalv@users.sourceforge.net>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.recording;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.Collection;
+
+import net.bioclipse.core.NotWrapped;
+import net.bioclipse.core.domain.IBioObject;
+
+import org.aopalliance.aop.Advice;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.aop.support.StaticMethodMatcherPointcutAdvisor;
+
+/**
+ * Applies the wrap in proxy advice only to methods whose declared return 
+ * type can hold an {@link IBioObject}, that is <code>IBioObject</code> 
+ * types and their supertypes such as <code>Object</code>, and to methods 
+ * returning collections that can hold <code>IBioObject</code>s, like a 
+ * plain <code>List</code> or a <code>List&lt;IMolecule&gt;</code>. Methods 
+ * returning strings, primitives, collections of other things like 
+ * <code>List&lt;String&gt;</code> and the like, as well as methods 
+ * annotated with {@link NotWrapped}, are called without the advice.
+ * 
+ * @author jonalv
+ */
+public class WrapInProxyAdvisor extends StaticMethodMatcherPointcutAdvisor {
+
+    private static final long serialVersionUID = 1L;
+
+    public WrapInProxyAdvisor() {
+    }
+
+    public WrapInProxyAdvisor( Advice advice ) {
+        super( advice );
+    }
+
+    @SuppressWarnings("unchecked")
+    public boolean matches( Method method, Class targetClass ) {
+        if ( method.isAnnotationPresent( NotWrapped.class )
+             || ( targetClass != null 
+                  && AopUtils.getMostSpecificMethod( method, targetClass )
+                             .isAnnotationPresent( NotWrapped.class ) ) ) {
+            return false;
+        }
+        return canReturnBioObject( method.getReturnType() )
+               || returnsBioObjects( method );
+    }
+
+    private static boolean canReturnBioObject( Class<?> returnType ) {
+        return IBioObject.class.isAssignableFrom( returnType )
+               || returnType.isAssignableFrom( IBioObject.class );
+    }
+
+    /**
+     * @return whether the method returns a collection that can hold 
+     *         <code>IBioObject</code>s, e.g. a <code>List</code>, a 
+     *         <code>List&lt;?&gt;</code> or a 
+     *         <code>List&lt;IMolecule&gt;</code>
+     */
+    private static boolean returnsBioObjects( Method method ) {
+        if ( !Collection.class.isAssignableFrom( method.getReturnType() ) ) {
+            return false;
+        }
+        if ( !( method.getGenericReturnType() 
+                instanceof ParameterizedType ) ) {
+            // a raw collection or a subclass binding its own element type
+            return true;
+        }
+        Type[] arguments = ( (ParameterizedType) method.getGenericReturnType() )
+                           .getActualTypeArguments();
+        if ( arguments.length != 1 ) {
+            return true;
+        }
+        Type element = arguments[0];
+        if ( element instanceof WildcardType ) {
+            element = ( (WildcardType) element ).getUpperBounds()[0];
+        }
+        if ( element instanceof ParameterizedType ) {
+            element = ( (ParameterizedType) element ).getRawType();
+        }
+        return !( element instanceof Class<?> )
+               || canReturnBioObject( (Class<?>) element );
+    }
+}
@@ -25,6 +25,7 @@ import java.util.regex.PatternSyntaxException;
 import net.bioclipse.core.ResourcePathTransformer;
 import net.bioclipse.core.business.BioclipseException;
 import net.bioclipse.jobs.IReturner;
+import net.bioclipse.managers.business.BlockingIO;
 import net.bioclipse.managers.business.IBioclipseManager;
 
 import org.apache.log4j.Logger;
@@ -56,6 +57,7 @@ public class GistManager implements IBioclipseManager {
     	}
     }
 
+    @BlockingIO
     public void download(int gist, IReturner<IFile> returner, IProgressMonitor monitor)
                   throws BioclipseException {
 
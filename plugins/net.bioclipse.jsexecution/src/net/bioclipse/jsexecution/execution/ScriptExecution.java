@@ -102,12 +102,22 @@ public class ScriptExecution {
         Job job = new Job(title) {
             private String scriptResult = "undefined";
             protected IStatus run(IProgressMonitor monitor) {
+                // the worker thread goes back to the pool afterwards, so
+                // the monitor must not be left behind in it
+                MonitorContainer.Scope scope 
+                    = MonitorContainer.getInstance().enter(
+                          SubMonitor.convert(monitor, 100)
+                      );
+                try {
+                    return runScript(monitor);
+                }
+                finally {
+                    MonitorContainer.getInstance().exit(scope);
+                }
+            }
+            private IStatus runScript(IProgressMonitor monitor) {
                 boolean done = true;
 
-                MonitorContainer.getInstance().addMonitor(
-                    SubMonitor.convert(monitor, 100)
-                );
-
                 monitor.beginTask( "Running JavaScript...",
                                    IProgressMonitor.UNKNOWN );
                 try {
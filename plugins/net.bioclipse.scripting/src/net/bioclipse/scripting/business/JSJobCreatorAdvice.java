@@ -14,8 +14,8 @@ import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.List;
 
-import net.bioclipse.core.ResourcePathTransformer;
 import net.bioclipse.managers.MonitorContainer;
+import net.bioclipse.managers.business.ArgumentAdapter;
 
 import org.aopalliance.intercept.MethodInvocation;
 import org.eclipse.core.resources.IFile;
@@ -36,33 +36,18 @@ public class JSJobCreatorAdvice implements IJSJobCreatorAdvice {
     public Object invoke( MethodInvocation invocation ) throws Throwable {
 
         Method methodToInvoke = invocation.getMethod();
-        Object[] args = invocation.getArguments();
+        IProgressMonitor monitor = null;
         Method m = findMethodWithMonitor(invocation);
         if ( m != null) {
             methodToInvoke = m;
-            /*
-             * Setup args array
-             */
-            args = new Object[
-                 invocation.getArguments().length + 1];
-            
-            IProgressMonitor monitor 
-                = new SubProgressMonitor( MonitorContainer.getInstance()
-                                                          .getMonitor(), 
-                                          0 ); 
+            monitor = new SubProgressMonitor( MonitorContainer.getInstance()
+                                                              .getMonitor(), 
+                                              0 ); 
             if ( monitor.isCanceled() ) {
                 throw new OperationCanceledException();
             }
             
             monitor.subTask( "Running: " + invocation.getMethod().getName() );
-            
-            args[args.length-1] = monitor;
-            System.arraycopy( invocation.getArguments(), 
-                              0, 
-                              args, 
-                              0, 
-                              invocation.getArguments().length );
-
         }
         else {
             m = findMethodWithCorrespondingIFile(invocation);
@@ -72,19 +57,14 @@ public class JSJobCreatorAdvice implements IJSJobCreatorAdvice {
         }
 
         /*
-         * Then substitute from String to IFile where suitable
+         * Setup args array, adding the monitor and substituting from String 
+         * to IFile where suitable
          */
-        for ( int i = 0; i < args.length; i++ ) {
-            Object arg = args[i];
-            if ( arg instanceof String &&
-                 methodToInvoke
-                     .getParameterTypes()[i] == IFile.class ) {
-                 
-                args[i] = ResourcePathTransformer
-                          .getInstance()
-                          .transform( (String) arg );
-            }
-        }
+        Object[] args = ArgumentAdapter.get( invocation.getMethod(), 
+                                             methodToInvoke )
+                                       .adapt( invocation.getArguments(), 
+                                               null, 
+                                               monitor );
         
         return methodToInvoke.invoke( invocation.getThis(), args ); 
     }
@@ -5,10 +5,10 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
-import net.bioclipse.core.ResourcePathTransformer;
 import net.bioclipse.core.util.LogUtils;
 import net.bioclipse.jobs.BioclipseJob;
 import net.bioclipse.jobs.BioclipseUIJob;
+import net.bioclipse.managers.business.ArgumentAdapter;
 import net.bioclipse.managers.business.IBioclipseManager;
 
 import org.aopalliance.intercept.MethodInvocation;
@@ -82,20 +82,10 @@ public class CreateJobAdvice implements ICreateJobAdvice {
 
     private Object[] tranformArgs( MethodInvocation invocation, Method m ) {
 
-        Object[] result = new Object[invocation.getArguments().length];
-        for ( int i = 0; i < invocation.getArguments().length; i++ ) {
-            Object arg = invocation.getArguments()[i];
-            if ( arg instanceof String &&
-                 m.getParameterTypes()[i] == IFile.class ) {
-                
-                result[i] = ResourcePathTransformer.getInstance()
-                                                   .transform( (String) arg );
-            }
-            else {
-                result[i] = arg;
-            }
-        }
-        return result;
+        return ArgumentAdapter.get( invocation.getMethod(), m )
+                              .adapt( invocation.getArguments(), 
+                                      null, 
+                                      nullProgressMonitor );
     }
 
     private Method findMethodToRun( MethodInvocation invocation ) {
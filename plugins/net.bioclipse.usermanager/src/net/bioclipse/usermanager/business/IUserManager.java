@@ -15,6 +15,7 @@ import java.util.List;
 
 import org.eclipse.core.runtime.SubProgressMonitor;
 
+import net.bioclipse.core.NotRecorded;
 import net.bioclipse.core.PublishedClass;
 import net.bioclipse.core.PublishedMethod;
 import net.bioclipse.core.Recorded;
@@ -46,7 +47,7 @@ public interface IUserManager extends IBioclipseManager {
                       methodSummary = "Logs in the user with the given "
                                     + "username given that the given password "
                                     + "matches the stored one." )
-    @Recorded
+    @NotRecorded
     public boolean logIn( String username, String password );
     
     public boolean signInToAccount(String accountId);
@@ -89,7 +90,7 @@ public interface IUserManager extends IBioclipseManager {
      * @param key the password for the superuser
      */
     @TestMethods("testCreateAccount")
-    @Recorded
+    @NotRecorded
     @PublishedMethod (params="String username, String password",
                       methodSummary = "Creates a new user with the " +
                                       "given username and password")